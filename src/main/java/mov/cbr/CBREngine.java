@@ -1,43 +1,302 @@
 package mov.cbr;
 
+import mov.cbr.jcolibri.JColibriEngine;
+import mov.concurrent.SingleFlight;
+import mov.metrics.Metrics;
+import mov.model.EntityRegistry;
 import mov.model.Movie;
+import mov.model.MovieField;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 /**
- * Case-Based Reasoning engine for finding similar movies
+ * Case-Based Reasoning engine for finding similar movies.
+ * 
+ * The case base is held in an immutable snapshot that is swapped atomically on every
+ * change. Queries read the snapshot once and finish against it, so reloads and
+ * incremental updates never block or disturb in-flight queries.
+ * 
+ * In JCOLIBRI retrieval mode the case base is mirrored into a JColibriEngine and single-movie
+ * retrieval and scoring go through jCOLIBRI; profile queries always use the native path.
+ * In VECTOR mode they go through a VectorIndex of dense feature vectors instead, refitted on
+ * every full load and similarity-spec change and updated row by row on incremental changes.
+ * 
+ * In OFF_HEAP storage mode the snapshot stays empty and cases live in an OffHeapCaseStore,
+ * swapped the same way; Movies are materialised only for returned cases (and, transiently,
+ * for profile scoring).
  */
 public class CBREngine {
     
-    private List<CaseRepresentation> caseBase;
+    /** Where case attributes are kept */
+    public enum StorageMode {
+        HEAP, // CaseRepresentations in a CaseBaseSnapshot
+        OFF_HEAP // fixed-layout records in an OffHeapCaseStore
+    }
+    
+    /** Which implementation answers findSimilarCases and scoreCases for a movie */
+    public enum RetrievalMode {
+        NATIVE, // SimilarityCalculator over the snapshot
+        JCOLIBRI, // jCOLIBRI NNScoringMethod over an ID-indexed case base
+        VECTOR // dot products over a VectorIndex (approximates the spec)
+    }
+    
+    private static final Comparator<CaseRepresentation> BY_SIMILARITY =
+            Comparator.comparingDouble(CaseRepresentation::getSimilarity).reversed();
+    
+    private volatile CaseBaseSnapshot snapshot;
+    private final Object writeLock = new Object(); // serialises copy-on-write updates
     private SimilarityCalculator similarityCalculator;
+    private volatile EntityRegistry entityRegistry; // null leaves incoming movies as they are
+    private volatile OffHeapCaseStore offHeapStore; // set in OFF_HEAP mode instead of filling the snapshot
+    private volatile JColibriEngine jcolibriEngine; // set in JCOLIBRI mode, kept in step under writeLock
+    private volatile VectorIndex vectorIndex; // set in VECTOR mode, replaced under writeLock
+    private volatile SingleFlight<List<Object>, List<CaseRepresentation>> flights; // findSimilarCasesAsync
     
     public CBREngine() {
-        this.caseBase = new ArrayList<>();
+        this.snapshot = CaseBaseSnapshot.EMPTY;
         this.similarityCalculator = new SimilarityCalculator();
     }
     
     /**
-     * Load cases from a list of movies
+     * Load cases from a list of movies.
+     * The new case base is built on the side and published in one step.
      */
     public void loadCases(List<Movie> movies) {
-        caseBase.clear();
-        for (Movie movie : movies) {
-            CaseRepresentation caseRep = new CaseRepresentation(movie);
-            caseBase.add(caseRep);
+        // Heap cases (and canonical copies) only serve HEAP mode; built outside the lock when it is current
+        List<CaseRepresentation> cases = offHeapStore == null ? newCases(movies) : null;
+        String heapReport = null;
+        synchronized (writeLock) {
+            if (offHeapStore != null) {
+                offHeapStore = OffHeapCaseStore.build(movies);
+                heapReport = offHeapStore.heapReport();
+            } else {
+                snapshot = new CaseBaseSnapshot(cases != null ? cases : newCases(movies));
+            }
+            if (jcolibriEngine != null) {
+                jcolibriEngine.loadCases(movies);
+            }
+            if (vectorIndex != null) {
+                vectorIndex = buildVectorIndex(movies);
+            }
         }
-        System.out.println("Loaded " + caseBase.size() + " cases into CBR system");
+        if (heapReport != null) {
+            System.out.println(heapReport);
+        }
+        System.out.println("Loaded " + movies.size() + " cases into CBR system");
+    }
+    
+    /**
+     * Fetch movies and rebuild the case base in the background.
+     * Queries keep using the current snapshot until the new one is published.
+     * 
+     * @return future completed with the new case count
+     */
+    public CompletableFuture<Integer> reloadCasesAsync(Supplier<List<Movie>> movieSource) {
+        return reloadCasesAsync(movieSource, ForkJoinPool.commonPool());
+    }
+    
+    public CompletableFuture<Integer> reloadCasesAsync(Supplier<List<Movie>> movieSource, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            loadCases(movieSource.get());
+            return getCaseCount();
+        }, executor);
     }
     
     /**
      * Add a single case to the case base
      */
     public void addCase(Movie movie) {
-        CaseRepresentation caseRep = new CaseRepresentation(movie);
-        caseBase.add(caseRep);
+        applyChanges(Collections.singletonList(movie), Collections.emptyList());
+    }
+    
+    /**
+     * Replace the case for the given movie, or add it if it is not in the case base yet
+     */
+    public void updateCase(Movie movie) {
+        applyChanges(Collections.singletonList(movie), Collections.emptyList());
+    }
+    
+    /**
+     * Remove the case with the given id (movie URI)
+     * 
+     * @return true if a case was removed
+     */
+    public boolean removeCase(String id) {
+        synchronized (writeLock) {
+            OffHeapCaseStore store = offHeapStore;
+            if (store != null ? store.indexOf(id) < 0 : snapshot.getCase(id) == null) {
+                return false;
+            }
+            applyChanges(Collections.emptyList(), Collections.singletonList(id));
+            return true;
+        }
+    }
+    
+    /**
+     * Apply a batch of upserts and removals as a single new snapshot
+     */
+    public void applyChanges(Collection<Movie> upserts, Collection<String> removedIds) {
+        List<CaseRepresentation> cases = offHeapStore == null ? newCases(upserts) : null;
+        synchronized (writeLock) {
+            if (offHeapStore != null) {
+                offHeapStore = offHeapStore.withChanges(upserts, removedIds);
+            } else {
+                snapshot = snapshot.withChanges(cases != null ? cases : newCases(upserts), removedIds);
+            }
+            if (jcolibriEngine != null) {
+                jcolibriEngine.applyChanges(upserts, removedIds);
+            }
+            if (vectorIndex != null) {
+                vectorIndex = vectorIndex.withChanges(upserts, removedIds);
+            }
+        }
+    }
+    
+    /**
+     * Switch single-movie retrieval between the native engine, jCOLIBRI and the vector index.
+     * Entering JCOLIBRI mode copies the current case base into a new jCOLIBRI case base;
+     * entering VECTOR mode fits an encoder to it and encodes every case.
+     */
+    public void setRetrievalMode(RetrievalMode mode) {
+        synchronized (writeLock) {
+            if (mode == RetrievalMode.JCOLIBRI) {
+                if (jcolibriEngine == null) {
+                    JColibriEngine engine = new JColibriEngine(similarityCalculator.getSpec());
+                    engine.loadCases(currentMovies());
+                    jcolibriEngine = engine;
+                }
+            } else {
+                jcolibriEngine = null;
+            }
+            if (mode == RetrievalMode.VECTOR) {
+                if (vectorIndex == null) {
+                    vectorIndex = buildVectorIndex(currentMovies());
+                    System.out.println(vectorIndex.getEncoder() + ", " + vectorIndex);
+                }
+            } else {
+                vectorIndex = null;
+            }
+        }
+    }
+    
+    public RetrievalMode getRetrievalMode() {
+        return jcolibriEngine != null ? RetrievalMode.JCOLIBRI
+                : vectorIndex != null ? RetrievalMode.VECTOR : RetrievalMode.NATIVE;
+    }
+    
+    private VectorIndex buildVectorIndex(List<Movie> movies) {
+        return VectorIndex.build(movies, FeatureEncoder.fit(movies, similarityCalculator.getSpec()));
+    }
+    
+    /**
+     * Move the case base between heap snapshots and off-heap records
+     */
+    public void setStorageMode(StorageMode mode) {
+        synchronized (writeLock) {
+            if (mode == StorageMode.OFF_HEAP && offHeapStore == null) {
+                offHeapStore = OffHeapCaseStore.build(currentMovies());
+                snapshot = CaseBaseSnapshot.EMPTY;
+            } else if (mode == StorageMode.HEAP && offHeapStore != null) {
+                snapshot = new CaseBaseSnapshot(newCases(currentMovies()));
+                offHeapStore = null;
+            }
+        }
+    }
+    
+    public StorageMode getStorageMode() {
+        return offHeapStore != null ? StorageMode.OFF_HEAP : StorageMode.HEAP;
+    }
+    
+    /**
+     * Movies of the current case base, materialised when it is off-heap
+     */
+    private List<Movie> currentMovies() {
+        OffHeapCaseStore store = offHeapStore;
+        if (store != null) {
+            List<Movie> movies = new ArrayList<>(store.size());
+            for (int i = 0; i < store.size(); i++) {
+                movies.add(store.materialise(i));
+            }
+            return movies;
+        }
+        List<Movie> movies = new ArrayList<>(snapshot.size());
+        for (CaseRepresentation caseRep : snapshot.getCases()) {
+            movies.add(caseRep.getMovie());
+        }
+        return movies;
+    }
+    
+    /**
+     * Share people, genres, countries and awards of loaded cases through the registry,
+     * so each exists once across the case base and people compare by reference
+     */
+    public void setEntityRegistry(EntityRegistry entityRegistry) {
+        this.entityRegistry = entityRegistry;
+    }
+    
+    public EntityRegistry getEntityRegistry() {
+        return entityRegistry;
+    }
+    
+    /**
+     * Compare cases with another similarity spec from the next query on; in-flight queries finish
+     * with the spec they started with
+     */
+    public void setSimilaritySpec(SimilaritySpec spec) {
+        similarityCalculator.setSpec(spec);
+        JColibriEngine engine = jcolibriEngine;
+        if (engine != null) {
+            engine.setSimilaritySpec(spec);
+        }
+        if (vectorIndex != null) {
+            synchronized (writeLock) {
+                if (vectorIndex != null) {
+                    vectorIndex = buildVectorIndex(currentMovies()); // weights and windows are in the vectors
+                }
+            }
+        }
+    }
+    
+    public SimilaritySpec getSimilaritySpec() {
+        return similarityCalculator.getSpec();
+    }
+    
+    private List<CaseRepresentation> newCases(Collection<Movie> movies) {
+        List<CaseRepresentation> cases = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            cases.add(newCase(movie));
+        }
+        return cases;
+    }
+    
+    private CaseRepresentation newCase(Movie movie) {
+        EntityRegistry registry = entityRegistry;
+        // A canonical copy when needed: the movie may be a catalog instance other threads read
+        return new CaseRepresentation(registry != null ? registry.canonical(movie) : movie);
+    }
+    
+    /**
+     * Get the case with the given id (movie URI), or null if there is none
+     */
+    public CaseRepresentation getCase(String id) {
+        OffHeapCaseStore store = offHeapStore;
+        if (store != null) {
+            int index = store.indexOf(id);
+            return index < 0 ? null : new CaseRepresentation(store.materialise(index));
+        }
+        return snapshot.getCase(id);
     }
     
     /**
@@ -48,25 +307,106 @@ public class CBREngine {
      * @return List of k most similar movies
      */
     public List<Movie> findSimilarMovies(Movie targetMovie, int k) {
-        if (caseBase.isEmpty()) {
+        return findSimilarMovies(targetMovie, k, MovieField.ALL);
+    }
+    
+    /**
+     * As findSimilarMovies; in OFF_HEAP storage only the given attributes are materialised
+     */
+    public List<Movie> findSimilarMovies(Movie targetMovie, int k, Set<MovieField> fields) {
+        List<Movie> similarMovies = new ArrayList<>();
+        for (CaseRepresentation caseRep : findSimilarCases(targetMovie, k, fields)) {
+            similarMovies.add(caseRep.getMovie());
+        }
+        return similarMovies;
+    }
+    
+    /**
+     * Run findSimilarCasesAsync on this executor instead of the default bounded pool
+     * (-Dmov.async.threads, -Dmov.async.queue)
+     */
+    public void setAsyncExecutor(ExecutorService executor) {
+        this.flights = new SingleFlight<>(executor);
+    }
+    
+    /**
+     * As findSimilarCases; identical requests (same movie, k and spec) already in flight share one
+     * scan and one result list, which is read-only. Cancelling the future detaches this caller only.
+     */
+    public CompletableFuture<List<CaseRepresentation>> findSimilarCasesAsync(Movie targetMovie, int k) {
+        return findSimilarCasesAsync(targetMovie, k, MovieField.ALL);
+    }
+    
+    public CompletableFuture<List<CaseRepresentation>> findSimilarCasesAsync(Movie targetMovie, int k,
+                                                                             Set<MovieField> fields) {
+        SingleFlight<List<Object>, List<CaseRepresentation>> current = flights;
+        if (current == null) {
+            synchronized (this) {
+                if (flights == null) {
+                    flights = new SingleFlight<>(SingleFlight.boundedExecutor("mov-cbr",
+                            Integer.getInteger("mov.async.threads", Runtime.getRuntime().availableProcessors()),
+                            Integer.getInteger("mov.async.queue", 1024)));
+                }
+                current = flights;
+            }
+        }
+        // Movies without a URI are only coalesced with requests for the same instance
+        Object target = targetMovie.getUri() != null ? targetMovie.getUri() : targetMovie;
+        List<Object> key = Arrays.asList(target, k, similarityCalculator.getSpec(), fields);
+        return current.execute(key, () -> Collections.unmodifiableList(findSimilarCases(targetMovie, k, fields)));
+    }
+    
+    /**
+     * Find similar movies with similarity scores.
+     * Returned cases are private copies; the shared case base is never mutated.
+     */
+    public List<CaseRepresentation> findSimilarCases(Movie targetMovie, int k) {
+        return findSimilarCases(targetMovie, k, MovieField.ALL);
+    }
+    
+    /**
+     * As findSimilarCases; in OFF_HEAP storage the returned movies are materialised with only
+     * the given attributes (plus URI and title). Heap cases already hold whole, shared movies,
+     * which are returned as they are.
+     */
+    public List<CaseRepresentation> findSimilarCases(Movie targetMovie, int k, Set<MovieField> fields) {
+        CaseBaseSnapshot current = snapshot;
+        OffHeapCaseStore store = offHeapStore;
+        if (store != null ? store.isEmpty() : current.isEmpty()) {
             System.err.println("Case base is empty. Load cases first.");
             return new ArrayList<>();
         }
         
+        long start = Metrics.start();
+        JColibriEngine engine = jcolibriEngine;
+        VectorIndex vectors = vectorIndex;
+        if (engine != null || vectors != null || store != null) {
+            List<CaseRepresentation> topCases = engine != null ? engine.findSimilarCases(targetMovie, k)
+                    : vectors != null ? vectors.findSimilar(targetMovie, k)
+                    : store.findSimilar(targetMovie, k, similarityCalculator.getSpec(), fields);
+            Metrics.add(Metrics.CASES_SCORED, store != null ? store.size() : current.size());
+            Metrics.stop(Metrics.CBR_FIND_SIMILAR, start);
+            return topCases;
+        }
+        
         // Calculate similarity for each case
         List<CaseRepresentation> rankedCases = new ArrayList<>();
         
-        for (CaseRepresentation caseRep : caseBase) {
+        for (CaseRepresentation caseRep : current.getCases()) {
             // Skip the target movie itself
             if (caseRep.getMovie().getTitle().equals(targetMovie.getTitle())) {
                 continue;
             }
             
             double similarity = similarityCalculator.calculateSimilarity(targetMovie, caseRep.getMovie());
-            caseRep.setSimilarity(similarity);
-            rankedCases.add(caseRep);
+            CaseRepresentation scored = new CaseRepresentation(caseRep.getId(), caseRep.getMovie());
+            scored.setSimilarity(similarity);
+            rankedCases.add(scored);
         }
         
+        long scored = Metrics.stop(Metrics.CBR_SCORE, start);
+        Metrics.add(Metrics.CASES_SCORED, rankedCases.size());
+        
         // Sort by similarity (descending)
         Collections.sort(rankedCases, new Comparator<CaseRepresentation>() {
             @Override
@@ -74,65 +414,212 @@ public class CBREngine {
                 return Double.compare(c2.getSimilarity(), c1.getSimilarity());
             }
         });
+        Metrics.stop(Metrics.CBR_SORT, scored);
         
         // Return top k results
-        List<Movie> similarMovies = new ArrayList<>();
         int limit = Math.min(k, rankedCases.size());
-        
-        for (int i = 0; i < limit; i++) {
-            similarMovies.add(rankedCases.get(i).getMovie());
+        List<CaseRepresentation> topCases = new ArrayList<>(rankedCases.subList(0, limit));
+        Metrics.stop(Metrics.CBR_FIND_SIMILAR, start);
+        return topCases;
+    }
+    
+    /**
+     * Find similar cases for several targets at once, one list per target in the order given.
+     * In VECTOR mode the targets are scored together in blocks, reading the case matrix once per
+     * block; otherwise each target is a findSimilarCases call.
+     */
+    public List<List<CaseRepresentation>> findSimilarCases(List<Movie> targetMovies, int k) {
+        VectorIndex vectors = vectorIndex;
+        if (vectors == null || vectors.isEmpty()) {
+            List<List<CaseRepresentation>> results = new ArrayList<>(targetMovies.size());
+            for (Movie target : targetMovies) {
+                results.add(findSimilarCases(target, k));
+            }
+            return results;
         }
-        
-        return similarMovies;
+        long start = Metrics.start();
+        List<List<CaseRepresentation>> results = vectors.findSimilar(targetMovies, k);
+        Metrics.add(Metrics.CASES_SCORED, (long) vectors.size() * targetMovies.size());
+        Metrics.stop(Metrics.CBR_FIND_SIMILAR, start);
+        return results;
     }
     
     /**
-     * Find similar movies with similarity scores
+     * Find the k cases closest to a user profile in a single pass over the case base.
+     * The profile's seed movies are excluded; returned cases are private copies.
      */
-    public List<CaseRepresentation> findSimilarCases(Movie targetMovie, int k) {
-        if (caseBase.isEmpty()) {
-            System.err.println("Case base is empty. Load cases first.");
+    public List<CaseRepresentation> findSimilarCases(UserProfile profile, int k) {
+        OffHeapCaseStore store = offHeapStore;
+        if (store != null) {
+            long start = Metrics.start();
+            List<CaseRepresentation> topCases = store.findSimilar(profile, k, similarityCalculator.getSpec());
+            Metrics.add(Metrics.CASES_SCORED, k > 0 ? store.size() : 0);
+            Metrics.stop(Metrics.CBR_FIND_SIMILAR, start);
+            return topCases;
+        }
+        CaseBaseSnapshot current = snapshot;
+        if (current.isEmpty() || k <= 0) {
             return new ArrayList<>();
         }
         
-        // Calculate similarity for each case
-        List<CaseRepresentation> rankedCases = new ArrayList<>();
-        
-        for (CaseRepresentation caseRep : caseBase) {
-            // Skip the target movie itself
-            if (caseRep.getMovie().getTitle().equals(targetMovie.getTitle())) {
+        long start = Metrics.start();
+        Comparator<CaseRepresentation> bestFirst = BY_SIMILARITY.thenComparing(CaseRepresentation::getId);
+        PriorityQueue<CaseRepresentation> top = new PriorityQueue<>(k + 1, bestFirst.reversed()); // worst at the head
+        int scoredCount = 0;
+        for (CaseRepresentation caseRep : current.getCases()) {
+            if (profile.isSeed(caseRep.getMovie())) {
                 continue;
             }
-            
-            double similarity = similarityCalculator.calculateSimilarity(targetMovie, caseRep.getMovie());
-            caseRep.setSimilarity(similarity);
-            rankedCases.add(caseRep);
+            CaseRepresentation scored = new CaseRepresentation(caseRep.getId(), caseRep.getMovie());
+            scored.setSimilarity(profile.score(caseRep.getMovie(), similarityCalculator));
+            scoredCount++;
+            if (top.size() < k) {
+                top.add(scored);
+            } else if (bestFirst.compare(scored, top.peek()) < 0) {
+                top.poll();
+                top.add(scored);
+            }
         }
+        Metrics.add(Metrics.CASES_SCORED, scoredCount);
         
-        // Sort by similarity (descending)
-        Collections.sort(rankedCases, new Comparator<CaseRepresentation>() {
-            @Override
-            public int compare(CaseRepresentation c1, CaseRepresentation c2) {
-                return Double.compare(c2.getSimilarity(), c1.getSimilarity());
+        List<CaseRepresentation> topCases = new ArrayList<>(top);
+        topCases.sort(bestFirst);
+        Metrics.stop(Metrics.CBR_FIND_SIMILAR, start);
+        return topCases;
+    }
+    
+    /**
+     * Score only the given cases against a user profile, in the order given, skipping its seeds
+     */
+    public List<CaseRepresentation> scoreCases(UserProfile profile, Collection<String> caseIds) {
+        CaseBaseSnapshot current = snapshot;
+        OffHeapCaseStore store = offHeapStore;
+        long start = Metrics.start();
+        if (store != null) {
+            List<CaseRepresentation> scoredCases = store.score(profile, caseIds, similarityCalculator.getSpec());
+            Metrics.stop(Metrics.CBR_SCORE, start);
+            Metrics.add(Metrics.CASES_SCORED, scoredCases.size());
+            return scoredCases;
+        }
+        List<CaseRepresentation> scoredCases = new ArrayList<>(caseIds.size());
+        for (String id : caseIds) {
+            CaseRepresentation caseRep = current.getCase(id);
+            if (caseRep == null || profile.isSeed(caseRep.getMovie())) {
+                continue;
             }
-        });
-        
-        // Return top k results
-        int limit = Math.min(k, rankedCases.size());
-        return rankedCases.subList(0, limit);
+            CaseRepresentation scored = new CaseRepresentation(caseRep.getId(), caseRep.getMovie());
+            scored.setSimilarity(profile.score(caseRep.getMovie(), similarityCalculator));
+            scoredCases.add(scored);
+        }
+        Metrics.stop(Metrics.CBR_SCORE, start);
+        Metrics.add(Metrics.CASES_SCORED, scoredCases.size());
+        return scoredCases;
     }
     
     /**
-     * Get all cases in the case base
+     * Score only the given cases against the target, in the order given.
+     * Ids not in the case base and the target itself are skipped; the result is not sorted,
+     * so callers can feed candidates in batches and keep their own top k.
+     */
+    public List<CaseRepresentation> scoreCases(Movie targetMovie, Collection<String> caseIds) {
+        CaseBaseSnapshot current = snapshot;
+        long start = Metrics.start();
+        JColibriEngine engine = jcolibriEngine;
+        VectorIndex vectors = vectorIndex;
+        OffHeapCaseStore store = offHeapStore;
+        if (engine != null || vectors != null || store != null) {
+            List<CaseRepresentation> scoredCases = engine != null ? engine.scoreCases(targetMovie, caseIds)
+                    : vectors != null ? vectors.score(targetMovie, caseIds)
+                    : store.score(targetMovie, caseIds, similarityCalculator.getSpec());
+            Metrics.stop(Metrics.CBR_SCORE, start);
+            Metrics.add(Metrics.CASES_SCORED, scoredCases.size());
+            return scoredCases;
+        }
+        List<CaseRepresentation> scoredCases = new ArrayList<>(caseIds.size());
+        for (String id : caseIds) {
+            CaseRepresentation caseRep = current.getCase(id);
+            if (caseRep == null || id.equals(targetMovie.getUri())) {
+                continue;
+            }
+            CaseRepresentation scored = new CaseRepresentation(caseRep.getId(), caseRep.getMovie());
+            scored.setSimilarity(similarityCalculator.calculateSimilarity(targetMovie, caseRep.getMovie()));
+            scoredCases.add(scored);
+        }
+        Metrics.stop(Metrics.CBR_SCORE, start);
+        Metrics.add(Metrics.CASES_SCORED, scoredCases.size());
+        return scoredCases;
+    }
+    
+    /**
+     * Get all cases in the current snapshot (read-only); in OFF_HEAP mode every case is materialised
      */
     public List<CaseRepresentation> getCaseBase() {
-        return caseBase;
+        return getSnapshot().getCases();
+    }
+    
+    /**
+     * Get the current immutable case base snapshot; in OFF_HEAP mode a materialised copy
+     */
+    public CaseBaseSnapshot getSnapshot() {
+        OffHeapCaseStore store = offHeapStore;
+        if (store == null) {
+            return snapshot;
+        }
+        List<CaseRepresentation> cases = new ArrayList<>(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            cases.add(new CaseRepresentation(store.materialise(i)));
+        }
+        return new CaseBaseSnapshot(cases);
+    }
+    
+    /**
+     * Ids (movie URIs) of the current cases, in case-base order; with getCaseMovies, a stable
+     * list to walk the case base in batches while it changes
+     */
+    public List<String> getCaseIds() {
+        OffHeapCaseStore store = offHeapStore;
+        if (store != null) {
+            List<String> ids = new ArrayList<>(store.size());
+            for (int i = 0; i < store.size(); i++) {
+                ids.add(store.getUri(i));
+            }
+            return ids;
+        }
+        List<CaseRepresentation> cases = snapshot.getCases();
+        List<String> ids = new ArrayList<>(cases.size());
+        for (CaseRepresentation caseRep : cases) {
+            ids.add(caseRep.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * The current movies of the given cases, in the order given; ids no longer in the case base
+     * are skipped. In OFF_HEAP mode only these cases are materialised.
+     */
+    public List<Movie> getCaseMovies(Collection<String> ids) {
+        List<Movie> movies = new ArrayList<>(ids.size());
+        OffHeapCaseStore store = offHeapStore;
+        if (store != null) {
+            for (String id : ids) {
+                int index = store.indexOf(id);
+                if (index >= 0) movies.add(store.materialise(index));
+            }
+            return movies;
+        }
+        CaseBaseSnapshot current = snapshot;
+        for (String id : ids) {
+            CaseRepresentation caseRep = current.getCase(id);
+            if (caseRep != null) movies.add(caseRep.getMovie());
+        }
+        return movies;
     }
     
     /**
      * Get the number of cases in the case base
      */
     public int getCaseCount() {
-        return caseBase.size();
+        OffHeapCaseStore store = offHeapStore;
+        return store != null ? store.size() : snapshot.size();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package mov.cbr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of the case base. A new snapshot is built for every change and
+ * published atomically, so readers never observe a half-applied reload or update.
+ */
+public class CaseBaseSnapshot {
+    
+    public static final CaseBaseSnapshot EMPTY = new CaseBaseSnapshot(new ArrayList<>());
+    
+    private final List<CaseRepresentation> cases;
+    private final Map<String, CaseRepresentation> casesById;
+    
+    public CaseBaseSnapshot(List<CaseRepresentation> cases) {
+        this.cases = Collections.unmodifiableList(cases);
+        this.casesById = new HashMap<>(cases.size() * 2);
+        for (CaseRepresentation caseRep : cases) {
+            if (caseRep.getId() != null) {
+                casesById.put(caseRep.getId(), caseRep);
+            }
+        }
+    }
+    
+    /**
+     * Copy this snapshot with the given cases inserted or replaced and the given ids removed
+     */
+    public CaseBaseSnapshot withChanges(Collection<CaseRepresentation> upserts, Collection<String> removedIds) {
+        Set<String> removed = new HashSet<>(removedIds);
+        Map<String, CaseRepresentation> replacements = new HashMap<>();
+        for (CaseRepresentation caseRep : upserts) {
+            replacements.put(caseRep.getId(), caseRep);
+        }
+        
+        List<CaseRepresentation> next = new ArrayList<>(cases.size() + upserts.size());
+        for (CaseRepresentation caseRep : cases) {
+            String id = caseRep.getId();
+            if (id != null && removed.contains(id)) {
+                continue;
+            }
+            CaseRepresentation replacement = id == null ? null : replacements.remove(id);
+            next.add(replacement != null ? replacement : caseRep);
+        }
+        // Whatever was not replaced in place is new
+        for (CaseRepresentation caseRep : upserts) {
+            if (replacements.containsKey(caseRep.getId())) {
+                next.add(caseRep);
+            }
+        }
+        return new CaseBaseSnapshot(next);
+    }
+    
+    public List<CaseRepresentation> getCases() {
+        return cases;
+    }
+    
+    public CaseRepresentation getCase(String id) {
+        return casesById.get(id);
+    }
+    
+    public int size() {
+        return cases.size();
+    }
+    
+    public boolean isEmpty() {
+        return cases.isEmpty();
+    }
+}
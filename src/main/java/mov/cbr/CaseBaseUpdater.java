@@ -0,0 +1,86 @@
+package mov.cbr;
+
+import mov.model.Movie;
+import mov.ontology.MovieRecommender;
+import mov.ontology.OntologyChangeEvent;
+import mov.ontology.OntologyChangeListener;
+import mov.ontology.OntologyManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps a CBREngine case base in sync with the ontology by applying
+ * change-feed events incrementally instead of reloading every case
+ */
+public class CaseBaseUpdater implements OntologyChangeListener {
+    
+    private CBREngine cbrEngine;
+    private MovieRecommender movieRecommender;
+    private List<OntologyChangeEvent> pending; // events held back while start() loads, guarded by this
+    
+    public CaseBaseUpdater(CBREngine cbrEngine, MovieRecommender movieRecommender) {
+        this.cbrEngine = cbrEngine;
+        this.movieRecommender = movieRecommender;
+    }
+    
+    /**
+     * Subscribe to the change feed, then load every movie into the engine. Events arriving
+     * while the movies are read are held and applied after the load, so no edit is lost
+     * between the read and the subscription; re-applying an edit the load already saw only
+     * re-reads the same movies.
+     */
+    public void start(OntologyManager ontologyManager) {
+        synchronized (this) {
+            pending = new ArrayList<>();
+        }
+        ontologyManager.addChangeListener(this);
+        cbrEngine.loadCases(movieRecommender.getAllMovies());
+        while (true) {
+            List<OntologyChangeEvent> held;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    pending = null;
+                    return;
+                }
+                held = pending;
+                pending = new ArrayList<>();
+            }
+            for (OntologyChangeEvent event : held) {
+                apply(event);
+            }
+        }
+    }
+    
+    @Override
+    public void ontologyChanged(OntologyChangeEvent event) {
+        synchronized (this) {
+            if (pending != null) {
+                pending.add(event);
+                return;
+            }
+        }
+        apply(event);
+    }
+    
+    private void apply(OntologyChangeEvent event) {
+        if (event.isReload()) {
+            // The whole model was replaced: rebuild the case base on the side and swap it in
+            cbrEngine.loadCases(movieRecommender.getAllMovies());
+            return;
+        }
+        if (event.getAffectedMovies().isEmpty()) {
+            return;
+        }
+        
+        // Re-read only the affected movies; anything not returned is no longer a movie
+        List<Movie> refreshed = movieRecommender.getMoviesByUris(event.getAffectedMovies());
+        Set<String> removed = new HashSet<>(event.getAffectedMovies());
+        for (Movie movie : refreshed) {
+            removed.remove(movie.getUri());
+        }
+        cbrEngine.applyChanges(refreshed, removed);
+    }
+}
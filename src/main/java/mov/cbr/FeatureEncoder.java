@@ -0,0 +1,234 @@
+package mov.cbr;
+
+import mov.cbr.SimilaritySpec.Attribute;
+import mov.model.Movie;
+import mov.model.Person;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encodes a movie as a fixed-length float vector whose dot product with another movie's vector
+ * approximates their weighted similarity under a SimilaritySpec.
+ *
+ * The vector is a concatenation of blocks, one per attribute, each L2-normalised and scaled by
+ * the square root of the attribute's weight, so a dot product is the weighted sum of per-block
+ * cosines:
+ * <ul>
+ * <li>genres: one-hot over the genres seen at fit time (cosine = shared / sqrt(n1 * n2))</li>
+ * <li>directors, actors: names hashed into a fixed number of buckets</li>
+ * <li>year, rating (and runtime if weighted): Gaussian bumps over bins spaced by a bandwidth
+ * taken from the spec's window, so nearby values overlap and distant ones do not</li>
+ * <li>country: one-hot over the countries seen at fit time</li>
+ * </ul>
+ * Missing values leave their block zero, as SimilarityCalculator scores them 0. Genres and
+ * countries first seen after fit() are not represented until the encoder is fitted again.
+ * The length is padded to a multiple of 8.
+ */
+public final class FeatureEncoder {
+
+    /** Gaussian-bump encoding of one numeric attribute */
+    private static final class Bins {
+        final double min;
+        final double sigma;
+        final int count;
+
+        Bins(double min, double max, double window) {
+            // A bump kernel halves at half the window: exp(-d^2 / (4 sigma^2)) = 0.5
+            this.sigma = Math.max(1e-6, window * 0.3);
+            this.min = min - 2 * sigma;
+            this.count = (int) Math.ceil((max + 2 * sigma - this.min) / sigma) + 1;
+        }
+
+        void encode(double value, float[] out, int offset) {
+            for (int i = 0; i < count; i++) {
+                double distance = value - (min + i * sigma);
+                out[offset + i] = (float) Math.exp(-distance * distance / (2 * sigma * sigma));
+            }
+        }
+    }
+
+    private final SimilaritySpec spec;
+    private final Map<String, Integer> genres;
+    private final Map<String, Integer> countries; // lower-cased
+    private final int directorBuckets;
+    private final int actorBuckets;
+    private final Bins years;
+    private final Bins ratings;
+    private final Bins runtimes; // null unless runtime is weighted
+    private final double runtimeWeight;
+
+    private final int genreOffset;
+    private final int directorOffset;
+    private final int actorOffset;
+    private final int yearOffset;
+    private final int ratingOffset;
+    private final int countryOffset;
+    private final int runtimeOffset;
+    private final int dimensions;
+
+    private FeatureEncoder(SimilaritySpec spec, Map<String, Integer> genres, Map<String, Integer> countries,
+                           int directorBuckets, int actorBuckets, Bins years, Bins ratings,
+                           Bins runtimes, double runtimeWeight) {
+        this.spec = spec;
+        this.genres = genres;
+        this.countries = countries;
+        this.directorBuckets = directorBuckets;
+        this.actorBuckets = actorBuckets;
+        this.years = years;
+        this.ratings = ratings;
+        this.runtimes = runtimes;
+        this.runtimeWeight = runtimeWeight;
+
+        genreOffset = 0;
+        directorOffset = genreOffset + genres.size();
+        actorOffset = directorOffset + directorBuckets;
+        yearOffset = actorOffset + actorBuckets;
+        ratingOffset = yearOffset + years.count;
+        countryOffset = ratingOffset + ratings.count;
+        runtimeOffset = countryOffset + countries.size();
+        int used = runtimeOffset + (runtimes != null ? runtimes.count : 0);
+        dimensions = (used + 7) & ~7;
+    }
+
+    /**
+     * Encoder for the movies' genres, countries and value ranges, with bucket counts from
+     * -Dmov.cbr.vector.directorBuckets (32), -Dmov.cbr.vector.actorBuckets (128) and a runtime
+     * weight from -Dmov.cbr.vector.runtimeWeight (0, i.e. not encoded, as in the spec)
+     */
+    public static FeatureEncoder fit(List<Movie> movies, SimilaritySpec spec) {
+        return fit(movies, spec, Integer.getInteger("mov.cbr.vector.directorBuckets", 32),
+                Integer.getInteger("mov.cbr.vector.actorBuckets", 128),
+                Double.parseDouble(System.getProperty("mov.cbr.vector.runtimeWeight", "0")));
+    }
+
+    public static FeatureEncoder fit(List<Movie> movies, SimilaritySpec spec, int directorBuckets,
+                                     int actorBuckets, double runtimeWeight) {
+        Map<String, Integer> genres = new HashMap<>();
+        Map<String, Integer> countries = new HashMap<>();
+        double minYear = Double.MAX_VALUE, maxYear = -Double.MAX_VALUE;
+        double minRuntime = Double.MAX_VALUE, maxRuntime = -Double.MAX_VALUE;
+        for (Movie movie : movies) {
+            for (String genre : movie.getGenres()) {
+                genres.putIfAbsent(genre, genres.size());
+            }
+            if (movie.getCountry() != null && !movie.getCountry().isEmpty()) {
+                countries.putIfAbsent(movie.getCountry().toLowerCase(Locale.ROOT), countries.size());
+            }
+            if (movie.getYear() != 0) {
+                minYear = Math.min(minYear, movie.getYear());
+                maxYear = Math.max(maxYear, movie.getYear());
+            }
+            if (movie.getRuntime() != 0) {
+                minRuntime = Math.min(minRuntime, movie.getRuntime());
+                maxRuntime = Math.max(maxRuntime, movie.getRuntime());
+            }
+        }
+        if (minYear > maxYear) {
+            minYear = maxYear = 2000;
+        }
+        Bins runtimes = null;
+        if (runtimeWeight > 0) {
+            if (minRuntime > maxRuntime) {
+                minRuntime = maxRuntime = 120;
+            }
+            runtimes = new Bins(minRuntime, maxRuntime, 30);
+        }
+        return new FeatureEncoder(spec, genres, countries, directorBuckets, actorBuckets,
+                new Bins(minYear, maxYear, spec.getYearWindow()),
+                new Bins(0, 10, spec.getRatingWindow()), runtimes, runtimeWeight);
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public SimilaritySpec getSpec() {
+        return spec;
+    }
+
+    public float[] encode(Movie movie) {
+        float[] vector = new float[dimensions];
+        encode(movie, vector, 0);
+        return vector;
+    }
+
+    /**
+     * Write the movie's vector into out[offset .. offset + dimensions())
+     */
+    public void encode(Movie movie, float[] out, int offset) {
+        Arrays.fill(out, offset, offset + dimensions, 0f);
+        for (String genre : movie.getGenres()) {
+            Integer index = genres.get(genre);
+            if (index != null) out[offset + genreOffset + index] = 1f; // duplicates count once
+        }
+        normalise(out, offset + genreOffset, genres.size(), spec.getWeight(Attribute.GENRE));
+
+        hashPeople(movie.getDirectors(), out, offset + directorOffset, directorBuckets);
+        normalise(out, offset + directorOffset, directorBuckets, spec.getWeight(Attribute.DIRECTOR));
+        hashPeople(movie.getActors(), out, offset + actorOffset, actorBuckets);
+        normalise(out, offset + actorOffset, actorBuckets, spec.getWeight(Attribute.ACTOR));
+
+        if (movie.getYear() != 0) {
+            years.encode(movie.getYear(), out, offset + yearOffset);
+            normalise(out, offset + yearOffset, years.count, spec.getWeight(Attribute.YEAR));
+        }
+        if (movie.getRating() != 0.0) {
+            ratings.encode(movie.getRating(), out, offset + ratingOffset);
+            normalise(out, offset + ratingOffset, ratings.count, spec.getWeight(Attribute.RATING));
+        }
+        if (movie.getCountry() != null && !movie.getCountry().isEmpty()) {
+            Integer index = countries.get(movie.getCountry().toLowerCase(Locale.ROOT));
+            if (index != null) out[offset + countryOffset + index] = (float) Math.sqrt(spec.getWeight(Attribute.COUNTRY));
+        }
+        if (runtimes != null && movie.getRuntime() != 0) {
+            runtimes.encode(movie.getRuntime(), out, offset + runtimeOffset);
+            normalise(out, offset + runtimeOffset, runtimes.count, runtimeWeight);
+        }
+    }
+
+    /**
+     * Names into buckets; each distinct name counts once, colliding names add up
+     */
+    private static void hashPeople(List<Person> people, float[] out, int offset, int buckets) {
+        for (int i = 0; i < people.size(); i++) {
+            String name = people.get(i).getName();
+            if (name == null || buckets == 0) continue;
+            boolean seen = false;
+            for (int j = 0; j < i && !seen; j++) {
+                seen = name.equals(people.get(j).getName());
+            }
+            if (!seen) {
+                out[offset + Math.floorMod(name.hashCode() * 0x9E3779B1, buckets)] += 1f;
+            }
+        }
+    }
+
+    /**
+     * Scale the block to length sqrt(weight); an all-zero block stays zero
+     */
+    private static void normalise(float[] out, int offset, int length, double weight) {
+        double norm = 0;
+        for (int i = offset; i < offset + length; i++) {
+            norm += out[i] * out[i];
+        }
+        if (norm == 0) {
+            return;
+        }
+        float scale = (float) (Math.sqrt(weight) / Math.sqrt(norm));
+        for (int i = offset; i < offset + length; i++) {
+            out[i] *= scale;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureEncoder [" + dimensions + " dimensions: " + genres.size() + " genres, "
+                + directorBuckets + " director buckets, " + actorBuckets + " actor buckets, "
+                + years.count + " year bins, " + ratings.count + " rating bins, " + countries.size() + " countries"
+                + (runtimes != null ? ", " + runtimes.count + " runtime bins" : "") + "]";
+    }
+}
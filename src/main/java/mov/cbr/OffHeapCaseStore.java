@@ -0,0 +1,1011 @@
+package mov.cbr;
+
+import mov.model.Movie;
+import mov.model.MovieField;
+import mov.model.Person;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable case base kept outside the Java heap.
+ *
+ * Each case is a fixed-size record in a direct buffer; its genre, people and award lists are runs
+ * of dictionary ids in a second buffer and its URI and title are UTF-8 bytes in a third. Genres,
+ * people (by URI, or name when they have none), countries (ignoring case) and awards are interned once in Dictionaries
+ * shared by every generation of the store, so the heap holds one object per distinct entity plus
+ * an int[] URI index rather than a Movie graph per case. Similarity is computed from the records;
+ * Movies are materialised only for results. Like CaseBaseSnapshot, a change builds a new store.
+ *
+ * Changes append: the new store writes replaced and added cases after the records of the store
+ * it came from, in the same buffers, and maps case positions to records through an int[] order,
+ * so a change copies heap arrays rather than the direct buffers. Replaced and removed records stay
+ * in the buffers, unreferenced, for older stores still being read. Once they outnumber the live
+ * cases, or when the change is not made from the latest store, the live cases are compacted into
+ * new buffers. Direct memory is thus bounded by about four times the live data (superseded records
+ * plus doubling headroom), and buffers are only reallocated when they double or are compacted, but
+ * released buffers are freed only when GC runs their Cleaner: with -XX:MaxDirectMemorySize set
+ * close to the store's size, leave room for one more compacted copy.
+ */
+public final class OffHeapCaseStore {
+
+    // Record layout: RECORD_BYTES per case, ints unless noted
+    private static final int URI_OFFSET = 0; // into the string buffer
+    private static final int URI_LENGTH = 4;
+    private static final int TITLE_OFFSET = 8;
+    private static final int TITLE_LENGTH = 12;
+    private static final int TITLE_HASH = 16;
+    private static final int YEAR = 20;
+    private static final int RATING = 24; // double
+    private static final int COUNTRY = 32; // country id, -1 if none
+    private static final int LIST_OFFSET = 36; // first id of the lists, in ints, in the id buffer
+    private static final int GENRE_COUNT = 40; // unsigned shorts, lists stored in this order
+    private static final int DIRECTOR_COUNT = 42;
+    private static final int ACTOR_COUNT = 44;
+    private static final int WRITER_COUNT = 46;
+    private static final int AWARD_COUNT = 48;
+    private static final int RUNTIME = 52;
+    private static final int ROTTEN_TOMATOES = 56;
+    private static final int URI_HASH = 60;
+    static final int RECORD_BYTES = 64;
+
+    private static final int MAX_LIST = 0xFFFF;
+    private static final SimilaritySpec.Attribute[] ATTRIBUTES = SimilaritySpec.Attribute.values();
+
+    /** Values interned to dense ids; append-only, so ids stay valid across store generations */
+    static final class Dictionary<T> {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+
+        synchronized int intern(String key, T value) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = values.size();
+                ids.put(key, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        /**
+         * Id of the key, or -1 if it was never interned
+         */
+        synchronized int lookup(String key) {
+            Integer id = ids.get(key);
+            return id == null ? -1 : id;
+        }
+
+        synchronized T get(int id) {
+            return values.get(id);
+        }
+
+        synchronized int size() {
+            return values.size();
+        }
+    }
+
+    /** Dictionaries shared by a store and the stores derived from it */
+    static final class Dictionaries {
+        final Dictionary<String> genres = new Dictionary<>();
+        final Dictionary<Person> people = new Dictionary<>(); // keyed by SimilarityCalculator.personKey
+        final Dictionary<String> countries = new Dictionary<>(); // keyed lower-case, first spelling kept
+        final Dictionary<String> awards = new Dictionary<>();
+    }
+
+    /** A query movie encoded against the dictionaries; values never interned cannot match */
+    final class Target {
+        final int[] genres; // known distinct ids
+        final int genreCount; // distinct values, known or not
+        final int[] directors;
+        final int directorCount;
+        final int[] actors;
+        final int actorCount;
+        final int year;
+        final double rating;
+        final int country;
+        final byte[] title;
+        final int titleHash;
+
+        Target(Movie movie) {
+            Set<String> distinct = new HashSet<>();
+            List<Integer> known = new ArrayList<>();
+            if (movie.getGenres() != null) {
+                for (String genre : movie.getGenres()) {
+                    if (genre != null && distinct.add(genre)) addKnown(known, dictionaries.genres.lookup(genre));
+                }
+            }
+            genres = toArray(known);
+            genreCount = distinct.size();
+
+            distinct.clear();
+            known.clear();
+            directorCount = people(movie.getDirectors(), distinct, known);
+            directors = toArray(known);
+            distinct.clear();
+            known.clear();
+            actorCount = people(movie.getActors(), distinct, known);
+            actors = toArray(known);
+
+            year = movie.getYear();
+            rating = movie.getRating();
+            country = movie.getCountry() == null || movie.getCountry().isEmpty() ? -1
+                    : dictionaries.countries.lookup(movie.getCountry().toLowerCase(Locale.ROOT));
+            String text = movie.getTitle() == null ? "" : movie.getTitle();
+            title = text.getBytes(StandardCharsets.UTF_8);
+            titleHash = text.hashCode();
+        }
+
+        private int people(List<Person> people, Set<String> distinct, List<Integer> known) {
+            if (people != null) {
+                for (Person person : people) {
+                    String key = SimilarityCalculator.personKey(person);
+                    if (key != null && distinct.add(key)) {
+                        addKnown(known, dictionaries.people.lookup(key));
+                    }
+                }
+            }
+            return distinct.size();
+        }
+
+        private void addKnown(List<Integer> known, int id) {
+            if (id >= 0) known.add(id);
+        }
+    }
+
+    /** Seed shares of a profile vector by dictionary id, sorted by id; values never interned cannot match */
+    static final class Shares {
+        final int[] ids;
+        final double[] values;
+
+        Shares(Map<String, Double> shares, Dictionary<?> dictionary) {
+            Map<Integer, Double> known = new TreeMap<>();
+            for (Map.Entry<String, Double> share : shares.entrySet()) {
+                int id = dictionary.lookup(share.getKey());
+                if (id >= 0) known.merge(id, share.getValue(), Double::sum);
+            }
+            ids = new int[known.size()];
+            values = new double[known.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Double> share : known.entrySet()) {
+                ids[i] = share.getKey();
+                values[i++] = share.getValue();
+            }
+        }
+
+        double get(int id) {
+            int i = Arrays.binarySearch(ids, id);
+            return i >= 0 ? values[i] : 0.0;
+        }
+    }
+
+    /** A UserProfile vector encoded against the dictionaries, scored against records as Vector.score scores movies */
+    final class ProfileTarget {
+        final UserProfile.Vector vector;
+        final Shares genres;
+        final Shares directors;
+        final Shares actors;
+        final Shares countries;
+        final int[] years;
+        final double[] yearShares;
+        final double[] ratings;
+        final double[] ratingShares;
+
+        ProfileTarget(UserProfile.Vector vector) {
+            this.vector = vector;
+            genres = new Shares(vector.genres, dictionaries.genres);
+            directors = new Shares(vector.directors, dictionaries.people);
+            actors = new Shares(vector.actors, dictionaries.people);
+            countries = new Shares(vector.countries, dictionaries.countries);
+            years = new int[vector.years.size()];
+            yearShares = new double[years.length];
+            int i = 0;
+            for (Map.Entry<Integer, Double> year : vector.years.entrySet()) {
+                years[i] = year.getKey();
+                yearShares[i++] = year.getValue();
+            }
+            ratings = new double[vector.ratings.size()];
+            ratingShares = new double[ratings.length];
+            i = 0;
+            for (Map.Entry<Double, Double> rating : vector.ratings.entrySet()) {
+                ratings[i] = rating.getKey();
+                ratingShares[i++] = rating.getValue();
+            }
+        }
+    }
+
+    /** The k best (index, score) pairs in parallel arrays, worst at the root: lower score, then later index */
+    private static final class TopK {
+        final int[] indexes;
+        final double[] scores;
+        int size;
+
+        TopK(int k) {
+            indexes = new int[Math.max(0, k)];
+            scores = new double[Math.max(0, k)];
+        }
+
+        void offer(int index, double score) {
+            if (size < indexes.length) {
+                indexes[size] = index;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (indexes.length > 0 && score > scores[0]) {
+                indexes[0] = index;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        void removeWorst() {
+            size--;
+            indexes[0] = indexes[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+
+        private boolean worse(int a, int b) {
+            return scores[a] < scores[b] || (scores[a] == scores[b] && indexes[a] > indexes[b]);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!worse(i, parent)) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && worse(child + 1, child)) child++;
+                if (!worse(child, i)) break;
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int index = indexes[a];
+            indexes[a] = indexes[b];
+            indexes[b] = index;
+            double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+
+    /** Buffers shared by stores appended from one another; only the tip may append in place */
+    private static final class Arena {
+        OffHeapCaseStore tip; // guarded by the arena
+    }
+
+    private final Dictionaries dictionaries;
+    private final Arena arena;
+    private final ByteBuffer records;
+    private final ByteBuffer ids; // ints
+    private final ByteBuffer strings;
+    private final int recordCount; // records written to the buffers up to this store, live or not
+    private final int idBytes;
+    private final int stringBytes;
+    private final int[] order; // case position -> record, null when they are the same
+    private final int count;
+    private final int[] uriIndex; // open addressing by URI hash, case position + 1, 0 empty
+
+    private OffHeapCaseStore(Builder builder, Arena arena, int[] order) {
+        this.dictionaries = builder.dictionaries;
+        this.arena = arena;
+        this.records = builder.records;
+        this.ids = builder.ids;
+        this.strings = builder.strings;
+        this.recordCount = builder.count;
+        this.idBytes = builder.idBytes;
+        this.stringBytes = builder.stringBytes;
+        this.order = order;
+        this.count = order == null ? recordCount : order.length;
+        int capacity = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+        this.uriIndex = new int[capacity];
+        for (int i = 0; i < count; i++) {
+            int slot = records.getInt(record(i) * RECORD_BYTES + URI_HASH) & (capacity - 1);
+            while (uriIndex[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            uriIndex[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Encode the movies into a new store with its own dictionaries
+     */
+    public static OffHeapCaseStore build(List<Movie> movies) {
+        Builder builder = new Builder(new Dictionaries(), movies.size());
+        for (Movie movie : movies) {
+            builder.add(movie);
+        }
+        return builder.build(new Arena(), null);
+    }
+
+    /**
+     * A store with the given movies inserted or replaced and the given ids removed.
+     * Replaced cases keep their position and new ones are appended, as in CaseBaseSnapshot.
+     * New records are appended to this store's buffers when it is the latest store built from
+     * them and superseded records would not outnumber live ones; otherwise the live cases are
+     * compacted into new buffers.
+     */
+    public OffHeapCaseStore withChanges(Collection<Movie> upserts, Collection<String> removedIds) {
+        BitSet removed = new BitSet(count);
+        for (String id : removedIds) {
+            int index = indexOf(id);
+            if (index >= 0) removed.set(index);
+        }
+        Map<String, Movie> replacements = new HashMap<>();
+        for (Movie movie : upserts) {
+            replacements.put(movie.getUri(), movie);
+        }
+        Map<Integer, Movie> replacedAt = new HashMap<>();
+        for (Iterator<Map.Entry<String, Movie>> it = replacements.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Movie> entry = it.next();
+            int index = indexOf(entry.getKey());
+            if (index >= 0 && !removed.get(index)) {
+                replacedAt.put(index, entry.getValue());
+                it.remove();
+            }
+        }
+        int appended = 0;
+        for (Movie movie : upserts) {
+            if (replacements.containsKey(movie.getUri())) appended++;
+        }
+        int live = count - removed.cardinality() + appended;
+
+        synchronized (arena) {
+            int superseded = recordCount - count + removed.cardinality() + replacedAt.size();
+            boolean append = arena.tip == this && superseded <= live;
+            Arena target = append ? arena : new Arena();
+            Builder builder = append ? new Builder(this) : new Builder(dictionaries, live);
+            int[] next = new int[live];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (removed.get(i)) {
+                    continue;
+                }
+                Movie replacement = replacedAt.isEmpty() ? null : replacedAt.get(i);
+                if (replacement != null) {
+                    next[n++] = builder.add(replacement);
+                } else {
+                    next[n++] = append ? record(i) : builder.copy(this, record(i));
+                }
+            }
+            // Whatever was not replaced in place is new
+            for (Movie movie : upserts) {
+                if (replacements.containsKey(movie.getUri())) {
+                    next[n++] = builder.add(movie);
+                }
+            }
+            // Compacted records are written in case order
+            return builder.build(target, append ? next : null);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Record index of the case with the given URI, or -1
+     */
+    public int indexOf(String uri) {
+        if (uri == null) {
+            return -1;
+        }
+        byte[] bytes = uri.getBytes(StandardCharsets.UTF_8);
+        int hash = uri.hashCode();
+        int mask = uriIndex.length - 1;
+        for (int slot = hash & mask; uriIndex[slot] != 0; slot = (slot + 1) & mask) {
+            int index = uriIndex[slot] - 1;
+            int base = record(index) * RECORD_BYTES;
+            if (records.getInt(base + URI_HASH) == hash
+                    && bytesEqual(records.getInt(base + URI_OFFSET), records.getInt(base + URI_LENGTH), bytes)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public String getUri(int index) {
+        int base = record(index) * RECORD_BYTES;
+        return string(records.getInt(base + URI_OFFSET), records.getInt(base + URI_LENGTH));
+    }
+
+    /**
+     * A new Movie with the case's attributes; people and awards are the shared dictionary entries
+     */
+    public Movie materialise(int index) {
+        return materialise(index, MovieField.ALL);
+    }
+
+    /**
+     * A new Movie with the case's URI, title and the given attributes only; lists that are not
+     * requested are skipped without decoding
+     */
+    public Movie materialise(int index, Set<MovieField> fields) {
+        int base = record(index) * RECORD_BYTES;
+        Movie movie = new Movie(string(records.getInt(base + TITLE_OFFSET), records.getInt(base + TITLE_LENGTH)));
+        movie.setUri(getUri(index));
+        if (fields.contains(MovieField.YEAR)) movie.setYear(records.getInt(base + YEAR));
+        if (fields.contains(MovieField.RATING)) movie.setRating(records.getDouble(base + RATING));
+        if (fields.contains(MovieField.RUNTIME)) movie.setRuntime(records.getInt(base + RUNTIME));
+        if (fields.contains(MovieField.ROTTEN_TOMATOES)) movie.setRottenTomatoesScore(records.getInt(base + ROTTEN_TOMATOES));
+        int country = records.getInt(base + COUNTRY);
+        if (country >= 0 && fields.contains(MovieField.COUNTRY)) movie.setCountry(dictionaries.countries.get(country));
+        int list = records.getInt(base + LIST_OFFSET);
+        int n = listSize(base, GENRE_COUNT);
+        if (fields.contains(MovieField.GENRES)) {
+            for (int i = 0; i < n; i++) movie.addGenre(dictionaries.genres.get(id(list + i)));
+        }
+        list += n;
+        n = listSize(base, DIRECTOR_COUNT);
+        if (fields.contains(MovieField.DIRECTORS)) {
+            for (int i = 0; i < n; i++) movie.addDirector(dictionaries.people.get(id(list + i)));
+        }
+        list += n;
+        n = listSize(base, ACTOR_COUNT);
+        if (fields.contains(MovieField.ACTORS)) {
+            for (int i = 0; i < n; i++) movie.addActor(dictionaries.people.get(id(list + i)));
+        }
+        list += n;
+        n = listSize(base, WRITER_COUNT);
+        if (fields.contains(MovieField.WRITERS)) {
+            for (int i = 0; i < n; i++) movie.addWriter(dictionaries.people.get(id(list + i)));
+        }
+        list += n;
+        if (fields.contains(MovieField.AWARDS)) {
+            for (int i = 0, count = listSize(base, AWARD_COUNT); i < count; i++) {
+                movie.addAward(dictionaries.awards.get(id(list + i)));
+            }
+        }
+        return movie;
+    }
+
+    Target target(Movie movie) {
+        return new Target(movie);
+    }
+
+    /**
+     * The k cases most similar to the target, best first, ties in store order; cases with the
+     * target's title are skipped as in CBREngine's native path
+     */
+    public List<CaseRepresentation> findSimilar(Movie targetMovie, int k, SimilaritySpec spec) {
+        return findSimilar(targetMovie, k, spec, MovieField.ALL);
+    }
+
+    /**
+     * As findSimilar, materialising only the given attributes of the returned cases
+     */
+    public List<CaseRepresentation> findSimilar(Movie targetMovie, int k, SimilaritySpec spec, Set<MovieField> fields) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        Target target = target(targetMovie);
+        TopK top = new TopK(Math.min(k, count));
+        for (int i = 0; i < count; i++) {
+            if (hasTitle(i, target)) {
+                continue;
+            }
+            top.offer(i, similarity(target, i, spec));
+        }
+        return drain(top, fields);
+    }
+
+    /**
+     * The k cases closest to a user profile, best first, ties in store order; the profile's seeds
+     * are skipped. Same scores as UserProfile.score, computed from the records, so only the
+     * returned cases are materialised.
+     */
+    public List<CaseRepresentation> findSimilar(UserProfile profile, int k, SimilaritySpec spec) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        ProfileTarget likes = new ProfileTarget(profile.likes());
+        ProfileTarget dislikes = new ProfileTarget(profile.dislikes());
+        BitSet seeds = seedIndexes(profile);
+        TopK top = new TopK(Math.min(k, count));
+        for (int i = 0; i < count; i++) {
+            if (seeds.get(i)) {
+                continue;
+            }
+            top.offer(i, profileScore(likes, dislikes, profile.getDislikePenalty(), i, spec));
+        }
+        return drain(top, MovieField.ALL);
+    }
+
+    /**
+     * Score the given cases against a user profile in the order given; unknown ids and the
+     * profile's seeds are skipped
+     */
+    public List<CaseRepresentation> score(UserProfile profile, Collection<String> caseIds, SimilaritySpec spec) {
+        ProfileTarget likes = new ProfileTarget(profile.likes());
+        ProfileTarget dislikes = new ProfileTarget(profile.dislikes());
+        BitSet seeds = seedIndexes(profile);
+        List<CaseRepresentation> result = new ArrayList<>(caseIds.size());
+        for (String id : caseIds) {
+            int index = indexOf(id);
+            if (index < 0 || seeds.get(index)) {
+                continue;
+            }
+            result.add(toCase(index, profileScore(likes, dislikes, profile.getDislikePenalty(), index, spec), MovieField.ALL));
+        }
+        return result;
+    }
+
+    private BitSet seedIndexes(UserProfile profile) {
+        BitSet seeds = new BitSet();
+        for (String uri : profile.seedUris()) {
+            int index = indexOf(uri);
+            if (index >= 0) seeds.set(index);
+        }
+        return seeds;
+    }
+
+    private double profileScore(ProfileTarget likes, ProfileTarget dislikes, double dislikePenalty, int index, SimilaritySpec spec) {
+        double score = similarity(likes, index, spec);
+        if (dislikes.vector.weight > 0) {
+            score -= dislikePenalty * similarity(dislikes, index, spec);
+        }
+        return score;
+    }
+
+    /**
+     * Same value as the profile vector's score for the case's movie under the spec
+     */
+    double similarity(ProfileTarget target, int index, SimilaritySpec spec) {
+        UserProfile.Vector vector = target.vector;
+        if (vector.weight <= 0) {
+            return 0.0;
+        }
+        int base = record(index) * RECORD_BYTES;
+        int genres = records.getInt(base + LIST_OFFSET);
+        int directors = genres + listSize(base, GENRE_COUNT);
+        int actors = directors + listSize(base, DIRECTOR_COUNT);
+        double total = 0.0;
+        for (SimilaritySpec.Attribute attribute : ATTRIBUTES) {
+            double weight = spec.getWeight(attribute);
+            if (weight == 0.0) {
+                continue;
+            }
+            double similarity = 0.0;
+            switch (attribute) {
+                case GENRE:
+                    similarity = setSimilarity(spec.getGenreFunction(), target.genres, vector.genreTotal,
+                            genres, listSize(base, GENRE_COUNT));
+                    break;
+                case DIRECTOR:
+                    similarity = setSimilarity(spec.getDirectorFunction(), target.directors, vector.directorTotal,
+                            directors, listSize(base, DIRECTOR_COUNT));
+                    break;
+                case ACTOR:
+                    similarity = setSimilarity(spec.getActorFunction(), target.actors, vector.actorTotal,
+                            actors, listSize(base, ACTOR_COUNT));
+                    break;
+                case YEAR:
+                    int year = records.getInt(base + YEAR);
+                    if (year != 0) {
+                        for (int i = 0; i < target.years.length; i++) {
+                            similarity += target.yearShares[i] * SimilarityCalculator.calculateYearSimilarity(spec, target.years[i], year);
+                        }
+                    }
+                    break;
+                case RATING:
+                    double rating = records.getDouble(base + RATING);
+                    if (rating != 0.0) {
+                        for (int i = 0; i < target.ratings.length; i++) {
+                            similarity += target.ratingShares[i] * SimilarityCalculator.calculateRatingSimilarity(spec, target.ratings[i], rating);
+                        }
+                    }
+                    break;
+                default:
+                    int country = records.getInt(base + COUNTRY);
+                    similarity = country >= 0 ? target.countries.get(country) : 0.0;
+            }
+            total += weight * similarity;
+        }
+        return total;
+    }
+
+    /**
+     * UserProfile's weighted set similarity over a record's id list (see Vector.setSimilarity)
+     */
+    private double setSimilarity(SimilaritySpec.SetFunction function, Shares profile, double profileTotal, int from, int size) {
+        if (size == 0 || profileTotal <= 0) {
+            return 0.0;
+        }
+        int distinct = 0;
+        double inCase = 0.0;
+        for (int i = 0; i < size; i++) {
+            int value = id(from + i);
+            boolean duplicate = false;
+            for (int j = 0; j < i && !duplicate; j++) {
+                duplicate = id(from + j) == value;
+            }
+            if (duplicate) continue;
+            distinct++;
+            inCase += profile.get(value);
+        }
+        if (function == SimilaritySpec.SetFunction.ANY) {
+            return Math.min(1.0, inCase);
+        }
+        double jaccard = inCase / (distinct + profileTotal - inCase);
+        return function == SimilaritySpec.SetFunction.DICE ? 2 * jaccard / (1 + jaccard) : jaccard;
+    }
+
+    /** The heap's cases, best first; draining the heap yields worst first, so fill from the back */
+    private List<CaseRepresentation> drain(TopK top, Set<MovieField> fields) {
+        List<CaseRepresentation> result = new ArrayList<>(top.size);
+        int found = top.size;
+        int[] indexes = new int[found];
+        double[] scores = new double[found];
+        for (int i = found - 1; i >= 0; i--) {
+            indexes[i] = top.indexes[0];
+            scores[i] = top.scores[0];
+            top.removeWorst();
+        }
+        for (int i = 0; i < found; i++) {
+            result.add(toCase(indexes[i], scores[i], fields));
+        }
+        return result;
+    }
+
+    /**
+     * Score the given cases against the target in the order given; unknown ids and the target's
+     * own URI are skipped
+     */
+    public List<CaseRepresentation> score(Movie targetMovie, Collection<String> caseIds, SimilaritySpec spec) {
+        Target target = target(targetMovie);
+        List<CaseRepresentation> result = new ArrayList<>(caseIds.size());
+        for (String id : caseIds) {
+            int index = indexOf(id);
+            if (index < 0 || id.equals(targetMovie.getUri())) {
+                continue;
+            }
+            result.add(toCase(index, similarity(target, index, spec), MovieField.ALL));
+        }
+        return result;
+    }
+
+    /**
+     * Same value as SimilarityCalculator.calculateSimilarity(target, case) under the spec,
+     * with people compared by personKey
+     */
+    double similarity(Target target, int index, SimilaritySpec spec) {
+        int base = record(index) * RECORD_BYTES;
+        int genres = records.getInt(base + LIST_OFFSET);
+        int directors = genres + listSize(base, GENRE_COUNT);
+        int actors = directors + listSize(base, DIRECTOR_COUNT);
+        double total = 0.0;
+        for (SimilaritySpec.Attribute attribute : ATTRIBUTES) {
+            double weight = spec.getWeight(attribute);
+            if (weight == 0.0) {
+                continue;
+            }
+            double similarity;
+            switch (attribute) {
+                case GENRE:
+                    similarity = setSimilarity(spec.getGenreFunction(), target.genres, target.genreCount,
+                            genres, listSize(base, GENRE_COUNT));
+                    break;
+                case DIRECTOR:
+                    similarity = setSimilarity(spec.getDirectorFunction(), target.directors, target.directorCount,
+                            directors, listSize(base, DIRECTOR_COUNT));
+                    break;
+                case ACTOR:
+                    similarity = setSimilarity(spec.getActorFunction(), target.actors, target.actorCount,
+                            actors, listSize(base, ACTOR_COUNT));
+                    break;
+                case YEAR:
+                    similarity = SimilarityCalculator.calculateYearSimilarity(spec, target.year, records.getInt(base + YEAR));
+                    break;
+                case RATING:
+                    similarity = SimilarityCalculator.calculateRatingSimilarity(spec, target.rating, records.getDouble(base + RATING));
+                    break;
+                default:
+                    similarity = target.country >= 0 && target.country == records.getInt(base + COUNTRY) ? 1.0 : 0.0;
+            }
+            total += weight * similarity;
+        }
+        return total;
+    }
+
+    private double setSimilarity(SimilaritySpec.SetFunction function, int[] targetIds, int targetCount, int from, int size) {
+        if (targetCount == 0 || size == 0) {
+            return 0.0;
+        }
+        int distinct = 0;
+        int intersection = 0;
+        for (int i = 0; i < size; i++) {
+            int value = id(from + i);
+            boolean duplicate = false;
+            for (int j = 0; j < i && !duplicate; j++) {
+                duplicate = id(from + j) == value;
+            }
+            if (duplicate) continue;
+            distinct++;
+            for (int targetId : targetIds) {
+                if (targetId == value) {
+                    intersection++;
+                    break;
+                }
+            }
+        }
+        return function.apply(intersection, targetCount, distinct);
+    }
+
+    private boolean hasTitle(int index, Target target) {
+        int base = record(index) * RECORD_BYTES;
+        return records.getInt(base + TITLE_HASH) == target.titleHash
+                && bytesEqual(records.getInt(base + TITLE_OFFSET), records.getInt(base + TITLE_LENGTH), target.title);
+    }
+
+    private CaseRepresentation toCase(int index, double similarity, Set<MovieField> fields) {
+        Movie movie = materialise(index, fields);
+        CaseRepresentation caseRep = new CaseRepresentation(movie.getUri(), movie);
+        caseRep.setSimilarity(similarity);
+        return caseRep;
+    }
+
+    /**
+     * Bytes of the direct buffers this store reads: records, id lists and strings, including
+     * superseded records and unused capacity
+     */
+    public long offHeapBytes() {
+        return (long) records.capacity() + ids.capacity() + strings.capacity();
+    }
+
+    /**
+     * Approximate heap held by the store: the URI index and the shared dictionaries' entries
+     */
+    public String heapReport() {
+        return String.format(Locale.ROOT,
+                "Off-heap case store: %d cases (%d superseded records), %,d bytes off-heap; on heap a %,d-slot URI index and %d genres, %d people, %d countries, %d awards",
+                count, recordCount - count, offHeapBytes(), uriIndex.length, dictionaries.genres.size(), dictionaries.people.size(),
+                dictionaries.countries.size(), dictionaries.awards.size());
+    }
+
+    private int record(int index) {
+        return order == null ? index : order[index];
+    }
+
+    private int listSize(int base, int field) {
+        return records.getShort(base + field) & 0xFFFF;
+    }
+
+    private int id(int position) {
+        return ids.getInt(position * 4);
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = strings.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean bytesEqual(int offset, int length, byte[] bytes) {
+        if (length != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (strings.get(offset + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /** Appends records to growing direct buffers, new ones or those of the store being changed */
+    private static final class Builder {
+        private final Dictionaries dictionaries;
+        private ByteBuffer records;
+        private ByteBuffer ids;
+        private ByteBuffer strings;
+        private int count;
+        private int idBytes;
+        private int stringBytes;
+
+        Builder(Dictionaries dictionaries, int expected) {
+            this.dictionaries = dictionaries;
+            this.records = allocate(Math.max(1, expected) * RECORD_BYTES);
+            this.ids = allocate(Math.max(1, expected) * 64);
+            this.strings = allocate(Math.max(1, expected) * 96);
+        }
+
+        /**
+         * Continue after the records of the store; its own records are left as they are
+         */
+        Builder(OffHeapCaseStore store) {
+            this.dictionaries = store.dictionaries;
+            this.records = store.records;
+            this.ids = store.ids;
+            this.strings = store.strings;
+            this.count = store.recordCount;
+            this.idBytes = store.idBytes;
+            this.stringBytes = store.stringBytes;
+        }
+
+        /**
+         * @return the new record's index
+         */
+        int add(Movie movie) {
+            records = grow(records, count * RECORD_BYTES, RECORD_BYTES);
+            int base = count * RECORD_BYTES;
+            String uri = movie.getUri() == null ? "" : movie.getUri();
+            String title = movie.getTitle() == null ? "" : movie.getTitle();
+            putString(base + URI_OFFSET, uri);
+            putString(base + TITLE_OFFSET, title);
+            records.putInt(base + URI_HASH, uri.hashCode());
+            records.putInt(base + TITLE_HASH, title.hashCode());
+            records.putInt(base + YEAR, movie.getYear());
+            records.putDouble(base + RATING, movie.getRating());
+            records.putInt(base + RUNTIME, movie.getRuntime());
+            records.putInt(base + ROTTEN_TOMATOES, movie.getRottenTomatoesScore());
+            String country = movie.getCountry();
+            records.putInt(base + COUNTRY, country == null || country.isEmpty() ? -1
+                    : dictionaries.countries.intern(country.toLowerCase(Locale.ROOT), country));
+            records.putInt(base + LIST_OFFSET, idBytes / 4);
+
+            List<Integer> values = new ArrayList<>();
+            if (movie.getGenres() != null) {
+                for (String genre : movie.getGenres()) {
+                    if (genre != null) values.add(dictionaries.genres.intern(genre, genre));
+                }
+            }
+            putList(base + GENRE_COUNT, values);
+            putList(base + DIRECTOR_COUNT, people(movie.getDirectors(), values));
+            putList(base + ACTOR_COUNT, people(movie.getActors(), values));
+            putList(base + WRITER_COUNT, people(movie.getWriters(), values));
+            values.clear();
+            if (movie.getAwards() != null) {
+                for (String award : movie.getAwards()) {
+                    if (award != null) values.add(dictionaries.awards.intern(award, award));
+                }
+            }
+            putList(base + AWARD_COUNT, values);
+            return count++;
+        }
+
+        /**
+         * Copy a record of another store over the same dictionaries
+         */
+        int copy(OffHeapCaseStore from, int record) {
+            records = grow(records, count * RECORD_BYTES, RECORD_BYTES);
+            int source = record * RECORD_BYTES;
+            int base = count * RECORD_BYTES;
+            for (int i = 0; i < RECORD_BYTES; i += 4) {
+                records.putInt(base + i, from.records.getInt(source + i));
+            }
+            copyString(from, source, base, URI_OFFSET, URI_LENGTH);
+            copyString(from, source, base, TITLE_OFFSET, TITLE_LENGTH);
+            int listSize = 0;
+            for (int field = GENRE_COUNT; field <= AWARD_COUNT; field += 2) {
+                listSize += from.records.getShort(source + field) & 0xFFFF;
+            }
+            int firstId = from.records.getInt(source + LIST_OFFSET);
+            ids = grow(ids, idBytes, listSize * 4);
+            records.putInt(base + LIST_OFFSET, idBytes / 4);
+            for (int i = 0; i < listSize; i++) {
+                ids.putInt(idBytes, from.ids.getInt((firstId + i) * 4));
+                idBytes += 4;
+            }
+            return count++;
+        }
+
+        /**
+         * The store over the records written so far, which becomes the arena's tip
+         *
+         * @param order case position to record, or null for all records in order
+         */
+        OffHeapCaseStore build(Arena arena, int[] order) {
+            OffHeapCaseStore store = new OffHeapCaseStore(this, arena, order);
+            synchronized (arena) {
+                arena.tip = store;
+            }
+            return store;
+        }
+
+        private List<Integer> people(List<Person> people, List<Integer> values) {
+            values.clear();
+            if (people != null) {
+                for (Person person : people) {
+                    String key = SimilarityCalculator.personKey(person);
+                    if (key != null) {
+                        values.add(dictionaries.people.intern(key, person));
+                    }
+                }
+            }
+            return values;
+        }
+
+        private void putList(int countField, List<Integer> values) {
+            if (values.size() > MAX_LIST) {
+                throw new IllegalArgumentException("More than " + MAX_LIST + " values in one case attribute");
+            }
+            ids = grow(ids, idBytes, values.size() * 4);
+            for (int value : values) {
+                ids.putInt(idBytes, value);
+                idBytes += 4;
+            }
+            records.putShort(countField, (short) values.size());
+        }
+
+        private void putString(int offsetField, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            strings = grow(strings, stringBytes, bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                strings.put(stringBytes + i, bytes[i]);
+            }
+            records.putInt(offsetField, stringBytes);
+            records.putInt(offsetField + 4, bytes.length);
+            stringBytes += bytes.length;
+        }
+
+        private void copyString(OffHeapCaseStore from, int source, int base, int offsetField, int lengthField) {
+            int offset = from.records.getInt(source + offsetField);
+            int length = from.records.getInt(source + lengthField);
+            strings = grow(strings, stringBytes, length);
+            for (int i = 0; i < length; i++) {
+                strings.put(stringBytes + i, from.strings.get(offset + i));
+            }
+            records.putInt(base + offsetField, stringBytes);
+            stringBytes += length;
+        }
+
+        private static ByteBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * The buffer, or a copy twice as large, with room for needed more bytes after used
+         */
+        private static ByteBuffer grow(ByteBuffer buffer, int used, int needed) {
+            if (used + needed <= buffer.capacity()) {
+                return buffer;
+            }
+            long capacity = Math.max((long) buffer.capacity() * 2, (long) used + needed);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Off-heap case store exceeds 2 GB in one buffer");
+            }
+            ByteBuffer bigger = allocate((int) capacity);
+            for (int i = 0; i + 8 <= used; i += 8) {
+                bigger.putLong(i, buffer.getLong(i));
+            }
+            for (int i = used & ~7; i < used; i++) {
+                bigger.put(i, buffer.get(i));
+            }
+            return bigger;
+        }
+    }
+}
@@ -1,162 +1,202 @@
 package mov.cbr;
 
+import mov.cbr.SimilaritySpec.Attribute;
 import mov.model.Movie;
 import mov.model.Person;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
- * Calculate similarity between movies based on various attributes
+ * Calculate similarity between movies based on various attributes.
+ * Weights and per-attribute functions come from a SimilaritySpec that can be replaced
+ * at runtime; each comparison reads the spec once.
  */
 public class SimilarityCalculator {
     
-    // Weights for different attributes
-    private static final double GENRE_WEIGHT = 0.25;
-    private static final double DIRECTOR_WEIGHT = 0.20;
-    private static final double ACTOR_WEIGHT = 0.15;
-    private static final double YEAR_WEIGHT = 0.15;
-    private static final double RATING_WEIGHT = 0.15;
-    private static final double COUNTRY_WEIGHT = 0.10;
+    private static final Attribute[] ATTRIBUTES = Attribute.values();
+    
+    private volatile SimilaritySpec spec;
+    
+    public SimilarityCalculator() {
+        this(SimilaritySpec.defaults());
+    }
+    
+    public SimilarityCalculator(SimilaritySpec spec) {
+        this.spec = spec;
+    }
+    
+    public SimilaritySpec getSpec() {
+        return spec;
+    }
+    
+    /**
+     * Use another spec for comparisons that start after this call
+     */
+    public void setSpec(SimilaritySpec spec) {
+        this.spec = spec;
+    }
     
     /**
      * Calculate overall similarity between two movies
      */
     public double calculateSimilarity(Movie movie1, Movie movie2) {
-        double genreSim = calculateGenreSimilarity(movie1.getGenres(), movie2.getGenres());
-        double directorSim = calculateDirectorSimilarity(movie1.getDirectors(), movie2.getDirectors());
-        double actorSim = calculateActorSimilarity(movie1.getActors(), movie2.getActors());
-        double yearSim = calculateYearSimilarity(movie1.getYear(), movie2.getYear());
-        double ratingSim = calculateRatingSimilarity(movie1.getRating(), movie2.getRating());
-        double countrySim = calculateCountrySimilarity(movie1.getCountry(), movie2.getCountry());
-        
-        double totalSimilarity = 
-            (genreSim * GENRE_WEIGHT) +
-            (directorSim * DIRECTOR_WEIGHT) +
-            (actorSim * ACTOR_WEIGHT) +
-            (yearSim * YEAR_WEIGHT) +
-            (ratingSim * RATING_WEIGHT) +
-            (countrySim * COUNTRY_WEIGHT);
-        
-        return totalSimilarity;
+        SimilaritySpec current = spec;
+        double total = 0.0;
+        for (Attribute attribute : ATTRIBUTES) {
+            double weight = current.getWeight(attribute);
+            if (weight != 0.0) {
+                total += weight * attributeSimilarity(current, attribute, movie1, movie2);
+            }
+        }
+        return total;
     }
     
     /**
-     * Calculate genre similarity using Jaccard coefficient
+     * Unweighted similarity per attribute, by Attribute ordinal. Weight sets can then be
+     * evaluated with SimilaritySpec.combine without comparing the movies again.
      */
-    private double calculateGenreSimilarity(List<String> genres1, List<String> genres2) {
-        if (genres1 == null || genres2 == null || genres1.isEmpty() || genres2.isEmpty()) {
-            return 0.0;
+    public double[] attributeSimilarities(Movie movie1, Movie movie2) {
+        SimilaritySpec current = spec;
+        double[] similarities = new double[ATTRIBUTES.length];
+        for (Attribute attribute : ATTRIBUTES) {
+            similarities[attribute.ordinal()] = attributeSimilarity(current, attribute, movie1, movie2);
+        }
+        return similarities;
+    }
+    
+    private static double attributeSimilarity(SimilaritySpec spec, Attribute attribute, Movie movie1, Movie movie2) {
+        switch (attribute) {
+            case GENRE:
+                return calculateGenreSimilarity(spec.getGenreFunction(), movie1.getGenres(), movie2.getGenres());
+            case DIRECTOR:
+                return calculatePeopleSimilarity(spec.getDirectorFunction(), movie1.getDirectors(), movie2.getDirectors());
+            case ACTOR:
+                return calculatePeopleSimilarity(spec.getActorFunction(), movie1.getActors(), movie2.getActors());
+            case YEAR:
+                return calculateYearSimilarity(spec, movie1.getYear(), movie2.getYear());
+            case RATING:
+                return calculateRatingSimilarity(spec, movie1.getRating(), movie2.getRating());
+            default:
+                return calculateCountrySimilarity(movie1.getCountry(), movie2.getCountry());
         }
-        
-        Set<String> set1 = new HashSet<>(genres1);
-        Set<String> set2 = new HashSet<>(genres2);
-        
-        Set<String> intersection = new HashSet<>(set1);
-        intersection.retainAll(set2);
-        
-        Set<String> union = new HashSet<>(set1);
-        union.addAll(set2);
-        
-        return (double) intersection.size() / union.size();
     }
     
     /**
-     * Calculate director similarity
+     * Calculate genre similarity from the overlap of the genre sets (Jaccard by default).
+     * Genre lists are short, so the overlap is counted in place rather than through sets.
      */
-    private double calculateDirectorSimilarity(List<Person> directors1, List<Person> directors2) {
-        if (directors1 == null || directors2 == null || directors1.isEmpty() || directors2.isEmpty()) {
+    private static double calculateGenreSimilarity(SimilaritySpec.SetFunction function,
+                                                   List<String> genres1, List<String> genres2) {
+        if (genres1 == null || genres2 == null || genres1.isEmpty() || genres2.isEmpty()) {
             return 0.0;
         }
         
-        Set<String> names1 = new HashSet<>();
-        for (Person p : directors1) {
-            names1.add(p.getName());
+        int distinct1 = 0;
+        int intersection = 0;
+        for (int i = 0; i < genres1.size(); i++) {
+            String genre = genres1.get(i);
+            if (indexOf(genres1, genre) < i) continue; // duplicate
+            distinct1++;
+            if (genres2.contains(genre)) intersection++;
         }
-        
-        Set<String> names2 = new HashSet<>();
-        for (Person p : directors2) {
-            names2.add(p.getName());
+        int distinct2 = 0;
+        for (int i = 0; i < genres2.size(); i++) {
+            if (indexOf(genres2, genres2.get(i)) == i) distinct2++;
         }
         
-        Set<String> intersection = new HashSet<>(names1);
-        intersection.retainAll(names2);
-        
-        return intersection.isEmpty() ? 0.0 : 1.0; // Binary: same director or not
+        return function.apply(intersection, distinct1, distinct2);
     }
     
     /**
-     * Calculate actor similarity using Jaccard coefficient
+     * Calculate director or actor similarity from the overlap of the people
+     * (by default: directors any shared, actors Jaccard)
      */
-    private double calculateActorSimilarity(List<Person> actors1, List<Person> actors2) {
-        if (actors1 == null || actors2 == null || actors1.isEmpty() || actors2.isEmpty()) {
+    private static double calculatePeopleSimilarity(SimilaritySpec.SetFunction function,
+                                                    List<Person> people1, List<Person> people2) {
+        if (people1 == null || people2 == null || people1.isEmpty() || people2.isEmpty()) {
             return 0.0;
         }
         
-        Set<String> names1 = new HashSet<>();
-        for (Person p : actors1) {
-            names1.add(p.getName());
+        int distinct1 = 0;
+        int intersection = 0;
+        for (int i = 0; i < people1.size(); i++) {
+            Person person = people1.get(i);
+            if (indexOfPerson(people1, person) < i) continue; // duplicate
+            distinct1++;
+            if (indexOfPerson(people2, person) >= 0) intersection++;
         }
-        
-        Set<String> names2 = new HashSet<>();
-        for (Person p : actors2) {
-            names2.add(p.getName());
+        int distinct2 = 0;
+        for (int i = 0; i < people2.size(); i++) {
+            if (indexOfPerson(people2, people2.get(i)) == i) distinct2++;
         }
         
-        Set<String> intersection = new HashSet<>(names1);
-        intersection.retainAll(names2);
-        
-        Set<String> union = new HashSet<>(names1);
-        union.addAll(names2);
-        
-        return (double) intersection.size() / union.size();
+        return function.apply(intersection, distinct1, distinct2);
+    }
+    
+    private static int indexOf(List<String> values, String value) {
+        for (int i = 0; i < values.size(); i++) {
+            if (value.equals(values.get(i))) return i;
+        }
+        return -1;
+    }
+    
+    private static int indexOfPerson(List<Person> people, Person person) {
+        for (int i = 0; i < people.size(); i++) {
+            if (samePerson(people.get(i), person)) return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * People compare by URI when both have one, others by name. Registry ids are not used:
+     * they are dense per registry, so people from different registries can share one. People
+     * shared through one registry are usually the same instance and match on the first check.
+     */
+    private static boolean samePerson(Person a, Person b) {
+        if (a == b) return true;
+        if (a.getUri() != null && b.getUri() != null) return a.getUri().equals(b.getUri());
+        return a.getName() != null && a.getName().equals(b.getName());
+    }
+    
+    /**
+     * Key under which aggregated people are merged: the URI when there is one, else the name
+     * (null if neither). Equal keys mean samePerson, except that a person with a URI and one
+     * without never share a key even when their names match.
+     */
+    static String personKey(Person person) {
+        if (person == null) return null;
+        if (person.getUri() != null) return person.getUri();
+        return person.getName() == null ? null : "name:" + person.getName();
     }
     
     /**
-     * Calculate year similarity (closer years = higher similarity)
+     * Calculate year similarity (closer years = higher similarity, fading out over the year window)
      */
-    private double calculateYearSimilarity(int year1, int year2) {
+    static double calculateYearSimilarity(SimilaritySpec spec, int year1, int year2) {
         if (year1 == 0 || year2 == 0) {
             return 0.0;
         }
-        
-        int difference = Math.abs(year1 - year2);
-        
-        // Max difference of 20 years for scaling
-        if (difference >= 20) {
-            return 0.0;
-        }
-        
-        return 1.0 - (difference / 20.0);
+        return spec.getYearFunction().apply(Math.abs(year1 - year2), spec.getYearWindow());
     }
     
     /**
-     * Calculate rating similarity
+     * Calculate rating similarity (fading out over the rating window, 0-10 scale)
      */
-    private double calculateRatingSimilarity(double rating1, double rating2) {
+    static double calculateRatingSimilarity(SimilaritySpec spec, double rating1, double rating2) {
         if (rating1 == 0.0 || rating2 == 0.0) {
             return 0.0;
         }
-        
-        double difference = Math.abs(rating1 - rating2);
-        
-        // Max difference of 5 points for scaling (assuming 0-10 scale)
-        if (difference >= 5.0) {
-            return 0.0;
-        }
-        
-        return 1.0 - (difference / 5.0);
+        return spec.getRatingFunction().apply(Math.abs(rating1 - rating2), spec.getRatingWindow());
     }
     
     /**
      * Calculate country similarity (binary: same or different)
      */
-    private double calculateCountrySimilarity(String country1, String country2) {
+    static double calculateCountrySimilarity(String country1, String country2) {
         if (country1 == null || country2 == null || country1.isEmpty() || country2.isEmpty()) {
             return 0.0;
         }
         
         return country1.equalsIgnoreCase(country2) ? 1.0 : 0.0;
     }
-}
\ No newline at end of file
+}
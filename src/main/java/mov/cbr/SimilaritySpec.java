@@ -0,0 +1,277 @@
+package mov.cbr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * How SimilarityCalculator compares two movies: a weight and a function per attribute,
+ * and the windows over which year and rating differences fade out.
+ *
+ * Specs are immutable, so one can be swapped into a running calculator while queries use the
+ * old one. They are read from properties (see cbr/similarity.properties); keys not given keep
+ * their defaults, which reproduce the original hard-coded weights.
+ */
+public final class SimilaritySpec {
+
+    /** Attributes in the order used by SimilarityCalculator.attributeSimilarities */
+    public enum Attribute {
+        GENRE, DIRECTOR, ACTOR, YEAR, RATING, COUNTRY;
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** Similarity of two sets from their overlap */
+    public enum SetFunction {
+        JACCARD, // |A n B| / |A u B|
+        DICE, // 2 |A n B| / (|A| + |B|)
+        ANY; // 1 if they share anything
+
+        public double apply(int intersection, int size1, int size2) {
+            switch (this) {
+                case JACCARD:
+                    return (double) intersection / (size1 + size2 - intersection);
+                case DICE:
+                    return 2.0 * intersection / (size1 + size2);
+                default:
+                    return intersection > 0 ? 1.0 : 0.0;
+            }
+        }
+    }
+
+    /** Similarity of two numbers from their difference and the attribute's window */
+    public enum ScalarFunction {
+        LINEAR, // 1 - d / window, 0 beyond the window
+        GAUSSIAN, // exp(-(d / window)^2 * 3), about 0.05 at the window
+        STEP; // 1 within the window, 0 beyond
+
+        public double apply(double difference, double window) {
+            switch (this) {
+                case LINEAR:
+                    return difference >= window ? 0.0 : 1.0 - difference / window;
+                case GAUSSIAN:
+                    double scaled = difference / window;
+                    return Math.exp(-3.0 * scaled * scaled);
+                default:
+                    return difference < window ? 1.0 : 0.0;
+            }
+        }
+    }
+
+    public static final String DEFAULT_RESOURCE = "cbr/similarity.properties";
+
+    private static final SimilaritySpec DEFAULTS = new SimilaritySpec(
+            new double[] {0.25, 0.20, 0.15, 0.15, 0.15, 0.10},
+            SetFunction.JACCARD, SetFunction.ANY, SetFunction.JACCARD,
+            ScalarFunction.LINEAR, 20.0, ScalarFunction.LINEAR, 5.0);
+
+    private final double[] weights; // by Attribute ordinal
+    private final SetFunction genreFunction;
+    private final SetFunction directorFunction;
+    private final SetFunction actorFunction;
+    private final ScalarFunction yearFunction;
+    private final double yearWindow; // years
+    private final ScalarFunction ratingFunction;
+    private final double ratingWindow; // IMDb points
+
+    private SimilaritySpec(double[] weights, SetFunction genreFunction, SetFunction directorFunction,
+                           SetFunction actorFunction, ScalarFunction yearFunction, double yearWindow,
+                           ScalarFunction ratingFunction, double ratingWindow) {
+        if (weights.length != Attribute.values().length) {
+            throw new IllegalArgumentException("Expected " + Attribute.values().length + " weights");
+        }
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) {
+                throw new IllegalArgumentException("Weights must not be negative: " + weight);
+            }
+        }
+        if (!(yearWindow > 0) || !(ratingWindow > 0)) {
+            throw new IllegalArgumentException("Windows must be positive");
+        }
+        this.weights = weights.clone();
+        this.genreFunction = genreFunction;
+        this.directorFunction = directorFunction;
+        this.actorFunction = actorFunction;
+        this.yearFunction = yearFunction;
+        this.yearWindow = yearWindow;
+        this.ratingFunction = ratingFunction;
+        this.ratingWindow = ratingWindow;
+    }
+
+    /**
+     * The original weights: genre .25, director .20 (any shared), actor .15, year .15 (20 years),
+     * rating .15 (5 points), country .10
+     */
+    public static SimilaritySpec defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Spec from properties such as {@code weight.genre=0.3}, {@code function.director=ANY},
+     * {@code window.year=20}; missing keys keep the defaults
+     */
+    public static SimilaritySpec fromProperties(Properties properties) {
+        double[] weights = DEFAULTS.weights.clone();
+        for (Attribute attribute : Attribute.values()) {
+            String value = properties.getProperty("weight." + attribute.key());
+            if (value != null) weights[attribute.ordinal()] = number("weight." + attribute.key(), value);
+        }
+        return new SimilaritySpec(weights,
+                setFunction(properties, Attribute.GENRE, DEFAULTS.genreFunction),
+                setFunction(properties, Attribute.DIRECTOR, DEFAULTS.directorFunction),
+                setFunction(properties, Attribute.ACTOR, DEFAULTS.actorFunction),
+                scalarFunction(properties, Attribute.YEAR, DEFAULTS.yearFunction),
+                window(properties, Attribute.YEAR, DEFAULTS.yearWindow),
+                scalarFunction(properties, Attribute.RATING, DEFAULTS.ratingFunction),
+                window(properties, Attribute.RATING, DEFAULTS.ratingWindow));
+    }
+
+    /**
+     * Read a spec from a properties file
+     */
+    public static SimilaritySpec load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * Read a spec from the classpath, or the defaults if the resource does not exist
+     */
+    public static SimilaritySpec loadResource(String resource) throws IOException {
+        try (InputStream in = SimilaritySpec.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                return DEFAULTS;
+            }
+            Properties properties = new Properties();
+            properties.load(in);
+            return fromProperties(properties);
+        }
+    }
+
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        for (Attribute attribute : Attribute.values()) {
+            properties.setProperty("weight." + attribute.key(), String.valueOf(weights[attribute.ordinal()]));
+        }
+        properties.setProperty("function.genre", genreFunction.name());
+        properties.setProperty("function.director", directorFunction.name());
+        properties.setProperty("function.actor", actorFunction.name());
+        properties.setProperty("function.year", yearFunction.name());
+        properties.setProperty("function.rating", ratingFunction.name());
+        properties.setProperty("window.year", String.valueOf(yearWindow));
+        properties.setProperty("window.rating", String.valueOf(ratingWindow));
+        return properties;
+    }
+
+    /**
+     * Same functions and windows with other weights (by Attribute ordinal)
+     */
+    public SimilaritySpec withWeights(double... weights) {
+        return new SimilaritySpec(weights, genreFunction, directorFunction, actorFunction,
+                yearFunction, yearWindow, ratingFunction, ratingWindow);
+    }
+
+    /**
+     * Weighted sum of attribute similarities given by Attribute ordinal
+     */
+    public double combine(double[] similarities) {
+        double total = 0.0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i] * similarities[i];
+        }
+        return total;
+    }
+
+    public double getWeight(Attribute attribute) {
+        return weights[attribute.ordinal()];
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    public SetFunction getGenreFunction() {
+        return genreFunction;
+    }
+
+    public SetFunction getDirectorFunction() {
+        return directorFunction;
+    }
+
+    public SetFunction getActorFunction() {
+        return actorFunction;
+    }
+
+    public ScalarFunction getYearFunction() {
+        return yearFunction;
+    }
+
+    public double getYearWindow() {
+        return yearWindow;
+    }
+
+    public ScalarFunction getRatingFunction() {
+        return ratingFunction;
+    }
+
+    public double getRatingWindow() {
+        return ratingWindow;
+    }
+
+    private static SetFunction setFunction(Properties properties, Attribute attribute, SetFunction fallback) {
+        String value = properties.getProperty("function." + attribute.key());
+        if (value == null) return fallback;
+        try {
+            return SetFunction.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("function." + attribute.key() + " must be one of JACCARD, DICE, ANY");
+        }
+    }
+
+    private static ScalarFunction scalarFunction(Properties properties, Attribute attribute, ScalarFunction fallback) {
+        String value = properties.getProperty("function." + attribute.key());
+        if (value == null) return fallback;
+        try {
+            return ScalarFunction.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("function." + attribute.key() + " must be one of LINEAR, GAUSSIAN, STEP");
+        }
+    }
+
+    private static double window(Properties properties, Attribute attribute, double fallback) {
+        String value = properties.getProperty("window." + attribute.key());
+        return value == null ? fallback : number("window." + attribute.key(), value);
+    }
+
+    private static double number(String key, String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number: " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("SimilaritySpec [");
+        for (Attribute attribute : Attribute.values()) {
+            text.append(attribute.key()).append('=').append(String.format(Locale.ROOT, "%.3f", weights[attribute.ordinal()])).append(", ");
+        }
+        return text.append("genre ").append(genreFunction)
+                .append(", director ").append(directorFunction)
+                .append(", actor ").append(actorFunction)
+                .append(", year ").append(yearFunction).append('/').append(yearWindow)
+                .append(", rating ").append(ratingFunction).append('/').append(ratingWindow)
+                .append("]").toString();
+    }
+}
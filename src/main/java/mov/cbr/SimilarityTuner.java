@@ -0,0 +1,290 @@
+package mov.cbr;
+
+import mov.cbr.SimilaritySpec.Attribute;
+import mov.model.Movie;
+import mov.ontology.MovieCatalog;
+import mov.ontology.MovieRecommender;
+import mov.ontology.OntologyManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Offline search for similarity weights that rank known-similar movies highly.
+ *
+ * Each pair (a, b) asks: when the case base is ranked by similarity to a, where does b come?
+ * Attribute similarities between every query movie and every case are computed once with the
+ * spec's functions and windows; a weight set is then evaluated with dot products only, so the
+ * grid over the weight simplex costs no further movie comparisons. Pairs are split into a
+ * tuning set and a held-out set, and the weights that do best on the tuning set are reported
+ * against the held-out pairs next to the current spec.
+ *
+ * Usage: SimilarityTuner [--pairs file] [--spec file] [--step 0.05] [--holdout 0.3]
+ *                        [--seed 42] [--k 5] [--out file]
+ */
+public class SimilarityTuner {
+
+    /** Attribute similarities from one query movie to the target and to every other case */
+    private static class Query {
+        final String label;
+        final double[] target;
+        final double[][] others;
+
+        Query(String label, double[] target, double[][] others) {
+            this.label = label;
+            this.target = target;
+            this.others = others;
+        }
+
+        /**
+         * 1-based rank of the target; ties with other cases count half
+         */
+        double rank(double[] weights) {
+            double targetScore = dot(weights, target);
+            double rank = 1;
+            for (double[] other : others) {
+                double score = dot(weights, other);
+                if (score > targetScore) rank += 1;
+                else if (score == targetScore) rank += 0.5;
+            }
+            return rank;
+        }
+    }
+
+    /** Mean reciprocal rank and recall at k over a set of queries */
+    static class Evaluation {
+        final double mrr;
+        final double recall;
+
+        Evaluation(double mrr, double recall) {
+            this.mrr = mrr;
+            this.recall = recall;
+        }
+    }
+
+    private final List<Movie> cases;
+    private final SimilarityCalculator calculator;
+    private final int k;
+
+    public SimilarityTuner(List<Movie> cases, SimilaritySpec spec, int k) {
+        this.cases = cases;
+        this.calculator = new SimilarityCalculator(spec);
+        this.k = k;
+    }
+
+    /**
+     * Both directions of each pair as ranking queries
+     */
+    List<Query> queries(List<Movie[]> pairs) {
+        List<Query> queries = new ArrayList<>();
+        for (Movie[] pair : pairs) {
+            queries.add(query(pair[0], pair[1]));
+            queries.add(query(pair[1], pair[0]));
+        }
+        return queries;
+    }
+
+    private Query query(Movie from, Movie to) {
+        double[][] others = new double[cases.size()][];
+        int count = 0;
+        for (Movie movie : cases) {
+            if (movie.getUri().equals(from.getUri()) || movie.getUri().equals(to.getUri())) continue;
+            others[count++] = calculator.attributeSimilarities(from, movie);
+        }
+        double[][] trimmed = new double[count][];
+        System.arraycopy(others, 0, trimmed, 0, count);
+        return new Query(from.getTitle() + " -> " + to.getTitle(), calculator.attributeSimilarities(from, to), trimmed);
+    }
+
+    Evaluation evaluate(List<Query> queries, double[] weights) {
+        if (queries.isEmpty()) {
+            return new Evaluation(Double.NaN, Double.NaN);
+        }
+        double reciprocal = 0;
+        int hits = 0;
+        for (Query query : queries) {
+            double rank = query.rank(weights);
+            reciprocal += 1.0 / rank;
+            if (rank <= k) hits++;
+        }
+        return new Evaluation(reciprocal / queries.size(), (double) hits / queries.size());
+    }
+
+    /**
+     * Best weights on the simplex (non-negative, summing to 1) in steps of the given size,
+     * by mean reciprocal rank then recall
+     */
+    double[] search(List<Query> queries, double step) {
+        int units = (int) Math.round(1.0 / step);
+        int[] grid = new int[Attribute.values().length];
+        double[] weights = new double[grid.length];
+        double[] best = null;
+        Evaluation bestEvaluation = null;
+        long evaluated = 0;
+        // Enumerate compositions of units into grid.length parts
+        while (true) {
+            int remaining = units;
+            for (int i = 0; i < grid.length - 1; i++) remaining -= grid[i];
+            if (remaining >= 0) {
+                grid[grid.length - 1] = remaining;
+                for (int i = 0; i < grid.length; i++) weights[i] = grid[i] / (double) units;
+                Evaluation evaluation = evaluate(queries, weights);
+                evaluated++;
+                if (bestEvaluation == null || evaluation.mrr > bestEvaluation.mrr
+                        || (evaluation.mrr == bestEvaluation.mrr && evaluation.recall > bestEvaluation.recall)) {
+                    best = weights.clone();
+                    bestEvaluation = evaluation;
+                }
+            }
+            int i = grid.length - 2;
+            while (i >= 0) {
+                grid[i]++;
+                int used = 0;
+                for (int j = 0; j <= i; j++) used += grid[j];
+                if (used <= units) break;
+                grid[i] = 0;
+                i--;
+            }
+            if (i < 0) break;
+        }
+        System.out.println("Evaluated " + evaluated + " weight sets");
+        return best;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        double step = Double.parseDouble(options.getOrDefault("step", "0.05"));
+        double holdout = Double.parseDouble(options.getOrDefault("holdout", "0.3"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int k = Integer.parseInt(options.getOrDefault("k", "5"));
+        SimilaritySpec spec = options.containsKey("spec")
+                ? SimilaritySpec.load(Paths.get(options.get("spec")))
+                : SimilaritySpec.loadResource(SimilaritySpec.DEFAULT_RESOURCE);
+
+        OntologyManager ontologyManager = new OntologyManager();
+        ontologyManager.loadOntology(options.getOrDefault("ontology", "src/main/resources/ontology/movies-instances.owl"));
+        MovieRecommender recommender = new MovieRecommender(ontologyManager);
+        recommender.setCatalog(MovieCatalog.build(ontologyManager));
+        List<Movie> movies = recommender.getAllMovies();
+
+        List<Movie[]> pairs = readPairs(options.get("pairs"), movies);
+        Collections.shuffle(pairs, new Random(seed));
+        int held = (int) Math.round(pairs.size() * holdout);
+        List<Movie[]> heldOut = new ArrayList<>(pairs.subList(0, held));
+        List<Movie[]> tuning = new ArrayList<>(pairs.subList(held, pairs.size()));
+        System.out.println(pairs.size() + " pairs: " + tuning.size() + " for tuning, " + heldOut.size() + " held out");
+
+        long start = System.nanoTime();
+        SimilarityTuner tuner = new SimilarityTuner(movies, spec, k);
+        List<Query> tuningQueries = tuner.queries(tuning);
+        List<Query> heldOutQueries = tuner.queries(heldOut);
+        double[] best = tuner.search(tuningQueries, step);
+        System.out.printf(Locale.ROOT, "Search took %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        System.out.println("\nCurrent: " + spec);
+        report(tuner, spec.getWeights(), tuningQueries, heldOutQueries, k);
+        SimilaritySpec tuned = spec.withWeights(best);
+        System.out.println("Tuned:   " + tuned);
+        report(tuner, best, tuningQueries, heldOutQueries, k);
+
+        if (options.containsKey("out")) {
+            Path out = Paths.get(options.get("out"));
+            try (Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+                tuned.toProperties().store(writer, "Tuned by SimilarityTuner on " + tuning.size() + " pairs");
+            }
+            System.out.println("Wrote " + out);
+        }
+    }
+
+    private static void report(SimilarityTuner tuner, double[] weights, List<Query> tuning, List<Query> heldOut, int k) {
+        Evaluation tuned = tuner.evaluate(tuning, weights);
+        Evaluation held = tuner.evaluate(heldOut, weights);
+        System.out.printf(Locale.ROOT, "  tuning   MRR %.3f  recall@%d %.3f%n", tuned.mrr, k, tuned.recall);
+        System.out.printf(Locale.ROOT, "  held out MRR %.3f  recall@%d %.3f%n", held.mrr, k, held.recall);
+    }
+
+    /**
+     * Pairs file lines: "title or URI | title or URI"; blank lines and # comments are skipped
+     */
+    static List<Movie[]> readPairs(String file, List<Movie> movies) throws IOException {
+        Map<String, Movie> byKey = new HashMap<>();
+        for (Movie movie : movies) {
+            byKey.put(movie.getUri(), movie);
+            byKey.put(movie.getTitle().toLowerCase(Locale.ROOT), movie);
+        }
+        List<Movie[]> pairs = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\|");
+                if (parts.length != 2) {
+                    System.err.println("Skipping line " + number + ": expected two movies separated by |");
+                    continue;
+                }
+                Movie a = lookup(byKey, parts[0]);
+                Movie b = lookup(byKey, parts[1]);
+                if (a == null || b == null) {
+                    System.err.println("Skipping line " + number + ": unknown movie");
+                    continue;
+                }
+                pairs.add(new Movie[] {a, b});
+            }
+        }
+        return pairs;
+    }
+
+    private static Movie lookup(Map<String, Movie> byKey, String reference) {
+        String key = reference.trim();
+        Movie movie = byKey.get(key);
+        return movie != null ? movie : byKey.get(key.toLowerCase(Locale.ROOT));
+    }
+
+    private static InputStream open(String file) throws IOException {
+        if (file != null) {
+            return Files.newInputStream(Paths.get(file));
+        }
+        InputStream in = SimilarityTuner.class.getClassLoader().getResourceAsStream("cbr/similar-pairs.txt");
+        if (in == null) {
+            throw new IOException("No pairs file given and cbr/similar-pairs.txt not on the classpath");
+        }
+        return in;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    private static double dot(double[] weights, double[] similarities) {
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i] * similarities[i];
+        }
+        return total;
+    }
+}
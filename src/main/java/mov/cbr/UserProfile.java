@@ -0,0 +1,265 @@
+package mov.cbr;
+
+import mov.model.Movie;
+import mov.model.Person;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A user's taste as weighted liked and disliked movies, scored against cases in one pass.
+ *
+ * The seeds are folded once into a profile vector (weighted share of the liked movies per
+ * genre, director, actor and country, plus year and rating histograms), so scoring a case costs
+ * about as much as comparing it with a single movie however many seeds there are.
+ * For a single seed the score equals SimilarityCalculator.calculateSimilarity under the same
+ * spec. With several seeds year, rating and country are the exact weighted mean of the
+ * per-seed similarities, and genres, directors and actors apply the spec's set function to the
+ * weighted profile (see setSimilarity).
+ * Disliked movies form a second profile whose score is subtracted, scaled by the dislike penalty.
+ */
+public class UserProfile {
+
+    /** Aggregated seeds of one polarity; OffHeapCaseStore reads it to score records directly */
+    static final class Vector {
+        final Map<String, Double> genres = new HashMap<>(); // share of seed weight per genre
+        final Map<String, Double> directors = new HashMap<>(); // keyed by SimilarityCalculator.personKey
+        final Map<String, Double> actors = new HashMap<>();
+        final Map<String, Double> countries = new HashMap<>(); // lower-cased
+        final Map<Integer, Double> years = new HashMap<>();
+        final Map<Double, Double> ratings = new HashMap<>();
+        double genreTotal;
+        double directorTotal;
+        double actorTotal;
+        double weight;
+
+        Vector(Map<Movie, Double> seeds) {
+            for (double w : seeds.values()) {
+                weight += w;
+            }
+            if (weight <= 0) {
+                return;
+            }
+            for (Map.Entry<Movie, Double> seed : seeds.entrySet()) {
+                Movie movie = seed.getKey();
+                double share = seed.getValue() / weight;
+                for (String genre : new HashSet<>(movie.getGenres())) {
+                    genres.merge(genre, share, Double::sum);
+                    genreTotal += share;
+                }
+                for (String key : keys(movie.getDirectors())) {
+                    directors.merge(key, share, Double::sum);
+                    directorTotal += share;
+                }
+                for (String key : keys(movie.getActors())) {
+                    actors.merge(key, share, Double::sum);
+                    actorTotal += share;
+                }
+                if (movie.getCountry() != null && !movie.getCountry().isEmpty()) {
+                    countries.merge(movie.getCountry().toLowerCase(Locale.ROOT), share, Double::sum);
+                }
+                if (movie.getYear() != 0) {
+                    years.merge(movie.getYear(), share, Double::sum);
+                }
+                if (movie.getRating() != 0.0) {
+                    ratings.merge(movie.getRating(), share, Double::sum);
+                }
+            }
+        }
+
+        double score(Movie movie, SimilaritySpec spec) {
+            if (weight <= 0) {
+                return 0.0;
+            }
+            double[] similarities = new double[SimilaritySpec.Attribute.values().length];
+            similarities[SimilaritySpec.Attribute.GENRE.ordinal()] =
+                    setSimilarity(spec.getGenreFunction(), genres, genreTotal, movie.getGenres());
+            similarities[SimilaritySpec.Attribute.DIRECTOR.ordinal()] =
+                    setSimilarity(spec.getDirectorFunction(), directors, directorTotal, keysOf(movie.getDirectors()));
+            similarities[SimilaritySpec.Attribute.ACTOR.ordinal()] =
+                    setSimilarity(spec.getActorFunction(), actors, actorTotal, keysOf(movie.getActors()));
+
+            double yearSim = 0.0;
+            if (movie.getYear() != 0) {
+                for (Map.Entry<Integer, Double> year : years.entrySet()) {
+                    yearSim += year.getValue() * SimilarityCalculator.calculateYearSimilarity(spec, year.getKey(), movie.getYear());
+                }
+            }
+            similarities[SimilaritySpec.Attribute.YEAR.ordinal()] = yearSim;
+            double ratingSim = 0.0;
+            if (movie.getRating() != 0.0) {
+                for (Map.Entry<Double, Double> rating : ratings.entrySet()) {
+                    ratingSim += rating.getValue() * SimilarityCalculator.calculateRatingSimilarity(spec, rating.getKey(), movie.getRating());
+                }
+            }
+            similarities[SimilaritySpec.Attribute.RATING.ordinal()] = ratingSim;
+            similarities[SimilaritySpec.Attribute.COUNTRY.ordinal()] =
+                    movie.getCountry() == null || movie.getCountry().isEmpty() ? 0.0
+                    : countries.getOrDefault(movie.getCountry().toLowerCase(Locale.ROOT), 0.0);
+
+            return spec.combine(similarities);
+        }
+
+        /**
+         * The set function applied against the profile. Jaccard becomes weighted Jaccard (Ruzicka:
+         * sum of min over sum of max), Dice follows from it as 2J / (1 + J), and "any shared" is the
+         * share of seed weight the case has something in common with, capped at 1.
+         */
+        private static double setSimilarity(SimilaritySpec.SetFunction function, Map<String, Double> profile,
+                                            double profileTotal, List<String> values) {
+            if (values.isEmpty() || profileTotal <= 0) {
+                return 0.0;
+            }
+            int distinct = 0;
+            double inCase = 0.0;
+            for (int i = 0; i < values.size(); i++) {
+                if (values.indexOf(values.get(i)) < i) continue; // duplicate
+                distinct++;
+                inCase += profile.getOrDefault(values.get(i), 0.0);
+            }
+            if (function == SimilaritySpec.SetFunction.ANY) {
+                return Math.min(1.0, inCase);
+            }
+            double jaccard = inCase / (distinct + profileTotal - inCase);
+            return function == SimilaritySpec.SetFunction.DICE ? 2 * jaccard / (1 + jaccard) : jaccard;
+        }
+
+        private static List<String> keysOf(List<Person> people) {
+            List<String> keys = new ArrayList<>(people.size());
+            for (Person person : people) {
+                String key = SimilarityCalculator.personKey(person);
+                if (key != null) keys.add(key);
+            }
+            return keys;
+        }
+
+        private static Set<String> keys(List<Person> people) {
+            return new HashSet<>(keysOf(people));
+        }
+    }
+
+    private final Map<Movie, Double> liked = new HashMap<>();
+    private final Map<Movie, Double> disliked = new HashMap<>();
+    private final Set<String> seedKeys = new HashSet<>();
+    private double dislikePenalty = 0.5;
+    private Vector likedVector; // built on first use, reset by any change
+    private Vector dislikedVector;
+
+    public UserProfile() {
+    }
+
+    public UserProfile(List<Movie> likedMovies) {
+        for (Movie movie : likedMovies) {
+            like(movie);
+        }
+    }
+
+    public UserProfile like(Movie movie) {
+        return like(movie, 1.0);
+    }
+
+    /**
+     * Add a liked movie; a higher weight pulls the profile further toward it
+     */
+    public synchronized UserProfile like(Movie movie, double weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative");
+        }
+        liked.merge(movie, weight, Double::sum);
+        seedKeys.add(seedKey(movie));
+        likedVector = null;
+        return this;
+    }
+
+    public UserProfile dislike(Movie movie) {
+        return dislike(movie, 1.0);
+    }
+
+    public synchronized UserProfile dislike(Movie movie, double weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative");
+        }
+        disliked.merge(movie, weight, Double::sum);
+        seedKeys.add(seedKey(movie));
+        dislikedVector = null;
+        return this;
+    }
+
+    /**
+     * Liked-profile similarity minus dislikePenalty times disliked-profile similarity
+     */
+    public double score(Movie movie, SimilarityCalculator calculator) {
+        Vector likes = likes();
+        Vector dislikes = dislikes();
+        SimilaritySpec spec = calculator.getSpec();
+        double score = likes.score(movie, spec);
+        if (dislikes.weight > 0) {
+            score -= dislikePenalty * dislikes.score(movie, spec);
+        }
+        return score;
+    }
+
+    synchronized Vector likes() {
+        if (likedVector == null) likedVector = new Vector(liked);
+        return likedVector;
+    }
+
+    synchronized Vector dislikes() {
+        if (dislikedVector == null) dislikedVector = new Vector(disliked);
+        return dislikedVector;
+    }
+
+    /**
+     * True if the movie is one of the liked or disliked seeds (by URI, or title when it has none)
+     */
+    public synchronized boolean isSeed(Movie movie) {
+        return seedKeys.contains(seedKey(movie));
+    }
+
+    private static String seedKey(Movie movie) {
+        return movie.getUri() != null ? movie.getUri() : "title:" + movie.getTitle();
+    }
+
+    /**
+     * URIs of the seeds that have one; a case always does, so only these can exclude it
+     */
+    synchronized List<String> seedUris() {
+        List<String> uris = new ArrayList<>(seedKeys.size());
+        for (String key : seedKeys) {
+            if (!key.startsWith("title:")) uris.add(key);
+        }
+        return uris;
+    }
+
+    public synchronized List<Movie> getLikedMovies() {
+        return Collections.unmodifiableList(new ArrayList<>(liked.keySet()));
+    }
+
+    public synchronized List<Movie> getDislikedMovies() {
+        return Collections.unmodifiableList(new ArrayList<>(disliked.keySet()));
+    }
+
+    public synchronized boolean isEmpty() {
+        return liked.isEmpty() && disliked.isEmpty();
+    }
+
+    public double getDislikePenalty() {
+        return dislikePenalty;
+    }
+
+    public void setDislikePenalty(double dislikePenalty) {
+        this.dislikePenalty = dislikePenalty;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "UserProfile [liked=" + liked.size() + ", disliked=" + disliked.size()
+                + ", dislikePenalty=" + dislikePenalty + "]";
+    }
+}
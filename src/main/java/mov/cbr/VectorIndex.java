@@ -0,0 +1,317 @@
+package mov.cbr;
+
+import mov.model.Movie;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Cases encoded once by a FeatureEncoder and stored as one contiguous row-major float matrix,
+ * so similarity is a dot product and retrieval a matrix-vector (or matrix-matrix) product.
+ *
+ * Queries are scored in blocks of QUERY_BLOCK targets: each case row is read from memory once
+ * per block and multiplied against all of the block's vectors while it is in cache, four at a
+ * time so every loaded element feeds four independent sums, and blocks run in parallel for
+ * large batches. Like OffHeapCaseStore the index is immutable;
+ * withChanges re-encodes only the changed movies and copies the other rows.
+ */
+public final class VectorIndex {
+
+    static final int QUERY_BLOCK = 8;
+    private static final int PARALLEL_THRESHOLD = 2; // query blocks before going parallel
+
+    /** Bounded top-k of (row, score); worst at the root: lower score, then later row */
+    private static final class TopK {
+        final int[] rows;
+        final float[] scores;
+        int size;
+
+        TopK(int k) {
+            rows = new int[k];
+            scores = new float[k];
+        }
+
+        void offer(int row, float score) {
+            if (size < rows.length) {
+                rows[size] = row;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (rows.length > 0 && score > scores[0]) {
+                rows[0] = row;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        private boolean worse(int a, int b) {
+            return scores[a] < scores[b] || (scores[a] == scores[b] && rows[a] > rows[b]);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!worse(i, parent)) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && worse(child + 1, child)) child++;
+                if (!worse(child, i)) break;
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+
+    private final FeatureEncoder encoder;
+    private final int dimensions;
+    private final float[] matrix; // count rows of dimensions floats
+    private final Movie[] movies;
+    private final int[] titleHashes;
+    private final Map<String, Integer> rowsByUri;
+
+    private VectorIndex(FeatureEncoder encoder, float[] matrix, Movie[] movies) {
+        this.encoder = encoder;
+        this.dimensions = encoder.dimensions();
+        this.matrix = matrix;
+        this.movies = movies;
+        this.titleHashes = new int[movies.length];
+        this.rowsByUri = new HashMap<>(movies.length * 2);
+        for (int i = 0; i < movies.length; i++) {
+            titleHashes[i] = movies[i].getTitle() == null ? 0 : movies[i].getTitle().hashCode();
+            if (movies[i].getUri() != null) {
+                rowsByUri.put(movies[i].getUri(), i);
+            }
+        }
+    }
+
+    /**
+     * Encode every movie with the given encoder (usually FeatureEncoder.fit over the same movies)
+     */
+    public static VectorIndex build(List<Movie> movies, FeatureEncoder encoder) {
+        int dimensions = encoder.dimensions();
+        float[] matrix = new float[Math.multiplyExact(movies.size(), dimensions)];
+        IntStream.range(0, movies.size()).parallel()
+                .forEach(i -> encoder.encode(movies.get(i), matrix, i * dimensions));
+        return new VectorIndex(encoder, matrix, movies.toArray(new Movie[0]));
+    }
+
+    /**
+     * A new index with the upserts (re-)encoded and the removed ids dropped; other rows are copied
+     */
+    public VectorIndex withChanges(Collection<Movie> upserts, Collection<String> removedIds) {
+        Set<String> dropped = new HashSet<>(removedIds);
+        for (Movie movie : upserts) {
+            if (movie.getUri() != null) dropped.add(movie.getUri());
+        }
+        List<Movie> kept = new ArrayList<>(movies.length + upserts.size());
+        List<Integer> keptRows = new ArrayList<>(movies.length);
+        for (int i = 0; i < movies.length; i++) {
+            if (movies[i].getUri() == null || !dropped.contains(movies[i].getUri())) {
+                kept.add(movies[i]);
+                keptRows.add(i);
+            }
+        }
+        float[] next = new float[Math.multiplyExact(kept.size() + upserts.size(), dimensions)];
+        for (int i = 0; i < keptRows.size(); i++) {
+            System.arraycopy(matrix, keptRows.get(i) * dimensions, next, i * dimensions, dimensions);
+        }
+        int row = kept.size();
+        for (Movie movie : upserts) {
+            encoder.encode(movie, next, row++ * dimensions);
+            kept.add(movie);
+        }
+        return new VectorIndex(encoder, next, kept.toArray(new Movie[0]));
+    }
+
+    public int size() {
+        return movies.length;
+    }
+
+    public boolean isEmpty() {
+        return movies.length == 0;
+    }
+
+    public FeatureEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * The k cases with the highest dot product with the target, skipping cases with its title
+     */
+    public List<CaseRepresentation> findSimilar(Movie target, int k) {
+        return findSimilar(Collections.singletonList(target), k).get(0);
+    }
+
+    /**
+     * Top k for each target, in the order given
+     */
+    public List<List<CaseRepresentation>> findSimilar(List<Movie> targets, int k) {
+        int count = targets.size();
+        float[] queries = new float[Math.multiplyExact(count, dimensions)];
+        int[] targetHashes = new int[count];
+        for (int q = 0; q < count; q++) {
+            Movie target = targets.get(q);
+            encoder.encode(target, queries, q * dimensions);
+            targetHashes[q] = target.getTitle() == null ? 0 : target.getTitle().hashCode();
+        }
+        TopK[] tops = new TopK[count];
+        for (int q = 0; q < count; q++) {
+            tops[q] = new TopK(Math.max(0, Math.min(k, movies.length)));
+        }
+
+        int blocks = (count + QUERY_BLOCK - 1) / QUERY_BLOCK;
+        IntStream range = IntStream.range(0, blocks);
+        if (blocks >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(block -> scoreBlock(queries, block * QUERY_BLOCK,
+                Math.min(count, (block + 1) * QUERY_BLOCK), targets, targetHashes, tops));
+
+        List<List<CaseRepresentation>> results = new ArrayList<>(count);
+        for (TopK top : tops) {
+            results.add(toCases(top));
+        }
+        return results;
+    }
+
+    /**
+     * Score every row against queries [from, to): each row is read once for the whole block, and
+     * each of its elements is multiplied into four queries per load
+     */
+    private void scoreBlock(float[] queries, int from, int to, List<Movie> targets, int[] targetHashes, TopK[] tops) {
+        int d = dimensions;
+        float[] scores = new float[4];
+        for (int row = 0; row < movies.length; row++) {
+            int rowOffset = row * d;
+            for (int q = from; q < to; q += 4) {
+                int n = Math.min(4, to - q);
+                if (n == 4) {
+                    dot4(matrix, rowOffset, queries, q * d, d, scores);
+                } else {
+                    for (int j = 0; j < n; j++) {
+                        scores[j] = dot(matrix, rowOffset, queries, (q + j) * d, d);
+                    }
+                }
+                for (int j = 0; j < n; j++) {
+                    if (titleHashes[row] == targetHashes[q + j] && sameTitle(movies[row], targets.get(q + j))) {
+                        continue;
+                    }
+                    tops[q + j].offer(row, scores[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dot products of one row with four consecutive query vectors
+     */
+    static void dot4(float[] a, int aOffset, float[] queries, int qOffset, int length, float[] out) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int q1 = qOffset + length, q2 = q1 + length, q3 = q2 + length;
+        for (int i = 0; i < length; i++) {
+            float x = a[aOffset + i];
+            s0 += x * queries[qOffset + i];
+            s1 += x * queries[q1 + i];
+            s2 += x * queries[q2 + i];
+            s3 += x * queries[q3 + i];
+        }
+        out[0] = s0;
+        out[1] = s1;
+        out[2] = s2;
+        out[3] = s3;
+    }
+
+    /**
+     * Score only the given cases against the target, in the order given; unknown ids and the
+     * target's own URI are skipped
+     */
+    public List<CaseRepresentation> score(Movie target, Collection<String> caseIds) {
+        float[] query = encoder.encode(target);
+        List<CaseRepresentation> result = new ArrayList<>(caseIds.size());
+        for (String id : caseIds) {
+            Integer row = rowsByUri.get(id);
+            if (row == null || id.equals(target.getUri())) {
+                continue;
+            }
+            result.add(toCase(row, dot(matrix, row * dimensions, query, 0, dimensions)));
+        }
+        return result;
+    }
+
+    /**
+     * Four independent accumulators so the loop is not serialised on one floating-point add
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static boolean sameTitle(Movie a, Movie b) {
+        return a.getTitle() != null && a.getTitle().equals(b.getTitle());
+    }
+
+    private List<CaseRepresentation> toCases(TopK top) {
+        Integer[] order = new Integer[top.size];
+        for (int i = 0; i < top.size; i++) {
+            order[i] = i;
+        }
+        java.util.Arrays.sort(order, (a, b) -> {
+            int byScore = Float.compare(top.scores[b], top.scores[a]);
+            return byScore != 0 ? byScore : Integer.compare(top.rows[a], top.rows[b]);
+        });
+        List<CaseRepresentation> cases = new ArrayList<>(top.size);
+        for (int i : order) {
+            cases.add(toCase(top.rows[i], top.scores[i]));
+        }
+        return cases;
+    }
+
+    private CaseRepresentation toCase(int row, float score) {
+        Movie movie = movies[row];
+        CaseRepresentation caseRep = new CaseRepresentation(movie.getUri(), movie);
+        caseRep.setSimilarity(score);
+        return caseRep;
+    }
+
+    public long matrixBytes() {
+        return (long) matrix.length * Float.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "VectorIndex [" + movies.length + " x " + dimensions + " floats, "
+                + matrixBytes() / (1024 * 1024) + " MB]";
+    }
+}
@@ -0,0 +1,25 @@
+package mov.cbr.jcolibri;
+
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.LocalSimilarityFunction;
+
+/**
+ * 1 for the same country ignoring case, 0 otherwise or when either is missing.
+ * jCOLIBRI's EqualsStringIgnoreCase does not accept missing values.
+ */
+public class CountrySimilarity implements LocalSimilarityFunction {
+
+    @Override
+    public double compute(Object caseValue, Object queryValue) {
+        String country1 = (String) queryValue;
+        String country2 = (String) caseValue;
+        if (country1 == null || country2 == null || country1.isEmpty() || country2.isEmpty()) {
+            return 0.0;
+        }
+        return country1.equalsIgnoreCase(country2) ? 1.0 : 0.0;
+    }
+
+    @Override
+    public boolean isApplicable(Object caseValue, Object queryValue) {
+        return (caseValue == null || caseValue instanceof String) && (queryValue == null || queryValue instanceof String);
+    }
+}
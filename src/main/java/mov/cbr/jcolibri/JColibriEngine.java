@@ -0,0 +1,220 @@
+package mov.cbr.jcolibri;
+
+import mov.cbr.CaseRepresentation;
+import mov.cbr.SimilaritySpec;
+import mov.model.Movie;
+import ucm.gaia.jcolibri.casebase.IDIndexedLinealCaseBase;
+import ucm.gaia.jcolibri.cbrcore.Attribute;
+import ucm.gaia.jcolibri.cbrcore.CBRCase;
+import ucm.gaia.jcolibri.cbrcore.CBRQuery;
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.NNConfig;
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.NNScoringMethod;
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.LocalSimilarityFunction;
+import ucm.gaia.jcolibri.method.retrieve.RetrievalResult;
+import ucm.gaia.jcolibri.method.retrieve.selection.SelectCases;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Nearest-neighbour retrieval through jCOLIBRI.
+ *
+ * Movies are held as CBRCases with a MovieDescription in an ID-indexed case base fed by a
+ * MovieConnector, and scored by NNScoringMethod with local functions and weights taken from the
+ * SimilaritySpec, so scores match SimilarityCalculator (people compare by name). Retrieval over
+ * given ids looks the cases up in the index instead of scanning the case base.
+ * Changes replace the jCOLIBRI case base under a write lock; queries hold the read lock.
+ */
+public class JColibriEngine {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MovieConnector connector; // guarded by lock
+    private IDIndexedLinealCaseBase caseBase;
+    private final Map<String, Movie> movies = new HashMap<>(); // by URI, guarded by lock
+    private volatile NNConfig config;
+    private volatile SimilaritySpec spec;
+
+    public JColibriEngine() {
+        this(SimilaritySpec.defaults());
+    }
+
+    public JColibriEngine(SimilaritySpec spec) {
+        setSimilaritySpec(spec);
+        loadCases(Collections.emptyList());
+    }
+
+    /**
+     * Replace the case base with the given movies
+     */
+    public void loadCases(Collection<Movie> newMovies) {
+        MovieConnector nextConnector = new MovieConnector(newMovies);
+        IDIndexedLinealCaseBase next = new IDIndexedLinealCaseBase();
+        next.init(nextConnector);
+        lock.writeLock().lock();
+        try {
+            connector = nextConnector;
+            caseBase = next;
+            movies.clear();
+            for (Movie movie : newMovies) {
+                movies.put(movie.getUri(), movie);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace or add the upserted movies and forget the removed ids.
+     * IDIndexedLinealCaseBase cannot be updated in place (forgetCases does nothing and learnCases
+     * re-indexes only the learned cases), so the change goes to the connector and a new case base
+     * is initialised from it.
+     */
+    public void applyChanges(Collection<Movie> upserts, Collection<String> removedIds) {
+        List<CBRCase> learned = new ArrayList<>(upserts.size());
+        for (Movie movie : upserts) {
+            learned.add(MovieConnector.toCase(movie));
+        }
+        lock.writeLock().lock();
+        try {
+            List<CBRCase> forgotten = new ArrayList<>(removedIds.size());
+            for (String id : removedIds) {
+                CBRCase existing = caseBase.getCase(id);
+                if (existing != null) forgotten.add(existing);
+            }
+            connector.deleteCases(forgotten);
+            connector.storeCases(learned);
+            IDIndexedLinealCaseBase next = new IDIndexedLinealCaseBase();
+            next.init(connector);
+            caseBase = next;
+            for (String id : removedIds) {
+                movies.remove(id);
+            }
+            for (Movie movie : upserts) {
+                movies.put(movie.getUri(), movie);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Score with another spec from the next query on
+     */
+    public void setSimilaritySpec(SimilaritySpec spec) {
+        this.config = configFor(spec);
+        this.spec = spec;
+    }
+
+    public SimilaritySpec getSimilaritySpec() {
+        return spec;
+    }
+
+    /**
+     * jCOLIBRI configuration equivalent to SimilarityCalculator under the spec
+     */
+    static NNConfig configFor(SimilaritySpec spec) {
+        NNConfig config = new NNConfig();
+        config.setDescriptionSimFunction(new WeightedSum());
+        map(config, "genres", new SetOverlapSimilarity(spec.getGenreFunction()), spec.getWeight(SimilaritySpec.Attribute.GENRE));
+        map(config, "directors", new SetOverlapSimilarity(spec.getDirectorFunction()), spec.getWeight(SimilaritySpec.Attribute.DIRECTOR));
+        map(config, "actors", new SetOverlapSimilarity(spec.getActorFunction()), spec.getWeight(SimilaritySpec.Attribute.ACTOR));
+        map(config, "year", new WindowSimilarity(spec.getYearFunction(), spec.getYearWindow()), spec.getWeight(SimilaritySpec.Attribute.YEAR));
+        map(config, "rating", new WindowSimilarity(spec.getRatingFunction(), spec.getRatingWindow()), spec.getWeight(SimilaritySpec.Attribute.RATING));
+        map(config, "country", new CountrySimilarity(), spec.getWeight(SimilaritySpec.Attribute.COUNTRY));
+        return config;
+    }
+
+    private static void map(NNConfig config, String field, LocalSimilarityFunction function,
+                            double weight) {
+        Attribute attribute = new Attribute(field, MovieDescription.class);
+        config.addMapping(attribute, function);
+        config.setWeight(attribute, weight);
+    }
+
+    /**
+     * The k cases most similar to the target, best first; the target (by title) is excluded
+     */
+    public List<CaseRepresentation> findSimilarCases(Movie targetMovie, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        CBRQuery query = query(targetMovie);
+        NNConfig current = config;
+        lock.readLock().lock();
+        try {
+            Collection<RetrievalResult> results = NNScoringMethod.evaluateSimilarity(caseBase.getCases(), query, current);
+            List<RetrievalResult> others = new ArrayList<>(results.size());
+            for (RetrievalResult result : results) {
+                Movie movie = movies.get((String) result.get_case().getID());
+                if (movie != null && !movie.getTitle().equals(targetMovie.getTitle())) {
+                    others.add(result);
+                }
+            }
+            return toCases(SelectCases.selectTopKRR(others, k));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Score the given cases, found through the id index, against the target in the order given.
+     * Unknown ids and the target itself are skipped.
+     */
+    public List<CaseRepresentation> scoreCases(Movie targetMovie, Collection<String> caseIds) {
+        CBRQuery query = query(targetMovie);
+        NNConfig current = config;
+        lock.readLock().lock();
+        try {
+            List<CBRCase> cases = new ArrayList<>(caseIds.size());
+            for (String id : caseIds) {
+                CBRCase cbrCase = caseBase.getCase(id);
+                if (cbrCase != null && !id.equals(targetMovie.getUri())) {
+                    cases.add(cbrCase);
+                }
+            }
+            Map<Object, RetrievalResult> byId = new HashMap<>();
+            for (RetrievalResult result : NNScoringMethod.evaluateSimilarity(cases, query, current)) {
+                byId.put(result.get_case().getID(), result);
+            }
+            List<RetrievalResult> ordered = new ArrayList<>(cases.size());
+            for (CBRCase cbrCase : cases) {
+                ordered.add(byId.get(cbrCase.getID()));
+            }
+            return toCases(ordered);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getCaseCount() {
+        lock.readLock().lock();
+        try {
+            return movies.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static CBRQuery query(Movie movie) {
+        CBRQuery query = new CBRQuery();
+        query.setDescription(MovieDescription.of(movie));
+        return query;
+    }
+
+    /** Called with the read lock held */
+    private List<CaseRepresentation> toCases(Collection<RetrievalResult> results) {
+        List<CaseRepresentation> cases = new ArrayList<>(results.size());
+        for (RetrievalResult result : results) {
+            String id = (String) result.get_case().getID();
+            CaseRepresentation scored = new CaseRepresentation(id, movies.get(id));
+            scored.setSimilarity(result.getEval());
+            cases.add(scored);
+        }
+        return cases;
+    }
+}
@@ -0,0 +1,73 @@
+package mov.cbr.jcolibri;
+
+import mov.model.Movie;
+import ucm.gaia.jcolibri.cbrcore.CBRCase;
+import ucm.gaia.jcolibri.cbrcore.CaseBaseFilter;
+import ucm.gaia.jcolibri.cbrcore.Connector;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * jCOLIBRI connector over movies already loaded from the ontology, so the case base is fed
+ * from the same MovieRecommender results as the native engine rather than an XML-configured source
+ */
+public class MovieConnector implements Connector {
+    private final Map<String, CBRCase> cases = new LinkedHashMap<>();
+
+    public MovieConnector(Collection<Movie> movies) {
+        for (Movie movie : movies) {
+            CBRCase cbrCase = toCase(movie);
+            cases.put(movie.getUri(), cbrCase);
+        }
+    }
+
+    public static CBRCase toCase(Movie movie) {
+        CBRCase cbrCase = new CBRCase();
+        cbrCase.setDescription(MovieDescription.of(movie));
+        return cbrCase;
+    }
+
+    /**
+     * Not used: the connector is built from movies, not from a configuration file
+     */
+    @Override
+    public void initFromXMLfile(URL file) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public synchronized void storeCases(Collection<CBRCase> newCases) {
+        for (CBRCase cbrCase : newCases) {
+            cases.put((String) cbrCase.getID(), cbrCase);
+        }
+    }
+
+    @Override
+    public synchronized void deleteCases(Collection<CBRCase> oldCases) {
+        for (CBRCase cbrCase : oldCases) {
+            cases.remove((String) cbrCase.getID());
+        }
+    }
+
+    @Override
+    public synchronized Collection<CBRCase> retrieveAllCases() {
+        return new ArrayList<>(cases.values());
+    }
+
+    /**
+     * Filters are not supported; every case is returned
+     */
+    @Override
+    public synchronized Collection<CBRCase> retrieveSomeCases(CaseBaseFilter filter) {
+        List<CBRCase> all = new ArrayList<>(cases.values());
+        return all;
+    }
+}
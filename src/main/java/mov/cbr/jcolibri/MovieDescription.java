@@ -0,0 +1,113 @@
+package mov.cbr.jcolibri;
+
+import mov.model.Movie;
+import mov.model.Person;
+import ucm.gaia.jcolibri.cbrcore.Attribute;
+import ucm.gaia.jcolibri.cbrcore.CaseComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * jCOLIBRI description of a movie: the attributes SimilarityCalculator compares.
+ * jCOLIBRI reads them reflectively by field name, so the fields are plain bean properties;
+ * people are held by name, missing numbers as 0 and a missing country as null.
+ */
+public class MovieDescription implements CaseComponent {
+    private String id; // movie URI
+    private List<String> genres = new ArrayList<>();
+    private List<String> directors = new ArrayList<>();
+    private List<String> actors = new ArrayList<>();
+    private Integer year = 0;
+    private Double rating = 0.0;
+    private String country;
+
+    public MovieDescription() {
+    }
+
+    public static MovieDescription of(Movie movie) {
+        MovieDescription description = new MovieDescription();
+        description.id = movie.getUri();
+        description.genres = new ArrayList<>(movie.getGenres());
+        description.directors = names(movie.getDirectors());
+        description.actors = names(movie.getActors());
+        description.year = movie.getYear();
+        description.rating = movie.getRating();
+        description.country = movie.getCountry();
+        return description;
+    }
+
+    private static List<String> names(List<Person> people) {
+        List<String> names = new ArrayList<>(people.size());
+        for (Person person : people) {
+            names.add(person.getName());
+        }
+        return names;
+    }
+
+    @Override
+    public Attribute getIdAttribute() {
+        return new Attribute("id", MovieDescription.class);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<String> getGenres() {
+        return genres;
+    }
+
+    public void setGenres(List<String> genres) {
+        this.genres = genres;
+    }
+
+    public List<String> getDirectors() {
+        return directors;
+    }
+
+    public void setDirectors(List<String> directors) {
+        this.directors = directors;
+    }
+
+    public List<String> getActors() {
+        return actors;
+    }
+
+    public void setActors(List<String> actors) {
+        this.actors = actors;
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public void setYear(Integer year) {
+        this.year = year;
+    }
+
+    public Double getRating() {
+        return rating;
+    }
+
+    public void setRating(Double rating) {
+        this.rating = rating;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    @Override
+    public String toString() {
+        return "MovieDescription [id=" + id + "]";
+    }
+}
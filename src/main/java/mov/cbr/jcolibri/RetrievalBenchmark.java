@@ -0,0 +1,209 @@
+package mov.cbr.jcolibri;
+
+import mov.cbr.CBREngine;
+import mov.cbr.CaseRepresentation;
+import mov.cbr.SimilaritySpec;
+import mov.model.Movie;
+import mov.ontology.MovieCatalog;
+import mov.ontology.MovieRecommender;
+import mov.ontology.OntologyManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares native retrieval with jCOLIBRI or feature-vector retrieval on the same case base.
+ *
+ * The ontology's movies are replicated (with distinct URIs and titles) up to the requested case
+ * count, the same random targets are run through a NATIVE CBREngine and one in the chosen mode,
+ * and latency percentiles are reported along with how far the two top-k lists agree. In vector
+ * mode the targets are also run as one batch, and the native scores of the vector top k are
+ * compared with the native top k's (exact retrieval gives 1.0).
+ *
+ * Usage: RetrievalBenchmark [--cases 10000] [--queries 50] [--k 10] [--warmup 10] [--seed 42]
+ *        [--mode jcolibri|vector]
+ */
+public class RetrievalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        int caseCount = Integer.parseInt(options.getOrDefault("cases", "10000"));
+        int queryCount = Integer.parseInt(options.getOrDefault("queries", "50"));
+        int k = Integer.parseInt(options.getOrDefault("k", "10"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        CBREngine.RetrievalMode mode = CBREngine.RetrievalMode.valueOf(
+                options.getOrDefault("mode", "jcolibri").toUpperCase(Locale.ROOT));
+        String label = mode.name().toLowerCase(Locale.ROOT);
+
+        OntologyManager ontologyManager = new OntologyManager();
+        ontologyManager.loadOntology(options.getOrDefault("ontology", "src/main/resources/ontology/movies-instances.owl"));
+        MovieRecommender recommender = new MovieRecommender(ontologyManager);
+        recommender.setCatalog(MovieCatalog.build(ontologyManager));
+        List<Movie> cases = replicate(recommender.getAllMovies(), caseCount);
+        SimilaritySpec spec = SimilaritySpec.loadResource(SimilaritySpec.DEFAULT_RESOURCE);
+
+        CBREngine nativeEngine = new CBREngine();
+        nativeEngine.setSimilaritySpec(spec);
+        long start = System.nanoTime();
+        nativeEngine.loadCases(cases);
+        long nativeLoad = System.nanoTime() - start;
+        CBREngine otherEngine = new CBREngine();
+        otherEngine.setSimilaritySpec(spec);
+        otherEngine.setRetrievalMode(mode);
+        start = System.nanoTime();
+        otherEngine.loadCases(cases);
+        long otherLoad = System.nanoTime() - start;
+
+        Random random = new Random(seed);
+        List<Movie> targets = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++) {
+            targets.add(cases.get(random.nextInt(cases.size())));
+        }
+        for (int i = 0; i < warmup; i++) {
+            Movie target = targets.get(i % targets.size());
+            nativeEngine.findSimilarCases(target, k);
+            otherEngine.findSimilarCases(target, k);
+        }
+
+        long[] nativeNanos = new long[queryCount];
+        long[] otherNanos = new long[queryCount];
+        double agreement = 0;
+        double maxScoreDifference = 0;
+        double scoreRecall = 0;
+        for (int i = 0; i < queryCount; i++) {
+            Movie target = targets.get(i);
+            start = System.nanoTime();
+            List<CaseRepresentation> expected = nativeEngine.findSimilarCases(target, k);
+            nativeNanos[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            List<CaseRepresentation> actual = otherEngine.findSimilarCases(target, k);
+            otherNanos[i] = System.nanoTime() - start;
+
+            agreement += overlap(expected, actual);
+            scoreRecall += nativeScoreRatio(nativeEngine, target, expected, actual);
+            for (int j = 0; j < Math.min(expected.size(), actual.size()); j++) {
+                // Scores at each rank must agree even where ties are ordered differently
+                maxScoreDifference = Math.max(maxScoreDifference,
+                        Math.abs(expected.get(j).getSimilarity() - actual.get(j).getSimilarity()));
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%d cases, %d queries, k=%d%n", cases.size(), queryCount, k);
+        System.out.printf(Locale.ROOT, "  load      native %6d ms   %s %6d ms%n",
+                nativeLoad / 1_000_000, label, otherLoad / 1_000_000);
+        report("native  ", nativeNanos);
+        report(String.format(Locale.ROOT, "%-8s", label), otherNanos);
+        if (mode == CBREngine.RetrievalMode.VECTOR) {
+            otherEngine.findSimilarCases(targets, k); // warm up the blocked kernel
+            start = System.nanoTime();
+            otherEngine.findSimilarCases(targets, k);
+            long batch = System.nanoTime() - start;
+            System.out.printf(Locale.ROOT, "  batch     %d queries in %.2f ms (%.2f ms per query)%n",
+                    queryCount, batch / 1e6, batch / 1e6 / Math.max(1, queryCount));
+        }
+        System.out.printf(Locale.ROOT, "  top-%d agreement %.3f, native score ratio %.3f, max score difference %.2e%n",
+                k, agreement / queryCount, scoreRecall / queryCount, maxScoreDifference);
+        System.out.println("  faster: " + (percentile(nativeNanos, 0.5) <= percentile(otherNanos, 0.5) ? "native" : label));
+    }
+
+    /**
+     * Sum of the native similarities of the actual top k over that of the native top k
+     */
+    private static double nativeScoreRatio(CBREngine nativeEngine, Movie target,
+                                           List<CaseRepresentation> expected, List<CaseRepresentation> actual) {
+        double best = 0;
+        for (CaseRepresentation caseRep : expected) {
+            best += caseRep.getSimilarity();
+        }
+        if (best == 0) {
+            return 1.0;
+        }
+        List<String> ids = new ArrayList<>(actual.size());
+        for (CaseRepresentation caseRep : actual) {
+            ids.add(caseRep.getId());
+        }
+        double got = 0;
+        for (CaseRepresentation caseRep : nativeEngine.scoreCases(target, ids)) {
+            got += caseRep.getSimilarity();
+        }
+        return got / best;
+    }
+
+    /**
+     * Copies of the movies with distinct URIs and titles until there are count cases
+     */
+    static List<Movie> replicate(List<Movie> movies, int count) {
+        List<Movie> cases = new ArrayList<>(count);
+        for (int i = 0; cases.size() < count && !movies.isEmpty(); i++) {
+            Movie source = movies.get(i % movies.size());
+            int copy = i / movies.size();
+            if (copy == 0) {
+                cases.add(source);
+                continue;
+            }
+            Movie movie = new Movie(source.getTitle() + " #" + copy);
+            movie.setUri(source.getUri() + "-" + copy);
+            movie.setYear(source.getYear());
+            movie.setRating(source.getRating());
+            movie.setCountry(source.getCountry());
+            movie.setGenres(source.getGenres());
+            movie.setDirectors(source.getDirectors());
+            movie.setActors(source.getActors());
+            cases.add(movie);
+        }
+        return cases;
+    }
+
+    private static double overlap(List<CaseRepresentation> expected, List<CaseRepresentation> actual) {
+        if (expected.isEmpty()) {
+            return actual.isEmpty() ? 1.0 : 0.0;
+        }
+        Set<String> ids = new HashSet<>();
+        for (CaseRepresentation caseRep : expected) {
+            ids.add(caseRep.getId());
+        }
+        int shared = 0;
+        for (CaseRepresentation caseRep : actual) {
+            if (ids.contains(caseRep.getId())) shared++;
+        }
+        return (double) shared / expected.size();
+    }
+
+    private static void report(String label, long[] nanos) {
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        System.out.printf(Locale.ROOT, "  %s  mean %7.2f ms  p50 %7.2f ms  p95 %7.2f ms%n", label,
+                total / 1e6 / Math.max(1, nanos.length), percentile(nanos, 0.5) / 1e6, percentile(nanos, 0.95) / 1e6);
+    }
+
+    private static long percentile(long[] values, double fraction) {
+        if (values.length == 0) {
+            return 0;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        return options;
+    }
+}
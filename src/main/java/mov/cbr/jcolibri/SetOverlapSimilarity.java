@@ -0,0 +1,45 @@
+package mov.cbr.jcolibri;
+
+import mov.cbr.SimilaritySpec;
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.LocalSimilarityFunction;
+
+import java.util.List;
+
+/**
+ * Local similarity of two lists by the overlap of their distinct values, as SimilarityCalculator
+ * compares genres, directors and actors; empty lists score 0
+ */
+public class SetOverlapSimilarity implements LocalSimilarityFunction {
+    private final SimilaritySpec.SetFunction function;
+
+    public SetOverlapSimilarity(SimilaritySpec.SetFunction function) {
+        this.function = function;
+    }
+
+    @Override
+    public double compute(Object caseValue, Object queryValue) {
+        List<?> values1 = (List<?>) queryValue;
+        List<?> values2 = (List<?>) caseValue;
+        if (values1 == null || values2 == null || values1.isEmpty() || values2.isEmpty()) {
+            return 0.0;
+        }
+        int distinct1 = 0;
+        int intersection = 0;
+        for (int i = 0; i < values1.size(); i++) {
+            Object value = values1.get(i);
+            if (values1.indexOf(value) < i) continue; // duplicate
+            distinct1++;
+            if (values2.contains(value)) intersection++;
+        }
+        int distinct2 = 0;
+        for (int i = 0; i < values2.size(); i++) {
+            if (values2.indexOf(values2.get(i)) == i) distinct2++;
+        }
+        return function.apply(intersection, distinct1, distinct2);
+    }
+
+    @Override
+    public boolean isApplicable(Object caseValue, Object queryValue) {
+        return (caseValue == null || caseValue instanceof List) && (queryValue == null || queryValue instanceof List);
+    }
+}
@@ -0,0 +1,19 @@
+package mov.cbr.jcolibri;
+
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.StandardGlobalSimilarityFunction;
+
+/**
+ * Weighted sum of the local similarities, as SimilarityCalculator combines them.
+ * jCOLIBRI's Average divides by the total weight, which differs when weights do not sum to 1.
+ */
+public class WeightedSum extends StandardGlobalSimilarityFunction {
+
+    @Override
+    public double computeSimilarity(double[] values, double[] weights, int count) {
+        double total = 0.0;
+        for (int i = 0; i < count; i++) {
+            total += values[i] * weights[i];
+        }
+        return total;
+    }
+}
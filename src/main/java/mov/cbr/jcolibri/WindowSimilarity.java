@@ -0,0 +1,36 @@
+package mov.cbr.jcolibri;
+
+import mov.cbr.SimilaritySpec;
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.LocalSimilarityFunction;
+
+/**
+ * Local similarity of two numbers fading out over a window, as SimilarityCalculator compares
+ * years and ratings; 0 marks a missing value and scores 0
+ */
+public class WindowSimilarity implements LocalSimilarityFunction {
+    private final SimilaritySpec.ScalarFunction function;
+    private final double window;
+
+    public WindowSimilarity(SimilaritySpec.ScalarFunction function, double window) {
+        this.function = function;
+        this.window = window;
+    }
+
+    @Override
+    public double compute(Object caseValue, Object queryValue) {
+        if (caseValue == null || queryValue == null) {
+            return 0.0;
+        }
+        double value1 = ((Number) queryValue).doubleValue();
+        double value2 = ((Number) caseValue).doubleValue();
+        if (value1 == 0.0 || value2 == 0.0) {
+            return 0.0;
+        }
+        return function.apply(Math.abs(value1 - value2), window);
+    }
+
+    @Override
+    public boolean isApplicable(Object caseValue, Object queryValue) {
+        return (caseValue == null || caseValue instanceof Number) && (queryValue == null || queryValue instanceof Number);
+    }
+}
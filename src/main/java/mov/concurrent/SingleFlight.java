@@ -0,0 +1,161 @@
+package mov.concurrent;
+
+import mov.metrics.Metrics;
+import mov.metrics.Trace;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical in-flight computations: callers asking for a key that is already being
+ * computed share that computation instead of starting their own.
+ *
+ * Each caller gets its own future. Cancelling it detaches only that caller; the shared
+ * computation is cancelled (and its thread interrupted) once every caller has cancelled.
+ * Computations run on a bounded executor, so a burst of distinct keys is rejected with
+ * RejectedExecutionException rather than queued without limit. A key leaves the in-flight
+ * table as soon as its computation finishes; results are not cached.
+ *
+ * The computation is traced on its own thread, and its phases are added to the Trace each caller
+ * had active when calling execute, whether it started the flight or joined it.
+ *
+ * @param <K> request key; must implement equals and hashCode
+ * @param <V> result, shared by every caller of the flight, so it should not be modified
+ */
+public class SingleFlight<K, V> {
+
+    /** One running computation and the number of callers still waiting for it */
+    private static class Flight<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        int waiters = 1; // guarded by the map entry (compute / computeIfPresent)
+        boolean abandoned;
+        volatile Future<?> task;
+        volatile Trace trace; // the computation's phases, set before result completes
+    }
+
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public SingleFlight(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Result of the computation for the key: joins the flight already running for it, or starts
+     * one on the executor
+     */
+    public CompletableFuture<V> execute(K key, Supplier<V> computation) {
+        AtomicReference<Flight<V>> started = new AtomicReference<>();
+        Flight<V> flight = inFlight.compute(key, (k, current) -> {
+            if (current != null && !current.abandoned && !current.result.isDone()) {
+                current.waiters++;
+                return current;
+            }
+            started.set(new Flight<>());
+            return started.get();
+        });
+
+        if (started.get() != null) {
+            flight.result.whenComplete((value, error) -> inFlight.remove(key, flight));
+            try {
+                flight.task = executor.submit(() -> {
+                    if (flight.result.isDone()) {
+                        return; // every caller cancelled while queued
+                    }
+                    // On a thread already tracing (a caller-runs executor) phases go to that trace directly
+                    boolean traced = Trace.current() == null;
+                    if (traced) Trace.begin();
+                    V value;
+                    try {
+                        value = computation.get();
+                    } catch (Throwable e) {
+                        if (traced) flight.trace = Trace.end();
+                        flight.result.completeExceptionally(e);
+                        return;
+                    }
+                    if (traced) flight.trace = Trace.end();
+                    flight.result.complete(value);
+                });
+            } catch (RejectedExecutionException e) {
+                flight.result.completeExceptionally(e);
+            }
+        } else {
+            Metrics.increment(Metrics.COALESCED_REQUESTS);
+        }
+
+        CompletableFuture<V> caller = new CompletableFuture<>();
+        Trace callerTrace = Trace.current();
+        flight.result.whenComplete((value, error) -> {
+            Trace computed = flight.trace;
+            if (callerTrace != null && computed != null) {
+                callerTrace.addAll(computed);
+            }
+            if (error != null) {
+                caller.completeExceptionally(error);
+            } else {
+                caller.complete(value);
+            }
+        });
+        caller.whenComplete((value, error) -> {
+            if (error instanceof CancellationException && caller.isCancelled()) {
+                leave(key, flight);
+            }
+        });
+        return caller;
+    }
+
+    /**
+     * A caller cancelled: drop the flight once nobody is waiting for it
+     */
+    private void leave(K key, Flight<V> flight) {
+        boolean[] last = new boolean[1];
+        inFlight.computeIfPresent(key, (k, current) -> {
+            if (current != flight) {
+                return current;
+            }
+            if (--current.waiters > 0) {
+                return current;
+            }
+            current.abandoned = true;
+            last[0] = true;
+            return null;
+        });
+        if (last[0]) {
+            flight.result.cancel(false);
+            Future<?> task = flight.task;
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Number of keys being computed right now
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Fixed pool of daemon threads with a bounded queue; submissions beyond it are rejected
+     */
+    public static ThreadPoolExecutor boundedExecutor(String name, int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
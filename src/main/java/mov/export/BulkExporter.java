@@ -0,0 +1,462 @@
+package mov.export;
+
+import mov.cbr.CBREngine;
+import mov.cbr.CaseRepresentation;
+import mov.metrics.Metrics;
+import mov.model.Movie;
+import mov.model.MovieField;
+import mov.model.Person;
+import mov.ontology.MovieCatalog;
+import mov.ontology.MovieQuery;
+import mov.ontology.MovieRecommender;
+import mov.ontology.OntologyManager;
+import mov.ontology.ResultPage;
+import mov.ontology.SortKey;
+import mov.server.JsonWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Streams every movie's similar-movie list, or every genre's ranked recommendations, to a file.
+ *
+ * Neighbour lists are computed for the case base in batches (scored together in VECTOR mode)
+ * and genre recommendations are read page by page with cursors; the next batch or page is
+ * computed on a background thread while the current one is written, and rows go straight into
+ * a RecordChannel, so memory is bounded by two batches and the channel buffer.
+ *
+ * Output is NDJSON, one object per line:
+ * <pre>
+ * {"uri":..., "title":..., "similar":[{"uri":..., "title":..., "similarity":0.83}, ...]}
+ * {"genre":"Drama", "rank":1, "movie":{"uri":..., "title":..., selected fields}}
+ * </pre>
+ * or BINARY: the bytes "MOVX", a version byte (1) and a kind byte (1 = neighbours, 2 = genre
+ * recommendations, followed by a varint bit mask of the MovieField ordinals written), then
+ * records of varints, big-endian floats and varint-length-prefixed UTF-8 strings:
+ * <pre>
+ * neighbours: uri, title, count, count x (uri, title, float similarity)
+ * genre:      genre, rank, uri, title, then per field in the mask, in enum order:
+ *             year, rating (float), rottenTomatoesScore, runtime (varints), country (string),
+ *             genres, directors, actors, writers, awards (count, count x string)
+ * </pre>
+ * Either can be gzipped.
+ */
+public class BulkExporter {
+
+    public enum Format {
+        NDJSON, BINARY
+    }
+
+    static final byte[] MAGIC = {'M', 'O', 'V', 'X'};
+    static final int VERSION = 1;
+    static final int KIND_NEIGHBOURS = 1;
+    static final int KIND_GENRE_RECOMMENDATIONS = 2;
+
+    /** Counts and timings for one export */
+    public static class Report {
+        private final long rows;
+        private final long bytes;
+        private final long fileBytes;
+        private final long computeNanos;
+        private final long ioNanos;
+        private final long totalNanos;
+
+        Report(long rows, long bytes, long fileBytes, long computeNanos, long ioNanos, long totalNanos) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.fileBytes = fileBytes;
+            this.computeNanos = computeNanos;
+            this.ioNanos = ioNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * Bytes written before compression
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getFileBytes() {
+            return fileBytes;
+        }
+
+        /**
+         * Time spent finding neighbours or recommendations (overlapping the writing)
+         */
+        public long getComputeMillis() {
+            return computeNanos / 1_000_000;
+        }
+
+        /**
+         * Time spent in channel writes and compression
+         */
+        public long getIoMillis() {
+            return ioNanos / 1_000_000;
+        }
+
+        public long getTotalMillis() {
+            return totalNanos / 1_000_000;
+        }
+
+        public double getRowsPerSecond() {
+            return totalNanos == 0 ? 0 : rows * 1e9 / totalNanos;
+        }
+
+        public double getMegabytesPerSecond() {
+            return totalNanos == 0 ? 0 : bytes * 1e9 / totalNanos / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d rows, %.1f MB (%.1f MB on disk) in %d ms: %.0f rows/s, %.1f MB/s; compute %d ms, I/O %d ms",
+                    rows, bytes / (1024.0 * 1024), fileBytes / (1024.0 * 1024), getTotalMillis(),
+                    getRowsPerSecond(), getMegabytesPerSecond(), getComputeMillis(), getIoMillis());
+        }
+    }
+
+    /** One batch of work, with the time it took to compute */
+    private static final class Batch<T> {
+        final T value;
+        final long nanos;
+
+        Batch(T value, long nanos) {
+            this.value = value;
+            this.nanos = nanos;
+        }
+    }
+
+    private final CBREngine cbrEngine;
+    private final MovieRecommender recommender;
+    private Format format = Format.NDJSON;
+    private boolean gzip;
+    private int batchSize = 256;
+    private int bufferBytes = 1 << 16;
+    private Set<MovieField> fields = MovieField.DEFAULT;
+
+    public BulkExporter(CBREngine cbrEngine, MovieRecommender recommender) {
+        this.cbrEngine = cbrEngine;
+        this.recommender = recommender;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Targets per neighbour batch and movies per recommendation page (default 256)
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Size of the output buffer (default 64 KB)
+     */
+    public void setBufferBytes(int bufferBytes) {
+        this.bufferBytes = Math.max(64, bufferBytes);
+    }
+
+    /**
+     * Movie attributes written in genre recommendation rows (default MovieField.DEFAULT)
+     */
+    public void setFields(Set<MovieField> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Write the k most similar cases of every case in the case base. The case ids are taken once
+     * at the start and walked in batches, so a concurrent change cannot skip a case or export it
+     * twice: a case removed meanwhile is left out, a replaced one is written as it is when its
+     * batch is read, and cases added after the start are not written.
+     */
+    public Report exportNeighbours(Path file, int k) throws IOException {
+        long start = System.nanoTime();
+        List<String> ids = cbrEngine.getCaseIds();
+        int count = ids.size();
+        long rows = 0;
+        long computeNanos = 0;
+        ExecutorService executor = newExecutor();
+        try (RecordChannel out = RecordChannel.open(file, gzip, bufferBytes)) {
+            header(out, KIND_NEIGHBOURS);
+            CompletableFuture<Batch<List<Movie>>> targets = async(executor,
+                    () -> cbrEngine.getCaseMovies(ids.subList(0, Math.min(count, batchSize))));
+            CompletableFuture<Batch<List<List<CaseRepresentation>>>> next = targets.thenApply(
+                    batch -> timed(() -> cbrEngine.findSimilarCases(batch.value, k)));
+            for (int from = 0; from < count; from += batchSize) {
+                List<Movie> batchTargets = join(targets).value;
+                Batch<List<List<CaseRepresentation>>> similar = join(next);
+                computeNanos += similar.nanos;
+                int nextFrom = from + batchSize;
+                if (nextFrom < count) {
+                    targets = async(executor, () -> cbrEngine.getCaseMovies(
+                            ids.subList(nextFrom, Math.min(count, nextFrom + batchSize))));
+                    next = targets.thenApply(batch -> timed(() -> cbrEngine.findSimilarCases(batch.value, k)));
+                }
+                for (int i = 0; i < batchTargets.size(); i++) {
+                    writeNeighbours(out, batchTargets.get(i), similar.value.get(i));
+                }
+                rows += batchTargets.size();
+            }
+            return finish(file, out, rows, computeNanos, start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Write each genre's recommendations by IMDb score, best first
+     *
+     * @param perGenre movies per genre (0 = all)
+     */
+    public Report exportGenreRecommendations(Path file, int perGenre) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        long computeNanos = 0;
+        ExecutorService executor = newExecutor();
+        try (RecordChannel out = RecordChannel.open(file, gzip, bufferBytes)) {
+            header(out, KIND_GENRE_RECOMMENDATIONS);
+            if (format == Format.BINARY) {
+                int mask = 0;
+                for (MovieField field : fields) {
+                    mask |= 1 << field.ordinal();
+                }
+                out.putVarint(mask);
+            }
+            for (String genre : recommender.getGenreNames()) {
+                int rank = 0;
+                CompletableFuture<Batch<ResultPage<Movie>>> next = async(executor, () -> page(genre, null, perGenre));
+                while (next != null) {
+                    Batch<ResultPage<Movie>> page = join(next);
+                    computeNanos += page.nanos;
+                    List<Movie> movies = page.value.getItems();
+                    int wanted = perGenre > 0 ? Math.min(movies.size(), perGenre - rank) : movies.size();
+                    String cursor = page.value.getNextCursor();
+                    next = cursor != null && (perGenre == 0 || rank + wanted < perGenre)
+                            ? async(executor, () -> page(genre, cursor, perGenre)) : null;
+                    for (int i = 0; i < wanted; i++) {
+                        writeRecommendation(out, genre, ++rank, movies.get(i));
+                    }
+                    rows += wanted;
+                }
+            }
+            return finish(file, out, rows, computeNanos, start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ResultPage<Movie> page(String genre, String cursor, int perGenre) {
+        MovieQuery query = new MovieQuery(SortKey.IMDB_SCORE, perGenre > 0 ? Math.min(batchSize, perGenre) : batchSize);
+        query.setGenre(genre);
+        query.setCursor(cursor);
+        query.setFields(fields);
+        return recommender.recommend(query);
+    }
+
+    private Report finish(Path file, RecordChannel out, long rows, long computeNanos, long start) throws IOException {
+        out.close();
+        long total = System.nanoTime() - start;
+        Metrics.record(Metrics.BULK_EXPORT, total);
+        Metrics.add(Metrics.ROWS_EXPORTED, rows);
+        return new Report(rows, out.bytes(), Files.size(file), computeNanos, out.ioNanos(), total);
+    }
+
+    private void header(RecordChannel out, int kind) throws IOException {
+        if (format == Format.BINARY) {
+            for (byte b : MAGIC) {
+                out.putByte(b);
+            }
+            out.putByte(VERSION);
+            out.putByte(kind);
+        }
+    }
+
+    private void writeNeighbours(RecordChannel out, Movie target, List<CaseRepresentation> similar) throws IOException {
+        if (format == Format.BINARY) {
+            out.putString(target.getUri());
+            out.putString(target.getTitle());
+            out.putVarint(similar.size());
+            for (CaseRepresentation caseRep : similar) {
+                out.putString(caseRep.getId());
+                out.putString(caseRep.getMovie().getTitle());
+                out.putFloat((float) caseRep.getSimilarity());
+            }
+            return;
+        }
+        JsonWriter json = new JsonWriter();
+        json.beginObject();
+        json.name("uri").value(target.getUri());
+        json.name("title").value(target.getTitle());
+        json.name("similar").beginArray();
+        for (CaseRepresentation caseRep : similar) {
+            json.beginObject();
+            json.name("uri").value(caseRep.getId());
+            json.name("title").value(caseRep.getMovie().getTitle());
+            json.name("similarity").value(caseRep.getSimilarity());
+            json.endObject();
+        }
+        json.endArray().endObject();
+        out.putUtf8(json.toString());
+        out.putByte('\n');
+    }
+
+    private void writeRecommendation(RecordChannel out, String genre, int rank, Movie movie) throws IOException {
+        if (format == Format.NDJSON) {
+            JsonWriter json = new JsonWriter().fields(fields);
+            json.beginObject();
+            json.name("genre").value(genre);
+            json.name("rank").value(rank);
+            json.name("movie").movie(movie);
+            json.endObject();
+            out.putUtf8(json.toString());
+            out.putByte('\n');
+            return;
+        }
+        out.putString(genre);
+        out.putVarint(rank);
+        out.putString(movie.getUri());
+        out.putString(movie.getTitle());
+        for (MovieField field : MovieField.values()) {
+            if (!fields.contains(field)) {
+                continue;
+            }
+            switch (field) {
+                case YEAR: out.putVarint(movie.getYear()); break;
+                case RATING: out.putFloat((float) movie.getRating()); break;
+                case ROTTEN_TOMATOES: out.putVarint(movie.getRottenTomatoesScore()); break;
+                case RUNTIME: out.putVarint(movie.getRuntime()); break;
+                case COUNTRY: out.putString(movie.getCountry()); break;
+                case GENRES: strings(out, movie.getGenres()); break;
+                case DIRECTORS: people(out, movie.getDirectors()); break;
+                case ACTORS: people(out, movie.getActors()); break;
+                case WRITERS: people(out, movie.getWriters()); break;
+                case AWARDS: strings(out, movie.getAwards()); break;
+            }
+        }
+    }
+
+    private static void strings(RecordChannel out, List<String> values) throws IOException {
+        out.putVarint(values.size());
+        for (String value : values) {
+            out.putString(value);
+        }
+    }
+
+    private static void people(RecordChannel out, List<Person> people) throws IOException {
+        out.putVarint(people.size());
+        for (Person person : people) {
+            out.putString(person.getName());
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mov-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static <T> CompletableFuture<Batch<T>> async(ExecutorService executor, Supplier<T> work) {
+        return CompletableFuture.supplyAsync(() -> timed(work), executor);
+    }
+
+    private static <T> Batch<T> timed(Supplier<T> work) {
+        long start = System.nanoTime();
+        T value = work.get();
+        return new Batch<>(value, System.nanoTime() - start);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Export from the ontology's catalog: neighbour lists (the default) or genre recommendations.
+     *
+     * Usage: BulkExporter --out FILE [--what neighbours|genres] [--format ndjson|binary] [--gzip]
+     *        [--k 10] [--per-genre 100] [--batch 256] [--fields year,genres,...] [--ontology FILE]
+     *
+     * The case base follows -Dmov.cbr.mode and -Dmov.cbr.storage as in the interactive menu.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        boolean gzip = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--gzip")) {
+                gzip = true;
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        String outFile = options.get("out");
+        if (outFile == null) {
+            throw new IllegalArgumentException("--out FILE is required");
+        }
+        String what = options.getOrDefault("what", "neighbours");
+
+        OntologyManager ontologyManager = new OntologyManager();
+        ontologyManager.loadOntology(options.getOrDefault("ontology", "src/main/resources/ontology/movies-instances.owl"));
+        MovieRecommender recommender = new MovieRecommender(ontologyManager);
+        recommender.setCatalog(MovieCatalog.build(ontologyManager));
+        CBREngine cbrEngine = new CBREngine();
+        if ("offheap".equalsIgnoreCase(System.getProperty("mov.cbr.storage"))) {
+            cbrEngine.setStorageMode(CBREngine.StorageMode.OFF_HEAP);
+        }
+        if ("jcolibri".equalsIgnoreCase(System.getProperty("mov.cbr.mode"))) {
+            cbrEngine.setRetrievalMode(CBREngine.RetrievalMode.JCOLIBRI);
+        } else if ("vector".equalsIgnoreCase(System.getProperty("mov.cbr.mode"))) {
+            cbrEngine.setRetrievalMode(CBREngine.RetrievalMode.VECTOR);
+        }
+        if (what.equals("neighbours")) {
+            cbrEngine.loadCases(recommender.getAllMovies());
+        }
+
+        BulkExporter exporter = new BulkExporter(cbrEngine, recommender);
+        exporter.setFormat(Format.valueOf(options.getOrDefault("format", "ndjson").toUpperCase(Locale.ROOT)));
+        exporter.setGzip(gzip);
+        exporter.setBatchSize(Integer.parseInt(options.getOrDefault("batch", "256")));
+        exporter.setFields(MovieField.parse(options.get("fields")));
+        Path file = Paths.get(outFile);
+        Report report;
+        if (what.equals("neighbours")) {
+            report = exporter.exportNeighbours(file, Integer.parseInt(options.getOrDefault("k", "10")));
+        } else if (what.equals("genres")) {
+            report = exporter.exportGenreRecommendations(file, Integer.parseInt(options.getOrDefault("per-genre", "100")));
+        } else {
+            throw new IllegalArgumentException("--what must be neighbours or genres: " + what);
+        }
+        System.out.println("Exported " + what + " to " + file + ": " + report);
+    }
+}
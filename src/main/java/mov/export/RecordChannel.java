@@ -0,0 +1,194 @@
+package mov.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Buffered output to a file channel, optionally through gzip. Values are encoded straight into
+ * one reusable buffer that is written out whenever it fills, so memory stays at the buffer size
+ * however much is exported. Integers are written big-endian or as unsigned LEB128 varints, and
+ * strings as UTF-8 (prefixed with their byte length in putString).
+ */
+final class RecordChannel implements Closeable {
+
+    private final FileChannel file;
+    private final WritableByteChannel out; // the file, or a gzip stream over it
+    private final ByteBuffer buffer;
+    private long bytes; // before compression
+    private long ioNanos;
+    private boolean closed;
+
+    private RecordChannel(FileChannel file, WritableByteChannel out, ByteBuffer buffer) {
+        this.file = file;
+        this.out = out;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create or truncate the file
+     */
+    static RecordChannel open(Path path, boolean gzip, int bufferBytes) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (!gzip) {
+            // Direct, so the channel writes from it without copying
+            return new RecordChannel(file, file, ByteBuffer.allocateDirect(bufferBytes));
+        }
+        WritableByteChannel compressed = Channels.newChannel(
+                new GZIPOutputStream(Channels.newOutputStream(file), bufferBytes));
+        return new RecordChannel(file, compressed, ByteBuffer.allocate(bufferBytes));
+    }
+
+    void putByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    void putFloat(float value) throws IOException {
+        ensure(4);
+        buffer.putFloat(value);
+    }
+
+    void putVarint(int value) throws IOException {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Byte length as a varint, then the UTF-8 bytes; null is written as the empty string
+     */
+    void putString(String value) throws IOException {
+        String text = value == null ? "" : value;
+        putVarint(utf8Length(text));
+        putUtf8(text);
+    }
+
+    /**
+     * The UTF-8 bytes alone (e.g. a JSON line)
+     */
+    void putUtf8(String text) throws IOException {
+        int length = utf8Length(text);
+        if (length > buffer.capacity()) {
+            flush();
+            ByteBuffer large = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            write(large);
+            bytes += length;
+            return;
+        }
+        ensure(length);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                // Lone surrogates become '?', as String.getBytes(UTF_8) does
+                if (Character.isSurrogate(c)) c = '?';
+                if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    private void ensure(int needed) throws IOException {
+        if (buffer.remaining() < needed) {
+            flush();
+        }
+    }
+
+    /**
+     * Write out whatever is buffered
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        bytes += buffer.remaining();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        long start = System.nanoTime();
+        while (data.hasRemaining()) {
+            out.write(data);
+        }
+        ioNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Bytes written so far, before compression
+     */
+    long bytes() {
+        return bytes + buffer.position();
+    }
+
+    /**
+     * Time spent in channel writes (and compression), excluding encoding into the buffer
+     */
+    long ioNanos() {
+        return ioNanos;
+    }
+
+    /**
+     * Flush and close; closing again does nothing
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            long start = System.nanoTime();
+            out.close(); // finishes the gzip stream, which closes the file
+            ioNanos += System.nanoTime() - start;
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package mov.fuzzy;
 
+import mov.metrics.Metrics;
+import mov.model.Movie;
 import net.sourceforge.jFuzzyLogic.FIS;
 import net.sourceforge.jFuzzyLogic.rule.Variable;
 
@@ -9,10 +11,17 @@ public class FuzzyQualityEvaluator {
     
     private FIS fis;
     
+    /**
+     * True once a fuzzy system has been loaded successfully
+     */
+    public synchronized boolean isLoaded() {
+        return fis != null;
+    }
+    
     /**
      * Load fuzzy logic configuration from FCL file
      */
-    public void loadFuzzySystem(String fclFilePath) {
+    public synchronized void loadFuzzySystem(String fclFilePath) {
         try {
             fis = FIS.load(fclFilePath, true);
             
@@ -29,7 +38,8 @@ public class FuzzyQualityEvaluator {
     }
     
     /**
-     * Evaluate movie quality based on multiple criteria
+     * Evaluate movie quality based on multiple criteria.
+     * Synchronized because the FIS keeps its inputs and output as shared state.
      * 
      * @param directing Score for directing (0-10)
      * @param acting Score for acting (0-10)
@@ -38,13 +48,15 @@ public class FuzzyQualityEvaluator {
      * @param culturalSignificance Score for cultural significance (0-10)
      * @return Quality rating (0-10)
      */
-    public double evaluateQuality(double directing, double acting, double screenplay, 
+    public synchronized double evaluateQuality(double directing, double acting, double screenplay, 
                                    double visualEffects, double culturalSignificance) {
         
         if (fis == null) {
             throw new IllegalStateException("Fuzzy system not loaded. Call loadFuzzySystem first.");
         }
         
+        long start = Metrics.start();
+        
         // Set input variables
         fis.setVariable("directing", directing);
         fis.setVariable("acting", acting);
@@ -58,9 +70,29 @@ public class FuzzyQualityEvaluator {
         // Get output variable
         Variable quality = fis.getVariable("quality");
         
+        Metrics.stop(Metrics.FUZZY_EVALUATE, start);
         return quality.getValue();
     }
     
+    /**
+     * Evaluate a catalog movie, which has no per-criterion ratings, from the scores it does have:
+     * directing and acting follow the IMDb score, screenplay the Rotten Tomatoes score, visual
+     * effects their mean, and cultural significance grows with awards won and critical reception.
+     * 
+     * @return Quality rating (0-10), or NaN if the movie has neither score
+     */
+    public double evaluateMovie(Movie movie) {
+        double audience = movie.getRating();
+        double critics = movie.getRottenTomatoesScore() / 10.0;
+        if (audience <= 0 && critics <= 0) {
+            return Double.NaN;
+        }
+        if (audience <= 0) audience = critics;
+        if (critics <= 0) critics = audience;
+        double significance = Math.min(10.0, 2.5 * movie.getAwards().size() + critics / 2);
+        return evaluateQuality(audience, audience, critics, (audience + critics) / 2, significance);
+    }
+    
     /**
      * Get quality as linguistic term (Bad, Good, Excellent)
      */
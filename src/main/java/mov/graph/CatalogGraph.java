@@ -0,0 +1,536 @@
+package mov.graph;
+
+import mov.ontology.OntologyManager;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable compressed-sparse-row graph of movies and the resources they link to.
+ *
+ * Nodes get dense int ids, grouped by kind so that each kind occupies one contiguous id range.
+ * Every edge type is stored twice as CSR arrays (movie to resource and resource to movie), with
+ * rows indexed relative to the start of the source kind's range and neighbours sorted by id.
+ * Neighbour access is an array slice, and the whole graph costs a few ints per edge instead
+ * of the Movie/Person objects, lists and name strings of the equivalent object graph.
+ */
+public class CatalogGraph {
+
+    public enum NodeKind {
+        MOVIE("title"),
+        PERSON("personName"),
+        GENRE("genreName"),
+        STUDIO("studioName"),
+        COUNTRY("countryName"),
+        LANGUAGE("languageName"),
+        FRANCHISE("franchiseName"),
+        AWARD("awardName");
+
+        private final String nameProperty;
+
+        NodeKind(String nameProperty) {
+            this.nameProperty = nameProperty;
+        }
+
+        public String getNamePropertyURI() {
+            return OntologyManager.MOVIE_NS + nameProperty;
+        }
+    }
+
+    public enum EdgeType {
+        ACTOR("hasActor", NodeKind.PERSON),
+        DIRECTOR("hasDirector", NodeKind.PERSON),
+        WRITER("hasWriter", NodeKind.PERSON),
+        PRODUCER("hasProducer", NodeKind.PERSON),
+        GENRE("hasGenre", NodeKind.GENRE),
+        COUNTRY("madeIn", NodeKind.COUNTRY),
+        LANGUAGE("hasLanguage", NodeKind.LANGUAGE),
+        STUDIO("producedBy", NodeKind.STUDIO),
+        FRANCHISE("partOfFranchise", NodeKind.FRANCHISE),
+        AWARD("wonAward", NodeKind.AWARD),
+        SEQUEL("hasSequel", NodeKind.MOVIE),
+        PREQUEL("hasPrequel", NodeKind.MOVIE);
+
+        private final String property;
+        private final NodeKind target;
+
+        EdgeType(String property, NodeKind target) {
+            this.property = property;
+            this.target = target;
+        }
+
+        public String getPropertyURI() {
+            return OntologyManager.MOVIE_NS + property;
+        }
+
+        /** Every edge type starts at a movie */
+        public NodeKind getSourceKind() {
+            return NodeKind.MOVIE;
+        }
+
+        public NodeKind getTargetKind() {
+            return target;
+        }
+    }
+
+    /**
+     * Counts of nodes reached through shared neighbours, highest count first
+     */
+    public static class CoOccurrences {
+        private final int[] nodes;
+        private final int[] counts;
+
+        CoOccurrences(int[] nodes, int[] counts) {
+            this.nodes = nodes;
+            this.counts = counts;
+        }
+
+        public int size() {
+            return nodes.length;
+        }
+
+        public int node(int i) {
+            return nodes[i];
+        }
+
+        public int count(int i) {
+            return counts[i];
+        }
+    }
+
+    /** One direction of one edge type; row r belongs to node base + r */
+    static final class Csr {
+        final int base;
+        final int[] offsets;
+        final int[] targets;
+
+        Csr(int base, int[] offsets, int[] targets) {
+            this.base = base;
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        int rows() {
+            return offsets.length - 1;
+        }
+    }
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private final String[] uris;
+    private final String[] names;
+    private final Map<String, Integer> idByUri;
+    private final int[] kindStart; // ids of kind k are [kindStart[k], kindStart[k + 1])
+    final Csr[] forward;  // by EdgeType ordinal
+    final Csr[] backward; // by EdgeType ordinal
+    private final int skippedEdges;
+
+    private CatalogGraph(String[] uris, String[] names, Map<String, Integer> idByUri, int[] kindStart,
+                         Csr[] forward, Csr[] backward, int skippedEdges) {
+        this.uris = uris;
+        this.names = names;
+        this.idByUri = idByUri;
+        this.kindStart = kindStart;
+        this.forward = forward;
+        this.backward = backward;
+        this.skippedEdges = skippedEdges;
+    }
+
+    /**
+     * Build the graph from every movie in the model and its links of every edge type
+     */
+    public static CatalogGraph build(Model model) {
+        long start = System.currentTimeMillis();
+        Builder builder = new Builder();
+        ResIterator movies = model.listResourcesWithProperty(RDF.type,
+                model.createResource(OntologyManager.MOVIE_NS + "Movie"));
+        try {
+            while (movies.hasNext()) {
+                Resource movie = movies.nextResource();
+                if (movie.isURIResource()) builder.node(movie.getURI(), NodeKind.MOVIE);
+            }
+        } finally {
+            movies.close();
+        }
+        for (EdgeType type : EdgeType.values()) {
+            StmtIterator it = model.listStatements(null, model.createProperty(type.getPropertyURI()), (RDFNode) null);
+            try {
+                while (it.hasNext()) {
+                    Statement statement = it.nextStatement();
+                    if (statement.getSubject().isURIResource() && statement.getObject().isURIResource()) {
+                        builder.edge(type, statement.getSubject().getURI(), statement.getResource().getURI());
+                    }
+                }
+            } finally {
+                it.close();
+            }
+        }
+        CatalogGraph graph = builder.build(model);
+        System.out.println("Catalog graph built: " + graph.nodeCount() + " nodes, " + graph.edgeCount() +
+                " edges, ~" + graph.estimatedHeapBytes() / 1024 + " KB in " +
+                (System.currentTimeMillis() - start) + " ms");
+        return graph;
+    }
+
+    // Nodes
+
+    public int nodeCount() {
+        return uris.length;
+    }
+
+    public int nodeCount(NodeKind kind) {
+        return kindStart[kind.ordinal() + 1] - kindStart[kind.ordinal()];
+    }
+
+    /**
+     * First id of the kind's contiguous id range
+     */
+    public int firstId(NodeKind kind) {
+        return kindStart[kind.ordinal()];
+    }
+
+    /**
+     * @return the node id, or -1 if the URI is not in the graph
+     */
+    public int id(String uri) {
+        Integer id = idByUri.get(uri);
+        return id == null ? -1 : id;
+    }
+
+    public String uri(int node) {
+        return uris[node];
+    }
+
+    /**
+     * Display name (title, person name, genre name...), or null if the resource has none
+     */
+    public String name(int node) {
+        return names[node];
+    }
+
+    public NodeKind kind(int node) {
+        for (int k = 0; k < KINDS.length; k++) {
+            if (node < kindStart[k + 1]) return KINDS[k];
+        }
+        throw new IndexOutOfBoundsException("No node " + node);
+    }
+
+    // Edges
+
+    public int edgeCount() {
+        int edges = 0;
+        for (Csr csr : forward) {
+            edges += csr.targets.length;
+        }
+        return edges;
+    }
+
+    public int edgeCount(EdgeType type) {
+        return forward[type.ordinal()].targets.length;
+    }
+
+    /**
+     * Number of edges of the type leaving the node (0 unless the node is a movie)
+     */
+    public int outDegree(int node, EdgeType type) {
+        return degree(forward[type.ordinal()], node);
+    }
+
+    /**
+     * Number of edges of the type arriving at the node (0 unless the node is of the target kind)
+     */
+    public int inDegree(int node, EdgeType type) {
+        return degree(backward[type.ordinal()], node);
+    }
+
+    /**
+     * The i-th target of the node's outgoing edges of the type, in id order
+     */
+    public int out(int node, EdgeType type, int i) {
+        Csr csr = forward[type.ordinal()];
+        return csr.targets[csr.offsets[node - csr.base] + i];
+    }
+
+    /**
+     * The i-th source of the node's incoming edges of the type, in id order
+     */
+    public int in(int node, EdgeType type, int i) {
+        Csr csr = backward[type.ordinal()];
+        return csr.targets[csr.offsets[node - csr.base] + i];
+    }
+
+    public void forEachOut(int node, EdgeType type, IntConsumer action) {
+        forEach(forward[type.ordinal()], node, action);
+    }
+
+    public void forEachIn(int node, EdgeType type, IntConsumer action) {
+        forEach(backward[type.ordinal()], node, action);
+    }
+
+    /**
+     * Copy of the node's outgoing neighbours of the type
+     */
+    public int[] outNeighbours(int node, EdgeType type) {
+        return slice(forward[type.ordinal()], node);
+    }
+
+    public int[] inNeighbours(int node, EdgeType type) {
+        return slice(backward[type.ordinal()], node);
+    }
+
+    /**
+     * Nodes sharing a neighbour of the given type with this node, counted per shared neighbour:
+     * for a movie, the other movies with a common actor (genre, studio...); for a person (genre,
+     * studio...), the others linked to the same movies.
+     */
+    public CoOccurrences coOccurrences(int node, EdgeType type) {
+        return coOccurrences(node, type, type, kind(node) == NodeKind.MOVIE);
+    }
+
+    /**
+     * Resources of type 'other' on the movies that this resource is linked to through 'via',
+     * counted per movie. E.g. (actor, ACTOR, DIRECTOR) gives the directors the actor worked with.
+     */
+    public CoOccurrences coOccurrences(int node, EdgeType via, EdgeType other) {
+        return coOccurrences(node, via, other, false);
+    }
+
+    private CoOccurrences coOccurrences(int node, EdgeType via, EdgeType other, boolean fromMovie) {
+        // Two hops: node -> middle -> reached, counting reached nodes in a dense array over their kind
+        Csr first = fromMovie ? forward[via.ordinal()] : backward[via.ordinal()];
+        Csr second = fromMovie ? backward[other.ordinal()] : forward[other.ordinal()];
+        NodeKind reachedKind = fromMovie ? NodeKind.MOVIE : other.getTargetKind();
+        int base = kindStart[reachedKind.ordinal()];
+        int[] counts = new int[nodeCount(reachedKind)];
+        int[] touched = new int[16];
+        int distinct = 0;
+        int row = node - first.base;
+        if (row < 0 || row >= first.rows()) {
+            return new CoOccurrences(new int[0], new int[0]);
+        }
+        for (int e = first.offsets[row]; e < first.offsets[row + 1]; e++) {
+            int middle = first.targets[e] - second.base;
+            for (int f = second.offsets[middle]; f < second.offsets[middle + 1]; f++) {
+                int reached = second.targets[f];
+                if (reached == node) continue;
+                if (counts[reached - base]++ == 0) {
+                    if (distinct == touched.length) touched = Arrays.copyOf(touched, distinct * 2);
+                    touched[distinct++] = reached;
+                }
+            }
+        }
+        Integer[] order = new Integer[distinct];
+        for (int i = 0; i < distinct; i++) {
+            order[i] = touched[i];
+        }
+        Arrays.sort(order, (a, b) -> counts[a - base] != counts[b - base]
+                ? Integer.compare(counts[b - base], counts[a - base]) : Integer.compare(a, b));
+        int[] nodes = new int[distinct];
+        int[] sorted = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            nodes[i] = order[i];
+            sorted[i] = counts[order[i] - base];
+        }
+        return new CoOccurrences(nodes, sorted);
+    }
+
+    // Footprint
+
+    /**
+     * Approximate heap used by the graph: the primitive arrays plus the URI lookup table and strings
+     */
+    public long estimatedHeapBytes() {
+        long bytes = 0;
+        for (Csr[] direction : new Csr[][]{forward, backward}) {
+            for (Csr csr : direction) {
+                bytes += arrayBytes(4, csr.offsets.length) + arrayBytes(4, csr.targets.length) + 24;
+            }
+        }
+        bytes += arrayBytes(4, uris.length) * 2; // uris and names reference arrays
+        for (int i = 0; i < uris.length; i++) {
+            bytes += stringBytes(uris[i]) + (names[i] == null ? 0 : stringBytes(names[i]));
+            bytes += 48; // HashMap node plus boxed Integer
+        }
+        int table = Integer.highestOneBit(Math.max(1, uris.length * 4 / 3)) * 2; // HashMap table at load 0.75
+        return bytes + arrayBytes(4, table);
+    }
+
+    /**
+     * Heap the same relations take as Movie/Person objects with string names: one object plus
+     * backing list per movie relation, one Person object per person edge and one String per
+     * genre/country name, as the Movie model stores them
+     */
+    public long estimatedObjectGraphBytes() {
+        long bytes = 0;
+        for (int movie = firstId(NodeKind.MOVIE); movie < firstId(NodeKind.MOVIE) + nodeCount(NodeKind.MOVIE); movie++) {
+            bytes += 72 + stringBytes(uris[movie]) + (names[movie] == null ? 0 : stringBytes(names[movie]));
+            for (EdgeType type : EdgeType.values()) {
+                int degree = outDegree(movie, type);
+                bytes += 40 + arrayBytes(4, Math.max(10, degree)); // ArrayList and its array
+                for (int i = 0; i < degree; i++) {
+                    int target = out(movie, type, i);
+                    String name = names[target] == null ? "" : names[target];
+                    bytes += type.getTargetKind() == NodeKind.PERSON
+                            ? 40 + stringBytes(name) + stringBytes(uris[target]) + 80 // Person and its lists
+                            : stringBytes(name);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Edges whose endpoint had already been seen as a different kind of node, and were left out
+     */
+    public int getSkippedEdges() {
+        return skippedEdges;
+    }
+
+    private static long arrayBytes(int elementBytes, int length) {
+        return 16 + (long) elementBytes * length;
+    }
+
+    private static long stringBytes(String s) {
+        return 24 + arrayBytes(1, s.length()); // compact Latin-1 strings
+    }
+
+    private static int degree(Csr csr, int node) {
+        int row = node - csr.base;
+        return row < 0 || row >= csr.rows() ? 0 : csr.offsets[row + 1] - csr.offsets[row];
+    }
+
+    private static void forEach(Csr csr, int node, IntConsumer action) {
+        int row = node - csr.base;
+        if (row < 0 || row >= csr.rows()) return;
+        for (int e = csr.offsets[row]; e < csr.offsets[row + 1]; e++) {
+            action.accept(csr.targets[e]);
+        }
+    }
+
+    private static int[] slice(Csr csr, int node) {
+        int row = node - csr.base;
+        if (row < 0 || row >= csr.rows()) return new int[0];
+        return Arrays.copyOfRange(csr.targets, csr.offsets[row], csr.offsets[row + 1]);
+    }
+
+    /**
+     * Collects nodes and edges under provisional ids, then renumbers by kind and packs the CSR arrays
+     */
+    private static class Builder {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> uris = new ArrayList<>();
+        byte[] kinds = new byte[1024];
+        final Map<EdgeType, int[]> edges = new EnumMap<>(EdgeType.class); // interleaved source, target
+        final int[] edgeCounts = new int[EdgeType.values().length];
+        int skipped;
+
+        int node(String uri, NodeKind kind) {
+            Integer id = ids.get(uri);
+            if (id != null) {
+                return kinds[id] == kind.ordinal() ? id : -1;
+            }
+            id = uris.size();
+            ids.put(uri, id);
+            uris.add(uri);
+            if (id == kinds.length) kinds = Arrays.copyOf(kinds, id * 2);
+            kinds[id] = (byte) kind.ordinal();
+            return id;
+        }
+
+        void edge(EdgeType type, String sourceUri, String targetUri) {
+            int source = node(sourceUri, type.getSourceKind());
+            int target = node(targetUri, type.getTargetKind());
+            if (source < 0 || target < 0) {
+                skipped++;
+                return;
+            }
+            int[] pairs = edges.computeIfAbsent(type, t -> new int[64]);
+            int n = edgeCounts[type.ordinal()];
+            if (2 * n + 2 > pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                edges.put(type, pairs);
+            }
+            pairs[2 * n] = source;
+            pairs[2 * n + 1] = target;
+            edgeCounts[type.ordinal()] = n + 1;
+        }
+
+        CatalogGraph build(Model model) {
+            int n = uris.size();
+            NodeKind[] kindValues = NodeKind.values();
+            int[] kindStart = new int[kindValues.length + 1];
+            for (int i = 0; i < n; i++) {
+                kindStart[kinds[i] + 1]++;
+            }
+            for (int k = 0; k < kindValues.length; k++) {
+                kindStart[k + 1] += kindStart[k];
+            }
+            // Stable renumbering by kind
+            int[] next = Arrays.copyOf(kindStart, kindValues.length);
+            int[] renumber = new int[n];
+            String[] sortedUris = new String[n];
+            String[] names = new String[n];
+            Map<String, Integer> idByUri = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                int id = next[kinds[i]]++;
+                renumber[i] = id;
+                sortedUris[id] = uris.get(i);
+                idByUri.put(uris.get(i), id);
+                Statement name = model.createResource(uris.get(i))
+                        .getProperty(model.createProperty(kindValues[kinds[i]].getNamePropertyURI()));
+                names[id] = name != null && name.getObject().isLiteral() ? name.getString() : null;
+            }
+
+            EdgeType[] types = EdgeType.values();
+            Csr[] forward = new Csr[types.length];
+            Csr[] backward = new Csr[types.length];
+            for (EdgeType type : types) {
+                int count = edgeCounts[type.ordinal()];
+                int[] pairs = edges.getOrDefault(type, new int[0]);
+                int[] sources = new int[count];
+                int[] targets = new int[count];
+                for (int e = 0; e < count; e++) {
+                    sources[e] = renumber[pairs[2 * e]];
+                    targets[e] = renumber[pairs[2 * e + 1]];
+                }
+                forward[type.ordinal()] = pack(sources, targets, kindStart, type.getSourceKind());
+                backward[type.ordinal()] = pack(targets, sources, kindStart, type.getTargetKind());
+            }
+            return new CatalogGraph(sortedUris, names, idByUri, kindStart, forward, backward, skipped);
+        }
+
+        /** Counting sort of (row, column) pairs into CSR over the row kind's id range, rows sorted */
+        private static Csr pack(int[] rows, int[] columns, int[] kindStart, NodeKind rowKind) {
+            int base = kindStart[rowKind.ordinal()];
+            int size = kindStart[rowKind.ordinal() + 1] - base;
+            int[] offsets = new int[size + 1];
+            for (int row : rows) {
+                offsets[row - base + 1]++;
+            }
+            for (int r = 0; r < size; r++) {
+                offsets[r + 1] += offsets[r];
+            }
+            int[] cursor = Arrays.copyOf(offsets, size);
+            int[] targets = new int[rows.length];
+            for (int e = 0; e < rows.length; e++) {
+                targets[cursor[rows[e] - base]++] = columns[e];
+            }
+            for (int r = 0; r < size; r++) {
+                Arrays.sort(targets, offsets[r], offsets[r + 1]);
+            }
+            return new Csr(base, offsets, targets);
+        }
+    }
+}
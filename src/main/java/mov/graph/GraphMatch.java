@@ -0,0 +1,29 @@
+package mov.graph;
+
+import mov.model.Movie;
+
+/**
+ * A movie reached by graph traversal, with its personalised PageRank score
+ */
+public class GraphMatch {
+    private final Movie movie;
+    private final double score;
+
+    public GraphMatch(Movie movie, double score) {
+        this.movie = movie;
+        this.score = score;
+    }
+
+    public Movie getMovie() {
+        return movie;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "GraphMatch [movie=" + movie.getTitle() + ", score=" + String.format("%.5f", score) + "]";
+    }
+}
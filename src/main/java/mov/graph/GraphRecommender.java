@@ -0,0 +1,459 @@
+package mov.graph;
+
+import mov.graph.CatalogGraph.EdgeType;
+import mov.metrics.Metrics;
+import mov.model.Movie;
+import mov.ontology.MovieRecommender;
+import mov.ontology.OntologyChangeEvent;
+import mov.ontology.OntologyChangeListener;
+import mov.ontology.OntologyManager;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.shared.Lock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recommends movies by walking the ontology graph: sequel/prequel chains, franchises,
+ * producers, studios, awards and the actor/director neighbourhoods around the seed movies.
+ *
+ * The walk runs over a CatalogGraph with a weight per edge type, and ranks movies with a
+ * personalised PageRank computed by local push: only nodes whose residual is worth
+ * propagating are visited, and the per-node arrays are pooled per thread and cleared node by
+ * node, so cost depends on the seeds' neighbourhood rather than the size of the graph; the
+ * traversal stops at the time budget with the best estimate so far.
+ *
+ * Ontology edits rebuild the graph on a background thread; queries keep walking the previous
+ * snapshot until the new one is published, so a rebuild never counts against a query's budget.
+ */
+public class GraphRecommender implements OntologyChangeListener {
+
+    /** Graph plus the weighted degree of every node under the current weights */
+    private static class Snapshot {
+        final CatalogGraph graph;
+        final float[] weights; // by EdgeType ordinal
+        final double[] weightedDegree;
+
+        Snapshot(CatalogGraph graph, float[] weights) {
+            this.graph = graph;
+            this.weights = weights;
+            this.weightedDegree = new double[graph.nodeCount()];
+            for (EdgeType type : EdgeType.values()) {
+                float w = weights[type.ordinal()];
+                if (w <= 0) continue;
+                addDegrees(graph.forward[type.ordinal()], w);
+                addDegrees(graph.backward[type.ordinal()], w);
+            }
+        }
+
+        private void addDegrees(CatalogGraph.Csr csr, float w) {
+            for (int row = 0; row < csr.rows(); row++) {
+                weightedDegree[csr.base + row] += w * (csr.offsets[row + 1] - csr.offsets[row]);
+            }
+        }
+    }
+
+    private final OntologyManager ontologyManager;
+    private final MovieRecommender movieRecommender;
+    private final Map<EdgeType, Double> weights = new EnumMap<>(EdgeType.class);
+    private volatile Snapshot snapshot;
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private ExecutorService rebuilder; // created on the first edit
+    private final AtomicLong builds = new AtomicLong();
+    private long publishedGeneration; // guarded by this
+    private double teleport = 0.15; // PageRank restart probability
+    private double epsilon = 1e-7; // residual per unit of weighted degree below which a node is not pushed
+    private long timeBudgetMillis = Long.getLong("mov.graph.timeBudgetMillis", 50L);
+
+    public GraphRecommender(OntologyManager ontologyManager, MovieRecommender movieRecommender) {
+        this.ontologyManager = ontologyManager;
+        this.movieRecommender = movieRecommender;
+        weights.put(EdgeType.SEQUEL, 1.0);
+        weights.put(EdgeType.PREQUEL, 1.0);
+        weights.put(EdgeType.FRANCHISE, 0.9);
+        weights.put(EdgeType.DIRECTOR, 0.6);
+        weights.put(EdgeType.PRODUCER, 0.5);
+        weights.put(EdgeType.ACTOR, 0.4);
+        weights.put(EdgeType.WRITER, 0.4);
+        weights.put(EdgeType.STUDIO, 0.3);
+        weights.put(EdgeType.AWARD, 0.15);
+        weights.put(EdgeType.GENRE, 0.0); // genres, countries and languages are too broad to walk
+        weights.put(EdgeType.COUNTRY, 0.0);
+        weights.put(EdgeType.LANGUAGE, 0.0);
+    }
+
+    /**
+     * Build the graph from the current Jena model and subscribe it to the change feed
+     */
+    public static GraphRecommender build(OntologyManager ontologyManager, MovieRecommender movieRecommender) {
+        GraphRecommender recommender = new GraphRecommender(ontologyManager, movieRecommender);
+        recommender.rebuild();
+        ontologyManager.addChangeListener(recommender);
+        return recommender;
+    }
+
+    /**
+     * Re-read the graph from the model on the calling thread, holding the model's read lock
+     * so edits wait until the scan is done
+     */
+    public void rebuild() {
+        long generation = builds.incrementAndGet();
+        Model model = ontologyManager.getJenaModel();
+        CatalogGraph graph;
+        model.enterCriticalSection(Lock.READ);
+        try {
+            graph = CatalogGraph.build(model);
+        } finally {
+            model.leaveCriticalSection();
+        }
+        synchronized (this) {
+            // A build that read the model earlier but finished later must not replace a newer one
+            if (generation > publishedGeneration) {
+                snapshot = new Snapshot(graph, currentWeights());
+                publishedGeneration = generation;
+            }
+        }
+    }
+
+    /**
+     * The graph the recommender currently walks
+     */
+    public CatalogGraph getGraph() {
+        return current().graph;
+    }
+
+    /**
+     * Any edit may add or remove links: queue a background rebuild. Edits arriving while one is
+     * queued share it; edits during a rebuild queue one more, so the last edit is always seen.
+     */
+    @Override
+    public void ontologyChanged(OntologyChangeEvent event) {
+        if (!rebuildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        rebuilder().execute(() -> {
+            rebuildQueued.set(false); // before reading the model, so later edits queue again
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                System.err.println("Graph rebuild failed, keeping the previous graph: " + e.getMessage());
+            }
+        });
+    }
+
+    private synchronized ExecutorService rebuilder() {
+        if (rebuilder == null) {
+            rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mov-graph");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return rebuilder;
+    }
+
+    /**
+     * Movies most related to the given one, best first
+     */
+    public List<GraphMatch> recommend(String movieUri, int k) {
+        return recommend(Collections.singletonList(movieUri), k, timeBudgetMillis);
+    }
+
+    public List<GraphMatch> recommend(Collection<String> seedUris, int k) {
+        return recommend(seedUris, k, timeBudgetMillis);
+    }
+
+    /**
+     * Movies most related to the seed movies (which are excluded), ranked by personalised PageRank.
+     * The traversal stops when the remaining residual is negligible or the budget is spent.
+     */
+    public List<GraphMatch> recommend(Collection<String> seedUris, int k, long budgetMillis) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        Snapshot current = current();
+        CatalogGraph graph = current.graph;
+        Workspace work = WORKSPACE.get();
+        work.reset(graph.nodeCount());
+        Map<String, Double> scores = new LinkedHashMap<>();
+        long start;
+        try {
+            int seedCount = 0;
+            for (String uri : seedUris) {
+                int id = graph.id(uri);
+                if (id >= 0 && !work.seed[id]) {
+                    work.seed[id] = true;
+                    work.touch(id);
+                    seedCount++;
+                }
+            }
+            if (seedCount == 0) {
+                return new ArrayList<>();
+            }
+
+            start = Metrics.start();
+            personalisedPageRank(current, work, seedCount, budgetMillis);
+            double[] estimate = work.estimate;
+
+            // Top k movie nodes, worst kept one at the head
+            PriorityQueue<Integer> top = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(estimate[a], estimate[b]));
+            for (int i = 0; i < work.visitedCount; i++) {
+                int node = work.visited[i];
+                if (graph.kind(node) != CatalogGraph.NodeKind.MOVIE || work.seed[node]) continue;
+                if (top.size() < k) {
+                    top.add(node);
+                } else if (estimate[node] > estimate[top.peek()]) {
+                    top.poll();
+                    top.add(node);
+                }
+            }
+            List<Integer> ranked = new ArrayList<>(top);
+            ranked.sort((a, b) -> Double.compare(estimate[b], estimate[a]));
+            for (int node : ranked) {
+                scores.put(graph.uri(node), estimate[node]);
+            }
+        } finally {
+            work.clear();
+        }
+
+        List<GraphMatch> matches = new ArrayList<>();
+        Map<String, Movie> movies = new HashMap<>();
+        for (Movie movie : movieRecommender.getMoviesByUris(scores.keySet())) {
+            movies.put(movie.getUri(), movie);
+        }
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            Movie movie = movies.get(entry.getKey());
+            if (movie != null) matches.add(new GraphMatch(movie, entry.getValue()));
+        }
+        Metrics.stop(Metrics.GRAPH_RECOMMEND, start);
+        return matches;
+    }
+
+    /**
+     * Per-thread arrays over all nodes for one query: seeds, PageRank estimates and residuals,
+     * with the nodes that received an estimate (in first-visit order) and those given a residual.
+     * They are zeroed after each query through those lists, so a query only pays for the nodes
+     * it reached; the arrays are reallocated only when the graph outgrows them.
+     */
+    private static class Workspace {
+        boolean[] seed = new boolean[0];
+        double[] estimate = new double[0];
+        double[] residual = new double[0];
+        int[] visited = new int[64];
+        int visitedCount;
+        int[] touched = new int[64]; // may repeat a node whose residual was pushed and refilled
+        int touchedCount;
+
+        void reset(int nodes) {
+            if (seed.length < nodes) {
+                seed = new boolean[nodes];
+                estimate = new double[nodes];
+                residual = new double[nodes];
+            }
+        }
+
+        void add(int node, double amount) {
+            if (estimate[node] == 0) {
+                if (visitedCount == visited.length) visited = Arrays.copyOf(visited, visitedCount * 2);
+                visited[visitedCount++] = node;
+            }
+            estimate[node] += amount;
+        }
+
+        void touch(int node) {
+            if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+            touched[touchedCount++] = node;
+        }
+
+        void clear() {
+            for (int i = 0; i < visitedCount; i++) {
+                estimate[visited[i]] = 0;
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                residual[touched[i]] = 0;
+                seed[touched[i]] = false;
+            }
+            visitedCount = 0;
+            touchedCount = 0;
+        }
+    }
+
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    /** FIFO of node ids without boxing; the array is compacted when the consumed head dominates */
+    private static class NodeQueue {
+        private int[] nodes = new int[64];
+        private int head;
+        private int tail;
+
+        void add(int node) {
+            if (tail == nodes.length) {
+                if (head > nodes.length / 2) {
+                    System.arraycopy(nodes, head, nodes, 0, tail - head);
+                } else {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    System.arraycopy(nodes, head, nodes, 0, tail - head);
+                }
+                tail -= head;
+                head = 0;
+            }
+            nodes[tail++] = node;
+        }
+
+        int poll() {
+            return nodes[head++];
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+    }
+
+    /**
+     * Forward-push approximation of personalised PageRank (Andersen, Chung and Lang).
+     * Each push settles a node's residual and spreads the rest to its neighbours in
+     * proportion to edge weight; nodes are only queued once their residual crosses
+     * epsilon times their weighted degree. Estimates and residuals are the workspace's
+     * arrays, so pushes do no boxing or hashing and nothing is allocated per node.
+     */
+    private void personalisedPageRank(Snapshot current, Workspace work, int seedCount, long budgetMillis) {
+        CatalogGraph graph = current.graph;
+        double[] residual = work.residual;
+        boolean[] seed = work.seed;
+        NodeQueue queue = new NodeQueue();
+        for (int i = 0; i < work.touchedCount; i++) { // so far only the seeds are touched
+            int node = work.touched[i];
+            residual[node] = 1.0 / seedCount;
+            queue.add(node);
+        }
+        EdgeType[] types = EdgeType.values();
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+        long pushes = 0;
+        while (!queue.isEmpty()) {
+            if ((++pushes & 0xFF) == 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            int node = queue.poll();
+            double r = residual[node];
+            double degree = current.weightedDegree[node];
+            if (r <= 0 || (r < epsilon * degree && !seed[node])) {
+                continue;
+            }
+            residual[node] = 0;
+            if (degree == 0) {
+                work.add(node, r);
+                continue;
+            }
+            work.add(node, teleport * r);
+            double spread = (1 - teleport) * r / degree;
+            for (EdgeType type : types) {
+                float w = current.weights[type.ordinal()];
+                if (w <= 0) continue;
+                // Links are walked in both directions
+                spread(current, graph.forward[type.ordinal()], node, spread * w, work, queue);
+                spread(current, graph.backward[type.ordinal()], node, spread * w, work, queue);
+            }
+        }
+        Metrics.add(Metrics.GRAPH_PUSHES, pushes);
+    }
+
+    private void spread(Snapshot current, CatalogGraph.Csr csr, int node, double amount,
+                        Workspace work, NodeQueue queue) {
+        int row = node - csr.base;
+        if (row < 0 || row >= csr.rows()) return;
+        double[] residual = work.residual;
+        for (int e = csr.offsets[row]; e < csr.offsets[row + 1]; e++) {
+            int neighbour = csr.targets[e];
+            double before = residual[neighbour];
+            if (before == 0) work.touch(neighbour);
+            double after = before + amount;
+            residual[neighbour] = after;
+            double threshold = epsilon * current.weightedDegree[neighbour];
+            if (before < threshold && after >= threshold) {
+                queue.add(neighbour);
+            }
+        }
+    }
+
+    /**
+     * The published snapshot; only the very first query builds one, when none exists yet
+     */
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) rebuild();
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private float[] currentWeights() {
+        float[] values = new float[EdgeType.values().length];
+        for (Map.Entry<EdgeType, Double> entry : weights.entrySet()) {
+            values[entry.getKey().ordinal()] = (float) (double) entry.getValue();
+        }
+        return values;
+    }
+    // Configuration
+
+    /**
+     * Change an edge type's weight (0 ignores the links); applies to the next query
+     */
+    public synchronized void setWeight(EdgeType type, double weight) {
+        weights.put(type, weight);
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = new Snapshot(current.graph, currentWeights());
+        }
+    }
+
+    public synchronized double getWeight(EdgeType type) {
+        return weights.get(type);
+    }
+
+    public double getTeleport() {
+        return teleport;
+    }
+
+    public void setTeleport(double teleport) {
+        this.teleport = teleport;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public void setTimeBudgetMillis(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    public int getNodeCount() {
+        return current().graph.nodeCount();
+    }
+
+    public int getEdgeCount() {
+        return current().graph.edgeCount();
+    }
+}
@@ -0,0 +1,176 @@
+package mov.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide instrumentation for the recommendation paths.
+ * 
+ * Disabled by default (enable with -Dmov.metrics.enabled=true or at runtime via JMX);
+ * when disabled every call is a single volatile read, so instrumented code pays
+ * effectively nothing. Typical use:
+ * 
+ * <pre>
+ * long start = Metrics.start();
+ * ... work ...
+ * Metrics.stop(Metrics.CBR_SCORE, start);
+ * </pre>
+ */
+public final class Metrics {
+    
+    // Timers: end-to-end
+    public static final String SPARQL_QUERY = "sparql_query";
+    public static final String RECOMMENDER_QUERY = "recommender_query";
+    public static final String CBR_FIND_SIMILAR = "cbr_find_similar";
+    public static final String FUZZY_EVALUATE = "fuzzy_evaluate";
+    public static final String HTTP_REQUEST = "http_request";
+    public static final String GRAPH_RECOMMEND = "graph_recommend";
+    public static final String HYBRID_RECOMMEND = "hybrid_recommend";
+    public static final String SHARD_FIND_SIMILAR = "shard_find_similar";
+    public static final String BULK_IMPORT = "bulk_import";
+    public static final String BULK_EXPORT = "bulk_export";
+    
+    // Timers: phases
+    public static final String SPARQL_PARSE = "sparql_parse";
+    public static final String SPARQL_EXECUTE = "sparql_execute";
+    public static final String RECOMMENDER_MATERIALISE = "recommender_materialise";
+    public static final String CBR_SCORE = "cbr_score";
+    public static final String CBR_SORT = "cbr_sort";
+    public static final String HYBRID_CANDIDATES = "hybrid_candidates";
+    public static final String HYBRID_RANK = "hybrid_rank";
+    public static final String HYBRID_RERANK = "hybrid_rerank";
+    
+    // Counters
+    public static final String QUERIES = "queries";
+    public static final String ROWS_SCANNED = "rows_scanned";
+    public static final String CASES_SCORED = "cases_scored";
+    public static final String GRAPH_PUSHES = "graph_pushes";
+    public static final String CACHE_HITS = "cache_hits"; // recommender lookups answered by the catalog
+    public static final String CACHE_MISSES = "cache_misses"; // ... and those that fell back to SPARQL
+    public static final String SHARD_TIMEOUTS = "shard_timeouts";
+    public static final String AXIOMS_IMPORTED = "axioms_imported";
+    public static final String ROWS_EXPORTED = "rows_exported";
+    public static final String COALESCED_REQUESTS = "coalesced_requests";
+    
+    private static volatile boolean enabled = Boolean.getBoolean("mov.metrics.enabled");
+    
+    private static final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    
+    private Metrics() {
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+    
+    /**
+     * Start timing a phase
+     * 
+     * @return a start timestamp, or 0 when metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+    
+    /**
+     * Record the time elapsed since {@link #start()} under the given timer
+     * and attribute it to the current request trace, if any
+     * 
+     * @return the end timestamp, so consecutive phases can chain without another clock read
+     */
+    public static long stop(String timer, long start) {
+        if (start == 0L) {
+            return 0L;
+        }
+        long end = System.nanoTime();
+        long elapsed = end - start;
+        timer(timer).record(elapsed);
+        Trace.record(timer, elapsed);
+        return end;
+    }
+    
+    /**
+     * Record an already measured duration, e.g. time accumulated across many short callbacks
+     */
+    public static void record(String timer, long nanos) {
+        if (enabled) {
+            timer(timer).record(nanos);
+            Trace.record(timer, nanos);
+        }
+    }
+    
+    public static void increment(String counter) {
+        if (enabled) {
+            counter(counter).increment();
+        }
+    }
+    
+    public static void add(String counter, long amount) {
+        if (enabled) {
+            counter(counter).add(amount);
+        }
+    }
+    
+    public static LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+    
+    private static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+    
+    public static long getCount(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0L : adder.sum();
+    }
+    
+    /**
+     * Sorted view of all timers recorded so far
+     */
+    public static Map<String, LatencyHistogram> getTimers() {
+        return new TreeMap<>(timers);
+    }
+    
+    /**
+     * Sorted snapshot of all counter values
+     */
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+    
+    public static void reset() {
+        for (LatencyHistogram histogram : timers.values()) {
+            histogram.reset();
+        }
+        for (LongAdder adder : counters.values()) {
+            adder.reset();
+        }
+    }
+    
+    /**
+     * Expose the metrics as the JMX MBean mov:type=Metrics (idempotent)
+     */
+    public static synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("mov:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBeanImpl(), name);
+            }
+        } catch (Exception e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package mov.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+class MetricsMBeanImpl implements MetricsMXBean {
+    
+    @Override
+    public boolean isEnabled() {
+        return Metrics.isEnabled();
+    }
+    
+    @Override
+    public void setEnabled(boolean enabled) {
+        Metrics.setEnabled(enabled);
+    }
+    
+    @Override
+    public Map<String, Long> getCounters() {
+        return Metrics.getCounters();
+    }
+    
+    @Override
+    public Map<String, Long> getLatencyMicros() {
+        Map<String, Long> summary = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : Metrics.getTimers().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            String name = entry.getKey();
+            summary.put(name + ".count", histogram.getCount());
+            summary.put(name + ".p50", histogram.getValueAtPercentile(50) / 1000);
+            summary.put(name + ".p90", histogram.getValueAtPercentile(90) / 1000);
+            summary.put(name + ".p99", histogram.getValueAtPercentile(99) / 1000);
+            summary.put(name + ".p999", histogram.getValueAtPercentile(99.9) / 1000);
+            summary.put(name + ".max", histogram.getMax() / 1000);
+        }
+        return summary;
+    }
+    
+    @Override
+    public String dumpPrometheus() {
+        return PrometheusExporter.dump();
+    }
+    
+    @Override
+    public void reset() {
+        Metrics.reset();
+    }
+}
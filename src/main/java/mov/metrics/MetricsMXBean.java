@@ -0,0 +1,24 @@
+package mov.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX management interface for {@link Metrics}
+ */
+public interface MetricsMXBean {
+    
+    boolean isEnabled();
+    
+    void setEnabled(boolean enabled);
+    
+    Map<String, Long> getCounters();
+    
+    /**
+     * Latency summaries in microseconds, keyed by "timer.p50", "timer.p99", "timer.max" ...
+     */
+    Map<String, Long> getLatencyMicros();
+    
+    String dumpPrometheus();
+    
+    void reset();
+}
@@ -0,0 +1,46 @@
+package mov.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders {@link Metrics} in the Prometheus text exposition format (version 0.0.4).
+ * Timers are exported as summaries in seconds, counters as monotonically increasing totals.
+ */
+public final class PrometheusExporter {
+    
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    
+    private PrometheusExporter() {
+    }
+    
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        
+        for (Map.Entry<String, Long> entry : Metrics.getCounters().entrySet()) {
+            String name = "mov_" + entry.getKey() + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(entry.getValue()).append('\n');
+        }
+        
+        for (Map.Entry<String, LatencyHistogram> entry : Metrics.getTimers().entrySet()) {
+            String name = "mov_" + entry.getKey() + "_seconds";
+            LatencyHistogram histogram = entry.getValue();
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                   .append(seconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+            }
+            out.append(name).append("_sum ").append(seconds(histogram.getSum())).append('\n');
+            out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        
+        out.append("# TYPE mov_metrics_enabled gauge\n");
+        out.append("mov_metrics_enabled ").append(Metrics.isEnabled() ? 1 : 0).append('\n');
+        return out.toString();
+    }
+    
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,93 @@
+package mov.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-request trace: accumulates the time spent in each instrumented phase
+ * on the current thread between {@link #begin()} and {@link #end()}.
+ * Work done for the request on other threads can be added with {@link #addAll(Trace)},
+ * so a trace may be updated from another thread and its methods are synchronized.
+ */
+public final class Trace {
+    
+    private static final ThreadLocal<Trace> current = new ThreadLocal<>();
+    
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    
+    private Trace() {
+    }
+    
+    /**
+     * Start tracing the current thread (no-op while metrics are disabled)
+     */
+    public static void begin() {
+        if (Metrics.isEnabled()) {
+            current.set(new Trace());
+        }
+    }
+    
+    /**
+     * Stop tracing the current thread
+     * 
+     * @return the finished trace, or null if none was active
+     */
+    public static Trace end() {
+        Trace trace = current.get();
+        current.remove();
+        return trace;
+    }
+    
+    /**
+     * The current thread's trace, or null if none is active
+     */
+    public static Trace current() {
+        return current.get();
+    }
+    
+    static void record(String phase, long nanos) {
+        Trace trace = current.get();
+        if (trace != null) {
+            trace.add(phase, nanos);
+        }
+    }
+    
+    private synchronized void add(String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+    
+    /**
+     * Add another trace's phases to this one (e.g. a computation run on another thread)
+     */
+    public void addAll(Trace other) {
+        if (other == this) {
+            return;
+        }
+        for (Map.Entry<String, Long> entry : other.getPhaseNanos().entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /**
+     * A copy of the phases recorded so far
+     */
+    public synchronized Map<String, Long> getPhaseNanos() {
+        return new LinkedHashMap<>(phaseNanos);
+    }
+    
+    /**
+     * Render as a W3C Server-Timing header value, e.g. "sparql_execute;dur=1.25, cbr_score;dur=0.40"
+     */
+    public synchronized String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            if (header.length() > 0) {
+                header.append(", ");
+            }
+            header.append(entry.getKey()).append(";dur=")
+                  .append(String.format(Locale.ROOT, "%.3f", entry.getValue() / 1_000_000.0));
+        }
+        return header.toString();
+    }
+}
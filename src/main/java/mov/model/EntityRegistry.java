@@ -0,0 +1,285 @@
+package mov.model;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared identities for the people, genres, countries and awards that movies refer to.
+ *
+ * Each entity is keyed by its ontology URI (or by name when the source has no URI) and
+ * exists once: every Movie built through the same registry holds the same Person object
+ * and the same genre/country/award String, and each entity has a dense int id per kind,
+ * so entities can be compared by reference or id instead of by name. Ids are only
+ * meaningful within one registry.
+ *
+ * Genre, country and award names without a URI resolve to the URI entry of that name when
+ * there is one, and an entry made by name is taken over by the URI once it is seen, so each
+ * entity has one entry and one id whichever way it was reached. When the ontology renames an
+ * entity, the entry is replaced by one with the new name and the same id; movies built before
+ * keep the old instance.
+ * Entries live as long as the registry; they are few compared to the movies referring to them.
+ */
+public class EntityRegistry {
+
+    public enum Kind {
+        PERSON,
+        GENRE,
+        COUNTRY,
+        AWARD
+    }
+
+    private static class Entry {
+        final int id;
+        final Object value; // Person or String
+
+        Entry(int id, Object value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        String name() {
+            return value instanceof Person ? ((Person) value).getName() : (String) value;
+        }
+    }
+
+    private static final String NAME_KEY = "name:";
+
+    private final Map<Kind, Map<String, Entry>> entries = new EnumMap<>(Kind.class);
+    private final Map<Kind, Map<String, String>> keysByName = new EnumMap<>(Kind.class); // String entities: name -> key
+    private final Map<Kind, AtomicInteger> nextId = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> lookups = new EnumMap<>(Kind.class); // references handed out
+    private final Map<Kind, LongAdder> nameChars = new EnumMap<>(Kind.class); // total length of unique names
+
+    public EntityRegistry() {
+        for (Kind kind : Kind.values()) {
+            entries.put(kind, new ConcurrentHashMap<>());
+            keysByName.put(kind, new ConcurrentHashMap<>());
+            nextId.put(kind, new AtomicInteger());
+            lookups.put(kind, new LongAdder());
+            nameChars.put(kind, new LongAdder());
+        }
+    }
+
+    /**
+     * The shared Person for the URI with the given name; a different name replaces the entry
+     * (same id) so later callers see the rename
+     *
+     * @param uri ontology URI, or null to key the person by name
+     */
+    public Person person(String uri, String name) {
+        Entry entry = intern(Kind.PERSON, uri, name, true);
+        return (Person) entry.value;
+    }
+
+    /**
+     * Canonical genre name for the URI (or name when uri is null)
+     */
+    public String genre(String uri, String name) {
+        return (String) intern(Kind.GENRE, uri, name, true).value;
+    }
+
+    public String country(String uri, String name) {
+        return (String) intern(Kind.COUNTRY, uri, name, true).value;
+    }
+
+    public String award(String uri, String name) {
+        return (String) intern(Kind.AWARD, uri, name, true).value;
+    }
+
+    /**
+     * Id of a genre, country or award name handed out by this registry, or -1
+     */
+    public int id(Kind kind, String name) {
+        String key = name == null ? null : keysByName.get(kind).get(name);
+        Entry entry = key == null ? null : entries.get(kind).get(key);
+        return entry == null ? -1 : entry.id;
+    }
+
+    public int size(Kind kind) {
+        return entries.get(kind).size();
+    }
+
+    /**
+     * The movie with its people, genres, country and awards replaced by the registry's shared
+     * instances: the movie itself when it already holds them, otherwise a copy, so movies
+     * shared with other readers are never modified. Entities already known keep their current
+     * name; only the ontology readers rename them.
+     */
+    public Movie canonical(Movie movie) {
+        List<Person> directors = canonicalPeople(movie.getDirectors());
+        List<Person> actors = canonicalPeople(movie.getActors());
+        List<Person> writers = canonicalPeople(movie.getWriters());
+        List<String> genres = canonicalNames(Kind.GENRE, movie.getGenres());
+        List<String> awards = canonicalNames(Kind.AWARD, movie.getAwards());
+        String country = movie.getCountry() == null ? null
+                : (String) intern(Kind.COUNTRY, null, movie.getCountry(), false).value;
+        if (directors == null && actors == null && writers == null && genres == null && awards == null
+                && country == movie.getCountry()) {
+            return movie;
+        }
+        Movie copy = new Movie(movie.getTitle());
+        copy.setUri(movie.getUri());
+        copy.setYear(movie.getYear());
+        copy.setRating(movie.getRating());
+        copy.setRottenTomatoesScore(movie.getRottenTomatoesScore());
+        copy.setRuntime(movie.getRuntime());
+        copy.setCountry(country);
+        // Empty lists stay unset, so movies without them stay without them
+        if (!movie.getDirectors().isEmpty()) copy.setDirectors(directors != null ? directors : movie.getDirectors());
+        if (!movie.getActors().isEmpty()) copy.setActors(actors != null ? actors : movie.getActors());
+        if (!movie.getWriters().isEmpty()) copy.setWriters(writers != null ? writers : movie.getWriters());
+        if (!movie.getGenres().isEmpty()) copy.setGenres(genres != null ? genres : movie.getGenres());
+        if (!movie.getAwards().isEmpty()) copy.setAwards(awards != null ? awards : movie.getAwards());
+        return copy;
+    }
+
+    /**
+     * Shared instances for the people, or null when the list already holds exactly those
+     */
+    private List<Person> canonicalPeople(List<Person> people) {
+        List<Person> canonical = new ArrayList<>(people.size());
+        boolean changed = false;
+        for (Person person : people) {
+            Person shared = (Person) intern(Kind.PERSON, person.getUri(), person.getName(), false).value;
+            changed |= shared != person;
+            canonical.add(shared);
+        }
+        return changed ? canonical : null;
+    }
+
+    private List<String> canonicalNames(Kind kind, List<String> names) {
+        List<String> canonical = new ArrayList<>(names.size());
+        boolean changed = false;
+        for (String name : names) {
+            String shared = (String) intern(kind, null, name, false).value;
+            changed |= shared != name;
+            canonical.add(shared);
+        }
+        return changed ? canonical : null;
+    }
+
+    /**
+     * @param rename whether a different name for a known entity replaces its entry (the
+     *               ontology readers), or the entry is returned as it is (incoming movies,
+     *               which may carry names from before a rename)
+     */
+    private Entry intern(Kind kind, String uri, String name, boolean rename) {
+        lookups.get(kind).increment();
+        String key = key(kind, uri, name);
+        Entry existing = entries.get(kind).get(key);
+        if (existing != null && (!rename || name == null || name.equals(existing.name()))) {
+            return existing;
+        }
+        return store(kind, key, uri, name, rename);
+    }
+
+    private String key(Kind kind, String uri, String name) {
+        if (uri != null) {
+            return uri;
+        }
+        if (kind != Kind.PERSON && name != null) {
+            String key = keysByName.get(kind).get(name);
+            if (key != null) {
+                return key;
+            }
+        }
+        return NAME_KEY + name;
+    }
+
+    /**
+     * Slow path: create, adopt or rename an entry. Serialised so an entry made by name and
+     * the URI entry taking it over cannot both be handed out with different ids.
+     */
+    private synchronized Entry store(Kind kind, String key, String uri, String name, boolean rename) {
+        Map<String, Entry> byKey = entries.get(kind);
+        Entry existing = byKey.get(key);
+        if (existing != null && (!rename || name == null || name.equals(existing.name()))) {
+            return existing;
+        }
+        int id;
+        if (existing != null) {
+            // Renamed in the ontology: same id, new instance
+            id = existing.id;
+            String oldName = existing.name();
+            if (oldName != null) keysByName.get(kind).remove(oldName, key);
+            nameChars.get(kind).add(length(name) - length(oldName));
+        } else {
+            // A genre, country or award first seen by name becomes the URI's entry
+            Entry byName = kind == Kind.PERSON || uri == null ? null : byKey.remove(NAME_KEY + name);
+            id = byName != null ? byName.id : nextId.get(kind).getAndIncrement();
+            if (byName == null) nameChars.get(kind).add(length(name));
+        }
+        Entry entry;
+        if (kind == Kind.PERSON) {
+            Person person = new Person(name);
+            person.setUri(uri);
+            person.setId(id);
+            entry = new Entry(id, person);
+        } else {
+            entry = new Entry(id, name);
+            if (name != null) {
+                // Names shared by several URIs resolve to the first; a URI wins over a name-only entry
+                keysByName.get(kind).merge(name, key, (current, added) -> current.startsWith(NAME_KEY) ? added : current);
+            }
+        }
+        byKey.put(key, entry);
+        return entry;
+    }
+
+    private static int length(String name) {
+        return name == null ? 0 : name.length();
+    }
+
+    // Heap accounting
+
+    /**
+     * Estimated bytes that would be held if every reference handed out had been a separate
+     * object, minus what the shared instances take
+     */
+    public long estimatedBytesSaved() {
+        long saved = 0;
+        for (Kind kind : Kind.values()) {
+            long unique = size(kind);
+            long duplicates = lookups.get(kind).sum() - unique;
+            if (unique == 0 || duplicates <= 0) continue;
+            long averageName = nameChars.get(kind).sum() / unique;
+            saved += duplicates * objectBytes(kind, averageName);
+        }
+        return saved;
+    }
+
+    /**
+     * One line per kind: unique entities, references handed out and the estimated saving
+     */
+    public String heapReport() {
+        StringBuilder report = new StringBuilder("Entity registry:\n");
+        for (Kind kind : Kind.values()) {
+            long unique = size(kind);
+            long references = lookups.get(kind).sum();
+            long averageName = unique == 0 ? 0 : nameChars.get(kind).sum() / unique;
+            long saved = Math.max(0, references - unique) * objectBytes(kind, averageName);
+            report.append(String.format("  %-8s %8d unique %10d references  ~%,d KB saved%n",
+                    kind, unique, references, saved / 1024));
+        }
+        report.append(String.format("  total ~%,d KB saved", estimatedBytesSaved() / 1024));
+        return report.toString();
+    }
+
+    /**
+     * Compressed-oops estimate of one duplicate: a Person with its two empty lists and name,
+     * or a Latin-1 String
+     */
+    private static long objectBytes(Kind kind, long nameLength) {
+        long string = 24 + align(16 + nameLength);
+        return kind == Kind.PERSON ? 40 + 2 * 24 + string : string;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
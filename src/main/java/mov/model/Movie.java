@@ -1,28 +1,30 @@
 package mov.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * A movie and its attributes. The multi-valued attributes are allocated on first add, so
+ * movies materialised with a narrow projection (or simply without writers or awards) carry no
+ * empty lists; their getters return an empty, unmodifiable list until then.
+ */
 public class Movie {
     private String uri; // unique identifier from ontology
     private String title;
     private int year;
-    private List<String> genres; // Keep as String for simplicity (genre names)
+    private List<String> genres; // Keep as String for simplicity (genre names); null until set or added to
     private List<Person> directors;
     private List<Person> actors;
     private List<Person> writers;
     private double rating; // IMDb rating or similar
+    private int rottenTomatoesScore; // 0-100
     private int runtime; // in minutes
     private String country;
     private List<String> awards;
     
     // Constructor
     public Movie() {
-        this.genres = new ArrayList<>();
-        this.directors = new ArrayList<>();
-        this.actors = new ArrayList<>();
-        this.writers = new ArrayList<>();
-        this.awards = new ArrayList<>();
     }
     
     public Movie(String title) {
@@ -56,7 +58,7 @@ public class Movie {
     }
     
     public List<String> getGenres() {
-        return genres;
+        return genres != null ? genres : Collections.<String>emptyList();
     }
     
     public void setGenres(List<String> genres) {
@@ -64,11 +66,14 @@ public class Movie {
     }
     
     public void addGenre(String genre) {
+        if (this.genres == null) {
+            this.genres = new ArrayList<>(4);
+        }
         this.genres.add(genre);
     }
     
     public List<Person> getDirectors() {
-        return directors;
+        return directors != null ? directors : Collections.<Person>emptyList();
     }
     
     public void setDirectors(List<Person> directors) {
@@ -76,11 +81,14 @@ public class Movie {
     }
     
     public void addDirector(Person director) {
+        if (this.directors == null) {
+            this.directors = new ArrayList<>(4);
+        }
         this.directors.add(director);
     }
     
     public List<Person> getActors() {
-        return actors;
+        return actors != null ? actors : Collections.<Person>emptyList();
     }
     
     public void setActors(List<Person> actors) {
@@ -88,11 +96,14 @@ public class Movie {
     }
     
     public void addActor(Person actor) {
+        if (this.actors == null) {
+            this.actors = new ArrayList<>(4);
+        }
         this.actors.add(actor);
     }
     
     public List<Person> getWriters() {
-        return writers;
+        return writers != null ? writers : Collections.<Person>emptyList();
     }
     
     public void setWriters(List<Person> writers) {
@@ -100,6 +111,9 @@ public class Movie {
     }
     
     public void addWriter(Person writer) {
+        if (this.writers == null) {
+            this.writers = new ArrayList<>(4);
+        }
         this.writers.add(writer);
     }
     
@@ -111,6 +125,14 @@ public class Movie {
         this.rating = rating;
     }
     
+    public int getRottenTomatoesScore() {
+        return rottenTomatoesScore;
+    }
+    
+    public void setRottenTomatoesScore(int rottenTomatoesScore) {
+        this.rottenTomatoesScore = rottenTomatoesScore;
+    }
+    
     public int getRuntime() {
         return runtime;
     }
@@ -128,7 +150,7 @@ public class Movie {
     }
     
     public List<String> getAwards() {
-        return awards;
+        return awards != null ? awards : Collections.<String>emptyList();
     }
     
     public void setAwards(List<String> awards) {
@@ -136,6 +158,9 @@ public class Movie {
     }
     
     public void addAward(String award) {
+        if (this.awards == null) {
+            this.awards = new ArrayList<>(4);
+        }
         this.awards.add(award);
     }
     
@@ -0,0 +1,81 @@
+package mov.model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Movie attributes a caller can ask for. The URI and title are always present and are not
+ * listed; a projection is a set of the others, and absent attributes keep Movie's defaults
+ * (0, null or an empty list).
+ */
+public enum MovieField {
+    YEAR("year"),
+    RATING("rating"),
+    ROTTEN_TOMATOES("rottenTomatoesScore"),
+    RUNTIME("runtime"),
+    GENRES("genres"),
+    DIRECTORS("directors"),
+    ACTORS("actors"),
+    WRITERS("writers"),
+    COUNTRY("country"),
+    AWARDS("awards");
+
+    /** Every attribute */
+    public static final Set<MovieField> ALL = Collections.unmodifiableSet(EnumSet.allOf(MovieField.class));
+
+    /** What the recommend* queries have always fetched: everything but writers and awards */
+    public static final Set<MovieField> DEFAULT = Collections.unmodifiableSet(
+            EnumSet.complementOf(EnumSet.of(WRITERS, AWARDS)));
+
+    /** URI and title only */
+    public static final Set<MovieField> NONE = Collections.unmodifiableSet(EnumSet.noneOf(MovieField.class));
+
+    private final String key;
+
+    MovieField(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Name of the attribute in requests and JSON responses
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Parse a comma-separated list of keys or enum names, case-insensitively
+     * (e.g. "year,genres,rottenTomatoesScore"); "all" selects every attribute and "uri" and
+     * "title" are accepted and ignored
+     *
+     * @return the default projection for null or blank text
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static Set<MovieField> parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return DEFAULT;
+        }
+        Set<MovieField> fields = EnumSet.noneOf(MovieField.class);
+        for (String part : text.split(",")) {
+            String name = part.trim();
+            if (name.isEmpty() || name.equalsIgnoreCase("uri") || name.equalsIgnoreCase("title")) {
+                continue;
+            }
+            if (name.equalsIgnoreCase("all")) {
+                return ALL;
+            }
+            fields.add(find(name));
+        }
+        return Collections.unmodifiableSet(fields);
+    }
+
+    private static MovieField find(String name) {
+        for (MovieField field : values()) {
+            if (field.key.equalsIgnoreCase(name) || field.name().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown movie field: " + name);
+    }
+}
@@ -5,6 +5,7 @@ import java.util.List;
 
 public class Person {
     private String uri; // unique identifier from ontology
+    private int id = -1; // dense id assigned by EntityRegistry, -1 if not registered
     private String name;
     private int birthYear;
     private String nationality;
@@ -30,6 +31,14 @@ public class Person {
         this.uri = uri;
     }
     
+    public int getId() {
+        return id;
+    }
+    
+    public void setId(int id) {
+        this.id = id;
+    }
+    
     public String getName() {
         return name;
     }
@@ -0,0 +1,503 @@
+package mov.ontology;
+
+import mov.cbr.CBREngine;
+import mov.cbr.CaseBaseUpdater;
+import mov.metrics.Metrics;
+import mov.model.Movie;
+import mov.model.Person;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.shared.Lock;
+import org.apache.jena.vocabulary.RDF;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLLiteral;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Imports batches of movies and people into the ontology with one applyChanges call per batch.
+ *
+ * All axioms for a batch (declarations, class assertions, links and literals) are built first and
+ * then handed to OntologyManager.addAxioms, which mirrors the assertions into the Jena model under
+ * one write lock, so the catalog and case base see one change event rather than one per axiom.
+ * Genres, people, countries and awards are matched to existing individuals by URI or display
+ * name; only the ones not in the model yet are created. Movies whose URI is already a movie are
+ * skipped. New individuals get URIs in the instances namespace derived from their names.
+ *
+ * Usage: BulkImporter [--movies 20000] [--batch 5000] [--ontology file] [--per-axiom]
+ */
+public class BulkImporter {
+
+    /** Counts and timings for one import */
+    public static class Report {
+        private final int movies;
+        private final int skipped;
+        private final int individuals; // genres, people, countries and awards created
+        private final int axioms;
+        private final long buildNanos;
+        private final long applyNanos;
+
+        Report(int movies, int skipped, int individuals, int axioms, long buildNanos, long applyNanos) {
+            this.movies = movies;
+            this.skipped = skipped;
+            this.individuals = individuals;
+            this.axioms = axioms;
+            this.buildNanos = buildNanos;
+            this.applyNanos = applyNanos;
+        }
+
+        public int getMovies() {
+            return movies;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getIndividuals() {
+            return individuals;
+        }
+
+        public int getAxioms() {
+            return axioms;
+        }
+
+        public long getBuildMillis() {
+            return buildNanos / 1_000_000;
+        }
+
+        /**
+         * OWL API, Jena mirror and change listeners together
+         */
+        public long getApplyMillis() {
+            return applyNanos / 1_000_000;
+        }
+
+        public double getMoviesPerSecond() {
+            long total = buildNanos + applyNanos;
+            return total == 0 ? 0 : movies * 1e9 / total;
+        }
+
+        public double getAxiomsPerSecond() {
+            long total = buildNanos + applyNanos;
+            return total == 0 ? 0 : axioms * 1e9 / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d movies (%d skipped), %d new individuals, %d axioms: build %d ms, apply %d ms, %.0f movies/s, %.0f axioms/s",
+                    movies, skipped, individuals, axioms, getBuildMillis(), getApplyMillis(),
+                    getMoviesPerSecond(), getAxiomsPerSecond());
+        }
+    }
+
+    /** Individuals that are looked up by display name */
+    private enum Kind {
+        PERSON("Person", "personName"),
+        GENRE("Genre", "genreName"),
+        COUNTRY("Country", "countryName"),
+        AWARD("Award", "awardName");
+
+        final String className;
+        final String nameProperty;
+
+        Kind(String className, String nameProperty) {
+            this.className = className;
+            this.nameProperty = nameProperty;
+        }
+    }
+
+    /**
+     * The axioms for one import, with the URIs chosen for the individuals it creates
+     */
+    class Batch {
+        final List<OWLAxiom> axioms = new ArrayList<>();
+        final Model model;
+        final Map<Kind, Map<String, String>> byName = new HashMap<>(); // lower-cased name -> URI, filled on first use
+        final Set<String> created = new HashSet<>();
+        final Set<String> typed = new HashSet<>(); // "uri class" assertions already in this batch
+        int movies;
+        int skipped;
+
+        Batch(Model model) {
+            this.model = model;
+        }
+
+        void addMovie(Movie movie) {
+            if (movie.getTitle() == null) {
+                throw new IllegalArgumentException("Movie without a title: " + movie.getUri());
+            }
+            String uri = movie.getUri();
+            if (uri == null) {
+                uri = unusedUri(localName(movie.getTitle(), "_"));
+            } else if (created.contains(uri) || model.contains(model.createResource(uri), RDF.type, model.createResource(OntologyManager.MOVIE_NS + "Movie"))) {
+                skipped++;
+                return;
+            }
+            created.add(uri);
+            movies++;
+            OWLNamedIndividual individual = individual(uri);
+            declare(individual, "Movie");
+            literal(individual, "title", factory.getOWLLiteral(movie.getTitle()));
+            if (movie.getYear() != 0) {
+                literal(individual, "releaseYear", integer(movie.getYear()));
+            }
+            if (movie.getRating() != 0.0) {
+                literal(individual, "imdbScore",
+                        factory.getOWLLiteral(BigDecimal.valueOf(movie.getRating()).toPlainString(), OWL2Datatype.XSD_DECIMAL));
+            }
+            if (movie.getRottenTomatoesScore() != 0) {
+                literal(individual, "rottenTomatoesScore", integer(movie.getRottenTomatoesScore()));
+            }
+            if (movie.getRuntime() != 0) {
+                literal(individual, "runtime", integer(movie.getRuntime()));
+            }
+            for (String genre : new HashSet<>(movie.getGenres())) {
+                link(individual, "hasGenre", resolve(Kind.GENRE, null, genre));
+            }
+            for (Person director : movie.getDirectors()) {
+                link(individual, "hasDirector", addPerson(director, "Director"));
+            }
+            for (Person actor : movie.getActors()) {
+                link(individual, "hasActor", addPerson(actor, "Actor"));
+            }
+            for (Person writer : movie.getWriters()) {
+                link(individual, "hasWriter", addPerson(writer, "Writer"));
+            }
+            if (movie.getCountry() != null && !movie.getCountry().isEmpty()) {
+                link(individual, "madeIn", resolve(Kind.COUNTRY, null, movie.getCountry()));
+            }
+            for (String award : movie.getAwards()) {
+                link(individual, "wonAward", resolve(Kind.AWARD, null, award));
+            }
+        }
+
+        /**
+         * The person's individual, created if needed, asserted to have the role
+         *
+         * @param role Director, Actor, Writer or Producer; null for none
+         */
+        String addPerson(Person person, String role) {
+            boolean isNew = !created.contains(person.getUri()) && !exists(person.getUri())
+                    && lookup(Kind.PERSON, person.getName()) == null;
+            String uri = resolve(Kind.PERSON, person.getUri(), person.getName());
+            OWLNamedIndividual individual = individual(uri);
+            if (isNew) {
+                if (person.getBirthYear() != 0) {
+                    literal(individual, "birthYear", integer(person.getBirthYear()));
+                }
+                if (person.getNationality() != null) {
+                    literal(individual, "nationality", factory.getOWLLiteral(person.getNationality()));
+                }
+            }
+            if (role != null) {
+                assertType(individual, role);
+            }
+            return uri;
+        }
+
+        /**
+         * URI of the individual with this URI or name, creating it with its class and name if
+         * the model does not have it yet
+         */
+        String resolve(Kind kind, String uri, String name) {
+            if (uri == null) {
+                uri = lookup(kind, name);
+            }
+            if (uri == null) {
+                uri = unusedUri(localName(name, ""));
+            }
+            if (created.contains(uri) || exists(uri)) {
+                return uri;
+            }
+            created.add(uri);
+            OWLNamedIndividual individual = individual(uri);
+            declare(individual, kind.className);
+            if (name != null) {
+                literal(individual, kind.nameProperty, factory.getOWLLiteral(name));
+                names(kind).put(name.trim().toLowerCase(Locale.ROOT), uri);
+            }
+            return uri;
+        }
+
+        String lookup(Kind kind, String name) {
+            return name == null ? null : names(kind).get(name.trim().toLowerCase(Locale.ROOT));
+        }
+
+        /**
+         * Existing individuals of the kind by name, read from the model once per batch
+         */
+        Map<String, String> names(Kind kind) {
+            return byName.computeIfAbsent(kind, k -> {
+                Map<String, String> names = new HashMap<>();
+                Property property = model.createProperty(OntologyManager.MOVIE_NS + k.nameProperty);
+                StmtIterator it = model.listStatements(null, property, (RDFNode) null);
+                try {
+                    while (it.hasNext()) {
+                        Statement statement = it.nextStatement();
+                        if (statement.getSubject().isURIResource() && statement.getObject().isLiteral()) {
+                            names.putIfAbsent(statement.getString().trim().toLowerCase(Locale.ROOT),
+                                    statement.getSubject().getURI());
+                        }
+                    }
+                } finally {
+                    it.close();
+                }
+                return names;
+            });
+        }
+
+        boolean exists(String uri) {
+            if (uri == null) {
+                return false;
+            }
+            Resource resource = model.createResource(uri);
+            return model.contains(resource, null, (RDFNode) null);
+        }
+
+        String unusedUri(String localName) {
+            String base = OntologyManager.INSTANCES_NS + (localName.isEmpty() ? "Individual" : localName);
+            String uri = base;
+            for (int n = 2; created.contains(uri) || exists(uri); n++) {
+                uri = base + "_" + n;
+            }
+            return uri;
+        }
+
+        void declare(OWLNamedIndividual individual, String className) {
+            axioms.add(factory.getOWLDeclarationAxiom(individual));
+            assertType(individual, className);
+        }
+
+        void assertType(OWLNamedIndividual individual, String className) {
+            String uri = individual.getIRI().toString();
+            if (!typed.add(uri + " " + className)) {
+                return;
+            }
+            if (!created.contains(uri) && model.contains(model.createResource(uri), RDF.type,
+                    model.createResource(OntologyManager.MOVIE_NS + className))) {
+                return;
+            }
+            axioms.add(factory.getOWLClassAssertionAxiom(
+                    factory.getOWLClass(IRI.create(OntologyManager.MOVIE_NS + className)), individual));
+        }
+
+        void link(OWLNamedIndividual subject, String property, String object) {
+            axioms.add(factory.getOWLObjectPropertyAssertionAxiom(
+                    factory.getOWLObjectProperty(IRI.create(OntologyManager.MOVIE_NS + property)),
+                    subject, individual(object)));
+        }
+
+        void literal(OWLNamedIndividual subject, String property, OWLLiteral value) {
+            axioms.add(factory.getOWLDataPropertyAssertionAxiom(
+                    factory.getOWLDataProperty(IRI.create(OntologyManager.MOVIE_NS + property)), subject, value));
+        }
+
+        OWLNamedIndividual individual(String uri) {
+            return factory.getOWLNamedIndividual(IRI.create(uri));
+        }
+
+        OWLLiteral integer(int value) {
+            return factory.getOWLLiteral(Integer.toString(value), OWL2Datatype.XSD_INTEGER);
+        }
+    }
+
+    /**
+     * Held across build and apply: a batch resolves URIs and existing individuals under a read
+     * lock released before addAxioms, so two imports running together could both create the
+     * same individual or movie. Shared by every importer, as they may write to one ontology.
+     */
+    private static final Object IMPORT_LOCK = new Object();
+
+    private final OntologyManager ontologyManager;
+    private final OWLDataFactory factory;
+
+    public BulkImporter(OntologyManager ontologyManager) {
+        this.ontologyManager = ontologyManager;
+        this.factory = ontologyManager.getDataFactory();
+    }
+
+    public Report importMovies(List<Movie> movies) {
+        return importBatch(movies, Collections.emptyList());
+    }
+
+    /**
+     * Import the people (with their roles and details) and the movies as one batch.
+     * Concurrent imports run one at a time, so each batch sees the individuals of the last.
+     */
+    public Report importBatch(List<Movie> movies, List<Person> people) {
+        long start;
+        Batch batch;
+        long built;
+        int added;
+        synchronized (IMPORT_LOCK) {
+            start = System.nanoTime(); // time the import, not the wait for the previous one
+            batch = build(movies, people);
+            built = System.nanoTime();
+            added = ontologyManager.addAxioms(batch.axioms);
+        }
+        long applied = System.nanoTime();
+        Metrics.record(Metrics.BULK_IMPORT, applied - start);
+        Metrics.add(Metrics.AXIOMS_IMPORTED, added);
+        return new Report(batch.movies, batch.skipped, batch.created.size() - batch.movies, added,
+                built - start, applied - built);
+    }
+
+    /**
+     * Build a batch's axioms against the current model without applying them
+     */
+    Batch build(List<Movie> movies, List<Person> people) {
+        Model model = ontologyManager.getJenaModel();
+        if (model == null) {
+            throw new IllegalStateException("Jena model not loaded. Call loadOntology first.");
+        }
+        Batch batch = new Batch(model);
+        model.enterCriticalSection(Lock.READ);
+        try {
+            for (Person person : people) {
+                OWLNamedIndividual individual = batch.individual(batch.addPerson(person, null));
+                for (String role : person.getRoles()) {
+                    String className = roleClass(role);
+                    if (className != null) {
+                        batch.assertType(individual, className);
+                    }
+                }
+            }
+            for (Movie movie : movies) {
+                batch.addMovie(movie);
+            }
+        } finally {
+            model.leaveCriticalSection();
+        }
+        return batch;
+    }
+
+    private static String roleClass(String role) {
+        switch (role.trim().toLowerCase(Locale.ROOT)) {
+            case "director":
+                return "Director";
+            case "actor":
+                return "Actor";
+            case "writer":
+                return "Writer";
+            case "producer":
+                return "Producer";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * "The Dark Knight" -> "The_Dark_Knight" (separator "_") or "TheDarkKnight" (separator "")
+     */
+    static String localName(String name, String separator) {
+        StringBuilder local = new StringBuilder();
+        boolean gap = false;
+        for (int i = 0; name != null && i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c) && c < 128) {
+                if (gap && local.length() > 0) local.append(separator);
+                local.append(c);
+                gap = false;
+            } else if (Character.isWhitespace(c) || c == '-' || c == ':') {
+                gap = true;
+            }
+        }
+        return local.toString();
+    }
+
+    /**
+     * Import copies of the ontology's movies (new titles, existing people plus a new actor on
+     * every tenth copy) in batches, with the catalog and a case base following the change feed
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        boolean perAxiom = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--per-axiom")) {
+                perAxiom = true;
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        int count = Integer.parseInt(options.getOrDefault("movies", "20000"));
+        int batchSize = Integer.parseInt(options.getOrDefault("batch", "5000"));
+
+        OntologyManager ontologyManager = new OntologyManager();
+        ontologyManager.loadOntology(options.getOrDefault("ontology", "src/main/resources/ontology/movies-instances.owl"));
+        MovieRecommender recommender = new MovieRecommender(ontologyManager);
+        recommender.setCatalog(MovieCatalog.build(ontologyManager));
+        CBREngine cbrEngine = new CBREngine();
+        new CaseBaseUpdater(cbrEngine, recommender).start(ontologyManager);
+        List<Movie> originals = recommender.getAllMovies();
+        int before = originals.size();
+
+        List<Movie> feed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Movie original = originals.get(i % originals.size());
+            Movie copy = new Movie(original.getTitle() + " " + (i + 1));
+            copy.setYear(original.getYear());
+            copy.setRating(original.getRating());
+            copy.setRottenTomatoesScore(original.getRottenTomatoesScore());
+            copy.setRuntime(original.getRuntime());
+            copy.setCountry(original.getCountry());
+            copy.setGenres(new ArrayList<>(original.getGenres()));
+            copy.setDirectors(new ArrayList<>(original.getDirectors()));
+            copy.setActors(new ArrayList<>(original.getActors()));
+            copy.setWriters(new ArrayList<>(original.getWriters()));
+            copy.setAwards(new ArrayList<>(original.getAwards()));
+            if (i % 10 == 0) {
+                copy.addActor(new Person("Feed Actor " + (i / 10 + 1)));
+            }
+            feed.add(copy);
+        }
+
+        BulkImporter importer = new BulkImporter(ontologyManager);
+        long start = System.nanoTime();
+        int axioms = 0;
+        for (int from = 0; from < feed.size(); from += batchSize) {
+            List<Movie> movies = feed.subList(from, Math.min(feed.size(), from + batchSize));
+            if (perAxiom) {
+                // One addAxiom per axiom, as the single-entity methods do
+                long batchStart = System.nanoTime();
+                Batch batch = importer.build(movies, Collections.emptyList());
+                OWLOntology ontology = ontologyManager.getOntology();
+                for (OWLAxiom axiom : batch.axioms) {
+                    ontologyManager.getManager().addAxiom(ontology, axiom);
+                }
+                axioms += batch.axioms.size();
+                System.out.printf(Locale.ROOT, "Batch %d-%d per axiom: %d axioms in %d ms%n", from, from + movies.size(),
+                        batch.axioms.size(), (System.nanoTime() - batchStart) / 1_000_000);
+            } else {
+                Report report = importer.importMovies(movies);
+                axioms += report.getAxioms();
+                System.out.println("Batch " + from + "-" + (from + movies.size()) + ": " + report);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Imported %d movies (%d axioms) in %.2f s: %.0f movies/s%n",
+                feed.size(), axioms, seconds, feed.size() / seconds);
+        System.out.println("Catalog: " + before + " -> " + recommender.getAllMovies().size()
+                + " movies, case base: " + cbrEngine.getCaseCount() + " cases");
+    }
+}
@@ -0,0 +1,213 @@
+package mov.ontology;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Triple counts of a graph for join ordering: per predicate the number of triples, distinct
+ * subjects and distinct objects, and for resource objects (classes, genres, people, countries)
+ * the number of triples per object.
+ *
+ * Computed in one scan after load and then kept up to date from the change feed: each added or
+ * removed triple adjusts the counts, and distinct counts are checked against the graph's indexes
+ * (are these the first/last values?), so maintenance does not rescan. A triple added twice is
+ * counted twice; the counts are estimates for the optimiser, and compute() gives exact ones.
+ */
+public class GraphStatistics {
+
+    /** Counts for one predicate */
+    static final class PredicateCounts {
+        final AtomicLong triples = new AtomicLong();
+        final AtomicLong subjects = new AtomicLong();
+        final AtomicLong objects = new AtomicLong();
+        final Map<Node, AtomicLong> resourceObjects = new ConcurrentHashMap<>();
+    }
+
+    private final Graph graph;
+    private final Map<Node, PredicateCounts> predicates = new ConcurrentHashMap<>();
+    private final AtomicLong triples = new AtomicLong();
+
+    private GraphStatistics(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Scan the graph once; the result tracks later changes through added and removed
+     */
+    public static GraphStatistics compute(Graph graph) {
+        long start = System.currentTimeMillis();
+        GraphStatistics statistics = new GraphStatistics(graph);
+        Map<Node, Set<Node>> subjects = new HashMap<>();
+        Map<Node, Set<Node>> literalObjects = new HashMap<>();
+        ExtendedIterator<Triple> all = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        try {
+            while (all.hasNext()) {
+                Triple triple = all.next();
+                PredicateCounts counts = statistics.counts(triple.getPredicate());
+                counts.triples.incrementAndGet();
+                statistics.triples.incrementAndGet();
+                subjects.computeIfAbsent(triple.getPredicate(), p -> new HashSet<>()).add(triple.getSubject());
+                Node object = triple.getObject();
+                if (object.isLiteral()) {
+                    literalObjects.computeIfAbsent(triple.getPredicate(), p -> new HashSet<>()).add(object);
+                } else {
+                    counts.resourceObjects.computeIfAbsent(object, o -> new AtomicLong()).incrementAndGet();
+                }
+            }
+        } finally {
+            all.close();
+        }
+        for (Map.Entry<Node, PredicateCounts> entry : statistics.predicates.entrySet()) {
+            PredicateCounts counts = entry.getValue();
+            counts.subjects.set(subjects.getOrDefault(entry.getKey(), Set.of()).size());
+            counts.objects.set(counts.resourceObjects.size()
+                    + literalObjects.getOrDefault(entry.getKey(), Set.of()).size());
+        }
+        System.out.println("Graph statistics: " + statistics.totalTriples() + " triples, "
+                + statistics.predicates.size() + " predicates in " + (System.currentTimeMillis() - start) + " ms");
+        return statistics;
+    }
+
+    private PredicateCounts counts(Node predicate) {
+        return predicates.computeIfAbsent(predicate, p -> new PredicateCounts());
+    }
+
+    /**
+     * Account for triples that have just been added to the graph (a change feed reports a batch
+     * once all of it is in, so a subject or literal object is new if all its matches are in the
+     * batch)
+     */
+    public void added(Collection<Triple> batch) {
+        Map<Triple, Integer> subjectKeys = new HashMap<>();
+        Map<Triple, Integer> objectKeys = new HashMap<>();
+        for (Triple triple : batch) {
+            PredicateCounts counts = counts(triple.getPredicate());
+            counts.triples.incrementAndGet();
+            triples.incrementAndGet();
+            subjectKeys.merge(Triple.create(triple.getSubject(), triple.getPredicate(), Node.ANY), 1, Integer::sum);
+            Node object = triple.getObject();
+            if (object.isLiteral()) {
+                objectKeys.merge(Triple.create(Node.ANY, triple.getPredicate(), object), 1, Integer::sum);
+            } else if (counts.resourceObjects.computeIfAbsent(object, o -> new AtomicLong()).incrementAndGet() == 1) {
+                counts.objects.incrementAndGet();
+            }
+        }
+        for (Map.Entry<Triple, Integer> key : subjectKeys.entrySet()) {
+            if (atMost(graph.find(key.getKey()), key.getValue())) {
+                counts(key.getKey().getPredicate()).subjects.incrementAndGet();
+            }
+        }
+        for (Map.Entry<Triple, Integer> key : objectKeys.entrySet()) {
+            if (atMost(graph.find(key.getKey()), key.getValue())) {
+                counts(key.getKey().getPredicate()).objects.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Account for triples that have just been removed from the graph
+     */
+    public void removed(Collection<Triple> batch) {
+        Set<Triple> subjectKeys = new HashSet<>();
+        Set<Triple> objectKeys = new HashSet<>();
+        for (Triple triple : batch) {
+            PredicateCounts counts = predicates.get(triple.getPredicate());
+            if (counts == null || counts.triples.get() == 0) {
+                continue;
+            }
+            counts.triples.decrementAndGet();
+            triples.decrementAndGet();
+            subjectKeys.add(Triple.create(triple.getSubject(), triple.getPredicate(), Node.ANY));
+            Node object = triple.getObject();
+            if (object.isLiteral()) {
+                objectKeys.add(Triple.create(Node.ANY, triple.getPredicate(), object));
+            } else {
+                AtomicLong count = counts.resourceObjects.get(object);
+                if (count != null && count.decrementAndGet() <= 0) {
+                    counts.resourceObjects.remove(object);
+                    counts.objects.decrementAndGet();
+                }
+            }
+        }
+        for (Triple key : subjectKeys) {
+            if (!graph.contains(key)) {
+                predicates.get(key.getPredicate()).subjects.decrementAndGet();
+            }
+        }
+        for (Triple key : objectKeys) {
+            if (!graph.contains(key)) {
+                predicates.get(key.getPredicate()).objects.decrementAndGet();
+            }
+        }
+    }
+
+    private static boolean atMost(ExtendedIterator<Triple> matches, int limit) {
+        try {
+            for (int i = 0; i < limit && matches.hasNext(); i++) {
+                matches.next();
+            }
+            return !matches.hasNext();
+        } finally {
+            matches.close();
+        }
+    }
+
+    public long totalTriples() {
+        return triples.get();
+    }
+
+    public long triples(Node predicate) {
+        PredicateCounts counts = predicates.get(predicate);
+        return counts == null ? 0 : counts.triples.get();
+    }
+
+    public long distinctSubjects(Node predicate) {
+        PredicateCounts counts = predicates.get(predicate);
+        return counts == null ? 0 : counts.subjects.get();
+    }
+
+    public long distinctObjects(Node predicate) {
+        PredicateCounts counts = predicates.get(predicate);
+        return counts == null ? 0 : counts.objects.get();
+    }
+
+    /**
+     * Triples with the given predicate and resource object (e.g. rdf:type movie:Movie); 0 for
+     * literal objects, which are not counted individually
+     */
+    public long triples(Node predicate, Node object) {
+        PredicateCounts counts = predicates.get(predicate);
+        AtomicLong count = counts == null ? null : counts.resourceObjects.get(object);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * One line per predicate, largest first (then by URI)
+     */
+    public String report() {
+        List<Map.Entry<Node, PredicateCounts>> entries = new ArrayList<>(predicates.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<Node, PredicateCounts> e) -> e.getValue().triples.get()).reversed()
+                .thenComparing(e -> e.getKey().toString()));
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "Graph statistics: %d triples%n", totalTriples()));
+        for (Map.Entry<Node, PredicateCounts> entry : entries) {
+            PredicateCounts counts = entry.getValue();
+            text.append(String.format(Locale.ROOT, "  %-40s %8d triples %8d subjects %8d objects%n",
+                    entry.getKey().getLocalName(), counts.triples.get(), counts.subjects.get(), counts.objects.get()));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,169 @@
+package mov.ontology;
+
+import mov.model.Movie;
+import mov.model.Person;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Times the catalog's SPARQL queries with Jena's fixed join order and with statistics-driven
+ * ordering on a synthetic catalog, and checks that both return the same movies (in any order:
+ * unpaged queries have no ORDER BY, so their order follows the join order).
+ *
+ * The ontology's movies are copied (new titles, the same genres and people) up to the requested
+ * size with a BulkImporter, the recommender runs without a MovieCatalog so every query goes to
+ * SPARQL, and each query is run with literal name patterns and again with a NameIndex (VALUES).
+ *
+ * Usage: JoinOrderBenchmark [--movies 20000] [--batch 5000] [--queries 20] [--warmup 5] [--seed 42]
+ */
+public class JoinOrderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        int count = Integer.parseInt(options.getOrDefault("movies", "20000"));
+        int batchSize = Integer.parseInt(options.getOrDefault("batch", "5000"));
+        int queryCount = Integer.parseInt(options.getOrDefault("queries", "20"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        OntologyManager ontologyManager = new OntologyManager();
+        ontologyManager.loadOntology(options.getOrDefault("ontology", "src/main/resources/ontology/movies-instances.owl"));
+        MovieRecommender recommender = new MovieRecommender(ontologyManager);
+        List<Movie> originals = recommender.getAllMovies();
+        List<Movie> feed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Movie original = originals.get(i % originals.size());
+            Movie copy = new Movie(original.getTitle() + " " + (i + 1));
+            copy.setYear(original.getYear());
+            copy.setRating(original.getRating());
+            copy.setRuntime(original.getRuntime());
+            copy.setCountry(original.getCountry());
+            copy.setGenres(new ArrayList<>(original.getGenres()));
+            copy.setDirectors(new ArrayList<>(original.getDirectors()));
+            copy.setActors(new ArrayList<>(original.getActors()));
+            feed.add(copy);
+        }
+        BulkImporter importer = new BulkImporter(ontologyManager);
+        for (int from = 0; from < feed.size(); from += batchSize) {
+            importer.importMovies(feed.subList(from, Math.min(feed.size(), from + batchSize)));
+        }
+        System.out.print(ontologyManager.getStatistics().report());
+
+        Random random = new Random(seed);
+        List<Movie> targets = new ArrayList<>(queryCount);
+        for (int attempt = 0; targets.size() < queryCount && attempt < 100 * queryCount; attempt++) {
+            Movie movie = originals.get(random.nextInt(originals.size()));
+            if (!movie.getGenres().isEmpty() && !movie.getDirectors().isEmpty() && !movie.getActors().isEmpty()) {
+                targets.add(movie);
+            }
+        }
+
+        Map<String, Function<Movie, List<Movie>>> queries = new LinkedHashMap<>();
+        queries.put("genre", movie -> recommender.recommendByGenre(movie.getGenres().get(0)));
+        queries.put("director", movie -> recommender.recommendByDirector(name(movie.getDirectors())));
+        queries.put("actor", movie -> recommender.recommendByActor(name(movie.getActors())));
+        queries.put("genre+director+year", movie -> recommender.recommendByMultipleCriteria(
+                movie.getGenres().get(0), name(movie.getDirectors()), movie.getYear() - 10));
+        queries.put("genre+actor page", movie -> {
+            MovieQuery query = new MovieQuery(SortKey.IMDB_SCORE, 20);
+            query.setGenre(movie.getGenres().get(0));
+            query.setActor(name(movie.getActors()));
+            return recommender.recommend(query).getItems();
+        });
+
+        System.out.printf(Locale.ROOT, "%d movies, %d queries per kind%n", originals.size() + count, queryCount);
+        for (boolean indexed : new boolean[] {false, true}) {
+            recommender.setNameIndex(indexed ? NameIndex.build(ontologyManager) : null);
+            System.out.println(indexed ? "With name index (VALUES):" : "Literal name patterns:");
+            for (Map.Entry<String, Function<Movie, List<Movie>>> query : queries.entrySet()) {
+                compare(ontologyManager, query.getKey(), query.getValue(), targets, warmup);
+            }
+        }
+    }
+
+    private static void compare(OntologyManager ontologyManager, String label, Function<Movie, List<Movie>> query,
+                                List<Movie> targets, int warmup) {
+        long[] fixed = new long[targets.size()];
+        long[] statistics = new long[targets.size()];
+        int mismatches = 0;
+        long rows = 0;
+        for (int i = 0; i < warmup; i++) {
+            for (OntologyManager.JoinOrdering ordering : OntologyManager.JoinOrdering.values()) {
+                ontologyManager.setJoinOrdering(ordering);
+                query.apply(targets.get(i % targets.size()));
+            }
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            List<Movie> expected = null;
+            List<Movie> actual = null;
+            for (int run = 0; run < 2; run++) {
+                // Alternate which ordering goes first so neither always pays for the other's garbage
+                boolean useFixed = (i + run) % 2 == 0;
+                ontologyManager.setJoinOrdering(useFixed ? OntologyManager.JoinOrdering.FIXED
+                        : OntologyManager.JoinOrdering.STATISTICS);
+                long start = System.nanoTime();
+                List<Movie> result = query.apply(targets.get(i));
+                long elapsed = System.nanoTime() - start;
+                if (useFixed) {
+                    fixed[i] = elapsed;
+                    expected = result;
+                } else {
+                    statistics[i] = elapsed;
+                    actual = result;
+                }
+            }
+            if (!uris(expected).equals(uris(actual))) {
+                mismatches++;
+            }
+            rows += expected.size();
+        }
+        double fixedMedian = median(fixed) / 1e6;
+        double statisticsMedian = median(statistics) / 1e6;
+        System.out.printf(Locale.ROOT, "  %-22s fixed p50 %8.2f ms  statistics p50 %8.2f ms  %5.1fx  %6.1f rows  %s%n",
+                label, fixedMedian, statisticsMedian, fixedMedian / Math.max(1e-6, statisticsMedian),
+                (double) rows / Math.max(1, targets.size()), mismatches == 0 ? "same results" : mismatches + " MISMATCHES");
+    }
+
+    private static String name(List<Person> people) {
+        return people.get(0).getName();
+    }
+
+    private static List<String> uris(List<Movie> movies) {
+        List<String> uris = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            uris.add(movie.getUri());
+        }
+        Collections.sort(uris);
+        return uris;
+    }
+
+    private static long median(long[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        return options;
+    }
+}
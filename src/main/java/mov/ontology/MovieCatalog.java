@@ -0,0 +1,775 @@
+package mov.ontology;
+
+import mov.metrics.Metrics;
+import mov.model.EntityRegistry;
+import mov.model.Movie;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.shared.Lock;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Materialised, denormalised movie table built from the Jena model.
+ *
+ * Each movie is read once into a fully populated Movie row, and secondary hash
+ * indexes map genre, director, actor, studio, country and language URIs to rows,
+ * with a sorted index on release year. Every SortKey also keeps the rows ordered by
+ * that key, so top-N queries read rows in result order and stop once the page is full.
+ * MovieRecommender answers its recommend* methods from here instead of re-joining the
+ * triple store on every call.
+ * The table follows the ontology change feed, so it only changes when the ontology does.
+ */
+public class MovieCatalog implements OntologyChangeListener {
+
+    /**
+     * Indexed link from a movie to another resource, with the property holding its display name
+     */
+    public enum Dimension {
+        GENRE("hasGenre", "genreName"),
+        DIRECTOR("hasDirector", "personName"),
+        ACTOR("hasActor", "personName"),
+        WRITER("hasWriter", "personName"),
+        STUDIO("producedBy", "studioName"),
+        COUNTRY("madeIn", "countryName"),
+        LANGUAGE("hasLanguage", "languageName");
+
+        private final String linkProperty;
+        private final String nameProperty;
+
+        Dimension(String linkProperty, String nameProperty) {
+            this.linkProperty = linkProperty;
+            this.nameProperty = nameProperty;
+        }
+
+        public String getLinkPropertyURI() {
+            return OntologyManager.MOVIE_NS + linkProperty;
+        }
+
+        public String getNamePropertyURI() {
+            return OntologyManager.MOVIE_NS + nameProperty;
+        }
+    }
+
+    private static class Row {
+        final Movie movie;
+        final Map<Dimension, List<String>> links = new EnumMap<>(Dimension.class); // linked resource URIs
+        final Map<Dimension, List<String>> names = new EnumMap<>(Dimension.class); // their name keys, null if unnamed
+        final double[] sortValues = new double[SortKey.values().length]; // NaN = no value
+
+        Row(Movie movie) {
+            this.movie = movie;
+        }
+
+        double value(SortKey key) {
+            return sortValues[key.ordinal()];
+        }
+    }
+
+    /** The rows and their indexes; rebuild fills a new one on the side and swaps it in */
+    private static final class Tables {
+        final Map<String, Row> rowsByUri = new LinkedHashMap<>();
+        final Map<Dimension, Map<String, Set<Row>>> indexes = new EnumMap<>(Dimension.class);
+        // name key -> linked URI -> number of rows linking to it under that name
+        final Map<Dimension, Map<String, Map<String, Integer>>> urisByName = new EnumMap<>(Dimension.class);
+        final TreeMap<Integer, Set<Row>> byYear = new TreeMap<>();
+        final Map<SortKey, TreeSet<Row>> bySortKey = new EnumMap<>(SortKey.class); // rows with a value, best first
+
+        Tables() {
+            for (Dimension dimension : Dimension.values()) {
+                indexes.put(dimension, new HashMap<>());
+                urisByName.put(dimension, new HashMap<>());
+            }
+            for (SortKey key : SortKey.values()) {
+                bySortKey.put(key, new TreeSet<>((a, b) ->
+                        SortKey.compare(a.value(key), a.movie.getUri(), b.value(key), b.movie.getUri(), true)));
+            }
+        }
+
+        /**
+         * Index a row whose sort values are set
+         */
+        void insert(Row row) {
+            rowsByUri.put(row.movie.getUri(), row);
+            for (SortKey key : SortKey.values()) {
+                if (!Double.isNaN(row.value(key))) bySortKey.get(key).add(row);
+            }
+            for (Map.Entry<Dimension, List<String>> entry : row.links.entrySet()) {
+                Map<String, Set<Row>> index = indexes.get(entry.getKey());
+                List<String> names = row.names.get(entry.getKey());
+                Map<String, Map<String, Integer>> byName = urisByName.get(entry.getKey());
+                for (int i = 0; i < entry.getValue().size(); i++) {
+                    String uri = entry.getValue().get(i);
+                    index.computeIfAbsent(uri, u -> new LinkedHashSet<>()).add(row);
+                    if (names.get(i) != null) {
+                        byName.computeIfAbsent(names.get(i), k -> new LinkedHashMap<>()).merge(uri, 1, Integer::sum);
+                    }
+                }
+            }
+            if (row.movie.getYear() != 0) {
+                byYear.computeIfAbsent(row.movie.getYear(), y -> new LinkedHashSet<>()).add(row);
+            }
+        }
+
+        void delete(String uri) {
+            Row row = rowsByUri.remove(uri);
+            if (row == null) {
+                return;
+            }
+            for (TreeSet<Row> ranked : bySortKey.values()) {
+                ranked.remove(row);
+            }
+            for (Map.Entry<Dimension, List<String>> entry : row.links.entrySet()) {
+                Map<String, Set<Row>> index = indexes.get(entry.getKey());
+                List<String> names = row.names.get(entry.getKey());
+                Map<String, Map<String, Integer>> byName = urisByName.get(entry.getKey());
+                for (int i = 0; i < entry.getValue().size(); i++) {
+                    String linked = entry.getValue().get(i);
+                    Set<Row> rows = index.get(linked);
+                    if (rows != null) {
+                        rows.remove(row);
+                        if (rows.isEmpty()) index.remove(linked);
+                    }
+                    // A renamed or unlinked resource stops resolving by its old name once no row uses it
+                    Map<String, Integer> uris = names.get(i) == null ? null : byName.get(names.get(i));
+                    if (uris != null) {
+                        uris.computeIfPresent(linked, (key, count) -> count > 1 ? count - 1 : null);
+                        if (uris.isEmpty()) byName.remove(names.get(i));
+                    }
+                }
+            }
+            Set<Row> sameYear = byYear.get(row.movie.getYear());
+            if (sameYear != null) {
+                sameYear.remove(row);
+                if (sameYear.isEmpty()) byYear.remove(row.movie.getYear());
+            }
+        }
+    }
+
+    private final OntologyManager ontologyManager;
+    private final EntityRegistry registry;
+    private Tables tables = new Tables(); // guarded by lock
+    private Set<String> changedDuringRebuild; // movies edited while a rebuild scans, guarded by lock
+    private final Object rebuildLock = new Object();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile ToDoubleFunction<Movie> qualityScorer; // values for SortKey.FUZZY_QUALITY
+
+    public MovieCatalog(OntologyManager ontologyManager) {
+        this(ontologyManager, new EntityRegistry());
+    }
+
+    /**
+     * @param registry source of the shared Person and name instances the rows refer to
+     */
+    public MovieCatalog(OntologyManager ontologyManager, EntityRegistry registry) {
+        this.ontologyManager = ontologyManager;
+        this.registry = registry;
+    }
+
+    /**
+     * Build the table from the current Jena model and subscribe it to the change feed
+     * as an index listener, ahead of the listeners that read it
+     */
+    public static MovieCatalog build(OntologyManager ontologyManager) {
+        return build(ontologyManager, new EntityRegistry());
+    }
+
+    public static MovieCatalog build(OntologyManager ontologyManager, EntityRegistry registry) {
+        MovieCatalog catalog = new MovieCatalog(ontologyManager, registry);
+        catalog.rebuild();
+        ontologyManager.addIndexListener(catalog);
+        return catalog;
+    }
+
+    /**
+     * Score movies for SortKey.FUZZY_QUALITY with the given function (e.g. the fuzzy evaluator),
+     * re-ranking the rows already loaded. The scorer returns NaN for movies it cannot rate.
+     */
+    public void setQualityScorer(ToDoubleFunction<Movie> qualityScorer) {
+        lock.writeLock().lock();
+        try {
+            this.qualityScorer = qualityScorer;
+            rescore(tables);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean hasQualityScorer() {
+        lock.readLock().lock();
+        try {
+            return qualityScorer != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Re-read every movie from the model into new tables and swap them in. The scan holds the
+     * model's read lock but not the catalog's, so queries keep reading the previous tables;
+     * movies edited meanwhile are re-read before the swap.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (rebuildLock) {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = new LinkedHashSet<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ToDoubleFunction<Movie> scorer = qualityScorer;
+            Model model = ontologyManager.getJenaModel();
+            Resource movieClass = model.createResource(OntologyManager.MOVIE_NS + "Movie");
+            Tables fresh = new Tables();
+            model.enterCriticalSection(Lock.READ);
+            try {
+                ResIterator movies = model.listResourcesWithProperty(RDF.type, movieClass);
+                try {
+                    while (movies.hasNext()) {
+                        Row row = readRow(model, movies.nextResource());
+                        if (row != null) {
+                            rank(row, scorer);
+                            fresh.insert(row);
+                        }
+                    }
+                } finally {
+                    movies.close();
+                }
+            } finally {
+                model.leaveCriticalSection();
+            }
+            while (true) {
+                Set<String> changed;
+                lock.writeLock().lock();
+                try {
+                    changed = changedDuringRebuild;
+                    if (changed.isEmpty()) {
+                        if (qualityScorer != scorer) rescore(fresh);
+                        tables = fresh;
+                        changedDuringRebuild = null;
+                        break;
+                    }
+                    changedDuringRebuild = new LinkedHashSet<>();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                replace(fresh, changed, readRows(model, changed, scorer));
+            }
+        }
+        System.out.println("Movie catalog built: " + size() + " movies in " +
+                (System.currentTimeMillis() - start) + " ms");
+    }
+
+    @Override
+    public void ontologyChanged(OntologyChangeEvent event) {
+        if (event.isReload()) {
+            rebuild();
+            return;
+        }
+        if (event.getAffectedMovies().isEmpty()) {
+            return;
+        }
+        // Listeners run after the writer released the model, so re-read it under a read lock.
+        // Reading under the catalog lock keeps concurrent edits applied in model order; locks
+        // are always taken catalog first, then model.
+        lock.writeLock().lock();
+        try {
+            replace(tables, event.getAffectedMovies(),
+                    readRows(ontologyManager.getJenaModel(), event.getAffectedMovies(), qualityScorer));
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.addAll(event.getAffectedMovies());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Queries
+
+    public Movie get(String uri) {
+        lock.readLock().lock();
+        try {
+            Row row = tables.rowsByUri.get(uri);
+            return row == null ? null : row.movie;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Movie> getAllMovies() {
+        lock.readLock().lock();
+        try {
+            List<Movie> movies = new ArrayList<>(tables.rowsByUri.size());
+            for (Row row : tables.rowsByUri.values()) {
+                movies.add(row.movie);
+            }
+            return movies;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Movies linked to any of the given resources along the dimension
+     */
+    public List<Movie> findByLinks(Dimension dimension, Collection<String> resourceUris) {
+        lock.readLock().lock();
+        try {
+            Set<Row> rows = new LinkedHashSet<>();
+            for (String uri : resourceUris) {
+                Set<Row> matching = tables.indexes.get(dimension).get(uri);
+                if (matching != null) {
+                    rows.addAll(matching);
+                }
+            }
+            return toMovies(rows);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Movies released between the given years (inclusive)
+     */
+    public List<Movie> findByYearRange(int startYear, int endYear) {
+        lock.readLock().lock();
+        try {
+            if (startYear > endYear) {
+                return new ArrayList<>();
+            }
+            List<Movie> movies = new ArrayList<>();
+            for (Set<Row> rows : tables.byYear.subMap(startYear, true, endYear, true).values()) {
+                for (Row row : rows) {
+                    movies.add(row.movie);
+                }
+            }
+            return movies;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * URIs of linked resources whose display name matches exactly (case-insensitive)
+     */
+    public Set<String> resolveName(Dimension dimension, String name) {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> uris = tables.urisByName.get(dimension).get(nameKey(name));
+            return uris == null ? new LinkedHashSet<>() : new LinkedHashSet<>(uris.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the movie is linked to any of the given resources along the dimension
+     */
+    public boolean hasLink(String movieUri, Dimension dimension, Collection<String> resourceUris) {
+        lock.readLock().lock();
+        try {
+            Row row = tables.rowsByUri.get(movieUri);
+            if (row == null) {
+                return false;
+            }
+            for (String uri : row.links.get(dimension)) {
+                if (resourceUris.contains(uri)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * One page of the movies matching every link filter and the year range, in SortKey order
+     * (URI order when key is null).
+     *
+     * When the filters are selective the matching rows are ranked with a heap bounded by
+     * offset + limit; otherwise the rows are read from the key's sorted index, best first,
+     * and the scan stops as soon as the page is full.
+     *
+     * @param links per dimension, the resources a movie must be linked to (any of them)
+     * @param startYear inclusive lower bound, or null
+     * @param endYear inclusive upper bound, or null
+     */
+    public List<Movie> findTop(Map<Dimension, ? extends Collection<String>> links, Integer startYear, Integer endYear,
+                               SortKey key, boolean descending, int offset, int limit) {
+        int low = startYear == null ? Integer.MIN_VALUE : startYear;
+        int high = endYear == null ? Integer.MAX_VALUE : endYear;
+        if (low > high || limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            if (key == SortKey.FUZZY_QUALITY && qualityScorer == null) {
+                throw new IllegalArgumentException("No quality scorer configured for sorting by fuzzy quality");
+            }
+            // Estimate each candidate source by its posting sizes and keep the smallest
+            Map<Dimension, Set<String>> filters = new EnumMap<>(Dimension.class);
+            Dimension narrowest = null;
+            long candidates = tables.rowsByUri.size();
+            for (Map.Entry<Dimension, ? extends Collection<String>> entry : links.entrySet()) {
+                Set<String> uris = new HashSet<>(entry.getValue());
+                long count = 0;
+                for (String uri : uris) {
+                    Set<Row> posting = tables.indexes.get(entry.getKey()).get(uri);
+                    if (posting != null) count += posting.size();
+                }
+                if (count == 0) {
+                    return new ArrayList<>();
+                }
+                filters.put(entry.getKey(), uris);
+                if (count < candidates) {
+                    candidates = count;
+                    narrowest = entry.getKey();
+                }
+            }
+            boolean byYearRange = false;
+            if (startYear != null || endYear != null) {
+                long count = 0;
+                for (Set<Row> rows : tables.byYear.subMap(low, true, high, true).values()) {
+                    count += rows.size();
+                }
+                if (count < candidates) {
+                    candidates = count;
+                    byYearRange = true;
+                }
+            }
+
+            long need = (long) offset + limit;
+            // A sorted scan reads about need / selectivity rows, a heap reads every candidate
+            boolean scanSorted = key != null && candidates * candidates > need * Math.max(1, tables.rowsByUri.size());
+            Collection<Row> source = byYearRange ? yearRows(low, high)
+                    : narrowest != null ? linkedRows(narrowest, filters.get(narrowest))
+                    : tables.rowsByUri.values();
+            List<Row> page = scanSorted
+                    ? scanSorted(key, descending, filters, low, high, source, offset, limit)
+                    : topOf(source, key, descending, filters, low, high, offset, limit);
+            return toMovies(page);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public EntityRegistry getEntityRegistry() {
+        return registry;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tables.rowsByUri.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Top-N helpers, called with the read lock held
+
+    private List<Row> scanSorted(SortKey key, boolean descending, Map<Dimension, Set<String>> filters,
+                                 int low, int high, Collection<Row> source, int offset, int limit) {
+        TreeSet<Row> ranked = tables.bySortKey.get(key);
+        Iterator<Row> it = descending ? ranked.iterator() : ranked.descendingIterator();
+        List<Row> page = new ArrayList<>(Math.min(limit, 1024));
+        int skipped = 0;
+        long touched = 0;
+        while (it.hasNext() && page.size() < limit) {
+            Row row = it.next();
+            touched++;
+            if (!matches(row, filters, low, high)) continue;
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                page.add(row);
+            }
+        }
+        if (page.size() < limit) {
+            // Sorted part exhausted: movies without a value follow, in URI order
+            List<Row> missing = new ArrayList<>();
+            for (Row row : source) {
+                touched++;
+                if (Double.isNaN(row.value(key)) && matches(row, filters, low, high)) missing.add(row);
+            }
+            missing.sort(Comparator.comparing((Row row) -> row.movie.getUri()));
+            for (Row row : missing) {
+                if (page.size() >= limit) break;
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    page.add(row);
+                }
+            }
+        }
+        Metrics.add(Metrics.ROWS_SCANNED, touched);
+        return page;
+    }
+
+    private List<Row> topOf(Collection<Row> source, SortKey key, boolean descending,
+                            Map<Dimension, Set<String>> filters, int low, int high, int offset, int limit) {
+        Comparator<Row> order = key == null
+                ? Comparator.comparing((Row row) -> row.movie.getUri())
+                : (a, b) -> SortKey.compare(a.value(key), a.movie.getUri(), b.value(key), b.movie.getUri(), descending);
+        int need = (int) Math.min(Integer.MAX_VALUE - 1L, (long) offset + limit);
+        // Max-heap on the worst kept row, so each candidate costs O(log need)
+        PriorityQueue<Row> heap = new PriorityQueue<>(Math.min(need, 1024) + 1, order.reversed());
+        for (Row row : source) {
+            if (!matches(row, filters, low, high)) continue;
+            if (heap.size() < need) {
+                heap.add(row);
+            } else if (order.compare(row, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(row);
+            }
+        }
+        Metrics.add(Metrics.ROWS_SCANNED, source.size());
+        List<Row> ranked = new ArrayList<>(heap);
+        ranked.sort(order);
+        return offset >= ranked.size() ? new ArrayList<>() : new ArrayList<>(ranked.subList(offset, ranked.size()));
+    }
+
+    private Collection<Row> linkedRows(Dimension dimension, Set<String> uris) {
+        if (uris.size() == 1) {
+            Set<Row> posting = tables.indexes.get(dimension).get(uris.iterator().next());
+            return posting == null ? Collections.emptySet() : posting;
+        }
+        Set<Row> rows = new LinkedHashSet<>();
+        for (String uri : uris) {
+            Set<Row> posting = tables.indexes.get(dimension).get(uri);
+            if (posting != null) rows.addAll(posting);
+        }
+        return rows;
+    }
+
+    private List<Row> yearRows(int low, int high) {
+        List<Row> rows = new ArrayList<>();
+        for (Set<Row> sameYear : tables.byYear.subMap(low, true, high, true).values()) {
+            rows.addAll(sameYear);
+        }
+        return rows;
+    }
+
+    private static boolean matches(Row row, Map<Dimension, Set<String>> filters, int low, int high) {
+        int year = row.movie.getYear();
+        if ((low != Integer.MIN_VALUE || high != Integer.MAX_VALUE) && (year == 0 || year < low || year > high)) {
+            return false;
+        }
+        for (Map.Entry<Dimension, Set<String>> filter : filters.entrySet()) {
+            boolean linked = false;
+            for (String uri : row.links.get(filter.getKey())) {
+                if (filter.getValue().contains(uri)) {
+                    linked = true;
+                    break;
+                }
+            }
+            if (!linked) return false;
+        }
+        return true;
+    }
+
+    // Maintenance
+
+    /**
+     * Set a row's sort values, scoring FUZZY_QUALITY with the given scorer
+     */
+    private void rank(Row row, ToDoubleFunction<Movie> scorer) {
+        for (SortKey key : SortKey.values()) {
+            row.sortValues[key.ordinal()] = key == SortKey.FUZZY_QUALITY ? score(row.movie, scorer) : key.valueOf(row.movie);
+        }
+    }
+
+    /**
+     * Re-score FUZZY_QUALITY for every row of the tables, with the write lock held
+     */
+    private void rescore(Tables target) {
+        TreeSet<Row> ranked = target.bySortKey.get(SortKey.FUZZY_QUALITY);
+        ranked.clear();
+        for (Row row : target.rowsByUri.values()) {
+            row.sortValues[SortKey.FUZZY_QUALITY.ordinal()] = score(row.movie, qualityScorer);
+            if (!Double.isNaN(row.value(SortKey.FUZZY_QUALITY))) ranked.add(row);
+        }
+    }
+
+    /**
+     * Read the given movies under the model's read lock; those that are no longer movies are absent
+     */
+    private List<Row> readRows(Model model, Collection<String> uris, ToDoubleFunction<Movie> scorer) {
+        Resource movieClass = model.createResource(OntologyManager.MOVIE_NS + "Movie");
+        List<Row> rows = new ArrayList<>();
+        model.enterCriticalSection(Lock.READ);
+        try {
+            for (String uri : uris) {
+                Resource resource = model.createResource(uri);
+                if (model.contains(resource, RDF.type, movieClass)) {
+                    Row row = readRow(model, resource);
+                    if (row != null) {
+                        rank(row, scorer);
+                        rows.add(row);
+                    }
+                }
+            }
+        } finally {
+            model.leaveCriticalSection();
+        }
+        return rows;
+    }
+
+    private static void replace(Tables target, Collection<String> uris, List<Row> rows) {
+        for (String uri : uris) {
+            target.delete(uri);
+        }
+        for (Row row : rows) {
+            target.insert(row);
+        }
+    }
+
+    /**
+     * Read one movie and its links straight from the graph (no SPARQL)
+     *
+     * @return the row, or null if the movie has no title
+     */
+    private Row readRow(Model model, Resource resource) {
+        String title = stringValue(model, resource, "title");
+        if (title == null || !resource.isURIResource()) {
+            return null;
+        }
+        Movie movie = new Movie(title);
+        movie.setUri(resource.getURI());
+        Literal year = literalValue(model, resource, "releaseYear");
+        if (year != null) movie.setYear(year.getInt());
+        Literal score = literalValue(model, resource, "imdbScore");
+        if (score != null) movie.setRating(score.getDouble());
+        Literal rottenTomatoes = literalValue(model, resource, "rottenTomatoesScore");
+        if (rottenTomatoes != null) movie.setRottenTomatoesScore(rottenTomatoes.getInt());
+        Literal runtime = literalValue(model, resource, "runtime");
+        if (runtime != null) movie.setRuntime(runtime.getInt());
+
+        Row row = new Row(movie);
+        for (Dimension dimension : Dimension.values()) {
+            List<String> linked = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            Property link = model.createProperty(dimension.getLinkPropertyURI());
+            Property name = model.createProperty(dimension.getNamePropertyURI());
+            StmtIterator it = model.listStatements(resource, link, (RDFNode) null);
+            try {
+                while (it.hasNext()) {
+                    RDFNode object = it.nextStatement().getObject();
+                    if (!object.isURIResource()) continue;
+                    Resource target = object.asResource();
+                    linked.add(target.getURI());
+                    Statement nameStatement = target.getProperty(name);
+                    String displayName = nameStatement == null ? null : nameStatement.getString();
+                    names.add(displayName == null ? null : nameKey(displayName));
+                    addToMovie(movie, dimension, target.getURI(), displayName);
+                }
+            } finally {
+                it.close();
+            }
+            row.links.put(dimension, linked);
+            row.names.put(dimension, names);
+        }
+
+        Property wonAward = model.createProperty(OntologyManager.MOVIE_NS + "wonAward");
+        Property awardName = model.createProperty(OntologyManager.MOVIE_NS + "awardName");
+        StmtIterator awards = model.listStatements(resource, wonAward, (RDFNode) null);
+        try {
+            while (awards.hasNext()) {
+                RDFNode award = awards.nextStatement().getObject();
+                if (award.isResource() && award.asResource().hasProperty(awardName)) {
+                    movie.addAward(registry.award(award.isURIResource() ? award.asResource().getURI() : null,
+                            award.asResource().getProperty(awardName).getString()));
+                }
+            }
+        } finally {
+            awards.close();
+        }
+        return row;
+    }
+
+    private static double score(Movie movie, ToDoubleFunction<Movie> scorer) {
+        if (scorer == null) {
+            return Double.NaN;
+        }
+        try {
+            return scorer.applyAsDouble(movie);
+        } catch (RuntimeException e) {
+            return Double.NaN; // e.g. fuzzy system not loaded
+        }
+    }
+
+    private void addToMovie(Movie movie, Dimension dimension, String uri, String name) {
+        if (name == null) {
+            return;
+        }
+        switch (dimension) {
+            case GENRE:
+                String genre = registry.genre(uri, name);
+                if (!movie.getGenres().contains(genre)) movie.addGenre(genre);
+                break;
+            case DIRECTOR:
+                movie.addDirector(registry.person(uri, name));
+                break;
+            case ACTOR:
+                movie.addActor(registry.person(uri, name));
+                break;
+            case WRITER:
+                movie.addWriter(registry.person(uri, name));
+                break;
+            case COUNTRY:
+                if (movie.getCountry() == null) movie.setCountry(registry.country(uri, name));
+                break;
+            default:
+                // studio and language are indexed but not part of the Movie model
+        }
+    }
+
+    private static Literal literalValue(Model model, Resource resource, String property) {
+        Statement statement = resource.getProperty(model.createProperty(OntologyManager.MOVIE_NS + property));
+        return statement != null && statement.getObject().isLiteral() ? statement.getLiteral() : null;
+    }
+
+    private static String stringValue(Model model, Resource resource, String property) {
+        Literal literal = literalValue(model, resource, property);
+        return literal == null ? null : literal.getString();
+    }
+
+    private static String nameKey(String name) {
+        return name.trim().toLowerCase();
+    }
+
+    private static List<Movie> toMovies(Collection<Row> rows) {
+        List<Movie> movies = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            movies.add(row.movie);
+        }
+        return movies;
+    }
+}
@@ -0,0 +1,123 @@
+package mov.ontology;
+
+import mov.model.MovieField;
+
+import java.util.Set;
+
+/**
+ * Criteria, ordering and paging for MovieRecommender.recommend(MovieQuery).
+ * Unset criteria do not restrict the result; all set criteria must match.
+ */
+public class MovieQuery {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    private String genre;
+    private String director;
+    private String actor;
+    private Integer startYear; // inclusive
+    private Integer endYear; // inclusive
+    private SortKey sortKey; // null = URI order
+    private boolean descending = true;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private String cursor; // from ResultPage.getNextCursor(), null for the first page
+    private Set<MovieField> fields = MovieField.DEFAULT; // attributes to fetch besides URI and title
+
+    public MovieQuery() {
+    }
+
+    public MovieQuery(SortKey sortKey, int pageSize) {
+        this.sortKey = sortKey;
+        this.pageSize = pageSize;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public void setGenre(String genre) {
+        this.genre = genre;
+    }
+
+    public String getDirector() {
+        return director;
+    }
+
+    public void setDirector(String director) {
+        this.director = director;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public void setActor(String actor) {
+        this.actor = actor;
+    }
+
+    public Integer getStartYear() {
+        return startYear;
+    }
+
+    public void setStartYear(Integer startYear) {
+        this.startYear = startYear;
+    }
+
+    public Integer getEndYear() {
+        return endYear;
+    }
+
+    public void setEndYear(Integer endYear) {
+        this.endYear = endYear;
+    }
+
+    public SortKey getSortKey() {
+        return sortKey;
+    }
+
+    public void setSortKey(SortKey sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public Set<MovieField> getFields() {
+        return fields;
+    }
+
+    /**
+     * Attributes to fetch on the SPARQL path; the sort key's attribute is always fetched
+     */
+    public void setFields(Set<MovieField> fields) {
+        this.fields = fields;
+    }
+
+    @Override
+    public String toString() {
+        return "MovieQuery [genre=" + genre + ", director=" + director + ", actor=" + actor +
+                ", years=" + startYear + "-" + endYear + ", sortKey=" + sortKey +
+                (descending ? " desc" : " asc") + ", pageSize=" + pageSize + ", cursor=" + cursor +
+                ", fields=" + fields + "]";
+    }
+}
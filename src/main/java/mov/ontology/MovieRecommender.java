@@ -1,187 +1,744 @@
 package mov.ontology;
 
+import mov.concurrent.SingleFlight;
+import mov.metrics.Metrics;
+import mov.model.EntityRegistry;
 import mov.model.Movie;
+import mov.model.MovieField;
 import mov.model.Person;
+import org.apache.jena.query.QueryCancelledException;
 import org.apache.jena.query.QuerySolution;
-import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.RDFNode;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
+/**
+ * Structured movie search: answered from a MovieCatalog when one is set, otherwise by SPARQL.
+ *
+ * Methods taking a Set of MovieField fetch only those attributes on the SPARQL path (URI and
+ * title always); catalog movies are already materialised and are returned whole, as shared
+ * instances, so a projection costs nothing there.
+ */
 public class MovieRecommender {
 
+    private static final String PREFIXES =
+            "PREFIX movie: <http://www.semanticweb.org/ontologies/movie#> \n" +
+                    "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> \n" +
+                    "PREFIX xsd: <http://www.w3.org/2001/XMLSchema#> \n";
+
+    /** Single-valued attributes: field, variables, pattern */
+    private static final Object[][] SCALAR_DETAILS = {
+            {MovieField.YEAR, "?year", "?movie movie:releaseYear ?year"},
+            {MovieField.RATING, "?score", "?movie movie:imdbScore ?score"},
+            {MovieField.ROTTEN_TOMATOES, "?rt", "?movie movie:rottenTomatoesScore ?rt"},
+            {MovieField.RUNTIME, "?runtime", "?movie movie:runtime ?runtime"}};
+
+    /** Multi-valued links, one UNION branch each: field, variables, pattern */
+    private static final Object[][] LINK_DETAILS = {
+            {MovieField.DIRECTORS, "?dir ?directorName", "?movie movie:hasDirector ?dir . ?dir movie:personName ?directorName"},
+            {MovieField.GENRES, "?genre ?genreName", "?movie movie:hasGenre ?genre . ?genre movie:genreName ?genreName"},
+            {MovieField.ACTORS, "?actor ?actorName", "?movie movie:hasActor ?actor . ?actor movie:personName ?actorName"},
+            {MovieField.COUNTRY, "?country ?countryName", "?movie movie:madeIn ?country . ?country movie:countryName ?countryName"},
+            {MovieField.WRITERS, "?writer ?writerName", "?movie movie:hasWriter ?writer . ?writer movie:personName ?writerName"},
+            {MovieField.AWARDS, "?award ?awardName", "?movie movie:wonAward ?award . ?award movie:awardName ?awardName"}};
+
     private OntologyManager ontologyManager;
+    private volatile EntityRegistry entityRegistry = new EntityRegistry(); // shared people and names
+    private volatile NameIndex nameIndex; // optional: resolves typed names to URIs before querying
+    private volatile MovieCatalog catalog; // optional: materialised view answering recommend* directly
+    private volatile SingleFlight<List<Object>, List<Movie>> flights; // *Async requests, created on first use
 
     public MovieRecommender(OntologyManager ontologyManager) {
         this.ontologyManager = ontologyManager;
     }
 
+    /**
+     * Resolve genre/person names through the given index (typo tolerant) instead of
+     * matching name literals exactly in SPARQL
+     */
+    public void setNameIndex(NameIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    public NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Answer the recommend* methods from a materialised catalog; SPARQL remains the path
+     * for ad-hoc queries. The catalog must be registered on the change feed before any
+     * listener that reads movies through this recommender, so it is refreshed first.
+     */
+    public void setCatalog(MovieCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public MovieCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * The catalog a lookup should use, counting it as a cache hit, or null (a miss: the caller
+     * falls back to SPARQL)
+     */
+    private MovieCatalog catalogView() {
+        MovieCatalog view = catalog;
+        Metrics.increment(view != null ? Metrics.CACHE_HITS : Metrics.CACHE_MISSES);
+        return view;
+    }
+
+    /**
+     * Registry whose shared Person and name instances SPARQL results are built from;
+     * pass the same one to the catalog so both paths hand out the same objects
+     */
+    public void setEntityRegistry(EntityRegistry entityRegistry) {
+        this.entityRegistry = entityRegistry;
+    }
+
+    public EntityRegistry getEntityRegistry() {
+        return entityRegistry;
+    }
+
     public List<Movie> recommendByGenre(String genre) {
-        String queryString =
-                "PREFIX movie: <http://www.semanticweb.org/ontologies/movie#> \n" +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> \n" +
-                        "SELECT ?movie ?title ?year ?score ?directorName ?genreName ?runtime \n" +
-                        "WHERE { \n" +
-                        "  ?movie rdf:type movie:Movie . \n" +
-                        "  ?movie movie:hasGenre ?g . \n" +
-                        "  ?g movie:genreName \"" + genre + "\" . \n" +
-                        "  ?movie movie:title ?title . \n" +
-                        "  OPTIONAL { ?movie movie:releaseYear ?year } \n" +
-                        "  OPTIONAL { ?movie movie:imdbScore ?score } \n" +
-                        "  OPTIONAL { ?movie movie:runtime ?runtime } \n" +
-                        "  OPTIONAL { ?movie movie:hasDirector ?dir . ?dir movie:personName ?directorName } \n" +
-                        "  OPTIONAL { ?movie movie:hasGenre ?genre2 . ?genre2 movie:genreName ?genreName } \n" +
-                        "}";
-        return executeRichMovieQuery(queryString);
+        return recommendByGenre(genre, 0, 0);
+    }
+
+    /**
+     * @param limit maximum number of movies to return (0 = no limit)
+     * @param offset number of movies to skip, in URI order
+     */
+    public List<Movie> recommendByGenre(String genre, long limit, long offset) {
+        return recommendByGenre(genre, limit, offset, MovieField.DEFAULT);
+    }
+
+    /**
+     * @param fields attributes to fetch besides URI and title
+     */
+    public List<Movie> recommendByGenre(String genre, long limit, long offset, Set<MovieField> fields) {
+        MovieCatalog view = catalogView();
+        if (view != null) {
+            return page(view.findByLinks(MovieCatalog.Dimension.GENRE,
+                    resolveUris(view, NameIndex.Kind.GENRE, MovieCatalog.Dimension.GENRE, genre)), limit, offset);
+        }
+        String link = linkPattern("hasGenre", "g", NameIndex.Kind.GENRE, genre);
+        if (link == null) {
+            return new ArrayList<>();
+        }
+        String core = link + "  ?movie rdf:type movie:Movie . \n";
+        return executeRichMovieQuery(buildMovieQuery(core, "STR(?movie)", limit, offset, fields));
     }
 
     public List<Movie> recommendByDirector(String directorName) {
-        String queryString =
-                "PREFIX movie: <http://www.semanticweb.org/ontologies/movie#> \n" +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> \n" +
-                        "SELECT ?movie ?title ?year ?score ?directorName ?genreName ?runtime \n" +
-                        "WHERE { \n" +
-                        "  ?movie rdf:type movie:Movie . \n" +
-                        "  ?movie movie:hasDirector ?d . \n" +
-                        "  ?d movie:personName \"" + directorName + "\" . \n" +
-                        "  ?movie movie:title ?title . \n" +
-                        "  OPTIONAL { ?movie movie:releaseYear ?year } \n" +
-                        "  OPTIONAL { ?movie movie:imdbScore ?score } \n" +
-                        "  OPTIONAL { ?movie movie:runtime ?runtime } \n" +
-                        "  OPTIONAL { ?movie movie:hasDirector ?dir . ?dir movie:personName ?directorName } \n" +
-                        "  OPTIONAL { ?movie movie:hasGenre ?genre . ?genre movie:genreName ?genreName } \n" +
-                        "}";
-        return executeRichMovieQuery(queryString);
+        return recommendByDirector(directorName, 0, 0);
+    }
+
+    public List<Movie> recommendByDirector(String directorName, long limit, long offset) {
+        return recommendByDirector(directorName, limit, offset, MovieField.DEFAULT);
+    }
+
+    public List<Movie> recommendByDirector(String directorName, long limit, long offset, Set<MovieField> fields) {
+        MovieCatalog view = catalogView();
+        if (view != null) {
+            return page(view.findByLinks(MovieCatalog.Dimension.DIRECTOR,
+                    resolveUris(view, NameIndex.Kind.PERSON, MovieCatalog.Dimension.DIRECTOR, directorName)), limit, offset);
+        }
+        String link = linkPattern("hasDirector", "d", NameIndex.Kind.PERSON, directorName);
+        if (link == null) {
+            return new ArrayList<>();
+        }
+        String core = link + "  ?movie rdf:type movie:Movie . \n";
+        return executeRichMovieQuery(buildMovieQuery(core, "STR(?movie)", limit, offset, fields));
     }
 
     public List<Movie> recommendByActor(String actorName) {
-        String queryString =
-                "PREFIX movie: <http://www.semanticweb.org/ontologies/movie#> \n" +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> \n" +
-                        "SELECT ?movie ?title ?year ?score ?directorName ?genreName ?runtime \n" +
-                        "WHERE { \n" +
-                        "  ?movie rdf:type movie:Movie . \n" +
-                        "  ?movie movie:hasActor ?a . \n" +
-                        "  ?a movie:personName \"" + actorName + "\" . \n" +
-                        "  ?movie movie:title ?title . \n" +
-                        "  OPTIONAL { ?movie movie:releaseYear ?year } \n" +
-                        "  OPTIONAL { ?movie movie:imdbScore ?score } \n" +
-                        "  OPTIONAL { ?movie movie:runtime ?runtime } \n" +
-                        "  OPTIONAL { ?movie movie:hasDirector ?dir . ?dir movie:personName ?directorName } \n" +
-                        "  OPTIONAL { ?movie movie:hasGenre ?genre . ?genre movie:genreName ?genreName } \n" +
-                        "}";
-        return executeRichMovieQuery(queryString);
+        return recommendByActor(actorName, 0, 0);
+    }
+
+    public List<Movie> recommendByActor(String actorName, long limit, long offset) {
+        return recommendByActor(actorName, limit, offset, MovieField.DEFAULT);
+    }
+
+    public List<Movie> recommendByActor(String actorName, long limit, long offset, Set<MovieField> fields) {
+        MovieCatalog view = catalogView();
+        if (view != null) {
+            return page(view.findByLinks(MovieCatalog.Dimension.ACTOR,
+                    resolveUris(view, NameIndex.Kind.PERSON, MovieCatalog.Dimension.ACTOR, actorName)), limit, offset);
+        }
+        String link = linkPattern("hasActor", "a", NameIndex.Kind.PERSON, actorName);
+        if (link == null) {
+            return new ArrayList<>();
+        }
+        String core = link + "  ?movie rdf:type movie:Movie . \n";
+        return executeRichMovieQuery(buildMovieQuery(core, "STR(?movie)", limit, offset, fields));
     }
 
     public List<Movie> recommendByYearRange(int startYear, int endYear) {
-        String queryString =
-                "PREFIX movie: <http://www.semanticweb.org/ontologies/movie#> \n" +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> \n" +
-                        "SELECT ?movie ?title ?year ?score ?directorName ?genreName ?runtime \n" +
-                        "WHERE { \n" +
-                        "  ?movie rdf:type movie:Movie . \n" +
-                        "  ?movie movie:title ?title . \n" +
-                        "  ?movie movie:releaseYear ?year . \n" +
-                        "  FILTER (?year >= " + startYear + " && ?year <= " + endYear + ") \n" +
-                        "  OPTIONAL { ?movie movie:imdbScore ?score } \n" +
-                        "  OPTIONAL { ?movie movie:runtime ?runtime } \n" +
-                        "  OPTIONAL { ?movie movie:hasDirector ?dir . ?dir movie:personName ?directorName } \n" +
-                        "  OPTIONAL { ?movie movie:hasGenre ?genre . ?genre movie:genreName ?genreName } \n" +
-                        "}";
-        return executeRichMovieQuery(queryString);
+        return recommendByYearRange(startYear, endYear, 0, 0);
+    }
+
+    public List<Movie> recommendByYearRange(int startYear, int endYear, long limit, long offset) {
+        return recommendByYearRange(startYear, endYear, limit, offset, MovieField.DEFAULT);
+    }
+
+    public List<Movie> recommendByYearRange(int startYear, int endYear, long limit, long offset, Set<MovieField> fields) {
+        MovieCatalog view = catalogView();
+        if (view != null) {
+            return page(view.findByYearRange(startYear, endYear), limit, offset);
+        }
+        String core =
+                "  ?movie rdf:type movie:Movie . \n" +
+                        "  ?movie movie:releaseYear ?y . \n" +
+                        "  FILTER (?y >= " + startYear + " && ?y <= " + endYear + ") \n";
+        return executeRichMovieQuery(buildMovieQuery(core, "STR(?movie)", limit, offset, fields));
+    }
+
+    /**
+     * Run the async recommend* variants on this executor instead of the default bounded pool
+     * (-Dmov.async.threads, -Dmov.async.queue)
+     */
+    public void setAsyncExecutor(ExecutorService executor) {
+        this.flights = new SingleFlight<>(executor);
+    }
+
+    /**
+     * As recommendByGenre; identical requests (same projection included) already in flight share
+     * one query and one result list, which is read-only. Cancelling the future detaches this
+     * caller only.
+     */
+    public CompletableFuture<List<Movie>> recommendByGenreAsync(String genre, long limit, long offset) {
+        return recommendByGenreAsync(genre, limit, offset, MovieField.DEFAULT);
+    }
+
+    public CompletableFuture<List<Movie>> recommendByGenreAsync(String genre, long limit, long offset,
+                                                                Set<MovieField> fields) {
+        return flight(() -> recommendByGenre(genre, limit, offset, fields), "genre", genre, limit, offset, fields);
+    }
+
+    public CompletableFuture<List<Movie>> recommendByDirectorAsync(String directorName, long limit, long offset) {
+        return recommendByDirectorAsync(directorName, limit, offset, MovieField.DEFAULT);
+    }
+
+    public CompletableFuture<List<Movie>> recommendByDirectorAsync(String directorName, long limit, long offset,
+                                                                   Set<MovieField> fields) {
+        return flight(() -> recommendByDirector(directorName, limit, offset, fields), "director", directorName, limit, offset, fields);
+    }
+
+    public CompletableFuture<List<Movie>> recommendByActorAsync(String actorName, long limit, long offset) {
+        return recommendByActorAsync(actorName, limit, offset, MovieField.DEFAULT);
+    }
+
+    public CompletableFuture<List<Movie>> recommendByActorAsync(String actorName, long limit, long offset,
+                                                                Set<MovieField> fields) {
+        return flight(() -> recommendByActor(actorName, limit, offset, fields), "actor", actorName, limit, offset, fields);
+    }
+
+    public CompletableFuture<List<Movie>> recommendByYearRangeAsync(int startYear, int endYear, long limit, long offset) {
+        return recommendByYearRangeAsync(startYear, endYear, limit, offset, MovieField.DEFAULT);
+    }
+
+    public CompletableFuture<List<Movie>> recommendByYearRangeAsync(int startYear, int endYear, long limit, long offset,
+                                                                    Set<MovieField> fields) {
+        return flight(() -> recommendByYearRange(startYear, endYear, limit, offset, fields), "year", startYear, endYear, limit, offset, fields);
+    }
+
+    private CompletableFuture<List<Movie>> flight(Supplier<List<Movie>> query, Object... key) {
+        SingleFlight<List<Object>, List<Movie>> current = flights;
+        if (current == null) {
+            synchronized (this) {
+                if (flights == null) {
+                    flights = new SingleFlight<>(SingleFlight.boundedExecutor("mov-recommend",
+                            Integer.getInteger("mov.async.threads", Runtime.getRuntime().availableProcessors()),
+                            Integer.getInteger("mov.async.queue", 1024)));
+                }
+                current = flights;
+            }
+        }
+        return current.execute(Arrays.asList(key), () -> Collections.unmodifiableList(query.get()));
     }
 
     public List<Movie> recommendByMultipleCriteria(String genre, String director, Integer minYear) {
-        StringBuilder query = new StringBuilder();
-        query.append("PREFIX movie: <http://www.semanticweb.org/ontologies/movie#> \n");
-        query.append("PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> \n");
-        query.append("SELECT ?movie ?title ?year ?score ?directorName ?genreName ?runtime \n");
-        query.append("WHERE { \n");
-        query.append("  ?movie rdf:type movie:Movie . \n");
-        query.append("  ?movie movie:title ?title . \n");
+        MovieCatalog view = catalogView();
+        if (view != null) {
+            return multipleCriteriaFromCatalog(view, genre, director, minYear);
+        }
+        StringBuilder core = new StringBuilder();
 
         if (genre != null && !genre.isEmpty()) {
-            query.append("  ?movie movie:hasGenre ?g . \n");
-            query.append("  ?g movie:genreName \"" + genre + "\" . \n");
+            String link = linkPattern("hasGenre", "g", NameIndex.Kind.GENRE, genre);
+            if (link == null) return new ArrayList<>();
+            core.append(link);
         }
         if (director != null && !director.isEmpty()) {
-            query.append("  ?movie movie:hasDirector ?d . \n");
-            query.append("  ?d movie:personName \"" + director + "\" . \n");
+            String link = linkPattern("hasDirector", "d", NameIndex.Kind.PERSON, director);
+            if (link == null) return new ArrayList<>();
+            core.append(link);
         }
+        core.append("  ?movie rdf:type movie:Movie . \n");
         if (minYear != null) {
-            query.append("  ?movie movie:releaseYear ?year . \n");
-            query.append("  FILTER (?year >= " + minYear + ") \n");
-        } else {
-            query.append("  OPTIONAL { ?movie movie:releaseYear ?year } \n");
+            core.append("  ?movie movie:releaseYear ?y . \n");
+            core.append("  FILTER (?y >= " + minYear + ") \n");
         }
-        query.append("  OPTIONAL { ?movie movie:imdbScore ?score } \n");
-        query.append("  OPTIONAL { ?movie movie:runtime ?runtime } \n");
-        query.append("  OPTIONAL { ?movie movie:hasDirector ?dir . ?dir movie:personName ?directorName } \n");
-        query.append("  OPTIONAL { ?movie movie:hasGenre ?genre2 . ?genre2 movie:genreName ?genreName } \n");
-        query.append("}");
-        return executeRichMovieQuery(query.toString());
+        return executeRichMovieQuery(buildMovieQuery(core.toString(), "STR(?movie)", 0, 0, MovieField.DEFAULT));
+    }
+
+    /**
+     * Names of all genres, sorted
+     */
+    public List<String> getGenreNames() {
+        List<String> names = new ArrayList<>();
+        ontologyManager.executeSelect(PREFIXES + "SELECT DISTINCT ?name WHERE { ?genre movie:genreName ?name } ORDER BY ?name",
+                solution -> names.add(solution.getLiteral("name").getString()));
+        return names;
     }
 
     /**
      * Get all movies with full data for CBR (genres, directors, rating)
      */
     public List<Movie> getAllMovies() {
-        String queryString =
-                "PREFIX movie: <http://www.semanticweb.org/ontologies/movie#> \n" +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> \n" +
-                        "SELECT ?movie ?title ?year ?score ?directorName ?genreName ?runtime \n" +
-                        "WHERE { \n" +
-                        "  ?movie rdf:type movie:Movie . \n" +
-                        "  ?movie movie:title ?title . \n" +
-                        "  OPTIONAL { ?movie movie:releaseYear ?year } \n" +
-                        "  OPTIONAL { ?movie movie:imdbScore ?score } \n" +
-                        "  OPTIONAL { ?movie movie:runtime ?runtime } \n" +
-                        "  OPTIONAL { ?movie movie:hasDirector ?director . ?director movie:personName ?directorName } \n" +
-                        "  OPTIONAL { ?movie movie:hasGenre ?genre . ?genre movie:genreName ?genreName } \n" +
-                        "}";
-        return executeRichMovieQuery(queryString);
-    }
-
-    /**
-     * Executes a SPARQL query and returns fully populated Movie objects
-     * (title, year, imdbScore, runtime, directors, genres)
+        return getAllMovies(0, 0);
+    }
+
+    /**
+     * Get one page of movies, in URI order
      */
-    private List<Movie> executeRichMovieQuery(String queryString) {
-        Map<String, Movie> movieMap = new LinkedHashMap<>();
+    public List<Movie> getAllMovies(long limit, long offset) {
+        return getAllMovies(limit, offset, MovieField.DEFAULT);
+    }
+
+    public List<Movie> getAllMovies(long limit, long offset, Set<MovieField> fields) {
+        MovieCatalog view = catalogView();
+        if (view != null) {
+            return page(view.getAllMovies(), limit, offset);
+        }
+        return executeRichMovieQuery(buildMovieQuery("  ?movie rdf:type movie:Movie . \n", "STR(?movie)",
+                limit, offset, fields));
+    }
+
+    /**
+     * Get fully populated movies for the given ontology URIs.
+     * URIs that no longer denote a movie are absent from the result.
+     */
+    public List<Movie> getMoviesByUris(Collection<String> uris) {
+        return getMoviesByUris(uris, MovieField.DEFAULT);
+    }
+
+    /**
+     * As getMoviesByUris; without a catalog only the given attributes are fetched (catalog
+     * movies always have every attribute)
+     */
+    public List<Movie> getMoviesByUris(Collection<String> uris, Set<MovieField> fields) {
+        if (uris.isEmpty()) {
+            return new ArrayList<>();
+        }
+        MovieCatalog view = catalogView();
+        if (view != null) {
+            List<Movie> movies = new ArrayList<>();
+            for (String uri : uris) {
+                Movie movie = view.get(uri);
+                if (movie != null) movies.add(movie);
+            }
+            return movies;
+        }
+        StringBuilder values = new StringBuilder();
+        for (String uri : uris) {
+            values.append("<").append(uri).append("> ");
+        }
+        String core =
+                "  VALUES ?movie { " + values + "} \n" +
+                        "  ?movie rdf:type movie:Movie . \n";
+        return executeRichMovieQuery(buildMovieQuery(core, "STR(?movie)", 0, 0, fields));
+    }
+
+    /**
+     * Get a single fully populated movie, or null if the URI is not a movie
+     */
+    public Movie getMovieByUri(String uri) {
+        List<Movie> movies = getMoviesByUris(List.of(uri));
+        return movies.isEmpty() ? null : movies.get(0);
+    }
+
+    /**
+     * One page of movies matching the query, ranked by its sort key.
+     * With a catalog the ranking runs over the catalog's sorted indexes; otherwise ORDER BY and
+     * LIMIT are pushed into the SPARQL sub-select, so only the returned page is materialised.
+     *
+     * @throws IllegalArgumentException for an invalid cursor or page size, or when sorting by
+     *         fuzzy quality without a catalog that has a quality scorer
+     */
+    public ResultPage<Movie> recommend(MovieQuery query) {
+        if (query.getPageSize() <= 0 || query.getPageSize() == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + (Integer.MAX_VALUE - 1));
+        }
+        int pageSize = query.getPageSize();
+        int offset = decodeCursor(query.getCursor(), pageSize);
+        List<Movie> movies;
+        MovieCatalog view = catalogView();
+        if (view != null) {
+            Map<MovieCatalog.Dimension, Collection<String>> links = new EnumMap<>(MovieCatalog.Dimension.class);
+            if (!addLink(view, links, NameIndex.Kind.GENRE, MovieCatalog.Dimension.GENRE, query.getGenre())
+                    || !addLink(view, links, NameIndex.Kind.PERSON, MovieCatalog.Dimension.DIRECTOR, query.getDirector())
+                    || !addLink(view, links, NameIndex.Kind.PERSON, MovieCatalog.Dimension.ACTOR, query.getActor())) {
+                return ResultPage.empty();
+            }
+            // One extra row tells whether another page follows
+            movies = view.findTop(links, query.getStartYear(), query.getEndYear(),
+                    query.getSortKey(), query.isDescending(), offset, pageSize + 1);
+        } else {
+            movies = sortedFromSparql(query, offset, pageSize + 1);
+        }
+        if (movies.size() <= pageSize) {
+            return new ResultPage<>(movies, null);
+        }
+        return new ResultPage<>(new ArrayList<>(movies.subList(0, pageSize)), encodeCursor(offset + pageSize));
+    }
+
+    private boolean addLink(MovieCatalog view, Map<MovieCatalog.Dimension, Collection<String>> links,
+                            NameIndex.Kind kind, MovieCatalog.Dimension dimension, String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return true;
+        }
+        Collection<String> uris = resolveUris(view, kind, dimension, name);
+        links.put(dimension, uris);
+        return !uris.isEmpty();
+    }
+
+    private List<Movie> sortedFromSparql(MovieQuery query, int offset, int limit) {
+        SortKey key = query.getSortKey();
+        if (key != null && key.getProperty() == null) {
+            throw new IllegalArgumentException("Sorting by " + key + " requires the movie catalog");
+        }
+        StringBuilder core = new StringBuilder();
+        String[][] links = {
+                {"hasGenre", "g", query.getGenre()},
+                {"hasDirector", "d", query.getDirector()},
+                {"hasActor", "a", query.getActor()}};
+        for (String[] link : links) {
+            if (link[2] == null || link[2].trim().isEmpty()) continue;
+            String pattern = linkPattern(link[0], link[1],
+                    link[0].equals("hasGenre") ? NameIndex.Kind.GENRE : NameIndex.Kind.PERSON, link[2]);
+            if (pattern == null) return new ArrayList<>();
+            core.append(pattern);
+        }
+        core.append("  ?movie rdf:type movie:Movie . \n");
+        if (query.getStartYear() != null || query.getEndYear() != null) {
+            core.append("  ?movie movie:releaseYear ?y . \n");
+            if (query.getStartYear() != null) core.append("  FILTER (?y >= " + query.getStartYear() + ") \n");
+            if (query.getEndYear() != null) core.append("  FILTER (?y <= " + query.getEndYear() + ") \n");
+        }
+        String orderBy = "STR(?movie)";
+        if (key != null) {
+            // Values are compared as doubles: the data mixes xsd:integer and xsd:decimal, and the
+            // engine orders equal values of different datatypes by datatype, not by URI
+            core.append("  OPTIONAL { ?movie movie:" + key.getProperty() + " ?sortValue } \n");
+            orderBy = query.isDescending()
+                    ? "(!BOUND(?sortValue)) DESC(xsd:double(?sortValue)) STR(?movie)"
+                    : "(!BOUND(?sortValue)) ASC(xsd:double(?sortValue)) " +
+                      "DESC(IF(BOUND(?sortValue), STR(?movie), \"\")) STR(?movie)"; // missing values stay in URI order
+        }
+        Set<MovieField> fields = query.getFields();
+        if (key != null && !fields.contains(key.getField())) {
+            EnumSet<MovieField> withKey = EnumSet.of(key.getField()); // needed to re-sort below
+            withKey.addAll(fields);
+            fields = withKey;
+        }
+        List<Movie> movies = executeRichMovieQuery(buildMovieQuery(core.toString(), orderBy, limit, offset, fields));
+        // The detail join does not preserve the sub-select order
+        Comparator<Movie> order = key == null
+                ? Comparator.comparing(Movie::getUri)
+                : SortKey.comparator(key::valueOf, query.isDescending());
+        movies.sort(order);
+        return movies;
+    }
+
+    private static String encodeCursor(int offset) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("o:" + offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Offset encoded in a client-supplied cursor; offsets that would overflow offset + pageSize + 1
+     * (the one-extra-row probe) are rejected
+     */
+    private static int decodeCursor(String cursor, int pageSize) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
         try {
-            ResultSet results = ontologyManager.executeSPARQLQuery(queryString);
-            while (results.hasNext()) {
-                QuerySolution solution = results.nextSolution();
-                String uri = solution.getResource("movie").getURI();
-
-                Movie movie = movieMap.getOrDefault(uri, new Movie());
-                movie.setUri(uri);
-                movie.setTitle(solution.getLiteral("title").getString());
-
-                if (solution.contains("year"))
-                    movie.setYear(solution.getLiteral("year").getInt());
-                if (solution.contains("score"))
-                    movie.setRating(solution.getLiteral("score").getDouble());
-                if (solution.contains("runtime"))
-                    movie.setRuntime(solution.getLiteral("runtime").getInt());
-                if (solution.contains("directorName")) {
-                    String dName = solution.getLiteral("directorName").getString();
-                    boolean exists = movie.getDirectors().stream().anyMatch(d -> d.getName().equals(dName));
-                    if (!exists) movie.addDirector(new Person(dName));
-                }
-                if (solution.contains("genreName")) {
-                    String g = solution.getLiteral("genreName").getString();
-                    if (!movie.getGenres().contains(g)) movie.addGenre(g);
-                }
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.startsWith("o:")) {
+                int offset = Integer.parseInt(decoded.substring(2));
+                if (offset >= 0 && offset <= Integer.MAX_VALUE - 1 - pageSize) return offset;
+            }
+        } catch (IllegalArgumentException e) {
+            // fall through (NumberFormatException is an IllegalArgumentException too)
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+
+    private List<Movie> multipleCriteriaFromCatalog(MovieCatalog view, String genre, String director, Integer minYear) {
+        List<Movie> candidates;
+        Set<String> directorUris = null;
+        if (director != null && !director.isEmpty()) {
+            directorUris = new HashSet<>(resolveUris(view, NameIndex.Kind.PERSON, MovieCatalog.Dimension.DIRECTOR, director));
+        }
+        if (genre != null && !genre.isEmpty()) {
+            candidates = view.findByLinks(MovieCatalog.Dimension.GENRE,
+                    resolveUris(view, NameIndex.Kind.GENRE, MovieCatalog.Dimension.GENRE, genre));
+        } else if (directorUris != null) {
+            candidates = view.findByLinks(MovieCatalog.Dimension.DIRECTOR, directorUris);
+        } else if (minYear != null) {
+            candidates = view.findByYearRange(minYear, Integer.MAX_VALUE);
+        } else {
+            candidates = view.getAllMovies();
+        }
 
-                movieMap.put(uri, movie);
+        List<Movie> result = new ArrayList<>();
+        for (Movie movie : candidates) {
+            if (directorUris != null && !view.hasLink(movie.getUri(), MovieCatalog.Dimension.DIRECTOR, directorUris)) {
+                continue;
+            }
+            if (minYear != null && (movie.getYear() == 0 || movie.getYear() < minYear)) {
+                continue;
             }
+            result.add(movie);
+        }
+        return result;
+    }
+
+    /**
+     * Resolve a typed name to resource URIs, through the name index when available
+     */
+    private Collection<String> resolveUris(MovieCatalog view, NameIndex.Kind kind,
+                                           MovieCatalog.Dimension dimension, String name) {
+        NameIndex index = nameIndex;
+        return index != null ? index.resolve(kind, name) : view.resolveName(dimension, name);
+    }
+
+    /**
+     * Apply limit/offset in URI order, matching the ordering of the paged SPARQL path
+     */
+    private static List<Movie> page(List<Movie> movies, long limit, long offset) {
+        if (limit <= 0 && offset <= 0) {
+            return movies;
+        }
+        movies.sort(Comparator.comparing(Movie::getUri));
+        int from = (int) Math.min(offset, movies.size());
+        int to = limit > 0 ? (int) Math.min(from + limit, movies.size()) : movies.size();
+        return new ArrayList<>(movies.subList(from, to));
+    }
+
+    /**
+     * Build the full query around the patterns that select ?movie.
+     * When paging, the selection runs as a sub-query so LIMIT/OFFSET count movies
+     * rather than the (movie x director x genre) rows produced by the detail patterns.
+     *
+     * @param orderBy ORDER BY conditions for the paged sub-query, over ?movie and any variable
+     *        bound by the core patterns
+     * @param fields attributes whose detail patterns are joined in; the title always is
+     */
+    private String buildMovieQuery(String corePatterns, String orderBy, long limit, long offset, Set<MovieField> fields) {
+        corePatterns = valuesFirst(corePatterns);
+        StringBuilder query = new StringBuilder();
+        query.append(PREFIXES);
+        query.append("SELECT ?movie ?title");
+        for (Object[] detail : SCALAR_DETAILS) {
+            if (fields.contains(detail[0])) query.append(' ').append(detail[1]);
+        }
+        for (Object[] detail : LINK_DETAILS) {
+            if (fields.contains(detail[0])) query.append(' ').append(detail[1]);
+        }
+        query.append(" \nWHERE { \n");
+        if (limit > 0 || offset > 0) {
+            query.append("  { SELECT DISTINCT ?movie WHERE { \n");
+            query.append(corePatterns);
+            query.append("  } ORDER BY ").append(orderBy);
+            if (limit > 0) query.append(" LIMIT ").append(limit);
+            if (offset > 0) query.append(" OFFSET ").append(offset);
+            query.append(" } \n");
+        } else {
+            query.append(corePatterns);
+        }
+        appendDetailPatterns(query, fields);
+        query.append("}");
+        return query.toString();
+    }
+
+    /**
+     * Move the VALUES blocks of name-index lookups ahead of the triple patterns. Jena joins a
+     * VALUES table with the patterns written before it as a separate step, so interleaved
+     * blocks split the core into one-pattern groups that run in the order written; with the
+     * tables first the core is one group the join ordering can arrange (e.g. director before
+     * genre).
+     */
+    private static String valuesFirst(String corePatterns) {
+        StringBuilder values = new StringBuilder();
+        StringBuilder patterns = new StringBuilder();
+        for (String line : corePatterns.split("\n")) {
+            (line.trim().startsWith("VALUES ") ? values : patterns).append(line).append('\n');
+        }
+        return values.append(patterns).toString();
+    }
+
+    /**
+     * Patterns that fetch the requested attributes of an already selected ?movie. The
+     * multi-valued links are a UNION so each row carries one of them: rows per movie are the sum
+     * of its directors, genres, actors and countries rather than their product.
+     */
+    private static void appendDetailPatterns(StringBuilder query, Set<MovieField> fields) {
+        query.append("  ?movie movie:title ?title . \n");
+        for (Object[] detail : SCALAR_DETAILS) {
+            if (fields.contains(detail[0])) {
+                query.append("  OPTIONAL { ").append(detail[2]).append(" } \n");
+            }
+        }
+        boolean first = true;
+        for (Object[] detail : LINK_DETAILS) {
+            if (fields.contains(detail[0])) {
+                query.append(first ? "  OPTIONAL { \n    { " : "    UNION { ").append(detail[2]).append(" } \n");
+                first = false;
+            }
+        }
+        if (!first) {
+            query.append("  } \n");
+        }
+    }
+
+    /**
+     * Patterns linking ?movie to a named genre or person through the given property.
+     * With a name index the name is resolved to URIs up front, so the query starts from
+     * a handful of bound resources instead of matching name literals.
+     * 
+     * @return the patterns, or null if the index knows no such name
+     */
+    private String linkPattern(String property, String var, NameIndex.Kind kind, String name) {
+        NameIndex index = nameIndex;
+        if (index == null) {
+            String nameProperty = kind == NameIndex.Kind.GENRE ? "genreName" : "personName";
+            return "  ?movie movie:" + property + " ?" + var + " . \n" +
+                    "  ?" + var + " movie:" + nameProperty + " " + literal(name) + " . \n";
+        }
+        List<String> uris = index.resolve(kind, name);
+        if (uris.isEmpty()) {
+            return null;
+        }
+        StringBuilder values = new StringBuilder();
+        for (String uri : uris) {
+            values.append("<").append(uri).append("> ");
+        }
+        return "  VALUES ?" + var + " { " + values + "} \n" +
+                "  ?movie movie:" + property + " ?" + var + " . \n";
+    }
+
+    /**
+     * Quote a user-supplied value as a SPARQL string literal
+     */
+    private static String literal(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                default: quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Executes a SPARQL query and returns Movie objects populated with whatever attributes it
+     * selects (by default title, year, imdbScore, rottenTomatoesScore, runtime, directors, genres,
+     * actors, country).
+     * Solutions are consumed as they stream out of the engine.
+     */
+    private List<Movie> executeRichMovieQuery(String queryString) {
+        Map<String, Movie> movieMap = new LinkedHashMap<>();
+        long start = Metrics.start();
+        long[] materialiseNanos = new long[1];
+        try {
+            ontologyManager.executeSelect(queryString, solution -> {
+                long rowStart = Metrics.start();
+                addSolution(movieMap, solution);
+                if (rowStart != 0L) materialiseNanos[0] += System.nanoTime() - rowStart;
+            });
+        } catch (QueryCancelledException e) {
+            // A timed-out query must not look like an empty result to the caller
+            throw e;
         } catch (Exception e) {
             System.err.println("Error executing SPARQL query: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            Metrics.record(Metrics.RECOMMENDER_MATERIALISE, materialiseNanos[0]);
+            Metrics.stop(Metrics.RECOMMENDER_QUERY, start);
         }
         return new ArrayList<>(movieMap.values());
     }
-}
\ No newline at end of file
+
+    private static String uriOf(QuerySolution solution, String var) {
+        RDFNode node = solution.get(var);
+        return node != null && node.isURIResource() ? node.asResource().getURI() : null;
+    }
+
+    private void addSolution(Map<String, Movie> movieMap, QuerySolution solution) {
+        String uri = solution.getResource("movie").getURI();
+
+        Movie movie = movieMap.get(uri);
+        if (movie == null) {
+            movie = new Movie();
+            movie.setUri(uri);
+            movie.setTitle(solution.getLiteral("title").getString());
+            movieMap.put(uri, movie);
+        }
+
+        if (solution.contains("year"))
+            movie.setYear(solution.getLiteral("year").getInt());
+        if (solution.contains("score"))
+            movie.setRating(solution.getLiteral("score").getDouble());
+        if (solution.contains("rt"))
+            movie.setRottenTomatoesScore(solution.getLiteral("rt").getInt());
+        if (solution.contains("runtime"))
+            movie.setRuntime(solution.getLiteral("runtime").getInt());
+        EntityRegistry registry = entityRegistry;
+        if (solution.contains("directorName")) {
+            Person director = registry.person(uriOf(solution, "dir"), solution.getLiteral("directorName").getString());
+            if (!movie.getDirectors().contains(director)) movie.addDirector(director);
+        }
+        if (solution.contains("genreName")) {
+            String g = registry.genre(uriOf(solution, "genre"), solution.getLiteral("genreName").getString());
+            if (!movie.getGenres().contains(g)) movie.addGenre(g);
+        }
+        if (solution.contains("actorName")) {
+            Person actor = registry.person(uriOf(solution, "actor"), solution.getLiteral("actorName").getString());
+            if (!movie.getActors().contains(actor)) movie.addActor(actor);
+        }
+        if (solution.contains("countryName") && movie.getCountry() == null) {
+            movie.setCountry(registry.country(uriOf(solution, "country"), solution.getLiteral("countryName").getString()));
+        }
+        if (solution.contains("writerName")) {
+            Person writer = registry.person(uriOf(solution, "writer"), solution.getLiteral("writerName").getString());
+            if (!movie.getWriters().contains(writer)) movie.addWriter(writer);
+        }
+        if (solution.contains("awardName")) {
+            String award = registry.award(uriOf(solution, "award"), solution.getLiteral("awardName").getString());
+            if (!movie.getAwards().contains(award)) movie.addAward(award);
+        }
+    }
+}
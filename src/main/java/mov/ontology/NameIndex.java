@@ -0,0 +1,395 @@
+package mov.ontology;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory text index over movie titles, person names and genre names.
+ *
+ * Names are normalised (case, accents and punctuation folded) and indexed three ways:
+ * a sorted map for exact and prefix lookups, and a trigram posting list that finds
+ * typo-tolerant candidates which are then verified with a bounded edit distance.
+ * The index follows the ontology change feed, so edits are searchable immediately.
+ */
+public class NameIndex implements OntologyChangeListener {
+
+    public enum Kind {
+        TITLE("title"),
+        PERSON("personName"),
+        GENRE("genreName");
+
+        private final String property;
+
+        Kind(String property) {
+            this.property = property;
+        }
+
+        public String getPropertyURI() {
+            return OntologyManager.MOVIE_NS + property;
+        }
+    }
+
+    /**
+     * One search hit
+     */
+    public static class Match {
+        private final String uri;
+        private final String name;
+        private final int distance; // edit distance between the normalised query and name
+
+        Match(String uri, String name, int distance) {
+            this.uri = uri;
+            this.name = name;
+            this.distance = distance;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        @Override
+        public String toString() {
+            return "Match [name=" + name + ", uri=" + uri + ", distance=" + distance + "]";
+        }
+    }
+
+    private static class Entry {
+        final String uri;
+        final String name;
+        final String key; // normalised name
+
+        Entry(String uri, String name, String key) {
+            this.uri = uri;
+            this.name = name;
+            this.key = key;
+        }
+    }
+
+    /** Per-kind structures */
+    private static class Postings {
+        final TreeMap<String, List<Entry>> byKey = new TreeMap<>();
+        final Map<String, List<Entry>> byTrigram = new HashMap<>();
+    }
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALNUM = Pattern.compile("[^\\p{Alnum}]+");
+
+    private final OntologyManager ontologyManager;
+    private final Map<Kind, Postings> postings = new EnumMap<>(Kind.class);
+    private final Map<String, List<Entry>> entriesByUri = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public NameIndex(OntologyManager ontologyManager) {
+        this.ontologyManager = ontologyManager;
+        for (Kind kind : Kind.values()) {
+            postings.put(kind, new Postings());
+        }
+    }
+
+    /**
+     * Build an index over the current Jena model and subscribe it to the change feed
+     * as an index listener, ahead of the listeners that read it
+     */
+    public static NameIndex build(OntologyManager ontologyManager) {
+        NameIndex index = new NameIndex(ontologyManager);
+        index.rebuild();
+        ontologyManager.addIndexListener(index);
+        return index;
+    }
+
+    /**
+     * Re-read every indexed name from the model
+     */
+    public void rebuild() {
+        Model model = ontologyManager.getJenaModel();
+        lock.writeLock().lock();
+        try {
+            entriesByUri.clear();
+            for (Kind kind : Kind.values()) {
+                postings.put(kind, new Postings());
+                Property property = model.createProperty(kind.getPropertyURI());
+                StmtIterator it = model.listStatements(null, property, (RDFNode) null);
+                try {
+                    while (it.hasNext()) {
+                        Statement statement = it.nextStatement();
+                        if (statement.getSubject().isURIResource() && statement.getObject().isLiteral()) {
+                            add(kind, statement.getSubject().getURI(), statement.getString());
+                        }
+                    }
+                } finally {
+                    it.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        System.out.println("Name index built: " + entriesByUri.size() + " resources");
+    }
+
+    @Override
+    public void ontologyChanged(OntologyChangeEvent event) {
+        if (event.isReload()) {
+            rebuild();
+            return;
+        }
+        Model model = ontologyManager.getJenaModel();
+        lock.writeLock().lock();
+        try {
+            for (String uri : event.getChangedResources()) {
+                removeAll(uri);
+                Resource subject = model.createResource(uri);
+                for (Kind kind : Kind.values()) {
+                    StmtIterator it = model.listStatements(subject, model.createProperty(kind.getPropertyURI()), (RDFNode) null);
+                    try {
+                        while (it.hasNext()) {
+                            Statement statement = it.nextStatement();
+                            if (statement.getObject().isLiteral()) {
+                                add(kind, uri, statement.getString());
+                            }
+                        }
+                    } finally {
+                        it.close();
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Resolve a typed name to resource URIs: exact (normalised) matches if there are any,
+     * otherwise the closest names within the typo tolerance
+     */
+    public List<String> resolve(Kind kind, String name) {
+        List<String> uris = new ArrayList<>();
+        List<Match> matches = search(kind, name, Integer.MAX_VALUE);
+        if (matches.isEmpty()) {
+            return uris;
+        }
+        // Matches are sorted by distance; keep every match at the best distance
+        int best = matches.get(0).getDistance();
+        for (Match match : matches) {
+            if (match.getDistance() != best) {
+                break;
+            }
+            if (!uris.contains(match.getUri())) {
+                uris.add(match.getUri());
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * Ranked matches for a name, exact matches first, then by edit distance
+     */
+    public List<Match> search(Kind kind, String name, int limit) {
+        String key = normalise(name);
+        if (key.isEmpty()) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            Postings p = postings.get(kind);
+            List<Match> matches = new ArrayList<>();
+            List<Entry> exact = p.byKey.get(key);
+            if (exact != null) {
+                for (Entry entry : exact) {
+                    matches.add(new Match(entry.uri, entry.name, 0));
+                }
+                return truncate(matches, limit);
+            }
+            int maxEdits = key.length() <= 4 ? 1 : 2;
+            Set<Entry> candidates = trigramCandidates(p, key);
+            for (Entry entry : candidates) {
+                int distance = boundedEditDistance(key, entry.key, maxEdits);
+                if (distance <= maxEdits) {
+                    matches.add(new Match(entry.uri, entry.name, distance));
+                }
+            }
+            matches.sort((a, b) -> a.getDistance() != b.getDistance()
+                    ? Integer.compare(a.getDistance(), b.getDistance())
+                    : a.getName().compareTo(b.getName()));
+            return truncate(matches, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Names starting with the given prefix, in alphabetical order
+     */
+    public List<Match> autocomplete(Kind kind, String prefix, int limit) {
+        String key = normalise(prefix);
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            NavigableMap<String, List<Entry>> range = key.isEmpty()
+                    ? postings.get(kind).byKey
+                    : postings.get(kind).byKey.subMap(key, true, key + Character.MAX_VALUE, false);
+            for (List<Entry> entries : range.values()) {
+                for (Entry entry : entries) {
+                    if (matches.size() >= limit) {
+                        return matches;
+                    }
+                    matches.add(new Match(entry.uri, entry.name, 0));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entriesByUri.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Mutation helpers, called with the write lock held
+    private void add(Kind kind, String uri, String name) {
+        String key = normalise(name);
+        if (key.isEmpty()) {
+            return;
+        }
+        Entry entry = new Entry(uri, name, key);
+        Postings p = postings.get(kind);
+        p.byKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(entry);
+        for (String trigram : trigrams(key)) {
+            p.byTrigram.computeIfAbsent(trigram, t -> new ArrayList<>()).add(entry);
+        }
+        entriesByUri.computeIfAbsent(uri, u -> new ArrayList<>(1)).add(entry);
+    }
+
+    private void removeAll(String uri) {
+        List<Entry> entries = entriesByUri.remove(uri);
+        if (entries == null) {
+            return;
+        }
+        for (Entry entry : entries) {
+            for (Postings p : postings.values()) {
+                List<Entry> sameKey = p.byKey.get(entry.key);
+                if (sameKey != null && sameKey.remove(entry)) {
+                    if (sameKey.isEmpty()) p.byKey.remove(entry.key);
+                    for (String trigram : trigrams(entry.key)) {
+                        List<Entry> posting = p.byTrigram.get(trigram);
+                        if (posting != null) {
+                            posting.remove(entry);
+                            if (posting.isEmpty()) p.byTrigram.remove(trigram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Entries sharing enough trigrams with the key to possibly be within the edit bound
+     */
+    private Set<Entry> trigramCandidates(Postings p, String key) {
+        Map<Entry, Integer> shared = new HashMap<>();
+        Set<String> queryTrigrams = trigrams(key);
+        for (String trigram : queryTrigrams) {
+            List<Entry> posting = p.byTrigram.get(trigram);
+            if (posting == null) continue;
+            for (Entry entry : posting) {
+                shared.merge(entry, 1, Integer::sum);
+            }
+        }
+        // Each edit destroys at most three trigrams; require at least one survivor
+        Set<Entry> candidates = new LinkedHashSet<>();
+        for (Map.Entry<Entry, Integer> e : shared.entrySet()) {
+            if (e.getValue() >= Math.max(1, queryTrigrams.size() - 6)) {
+                candidates.add(e.getKey());
+            }
+        }
+        return candidates;
+    }
+
+    static String normalise(String name) {
+        if (name == null) {
+            return "";
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+        return NON_ALNUM.matcher(folded.toLowerCase()).replaceAll(" ").trim();
+    }
+
+    /**
+     * Trigrams of the key padded with boundary markers, so short names still produce some
+     */
+    private static Set<String> trigrams(String key) {
+        String padded = "  " + key + " ";
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * Levenshtein distance, abandoning early once it must exceed maxEdits
+     *
+     * @return the distance, or maxEdits + 1 if it is larger than maxEdits
+     */
+    static int boundedEditDistance(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return maxEdits + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], maxEdits + 1);
+    }
+
+    private static List<Match> truncate(List<Match> matches, int limit) {
+        return matches.size() <= limit ? matches : new ArrayList<>(matches.subList(0, limit));
+    }
+}
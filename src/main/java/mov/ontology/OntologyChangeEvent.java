@@ -0,0 +1,53 @@
+package mov.ontology;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Describes one batch of changes applied to the ontology
+ */
+public class OntologyChangeEvent {
+
+    private final Set<String> changedResources; // subjects whose triples were added or removed
+    private final Set<String> affectedMovies;   // movies whose materialised view must be refreshed
+    private final boolean reload;               // the whole model was replaced by a new snapshot
+
+    public OntologyChangeEvent(Set<String> changedResources, Set<String> affectedMovies) {
+        this(changedResources, affectedMovies, false);
+    }
+
+    private OntologyChangeEvent(Set<String> changedResources, Set<String> affectedMovies, boolean reload) {
+        this.changedResources = Collections.unmodifiableSet(changedResources);
+        this.affectedMovies = Collections.unmodifiableSet(affectedMovies);
+        this.reload = reload;
+    }
+
+    /**
+     * Event sent after a new model snapshot has been published; listeners should rebuild fully
+     */
+    public static OntologyChangeEvent reloaded() {
+        return new OntologyChangeEvent(Collections.emptySet(), Collections.emptySet(), true);
+    }
+
+    public Set<String> getChangedResources() {
+        return changedResources;
+    }
+
+    public Set<String> getAffectedMovies() {
+        return affectedMovies;
+    }
+
+    public boolean isReload() {
+        return reload;
+    }
+
+    public boolean isEmpty() {
+        return !reload && changedResources.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "OntologyChangeEvent [reload=" + reload + ", changedResources=" + changedResources.size() +
+               ", affectedMovies=" + affectedMovies + "]";
+    }
+}
@@ -0,0 +1,12 @@
+package mov.ontology;
+
+/**
+ * Receives change notifications from an OntologyManager
+ */
+public interface OntologyChangeListener {
+
+    /**
+     * Called after triples or axioms have been added to or removed from the ontology
+     */
+    void ontologyChanged(OntologyChangeEvent event);
+}
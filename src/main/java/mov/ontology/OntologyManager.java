@@ -1,27 +1,77 @@
 package mov.ontology;
 
+import mov.metrics.Metrics;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.ontology.OntModel;
 import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelChangedListener;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.shared.Lock;
+import org.apache.jena.sparql.engine.ResultSetStream;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.XSD;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+/**
+ * Ontology access: a Jena model of the instances for SPARQL, and the OWL API ontology for editing.
+ * 
+ * Serving only needs the Jena model, so the OWL API manager is created and the schema parsed on
+ * first use of an editing or OWL accessor method (or at load with -Dmov.owl.eager=true).
+ */
 public class OntologyManager {
 
-    private OWLOntologyManager manager;
+    /** How the triple patterns of a SPARQL query are ordered before execution */
+    public enum JoinOrdering {
+        FIXED, // Jena's default: by which positions of a pattern are bound
+        STATISTICS // by estimated matches from GraphStatistics
+    }
+
+    public static final String MOVIE_NS = "http://www.semanticweb.org/ontologies/movie#";
+    public static final String INSTANCES_NS = "http://www.semanticweb.org/ontologies/movies-instances#";
+
+    private OWLOntologyManager manager; // these four are set by ensureOwlLoaded
     private OWLOntology ontology;
     private OWLDataFactory dataFactory;
-    private OntModel jenaModel;
+    private volatile OntModel jenaModel; // current published snapshot; replaced wholesale on reload
     private String ontologyIRI;
+    private String schemaPath;
+    private String instancesPath;
+    private volatile long queryTimeoutMillis = Long.getLong("mov.sparql.timeoutMillis", 10000L);
+    private volatile long maxResultRows = Long.getLong("mov.sparql.maxRows", 1000000L);
+    private volatile GraphStatistics statistics; // of jenaModel, maintained by its ChangeFeed
+    private volatile JoinOrdering joinOrdering = "fixed".equalsIgnoreCase(System.getProperty("mov.sparql.joinOrder"))
+            ? JoinOrdering.FIXED : JoinOrdering.STATISTICS;
+    private final Object reloadLock = new Object();
+    private final List<OntologyChangeListener> indexListeners = new CopyOnWriteArrayList<>(); // notified first
+    private final List<OntologyChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<List<OntologyChangeEvent>> deferredEvents = new ThreadLocal<>(); // set while mirroring
 
     public OntologyManager() {
-        this.manager = OWLManager.createOWLOntologyManager();
-        this.dataFactory = manager.getOWLDataFactory();
     }
 
     /**
@@ -38,46 +88,269 @@ public class OntologyManager {
      * Load schema + instances into Jena for SPARQL
      */
     public void loadOntology(String schemaPath, String instancesPath) throws Exception {
-        File schemaFile = new File(schemaPath);
-        this.ontology = manager.loadOntologyFromOntologyDocument(schemaFile);
-        this.ontologyIRI = ontology.getOntologyID().getOntologyIRI().get().toString();
+        synchronized (this) {
+            this.schemaPath = schemaPath;
+            this.manager = null; // a new schema is parsed on next use
+            this.ontology = null;
+        }
+        if (Boolean.getBoolean("mov.owl.eager")) {
+            ensureOwlLoaded();
+        }
+
+        this.instancesPath = instancesPath;
+        publishModel(buildJenaModel(instancesPath));
+
+        System.out.println("Jena model loaded.");
+    }
+
+    /**
+     * Create the OWL API manager and parse the schema if that has not happened yet
+     */
+    private synchronized void ensureOwlLoaded() {
+        if (manager != null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        OWLOntologyManager owlManager = OWLManager.createOWLOntologyManager();
+        owlManager.addOntologyChangeListener(this::mirrorAxiomChanges);
+        if (schemaPath != null) {
+            try {
+                ontology = owlManager.loadOntologyFromOntologyDocument(new File(schemaPath));
+            } catch (OWLOntologyCreationException e) {
+                throw new IllegalStateException("Cannot load ontology schema " + schemaPath + ": " + e.getMessage(), e);
+            }
+            ontologyIRI = ontology.getOntologyID().getOntologyIRI().get().toString();
+            System.out.println("Ontology loaded: " + ontologyIRI);
+            System.out.println("Axioms count: " + ontology.getAxiomCount()
+                    + " (OWL API loaded in " + (System.currentTimeMillis() - start) + " ms)");
+        }
+        dataFactory = owlManager.getOWLDataFactory();
+        manager = owlManager;
+    }
 
-        jenaModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+    /**
+     * True once the OWL API ontology has been loaded
+     */
+    public synchronized boolean isOwlLoaded() {
+        return manager != null;
+    }
+
+    private OntModel buildJenaModel(String instancesPath) throws Exception {
+        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
 
         // Schema is OWL/XML format - must specify "RDF/XML" is wrong, use OWL API to convert it
         // Instead, only load instances into Jena (instances are RDF/XML and contain all needed triples)
-        jenaModel.read(new FileInputStream(instancesPath), null, "RDF/XML");
+        try (FileInputStream in = new FileInputStream(instancesPath)) {
+            model.read(in, null, "RDF/XML");
+        }
+        return model;
+    }
 
-        System.out.println("Ontology loaded: " + ontologyIRI);
-        System.out.println("Axioms count: " + ontology.getAxiomCount());
-        System.out.println("Jena model loaded.");
+    /**
+     * Compute the model's statistics, attach the change feed that keeps them (and listeners) up
+     * to date, and make it the model queries run against
+     */
+    private void publishModel(OntModel model) {
+        GraphStatistics computed = GraphStatistics.compute(model.getBaseModel().getGraph());
+        model.register(new ChangeFeed(model, computed));
+        this.statistics = computed;
+        this.jenaModel = model;
+    }
+
+    /**
+     * Re-read the instances file into a fresh Jena model and publish it atomically.
+     * Queries already running keep iterating the previous model; new queries see the new one.
+     * Listeners receive a reload event once the new model is live.
+     */
+    public void reload() throws Exception {
+        if (instancesPath == null) {
+            throw new IllegalStateException("Jena model not loaded. Call loadOntology first.");
+        }
+        synchronized (reloadLock) {
+            long start = System.currentTimeMillis();
+            publishModel(buildJenaModel(instancesPath));
+            System.out.println("Jena model reloaded in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        notifyListeners(OntologyChangeEvent.reloaded());
+    }
+
+    /**
+     * Run {@link #reload()} in the background
+     */
+    public CompletableFuture<Void> reloadAsync() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
     }
 
     public void saveOntology(String filePath) throws Exception {
+        ensureOwlLoaded();
         File file = new File(filePath);
         manager.saveOntology(ontology, new FileOutputStream(file));
         System.out.println("Ontology saved to: " + filePath);
     }
 
+    /**
+     * Execute a SELECT query and return a detached copy of its results.
+     * The query runs under the configured timeout and row cap, and its
+     * QueryExecution is closed before this method returns. The cap counts
+     * solution rows (e.g. one per movie and actor in a joined query), so
+     * when it cuts a result short a warning is printed as in executeSelect.
+     */
     public ResultSet executeSPARQLQuery(String queryString) {
-        if (jenaModel == null) {
-            throw new IllegalStateException("Jena model not loaded. Call loadOntology first.");
+        long queryStart = Metrics.start();
+        Query query = parseQuery(queryString);
+        boolean capped = !query.hasLimit() || query.getLimit() > maxResultRows;
+        if (capped) {
+            // One row over the cap tells a truncated result from one that fits exactly
+            query.setLimit(maxResultRows < Long.MAX_VALUE ? maxResultRows + 1 : maxResultRows);
         }
-        Query query = QueryFactory.create(queryString);
-        QueryExecution qexec = QueryExecutionFactory.create(query, jenaModel);
-        return qexec.execSelect();
+        OntModel model = currentModel();
+        model.enterCriticalSection(Lock.READ);
+        try (QueryExecution qexec = createExecution(query, model)) {
+            long start = Metrics.start();
+            ResultSetRewindable results = ResultSetFactory.copyResults(qexec.execSelect());
+            Metrics.stop(Metrics.SPARQL_EXECUTE, start);
+            if (capped && results.size() > maxResultRows) {
+                System.err.println("SPARQL result truncated at " + maxResultRows + " rows");
+                results = firstRows(results, maxResultRows);
+            }
+            Metrics.add(Metrics.ROWS_SCANNED, results.size());
+            return results;
+        } finally {
+            model.leaveCriticalSection();
+            Metrics.stop(Metrics.SPARQL_QUERY, queryStart);
+        }
+    }
+
+    private static ResultSetRewindable firstRows(ResultSetRewindable results, long rows) {
+        List<Binding> kept = new ArrayList<>();
+        while (results.hasNext() && kept.size() < rows) {
+            kept.add(results.nextBinding());
+        }
+        return ResultSetFactory.copyResults(
+                new ResultSetStream(results.getResultVars(), results.getResourceModel(), kept.iterator()));
+    }
+
+    /**
+     * Execute a SELECT query and stream each solution to the consumer without buffering.
+     * Stops after the configured row cap; the QueryExecution is always closed.
+     * 
+     * @return number of solutions delivered
+     * @throws QueryCancelledException if the query exceeds the configured timeout
+     */
+    public long executeSelect(String queryString, Consumer<QuerySolution> consumer) {
+        long queryStart = Metrics.start();
+        Query query = parseQuery(queryString);
+        OntModel model = currentModel();
+        long rows = 0;
+        model.enterCriticalSection(Lock.READ);
+        try (QueryExecution qexec = createExecution(query, model)) {
+            long start = Metrics.start();
+            ResultSet results = qexec.execSelect();
+            while (results.hasNext()) {
+                if (rows >= maxResultRows) {
+                    System.err.println("SPARQL result truncated at " + maxResultRows + " rows");
+                    break;
+                }
+                consumer.accept(results.nextSolution());
+                rows++;
+            }
+            Metrics.stop(Metrics.SPARQL_EXECUTE, start);
+        } finally {
+            model.leaveCriticalSection();
+            Metrics.stop(Metrics.SPARQL_QUERY, queryStart);
+        }
+        Metrics.add(Metrics.ROWS_SCANNED, rows);
+        return rows;
     }
 
     public boolean executeSPARQLAsk(String queryString) {
-        if (jenaModel == null) {
+        Query query = parseQuery(queryString);
+        OntModel model = currentModel();
+        model.enterCriticalSection(Lock.READ);
+        try (QueryExecution qexec = createExecution(query, model)) {
+            return qexec.execAsk();
+        } finally {
+            model.leaveCriticalSection();
+        }
+    }
+
+    private OntModel currentModel() {
+        OntModel model = jenaModel;
+        if (model == null) {
             throw new IllegalStateException("Jena model not loaded. Call loadOntology first.");
         }
+        return model;
+    }
+
+    private Query parseQuery(String queryString) {
+        Metrics.increment(Metrics.QUERIES);
+        long start = Metrics.start();
         Query query = QueryFactory.create(queryString);
-        QueryExecution qexec = QueryExecutionFactory.create(query, jenaModel);
-        return qexec.execAsk();
+        Metrics.stop(Metrics.SPARQL_PARSE, start);
+        return query;
+    }
+
+    private QueryExecution createExecution(Query query, OntModel model) {
+        QueryExecution qexec = QueryExecutionFactory.create(query, model);
+        GraphStatistics current = statistics;
+        if (joinOrdering == JoinOrdering.STATISTICS && current != null) {
+            qexec.getContext().set(ARQ.stageGenerator, new StatisticsReorder.Stage(current));
+        }
+        if (queryTimeoutMillis > 0) {
+            qexec.setTimeout(queryTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return qexec;
+    }
+
+    /**
+     * Per-query wall-clock timeout; 0 disables it
+     */
+    public void setQueryTimeoutMillis(long queryTimeoutMillis) {
+        this.queryTimeoutMillis = queryTimeoutMillis;
+    }
+
+    public long getQueryTimeoutMillis() {
+        return queryTimeoutMillis;
+    }
+
+    /**
+     * Order query patterns by graph statistics (the default) or by Jena's fixed heuristics;
+     * -Dmov.sparql.joinOrder=fixed starts with the latter
+     */
+    public void setJoinOrdering(JoinOrdering joinOrdering) {
+        this.joinOrdering = joinOrdering;
+    }
+
+    public JoinOrdering getJoinOrdering() {
+        return joinOrdering;
+    }
+
+    /**
+     * Triple counts of the current model, maintained as it changes; null before load
+     */
+    public GraphStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Upper bound on the rows a single query may return or stream
+     */
+    public void setMaxResultRows(long maxResultRows) {
+        this.maxResultRows = maxResultRows;
+    }
+
+    public long getMaxResultRows() {
+        return maxResultRows;
     }
 
     public OWLClass addClass(String className) {
+        ensureOwlLoaded();
         IRI classIRI = IRI.create(ontologyIRI + "#" + className);
         OWLClass owlClass = dataFactory.getOWLClass(classIRI);
         manager.addAxiom(ontology, dataFactory.getOWLDeclarationAxiom(owlClass));
@@ -85,6 +358,7 @@ public class OntologyManager {
     }
 
     public OWLObjectProperty addObjectProperty(String propertyName) {
+        ensureOwlLoaded();
         IRI propertyIRI = IRI.create(ontologyIRI + "#" + propertyName);
         OWLObjectProperty property = dataFactory.getOWLObjectProperty(propertyIRI);
         manager.addAxiom(ontology, dataFactory.getOWLDeclarationAxiom(property));
@@ -92,6 +366,7 @@ public class OntologyManager {
     }
 
     public OWLDataProperty addDataProperty(String propertyName) {
+        ensureOwlLoaded();
         IRI propertyIRI = IRI.create(ontologyIRI + "#" + propertyName);
         OWLDataProperty property = dataFactory.getOWLDataProperty(propertyIRI);
         manager.addAxiom(ontology, dataFactory.getOWLDeclarationAxiom(property));
@@ -99,6 +374,7 @@ public class OntologyManager {
     }
 
     public OWLNamedIndividual addIndividual(String individualName, OWLClass owlClass) {
+        ensureOwlLoaded();
         IRI individualIRI = IRI.create(ontologyIRI + "#" + individualName);
         OWLNamedIndividual individual = dataFactory.getOWLNamedIndividual(individualIRI);
         manager.addAxiom(ontology, dataFactory.getOWLDeclarationAxiom(individual));
@@ -106,9 +382,326 @@ public class OntologyManager {
         return individual;
     }
 
-    public OWLOntology getOntology() { return ontology; }
-    public OWLOntologyManager getManager() { return manager; }
-    public OWLDataFactory getDataFactory() { return dataFactory; }
+    /**
+     * Add the axioms in a single applyChanges call. They are mirrored into the Jena model under
+     * one write lock and reach the change listeners as one event, however many there are.
+     *
+     * @return the number of axioms that were not already in the ontology
+     */
+    public int addAxioms(Collection<? extends OWLAxiom> axioms) {
+        ensureOwlLoaded();
+        if (ontology == null) {
+            throw new IllegalStateException("Ontology not loaded. Call loadOntology first.");
+        }
+        List<AddAxiom> changes = new ArrayList<>(axioms.size());
+        for (OWLAxiom axiom : axioms) {
+            changes.add(new AddAxiom(ontology, axiom));
+        }
+        synchronized (this) {
+            int before = ontology.getAxiomCount();
+            manager.applyChanges(changes);
+            return ontology.getAxiomCount() - before;
+        }
+    }
+
+    /**
+     * Register a listener that is notified after every batch of triple or axiom changes.
+     * Changes made through the OWL API are delivered once the Jena write lock is released,
+     * on the thread that made them; concurrent writers may deliver out of write order, so
+     * listeners re-read the model rather than replay the event.
+     */
+    public void addChangeListener(OntologyChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Register a listener that maintains a view of the model other listeners read, such as the
+     * catalog or the name index. Index listeners are notified before every listener added with
+     * addChangeListener, whatever the registration order.
+     */
+    public void addIndexListener(OntologyChangeListener listener) {
+        indexListeners.add(listener);
+    }
+
+    public void removeChangeListener(OntologyChangeListener listener) {
+        indexListeners.remove(listener);
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Mirror individual-level axioms (class and property assertions) into the Jena model,
+     * so edits made through the OWL API become visible to SPARQL queries and the change feed
+     */
+    private void mirrorAxiomChanges(List<? extends OWLOntologyChange> changes) {
+        OntModel model = jenaModel;
+        if (model == null) {
+            return;
+        }
+        List<Statement> added = new ArrayList<>();
+        List<Statement> removed = new ArrayList<>();
+        for (OWLOntologyChange change : changes) {
+            if (!change.isAxiomChange()) {
+                continue;
+            }
+            Statement statement = toStatement(change.getAxiom());
+            if (statement == null) {
+                continue;
+            }
+            if (change.isAddAxiom()) {
+                added.add(statement);
+            } else {
+                removed.add(statement);
+            }
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        // The change feed fires inside the write; hold its events and notify once the lock is released
+        List<OntologyChangeEvent> outer = deferredEvents.get();
+        List<OntologyChangeEvent> events = new ArrayList<>();
+        deferredEvents.set(events);
+        model.enterCriticalSection(Lock.WRITE);
+        try {
+            if (!removed.isEmpty()) model.remove(removed);
+            if (!added.isEmpty()) model.add(added);
+        } finally {
+            model.leaveCriticalSection();
+            if (outer != null) {
+                deferredEvents.set(outer);
+            } else {
+                deferredEvents.remove();
+            }
+        }
+        for (OntologyChangeEvent event : events) {
+            notifyListeners(event);
+        }
+    }
+
+    /**
+     * Convert an assertion axiom about a named individual to the equivalent RDF triple,
+     * or null if the axiom has no single-triple equivalent
+     */
+    private Statement toStatement(OWLAxiom axiom) {
+        if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom assertion = (OWLClassAssertionAxiom) axiom;
+            if (!assertion.getIndividual().isNamed() || assertion.getClassExpression().isAnonymous()) {
+                return null;
+            }
+            return ResourceFactory.createStatement(
+                    toResource(assertion.getIndividual().asOWLNamedIndividual().getIRI()),
+                    RDF.type,
+                    toResource(assertion.getClassExpression().asOWLClass().getIRI()));
+        }
+        if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom assertion = (OWLObjectPropertyAssertionAxiom) axiom;
+            if (!assertion.getSubject().isNamed() || !assertion.getObject().isNamed()
+                    || assertion.getProperty().isAnonymous()) {
+                return null;
+            }
+            return ResourceFactory.createStatement(
+                    toResource(assertion.getSubject().asOWLNamedIndividual().getIRI()),
+                    ResourceFactory.createProperty(assertion.getProperty().asOWLObjectProperty().getIRI().toString()),
+                    toResource(assertion.getObject().asOWLNamedIndividual().getIRI()));
+        }
+        if (axiom instanceof OWLDataPropertyAssertionAxiom) {
+            OWLDataPropertyAssertionAxiom assertion = (OWLDataPropertyAssertionAxiom) axiom;
+            if (!assertion.getSubject().isNamed()) {
+                return null;
+            }
+            return ResourceFactory.createStatement(
+                    toResource(assertion.getSubject().asOWLNamedIndividual().getIRI()),
+                    ResourceFactory.createProperty(assertion.getProperty().asOWLDataProperty().getIRI().toString()),
+                    toLiteral(assertion.getObject()));
+        }
+        return null;
+    }
+
+    private Resource toResource(IRI iri) {
+        return ResourceFactory.createResource(iri.toString());
+    }
+
+    private Literal toLiteral(OWLLiteral literal) {
+        if (literal.hasLang()) {
+            return ResourceFactory.createLangLiteral(literal.getLiteral(), literal.getLang());
+        }
+        String datatype = literal.getDatatype().getIRI().toString();
+        if (literal.isRDFPlainLiteral() || datatype.equals(XSD.xstring.getURI())) {
+            return ResourceFactory.createStringLiteral(literal.getLiteral());
+        }
+        return ResourceFactory.createTypedLiteral(literal.getLiteral(),
+                TypeMapper.getInstance().getSafeTypeByName(datatype));
+    }
+
+    /**
+     * Turn a batch of added/removed triples into a change event and notify listeners, or hold it
+     * for mirrorAxiomChanges to deliver after its write
+     */
+    private void publishChanges(Model model, List<Statement> added, List<Statement> removed) {
+        // Late edits to a model that has already been replaced are not visible to anyone
+        if ((indexListeners.isEmpty() && changeListeners.isEmpty()) || model != jenaModel) {
+            return;
+        }
+        Resource movieClass = model.createResource(MOVIE_NS + "Movie");
+        Set<String> changedResources = new LinkedHashSet<>();
+        Set<String> affectedMovies = new LinkedHashSet<>();
+
+        for (Statement statement : added) {
+            collectChange(model, statement, false, movieClass, changedResources, affectedMovies);
+        }
+        for (Statement statement : removed) {
+            collectChange(model, statement, true, movieClass, changedResources, affectedMovies);
+        }
+
+        // A change to a person, genre or country affects every movie that references it
+        for (String uri : changedResources) {
+            if (affectedMovies.contains(uri)) {
+                continue;
+            }
+            StmtIterator referencing = model.listStatements(null, null, model.createResource(uri));
+            try {
+                while (referencing.hasNext()) {
+                    Resource subject = referencing.nextStatement().getSubject();
+                    if (subject.isURIResource() && model.contains(subject, RDF.type, movieClass)) {
+                        affectedMovies.add(subject.getURI());
+                    }
+                }
+            } finally {
+                referencing.close();
+            }
+        }
+
+        OntologyChangeEvent event = new OntologyChangeEvent(changedResources, affectedMovies);
+        List<OntologyChangeEvent> deferred = deferredEvents.get();
+        if (deferred != null) {
+            deferred.add(event);
+        } else {
+            notifyListeners(event);
+        }
+    }
+
+    private void notifyListeners(OntologyChangeEvent event) {
+        notifyListeners(indexListeners, event);
+        notifyListeners(changeListeners, event);
+    }
+
+    private static void notifyListeners(List<OntologyChangeListener> listeners, OntologyChangeEvent event) {
+        for (OntologyChangeListener listener : listeners) {
+            try {
+                listener.ontologyChanged(event);
+            } catch (Exception e) {
+                System.err.println("Error in ontology change listener: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void collectChange(Model model, Statement statement, boolean removed, Resource movieClass,
+                               Set<String> changedResources, Set<String> affectedMovies) {
+        Resource subject = statement.getSubject();
+        if (!subject.isURIResource()) {
+            return;
+        }
+        changedResources.add(subject.getURI());
+        // A movie whose type triple was just removed is no longer typed, but its case must still be dropped
+        boolean movieTypeRemoved = removed
+                && statement.getPredicate().equals(RDF.type)
+                && statement.getObject().equals(movieClass);
+        if (movieTypeRemoved || model.contains(subject, RDF.type, movieClass)) {
+            affectedMovies.add(subject.getURI());
+        }
+    }
+
+    /**
+     * Jena listener that updates the model's statistics and forwards every add/remove call as
+     * one change batch
+     */
+    private class ChangeFeed implements ModelChangedListener {
+
+        private final Model model;
+        private final GraphStatistics statistics;
+
+        ChangeFeed(Model model, GraphStatistics statistics) {
+            this.model = model;
+            this.statistics = statistics;
+        }
+
+        private void changed(List<Statement> added, List<Statement> removed) {
+            if (!added.isEmpty()) {
+                statistics.added(triples(added));
+            }
+            if (!removed.isEmpty()) {
+                statistics.removed(triples(removed));
+            }
+            publishChanges(model, added, removed);
+        }
+
+        private List<Triple> triples(List<Statement> statements) {
+            List<Triple> triples = new ArrayList<>(statements.size());
+            for (Statement statement : statements) {
+                triples.add(statement.asTriple());
+            }
+            return triples;
+        }
+
+        @Override
+        public void addedStatement(Statement s) {
+            changed(List.of(s), List.of());
+        }
+
+        @Override
+        public void addedStatements(Statement[] statements) {
+            changed(Arrays.asList(statements), List.of());
+        }
+
+        @Override
+        public void addedStatements(List<Statement> statements) {
+            changed(statements, List.of());
+        }
+
+        @Override
+        public void addedStatements(StmtIterator statements) {
+            changed(statements.toList(), List.of());
+        }
+
+        @Override
+        public void addedStatements(Model m) {
+            changed(m.listStatements().toList(), List.of());
+        }
+
+        @Override
+        public void removedStatement(Statement s) {
+            changed(List.of(), List.of(s));
+        }
+
+        @Override
+        public void removedStatements(Statement[] statements) {
+            changed(List.of(), Arrays.asList(statements));
+        }
+
+        @Override
+        public void removedStatements(List<Statement> statements) {
+            changed(List.of(), statements);
+        }
+
+        @Override
+        public void removedStatements(StmtIterator statements) {
+            changed(List.of(), statements.toList());
+        }
+
+        @Override
+        public void removedStatements(Model m) {
+            changed(List.of(), m.listStatements().toList());
+        }
+
+        @Override
+        public void notifyEvent(Model m, Object event) {
+            // no-op: only statement-level changes are forwarded
+        }
+    }
+
+    public OWLOntology getOntology() { ensureOwlLoaded(); return ontology; }
+    public OWLOntologyManager getManager() { ensureOwlLoaded(); return manager; }
+    public OWLDataFactory getDataFactory() { ensureOwlLoaded(); return dataFactory; }
     public OntModel getJenaModel() { return jenaModel; }
-    public String getOntologyIRI() { return ontologyIRI; }
+    public String getOntologyIRI() { ensureOwlLoaded(); return ontologyIRI; }
 }
\ No newline at end of file
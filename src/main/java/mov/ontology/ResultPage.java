@@ -0,0 +1,37 @@
+package mov.ontology;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a sorted result, with the cursor for the page after it
+ */
+public class ResultPage<T> {
+    private final List<T> items;
+    private final String nextCursor; // null on the last page
+
+    public ResultPage(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public static <T> ResultPage<T> empty() {
+        return new ResultPage<>(Collections.emptyList(), null);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    public int size() {
+        return items.size();
+    }
+}
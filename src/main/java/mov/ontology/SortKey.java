@@ -0,0 +1,106 @@
+package mov.ontology;
+
+import mov.model.Movie;
+import mov.model.MovieField;
+
+import java.util.Comparator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Orderings supported by MovieRecommender.recommend(MovieQuery).
+ *
+ * Movies without a value for the key always come last, in URI order; ties are
+ * broken by URI so pages are stable across calls.
+ */
+public enum SortKey {
+    IMDB_SCORE("imdbScore", MovieField.RATING),
+    ROTTEN_TOMATOES_SCORE("rottenTomatoesScore", MovieField.ROTTEN_TOMATOES),
+    YEAR("releaseYear", MovieField.YEAR),
+    FUZZY_QUALITY(null, null); // computed by the fuzzy evaluator, not stored in the ontology
+
+    private final String property;
+    private final MovieField field;
+
+    SortKey(String property, MovieField field) {
+        this.property = property;
+        this.field = field;
+    }
+
+    /**
+     * Movie attribute holding the value, or null for keys computed outside the ontology
+     */
+    public MovieField getField() {
+        return field;
+    }
+
+    /**
+     * Data property holding the value, or null for keys computed outside the ontology
+     */
+    public String getPropertyURI() {
+        return property == null ? null : OntologyManager.MOVIE_NS + property;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * Stored value for this key, or NaN if the movie has none (the Movie model uses 0 for missing)
+     */
+    public double valueOf(Movie movie) {
+        switch (this) {
+            case IMDB_SCORE:
+                return movie.getRating() > 0 ? movie.getRating() : Double.NaN;
+            case ROTTEN_TOMATOES_SCORE:
+                return movie.getRottenTomatoesScore() > 0 ? movie.getRottenTomatoesScore() : Double.NaN;
+            case YEAR:
+                return movie.getYear() != 0 ? movie.getYear() : Double.NaN;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Order by the given values: present before missing, then by value, then by URI
+     * (ascending for descending sorts and vice versa, so each order is the exact reverse of the other
+     * over the movies that have a value)
+     */
+    public static Comparator<Movie> comparator(ToDoubleFunction<Movie> values, boolean descending) {
+        return (a, b) -> compare(values.applyAsDouble(a), a.getUri(), values.applyAsDouble(b), b.getUri(), descending);
+    }
+
+    /**
+     * The ordering of comparator(), on (value, uri) pairs; NaN marks a missing value
+     */
+    public static int compare(double va, String uriA, double vb, String uriB, boolean descending) {
+        boolean missingA = Double.isNaN(va);
+        boolean missingB = Double.isNaN(vb);
+        if (missingA || missingB) {
+            if (missingA != missingB) return missingA ? 1 : -1;
+            return uriA.compareTo(uriB);
+        }
+        int order = va != vb ? Double.compare(vb, va) : uriA.compareTo(uriB);
+        return descending ? order : -order;
+    }
+
+    /**
+     * Parse a key by enum name or property name, case-insensitively
+     * (e.g. "IMDB_SCORE", "imdbScore", "year", "quality")
+     */
+    public static SortKey parse(String text) {
+        String key = text.trim().replace("_", "").toLowerCase();
+        for (SortKey sortKey : values()) {
+            if (sortKey.name().replace("_", "").toLowerCase().equals(key)
+                    || (sortKey.property != null && sortKey.property.toLowerCase().equals(key))) {
+                return sortKey;
+            }
+        }
+        if (key.equals("quality") || key.equals("fuzzy")) {
+            return FUZZY_QUALITY;
+        }
+        if (key.equals("rating") || key.equals("score")) {
+            return IMDB_SCORE;
+        }
+        throw new IllegalArgumentException("Unknown sort key: " + text);
+    }
+}
@@ -0,0 +1,118 @@
+package mov.ontology;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIterBlockTriplesStar;
+import org.apache.jena.sparql.engine.iterator.QueryIterPeek;
+import org.apache.jena.sparql.engine.main.StageGenerator;
+import org.apache.jena.sparql.engine.optimizer.reorder.PatternElements;
+import org.apache.jena.sparql.engine.optimizer.reorder.PatternTriple;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformationSubstitution;
+import org.apache.jena.sparql.sse.Item;
+
+/**
+ * Orders the triple patterns of each basic graph pattern by their estimated number of matches
+ * from GraphStatistics, so the most selective pattern runs first and its bindings restrict the
+ * rest. Jena's default for in-memory graphs weighs patterns by shape only (which positions are
+ * bound), so it cannot tell hasGenre Drama from hasDirector Nolan.
+ *
+ * The estimate for a pattern, with variables bound by patterns already chosen counting as bound:
+ * <ul>
+ * <li>unknown predicate: 0 (it matches nothing, so it ends the join at once)</li>
+ * <li>subject and object bound: at most 1</li>
+ * <li>subject bound: the predicate's triples per distinct subject</li>
+ * <li>resource object given: triples with that predicate and object</li>
+ * <li>object bound otherwise: triples per distinct object</li>
+ * <li>neither: the predicate's triples</li>
+ * </ul>
+ * A variable predicate is weighed by the whole graph.
+ */
+final class StatisticsReorder extends ReorderTransformationSubstitution {
+
+    private final GraphStatistics statistics;
+
+    StatisticsReorder(GraphStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    protected double weight(PatternTriple pattern) {
+        boolean subjectBound = isBound(pattern.subject);
+        boolean objectBound = isBound(pattern.object);
+        Node predicate = concrete(pattern.predicate);
+        if (predicate == null) {
+            double total = statistics.totalTriples();
+            return total / (subjectBound ? 100 : 1) / (objectBound ? 100 : 1);
+        }
+        long triples = statistics.triples(predicate);
+        if (triples == 0) {
+            return 0;
+        }
+        if (subjectBound && objectBound) {
+            return 1;
+        }
+        if (subjectBound) {
+            return (double) triples / Math.max(1, statistics.distinctSubjects(predicate));
+        }
+        Node object = concrete(pattern.object);
+        if (object != null && !object.isLiteral()) {
+            return statistics.triples(predicate, object);
+        }
+        if (objectBound) {
+            return (double) triples / Math.max(1, statistics.distinctObjects(predicate));
+        }
+        return triples;
+    }
+
+    /**
+     * A constant, or a variable bound by an earlier pattern (TERM after substitution)
+     */
+    private static boolean isBound(Item item) {
+        return concrete(item) != null || item.equals(PatternElements.TERM);
+    }
+
+    private static Node concrete(Item item) {
+        if (!item.isNode()) {
+            return null;
+        }
+        Node node = item.getNode();
+        return node.isConcrete() ? node : null;
+    }
+
+    /**
+     * Executes basic graph patterns in the order chosen by a StatisticsReorder, as Jena's generic
+     * stage generator does with its fixed reordering (and with the same block iterator): the
+     * first incoming binding is substituted so already bound variables (e.g. from VALUES) count
+     * as bound
+     */
+    static final class Stage implements StageGenerator {
+
+        private final StatisticsReorder reorder;
+
+        Stage(GraphStatistics statistics) {
+            this.reorder = new StatisticsReorder(statistics);
+        }
+
+        @Override
+        public QueryIterator execute(BasicPattern pattern, QueryIterator input, ExecutionContext execCxt) {
+            if (!input.hasNext()) {
+                return input;
+            }
+            if (pattern.size() >= 2) {
+                BasicPattern substituted = pattern;
+                if (!input.isJoinIdentity()) {
+                    QueryIterPeek peek = QueryIterPeek.create(input, execCxt);
+                    input = peek;
+                    Binding first = peek.peek();
+                    substituted = Substitute.substitute(pattern, first);
+                }
+                pattern = reorder.reorderIndexes(substituted).reorder(pattern);
+            }
+            return QueryIterBlockTriplesStar.create(input, pattern, execCxt);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package mov.pipeline;
+
+import mov.model.Movie;
+
+/**
+ * A movie returned by the hybrid pipeline with the score from each stage
+ */
+public class HybridMatch {
+    private final Movie movie;
+    private final double similarity; // mean CBR similarity to the seeds (or profile score), NaN without seeds
+    private final double quality; // fuzzy quality 0-10, NaN if not evaluated
+    private final double score; // final ranking score
+
+    public HybridMatch(Movie movie, double similarity, double quality, double score) {
+        this.movie = movie;
+        this.similarity = similarity;
+        this.quality = quality;
+        this.score = score;
+    }
+
+    public Movie getMovie() {
+        return movie;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public double getQuality() {
+        return quality;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "HybridMatch [movie=" + movie.getTitle() + ", similarity=" + String.format("%.3f", similarity)
+                + ", quality=" + String.format("%.2f", quality) + ", score=" + String.format("%.3f", score) + "]";
+    }
+}
@@ -0,0 +1,129 @@
+package mov.pipeline;
+
+import mov.cbr.UserProfile;
+import mov.model.Movie;
+import mov.ontology.MovieQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hybrid recommendation request: a structured filter that selects candidates, seed movies
+ * the candidates are ranked against, and how much the fuzzy quality score weighs in the final order.
+ * Each stage has its own time budget; a stage that runs out passes on what it has so far.
+ */
+public class HybridQuery {
+    public static final int DEFAULT_K = 10;
+
+    private MovieQuery filter = new MovieQuery(); // genre, director, actor, years, candidate order
+    private List<Movie> seeds = new ArrayList<>(); // empty = keep the filter's order
+    private UserProfile profile; // ranks candidates instead of the seeds when set
+    private int k = DEFAULT_K;
+    private int candidateLimit = 1000; // candidates read from the filter at most
+    private int rerankDepth = 3 * DEFAULT_K; // top ranked candidates passed to the fuzzy stage
+    private double qualityWeight = 0.3; // share of the fuzzy quality (0-10, scaled to 0-1) in the final score
+    private long candidateBudgetMillis = 200;
+    private long rankBudgetMillis = 200;
+    private long rerankBudgetMillis = 100;
+
+    public HybridQuery() {
+    }
+
+    public HybridQuery(MovieQuery filter, List<Movie> seeds, int k) {
+        this.filter = filter;
+        this.seeds = new ArrayList<>(seeds);
+        this.k = k;
+        this.rerankDepth = 3 * k;
+    }
+
+    public MovieQuery getFilter() {
+        return filter;
+    }
+
+    public void setFilter(MovieQuery filter) {
+        this.filter = filter;
+    }
+
+    public List<Movie> getSeeds() {
+        return seeds;
+    }
+
+    public void setSeeds(List<Movie> seeds) {
+        this.seeds = seeds;
+    }
+
+    public void addSeed(Movie seed) {
+        this.seeds.add(seed);
+    }
+
+    public UserProfile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(UserProfile profile) {
+        this.profile = profile;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public void setK(int k) {
+        this.k = k;
+    }
+
+    public int getCandidateLimit() {
+        return candidateLimit;
+    }
+
+    public void setCandidateLimit(int candidateLimit) {
+        this.candidateLimit = candidateLimit;
+    }
+
+    public int getRerankDepth() {
+        return rerankDepth;
+    }
+
+    public void setRerankDepth(int rerankDepth) {
+        this.rerankDepth = rerankDepth;
+    }
+
+    public double getQualityWeight() {
+        return qualityWeight;
+    }
+
+    public void setQualityWeight(double qualityWeight) {
+        this.qualityWeight = qualityWeight;
+    }
+
+    public long getCandidateBudgetMillis() {
+        return candidateBudgetMillis;
+    }
+
+    public void setCandidateBudgetMillis(long candidateBudgetMillis) {
+        this.candidateBudgetMillis = candidateBudgetMillis;
+    }
+
+    public long getRankBudgetMillis() {
+        return rankBudgetMillis;
+    }
+
+    public void setRankBudgetMillis(long rankBudgetMillis) {
+        this.rankBudgetMillis = rankBudgetMillis;
+    }
+
+    public long getRerankBudgetMillis() {
+        return rerankBudgetMillis;
+    }
+
+    public void setRerankBudgetMillis(long rerankBudgetMillis) {
+        this.rerankBudgetMillis = rerankBudgetMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "HybridQuery [filter=" + filter + ", seeds=" + seeds.size() + ", profile=" + profile + ", k=" + k
+                + ", candidateLimit=" + candidateLimit + ", rerankDepth=" + rerankDepth
+                + ", qualityWeight=" + qualityWeight + "]";
+    }
+}
@@ -0,0 +1,268 @@
+package mov.pipeline;
+
+import mov.cbr.CBREngine;
+import mov.cbr.CaseRepresentation;
+import mov.cbr.UserProfile;
+import mov.fuzzy.FuzzyQualityEvaluator;
+import mov.metrics.Metrics;
+import mov.model.Movie;
+import mov.ontology.MovieQuery;
+import mov.ontology.MovieRecommender;
+import mov.ontology.ResultPage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Staged recommendation pipeline over the three engines:
+ * <ol>
+ * <li>candidates: the query's structured filter, read page by page from MovieRecommender
+ * (catalog indexes when available, SPARQL otherwise)</li>
+ * <li>rank: each page is scored by CBREngine against the seed movies (or user profile) as soon as it arrives,
+ * and only the best rerankDepth candidates are kept</li>
+ * <li>rerank: the kept candidates are rescored with the fuzzy quality evaluator</li>
+ * </ol>
+ * Work is proportional to the candidate set, never the whole case base, and every stage
+ * stops at its own time budget and passes on the best it has.
+ */
+public class HybridRecommender {
+    public static final String CANDIDATES = "candidates";
+    public static final String RANK = "rank";
+    public static final String RERANK = "rerank";
+
+    private static final int MAX_BATCH = 100; // candidates fetched and ranked per step
+
+    private static class Ranked {
+        final Movie movie;
+        final double similarity;
+        final double base; // ordering before the fuzzy stage
+
+        Ranked(Movie movie, double similarity, double base) {
+            this.movie = movie;
+            this.similarity = similarity;
+            this.base = base;
+        }
+    }
+
+    /** Best first by base score, ties by URI */
+    private static final Comparator<Ranked> BEST_FIRST = (a, b) -> {
+        int order = Double.compare(b.base, a.base);
+        return order != 0 ? order : a.movie.getUri().compareTo(b.movie.getUri());
+    };
+
+    private final MovieRecommender movieRecommender;
+    private final CBREngine cbrEngine;
+    private final FuzzyQualityEvaluator fuzzyEvaluator; // optional: without it the rerank stage is skipped
+
+    public HybridRecommender(MovieRecommender movieRecommender, CBREngine cbrEngine,
+                             FuzzyQualityEvaluator fuzzyEvaluator) {
+        this.movieRecommender = movieRecommender;
+        this.cbrEngine = cbrEngine;
+        this.fuzzyEvaluator = fuzzyEvaluator;
+    }
+
+    public HybridResult recommend(HybridQuery query) {
+        long start = Metrics.start();
+        List<HybridResult.StageReport> reports = new ArrayList<>();
+        List<Ranked> ranked = candidatesAndRank(query, reports);
+        List<HybridMatch> matches = rerank(query, ranked, reports);
+        Metrics.stop(Metrics.HYBRID_RECOMMEND, start);
+        return new HybridResult(matches, reports);
+    }
+
+    /**
+     * Stages 1 and 2: pull candidate pages and score each page against the seeds straight away,
+     * keeping the best rerankDepth in a bounded heap
+     */
+    private List<Ranked> candidatesAndRank(HybridQuery query, List<HybridResult.StageReport> reports) {
+        UserProfile profile = query.getProfile();
+        Set<String> seedUris = new HashSet<>();
+        for (Movie seed : query.getSeeds()) {
+            if (seed.getUri() != null) seedUris.add(seed.getUri());
+        }
+        boolean hasSeeds = profile != null || !query.getSeeds().isEmpty();
+        int depth = Math.max(query.getK(), query.getRerankDepth());
+        PriorityQueue<Ranked> kept = new PriorityQueue<>(depth + 1, BEST_FIRST.reversed()); // worst at the head
+
+        MovieQuery pageQuery = pageQuery(query.getFilter(), Math.min(MAX_BATCH, Math.max(1, query.getCandidateLimit())));
+        long candidateDeadline = System.nanoTime() + query.getCandidateBudgetMillis() * 1_000_000L;
+        long candidateNanos = 0;
+        long rankNanos = 0;
+        long rankBudgetNanos = query.getRankBudgetMillis() * 1_000_000L;
+        int candidates = 0;
+        int ranked = 0;
+        boolean candidatesTruncated = false;
+        boolean rankTruncated = false;
+
+        while (true) {
+            long fetchStart = System.nanoTime();
+            ResultPage<Movie> page = movieRecommender.recommend(pageQuery);
+            List<Movie> batch = new ArrayList<>(page.size());
+            for (Movie movie : page.getItems()) {
+                if (candidates >= query.getCandidateLimit()) {
+                    candidatesTruncated = true;
+                    break;
+                }
+                if (profile != null ? profile.isSeed(movie) : seedUris.contains(movie.getUri())) continue;
+                batch.add(movie);
+                candidates++;
+            }
+            candidateNanos += System.nanoTime() - fetchStart;
+
+            long rankStart = System.nanoTime();
+            if (profile != null) {
+                for (CaseRepresentation scored : cbrEngine.scoreCases(profile, uris(batch))) {
+                    offer(kept, new Ranked(scored.getMovie(), scored.getSimilarity(), scored.getSimilarity()), depth);
+                }
+            } else if (hasSeeds) {
+                for (Ranked r : scoreAgainstSeeds(query.getSeeds(), batch)) {
+                    offer(kept, r, depth);
+                }
+            } else {
+                // No seeds: keep the filter's order
+                for (int i = 0; i < batch.size(); i++) {
+                    offer(kept, new Ranked(batch.get(i), Double.NaN, -(ranked + i)), depth);
+                }
+            }
+            ranked += batch.size();
+            rankNanos += System.nanoTime() - rankStart;
+
+            if (candidatesTruncated || !page.hasMore()) break;
+            if (!hasSeeds && kept.size() >= depth) break; // later pages cannot displace earlier ones
+            if (rankNanos > rankBudgetNanos) {
+                rankTruncated = true;
+                break;
+            }
+            if (System.nanoTime() > candidateDeadline) {
+                candidatesTruncated = true;
+                break;
+            }
+            pageQuery.setCursor(page.getNextCursor());
+        }
+        Metrics.record(Metrics.HYBRID_CANDIDATES, candidateNanos);
+        Metrics.record(Metrics.HYBRID_RANK, rankNanos);
+
+        List<Ranked> result = new ArrayList<>(kept);
+        result.sort(BEST_FIRST);
+        reports.add(new HybridResult.StageReport(CANDIDATES, candidates, candidates, candidateNanos / 1_000_000,
+                candidatesTruncated));
+        reports.add(new HybridResult.StageReport(RANK, ranked, result.size(), rankNanos / 1_000_000, rankTruncated));
+        return result;
+    }
+
+    /**
+     * Mean similarity of each candidate to the seeds; candidates outside the case base are dropped
+     */
+    private List<Ranked> scoreAgainstSeeds(List<Movie> seeds, List<Movie> batch) {
+        List<String> ids = uris(batch);
+        Map<String, Double> total = new HashMap<>();
+        Map<String, Movie> movies = new HashMap<>();
+        for (Movie seed : seeds) {
+            for (CaseRepresentation scored : cbrEngine.scoreCases(seed, ids)) {
+                total.merge(scored.getId(), scored.getSimilarity(), Double::sum);
+                movies.putIfAbsent(scored.getId(), scored.getMovie());
+            }
+        }
+        List<Ranked> result = new ArrayList<>(total.size());
+        for (Map.Entry<String, Double> entry : total.entrySet()) {
+            double similarity = entry.getValue() / seeds.size();
+            result.add(new Ranked(movies.get(entry.getKey()), similarity, similarity));
+        }
+        return result;
+    }
+
+    private static List<String> uris(List<Movie> movies) {
+        List<String> uris = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            uris.add(movie.getUri());
+        }
+        return uris;
+    }
+
+    private static void offer(PriorityQueue<Ranked> kept, Ranked candidate, int depth) {
+        if (kept.size() < depth) {
+            kept.add(candidate);
+        } else if (BEST_FIRST.compare(candidate, kept.peek()) < 0) {
+            kept.poll();
+            kept.add(candidate);
+        }
+    }
+
+    /**
+     * Stage 3: blend in the fuzzy quality, best ranked first. Candidates the budget did not
+     * reach follow the rescored ones in rank order.
+     */
+    private List<HybridMatch> rerank(HybridQuery query, List<Ranked> ranked, List<HybridResult.StageReport> reports) {
+        long start = System.nanoTime();
+        long deadline = start + query.getRerankBudgetMillis() * 1_000_000L;
+        boolean hasSeeds = query.getProfile() != null || !query.getSeeds().isEmpty();
+        double weight = fuzzyEvaluator == null ? 0 : Math.max(0, Math.min(1, query.getQualityWeight()));
+
+        List<HybridMatch> rescored = new ArrayList<>(ranked.size());
+        List<HybridMatch> rest = new ArrayList<>();
+        boolean truncated = false;
+        for (int i = 0; i < ranked.size(); i++) {
+            Ranked r = ranked.get(i);
+            // Without seeds the filter position is the base: first candidate 1, last 0
+            double base = hasSeeds ? r.similarity : 1.0 - (double) i / Math.max(1, ranked.size());
+            if (weight == 0) {
+                rest.add(new HybridMatch(r.movie, r.similarity, Double.NaN, base));
+                continue;
+            }
+            if (truncated || System.nanoTime() > deadline) {
+                truncated = true;
+                rest.add(new HybridMatch(r.movie, r.similarity, Double.NaN, base));
+                continue;
+            }
+            double quality;
+            try {
+                quality = fuzzyEvaluator.evaluateMovie(r.movie);
+            } catch (RuntimeException e) {
+                System.err.println("Fuzzy rerank skipped: " + e.getMessage());
+                weight = 0;
+                rest.add(new HybridMatch(r.movie, r.similarity, Double.NaN, base));
+                continue;
+            }
+            double score = (1 - weight) * base + (Double.isNaN(quality) ? 0 : weight * quality / 10.0);
+            rescored.add(new HybridMatch(r.movie, r.similarity, quality, score));
+        }
+        rescored.sort((a, b) -> {
+            int order = Double.compare(b.getScore(), a.getScore());
+            return order != 0 ? order : a.getMovie().getUri().compareTo(b.getMovie().getUri());
+        });
+        List<HybridMatch> matches = new ArrayList<>(Math.min(query.getK(), ranked.size()));
+        for (HybridMatch match : rescored) {
+            if (matches.size() >= query.getK()) break;
+            matches.add(match);
+        }
+        for (HybridMatch match : rest) {
+            if (matches.size() >= query.getK()) break;
+            matches.add(match);
+        }
+        long elapsed = System.nanoTime() - start;
+        Metrics.record(Metrics.HYBRID_RERANK, elapsed);
+        reports.add(new HybridResult.StageReport(RERANK, ranked.size(), matches.size(), elapsed / 1_000_000, truncated));
+        return matches;
+    }
+
+    /**
+     * Copy of the filter that pages through candidates in batches
+     */
+    private static MovieQuery pageQuery(MovieQuery filter, int batchSize) {
+        MovieQuery query = new MovieQuery(filter.getSortKey(), batchSize);
+        query.setGenre(filter.getGenre());
+        query.setDirector(filter.getDirector());
+        query.setActor(filter.getActor());
+        query.setStartYear(filter.getStartYear());
+        query.setEndYear(filter.getEndYear());
+        query.setDescending(filter.isDescending());
+        query.setCursor(filter.getCursor());
+        return query;
+    }
+}
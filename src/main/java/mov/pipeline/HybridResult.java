@@ -0,0 +1,82 @@
+package mov.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ranked matches plus what each pipeline stage did
+ */
+public class HybridResult {
+
+    /**
+     * Items a stage received and passed on, its time and whether it stopped early
+     */
+    public static class StageReport {
+        private final String stage;
+        private final int itemsIn;
+        private final int itemsOut;
+        private final long elapsedMillis;
+        private final boolean truncated; // budget or limit reached before the input was exhausted
+
+        public StageReport(String stage, int itemsIn, int itemsOut, long elapsedMillis, boolean truncated) {
+            this.stage = stage;
+            this.itemsIn = itemsIn;
+            this.itemsOut = itemsOut;
+            this.elapsedMillis = elapsedMillis;
+            this.truncated = truncated;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public int getItemsIn() {
+            return itemsIn;
+        }
+
+        public int getItemsOut() {
+            return itemsOut;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-10s in=%d out=%d %d ms%s", stage, itemsIn, itemsOut, elapsedMillis,
+                    truncated ? " (truncated)" : "");
+        }
+    }
+
+    private final List<HybridMatch> matches;
+    private final List<StageReport> stages;
+
+    public HybridResult(List<HybridMatch> matches, List<StageReport> stages) {
+        this.matches = Collections.unmodifiableList(new ArrayList<>(matches));
+        this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+
+    public List<HybridMatch> getMatches() {
+        return matches;
+    }
+
+    public List<StageReport> getStages() {
+        return stages;
+    }
+
+    /**
+     * True if any stage stopped at its budget or limit, so the ranking may be approximate
+     */
+    public boolean isTruncated() {
+        for (StageReport stage : stages) {
+            if (stage.isTruncated()) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,199 @@
+package mov.server;
+
+import mov.cbr.CaseRepresentation;
+import mov.model.Movie;
+import mov.model.MovieField;
+import mov.model.Person;
+import mov.ontology.ResultPage;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Minimal JSON serialisation for the service responses (no external dependencies)
+ */
+public class JsonWriter {
+    
+    /** Movie attributes written when no projection is set */
+    public static final Set<MovieField> DEFAULT_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            MovieField.YEAR, MovieField.RATING, MovieField.ROTTEN_TOMATOES, MovieField.RUNTIME,
+            MovieField.DIRECTORS, MovieField.GENRES));
+    
+    private final StringBuilder out = new StringBuilder();
+    private boolean needsComma = false;
+    private Set<MovieField> fields = DEFAULT_FIELDS;
+    
+    /**
+     * Write only these movie attributes (besides URI and title) from here on
+     */
+    public JsonWriter fields(Set<MovieField> fields) {
+        this.fields = fields;
+        return this;
+    }
+    
+    public JsonWriter beginObject() {
+        separate();
+        out.append('{');
+        needsComma = false;
+        return this;
+    }
+    
+    public JsonWriter endObject() {
+        out.append('}');
+        needsComma = true;
+        return this;
+    }
+    
+    public JsonWriter beginArray() {
+        separate();
+        out.append('[');
+        needsComma = false;
+        return this;
+    }
+    
+    public JsonWriter endArray() {
+        out.append(']');
+        needsComma = true;
+        return this;
+    }
+    
+    public JsonWriter name(String name) {
+        separate();
+        appendString(name);
+        out.append(':');
+        needsComma = false;
+        return this;
+    }
+    
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            out.append("null");
+        } else {
+            appendString(value);
+        }
+        needsComma = true;
+        return this;
+    }
+    
+    public JsonWriter value(double value) {
+        separate();
+        out.append(Double.isFinite(value) ? String.valueOf(value) : "null");
+        needsComma = true;
+        return this;
+    }
+    
+    public JsonWriter value(long value) {
+        separate();
+        out.append(value);
+        needsComma = true;
+        return this;
+    }
+    
+    public JsonWriter value(boolean value) {
+        separate();
+        out.append(value);
+        needsComma = true;
+        return this;
+    }
+    
+    /**
+     * The movie's URI, title and selected attributes; missing numbers and countries are left out,
+     * selected lists are written even when empty
+     */
+    public JsonWriter movie(Movie movie) {
+        beginObject();
+        name("uri").value(movie.getUri());
+        name("title").value(movie.getTitle());
+        if (movie.getYear() > 0 && fields.contains(MovieField.YEAR)) name("year").value(movie.getYear());
+        if (movie.getRating() > 0 && fields.contains(MovieField.RATING)) name("rating").value(movie.getRating());
+        if (movie.getRottenTomatoesScore() > 0 && fields.contains(MovieField.ROTTEN_TOMATOES)) {
+            name("rottenTomatoesScore").value(movie.getRottenTomatoesScore());
+        }
+        if (movie.getRuntime() > 0 && fields.contains(MovieField.RUNTIME)) name("runtime").value(movie.getRuntime());
+        if (fields.contains(MovieField.DIRECTORS)) people("directors", movie.getDirectors());
+        if (fields.contains(MovieField.GENRES)) strings("genres", movie.getGenres());
+        if (fields.contains(MovieField.ACTORS)) people("actors", movie.getActors());
+        if (fields.contains(MovieField.WRITERS)) people("writers", movie.getWriters());
+        if (movie.getCountry() != null && fields.contains(MovieField.COUNTRY)) name("country").value(movie.getCountry());
+        if (fields.contains(MovieField.AWARDS)) strings("awards", movie.getAwards());
+        return endObject();
+    }
+    
+    private void people(String name, List<Person> people) {
+        name(name).beginArray();
+        for (Person person : people) {
+            value(person.getName());
+        }
+        endArray();
+    }
+    
+    private void strings(String name, List<String> values) {
+        name(name).beginArray();
+        for (String value : values) {
+            value(value);
+        }
+        endArray();
+    }
+    
+    public JsonWriter movies(List<Movie> movies) {
+        beginArray();
+        for (Movie movie : movies) {
+            movie(movie);
+        }
+        return endArray();
+    }
+    
+    public JsonWriter page(ResultPage<Movie> page) {
+        beginObject();
+        name("movies").movies(page.getItems());
+        name("nextCursor").value(page.getNextCursor());
+        return endObject();
+    }
+    
+    public JsonWriter similarCases(List<CaseRepresentation> cases) {
+        beginArray();
+        for (CaseRepresentation caseRep : cases) {
+            beginObject();
+            name("similarity").value(caseRep.getSimilarity());
+            name("movie").movie(caseRep.getMovie());
+            endObject();
+        }
+        return endArray();
+    }
+    
+    private void separate() {
+        if (needsComma) {
+            out.append(',');
+            needsComma = false;
+        }
+    }
+    
+    private void appendString(String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+    
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
@@ -0,0 +1,666 @@
+package mov.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import mov.cbr.CBREngine;
+import mov.cbr.CaseRepresentation;
+import mov.cbr.UserProfile;
+import mov.fuzzy.FuzzyQualityEvaluator;
+import mov.graph.GraphMatch;
+import mov.graph.GraphRecommender;
+import mov.metrics.Metrics;
+import mov.metrics.PrometheusExporter;
+import mov.metrics.Trace;
+import mov.model.Movie;
+import mov.model.MovieField;
+import mov.ontology.MovieQuery;
+import mov.ontology.MovieRecommender;
+import mov.ontology.NameIndex;
+import mov.ontology.SortKey;
+import mov.pipeline.HybridMatch;
+import mov.pipeline.HybridQuery;
+import mov.pipeline.HybridRecommender;
+import mov.pipeline.HybridResult;
+import mov.startup.StartupOrchestrator;
+import mov.startup.StartupOrchestrator.Feature;
+import org.apache.jena.query.QueryCancelledException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded HTTP/JSON query service over the recommender, CBR engine and fuzzy evaluator.
+ * 
+ * Acceptor threads only parse the request and hand it to a worker executor, so slow
+ * queries never hold up connection handling. Requests beyond the in-flight limit are
+ * rejected with 503 (backpressure) and requests running past the timeout get 504.
+ * When started alongside a StartupOrchestrator, each endpoint answers 503 with Retry-After
+ * until the feature it belongs to has loaded, and /health reports per-feature readiness.
+ */
+public class RecommendationServer {
+    
+    /**
+     * A request handler returning the JSON response body
+     */
+    interface Endpoint {
+        String handle(Map<String, String> params) throws Exception;
+    }
+    
+    /**
+     * One admitted exchange; whichever of worker and timeout responds first wins
+     */
+    private static class PendingRequest {
+        final HttpExchange exchange;
+        final AtomicBoolean responded = new AtomicBoolean();
+        final AtomicBoolean started = new AtomicBoolean(); // claimed by the worker, or by the timeout if it never ran
+        volatile ScheduledFuture<?> timeout;
+        
+        PendingRequest(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+    }
+    
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int TITLE_SCAN_BATCH = 500;
+    
+    private final MovieRecommender movieRecommender;
+    private final CBREngine cbrEngine;
+    private final FuzzyQualityEvaluator fuzzyEvaluator;
+    private final ServerConfig config;
+    private volatile GraphRecommender graphRecommender; // optional: serves /related
+    private volatile StartupOrchestrator startup; // optional: gates endpoints until loaded
+    
+    private HttpServer httpServer;
+    private ExecutorService acceptors;
+    private ExecutorService workers;
+    private ScheduledThreadPoolExecutor timeouts;
+    private Semaphore admission;      // bounds running + queued requests
+    private Semaphore executionSlots; // bounds running requests
+    
+    public RecommendationServer(MovieRecommender movieRecommender, CBREngine cbrEngine,
+                                FuzzyQualityEvaluator fuzzyEvaluator, ServerConfig config) {
+        this.movieRecommender = movieRecommender;
+        this.cbrEngine = cbrEngine;
+        this.fuzzyEvaluator = fuzzyEvaluator;
+        this.config = config;
+    }
+    
+    public void setGraphRecommender(GraphRecommender graphRecommender) {
+        this.graphRecommender = graphRecommender;
+    }
+    
+    /**
+     * Gate endpoints on the features this startup is still loading
+     */
+    public void setStartup(StartupOrchestrator startup) {
+        this.startup = startup;
+    }
+    
+    public void start() throws IOException {
+        admission = new Semaphore(config.getMaxConcurrentRequests() + config.getMaxQueuedRequests());
+        executionSlots = new Semaphore(config.getMaxConcurrentRequests());
+        workers = createWorkerExecutor();
+        timeouts = new ScheduledThreadPoolExecutor(1, daemonThreads("mov-timeout"));
+        timeouts.setRemoveOnCancelPolicy(true);
+        acceptors = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                daemonThreads("mov-http"));
+        
+        httpServer = HttpServer.create(new InetSocketAddress(config.getPort()), config.getMaxQueuedRequests());
+        httpServer.setExecutor(acceptors);
+        
+        register("/health", null, this::health);
+        register("/recommend", Feature.RECOMMEND, this::recommend);
+        register("/recommend/genre", Feature.RECOMMEND, params ->
+                json(params).movies(await(movieRecommender.recommendByGenreAsync(required(params, "name"),
+                        optionalInt(params, "limit", 0), optionalInt(params, "offset", 0), fields(params)))).toString());
+        register("/recommend/director", Feature.RECOMMEND, params ->
+                json(params).movies(await(movieRecommender.recommendByDirectorAsync(required(params, "name"),
+                        optionalInt(params, "limit", 0), optionalInt(params, "offset", 0), fields(params)))).toString());
+        register("/recommend/actor", Feature.RECOMMEND, params ->
+                json(params).movies(await(movieRecommender.recommendByActorAsync(required(params, "name"),
+                        optionalInt(params, "limit", 0), optionalInt(params, "offset", 0), fields(params)))).toString());
+        register("/recommend/year", Feature.RECOMMEND, params ->
+                json(params).movies(await(movieRecommender.recommendByYearRangeAsync(
+                        requiredInt(params, "start"), requiredInt(params, "end"),
+                        optionalInt(params, "limit", 0), optionalInt(params, "offset", 0), fields(params)))).toString());
+        register("/similar", Feature.SIMILAR, this::similarMovies);
+        register("/related", Feature.RELATED, this::relatedMovies);
+        register("/hybrid", Feature.HYBRID, this::hybrid);
+        register("/profile", Feature.SIMILAR, this::profileRecommendations);
+        register("/autocomplete", Feature.AUTOCOMPLETE, this::autocomplete);
+        register("/quality", Feature.QUALITY, this::quality);
+        register("/metrics", null, "text/plain; version=0.0.4; charset=utf-8", params -> PrometheusExporter.dump());
+        
+        httpServer.start();
+        System.out.println("HTTP service listening on port " + config.getPort() + " (" + config + ")");
+    }
+    
+    public void stop(int delaySeconds) {
+        if (httpServer != null) {
+            httpServer.stop(delaySeconds);
+        }
+        if (workers != null) workers.shutdownNow();
+        if (timeouts != null) timeouts.shutdownNow();
+        if (acceptors != null) acceptors.shutdownNow();
+    }
+    
+    /**
+     * UP once every feature has loaded (or failed), STARTING before that
+     */
+    private String health(Map<String, String> params) {
+        StartupOrchestrator current = startup;
+        Feature[] features = Feature.values();
+        String[] states = new String[features.length];
+        boolean starting = false;
+        if (current != null) {
+            for (Feature feature : features) {
+                String state = current.isReady(feature) ? "ready" : current.hasFailed(feature) ? "failed" : "loading";
+                states[feature.ordinal()] = state;
+                starting |= state.equals("loading");
+            }
+        }
+        JsonWriter json = new JsonWriter().beginObject()
+                .name("status").value(starting ? "STARTING" : "UP")
+                .name("cases").value(cbrEngine.getCaseCount());
+        if (current != null) {
+            json.name("features").beginObject();
+            for (Feature feature : features) {
+                json.name(feature.name().toLowerCase()).value(states[feature.ordinal()]);
+            }
+            json.endObject();
+        }
+        return json.endObject().toString();
+    }
+    
+    /**
+     * Movie attributes to fetch for the optional fields parameter (comma-separated, e.g.
+     * fields=year,genres); the default projection without it
+     */
+    private static Set<MovieField> fields(Map<String, String> params) {
+        return MovieField.parse(params.get("fields"));
+    }
+    
+    /**
+     * A writer for the response: the usual movie attributes, or exactly the requested fields
+     */
+    private static JsonWriter json(Map<String, String> params) {
+        JsonWriter json = new JsonWriter();
+        return params.containsKey("fields") ? json.fields(fields(params)) : json;
+    }
+    
+    /**
+     * Combined criteria with ranking and cursor paging:
+     * genre, director, actor, start, end, sort, order (asc|desc), pageSize, cursor, fields
+     */
+    private String recommend(Map<String, String> params) {
+        MovieQuery query = new MovieQuery();
+        query.setGenre(params.get("genre"));
+        query.setDirector(params.get("director"));
+        query.setActor(params.get("actor"));
+        if (params.containsKey("start")) query.setStartYear(requiredInt(params, "start"));
+        if (params.containsKey("end")) query.setEndYear(requiredInt(params, "end"));
+        if (params.containsKey("sort")) query.setSortKey(SortKey.parse(required(params, "sort")));
+        query.setDescending(!"asc".equalsIgnoreCase(params.get("order")));
+        query.setPageSize(optionalInt(params, "pageSize", MovieQuery.DEFAULT_PAGE_SIZE));
+        query.setCursor(params.get("cursor"));
+        query.setFields(fields(params));
+        return json(params).page(movieRecommender.recommend(query)).toString();
+    }
+    
+    private String similarMovies(Map<String, String> params) throws Exception {
+        int k = optionalInt(params, "k", 10);
+        Movie target = findTarget(params.get("uri"), params.get("title"));
+        if (target == null) {
+            throw new IllegalArgumentException("Movie not found");
+        }
+        List<CaseRepresentation> similar = await(cbrEngine.findSimilarCasesAsync(target, k,
+                params.containsKey("fields") ? fields(params) : MovieField.ALL));
+        return json(params).beginObject()
+                .name("target").movie(target)
+                .name("similar").similarCases(similar)
+                .endObject().toString();
+    }
+    
+    private String relatedMovies(Map<String, String> params) {
+        GraphRecommender graph = graphRecommender;
+        if (graph == null) {
+            throw new IllegalArgumentException("Graph recommender not available");
+        }
+        int k = optionalInt(params, "k", 10);
+        Movie target = findTarget(params.get("uri"), params.get("title"));
+        if (target == null) {
+            throw new IllegalArgumentException("Movie not found");
+        }
+        JsonWriter json = new JsonWriter().beginObject()
+                .name("target").movie(target)
+                .name("related").beginArray();
+        for (GraphMatch match : graph.recommend(target.getUri(), k)) {
+            json.beginObject()
+                    .name("score").value(match.getScore())
+                    .name("movie").movie(match.getMovie())
+                    .endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+    
+    /**
+     * Closest movies to a user profile: liked and disliked (comma-separated URIs or titles), k
+     */
+    private String profileRecommendations(Map<String, String> params) {
+        UserProfile profile = new UserProfile();
+        for (Movie movie : resolveMovies(required(params, "liked"))) {
+            profile.like(movie);
+        }
+        if (params.containsKey("disliked")) {
+            for (Movie movie : resolveMovies(params.get("disliked"))) {
+                profile.dislike(movie);
+            }
+        }
+        List<CaseRepresentation> similar = cbrEngine.findSimilarCases(profile, optionalInt(params, "k", 10));
+        return new JsonWriter().beginObject()
+                .name("similar").similarCases(similar)
+                .endObject().toString();
+    }
+    
+    private List<Movie> resolveMovies(String references) {
+        List<Movie> movies = new ArrayList<>();
+        for (String reference : references.split(",")) {
+            String trimmed = reference.trim();
+            if (trimmed.isEmpty()) continue;
+            Movie movie = trimmed.startsWith("http") ? findTarget(trimmed, null) : findTarget(null, trimmed);
+            if (movie == null) {
+                throw new IllegalArgumentException("Movie not found: " + trimmed);
+            }
+            movies.add(movie);
+        }
+        return movies;
+    }
+    
+    /**
+     * Filter (as /recommend, without paging), rank against the seed (uri or title, optional)
+     * and rerank by fuzzy quality: k, quality (weight 0-1)
+     */
+    private String hybrid(Map<String, String> params) {
+        MovieQuery filter = new MovieQuery();
+        filter.setGenre(params.get("genre"));
+        filter.setDirector(params.get("director"));
+        filter.setActor(params.get("actor"));
+        if (params.containsKey("start")) filter.setStartYear(requiredInt(params, "start"));
+        if (params.containsKey("end")) filter.setEndYear(requiredInt(params, "end"));
+        if (params.containsKey("sort")) filter.setSortKey(SortKey.parse(required(params, "sort")));
+        filter.setDescending(!"asc".equalsIgnoreCase(params.get("order")));
+        
+        List<Movie> seeds = new ArrayList<>();
+        if (params.containsKey("uri") || params.containsKey("title")) {
+            Movie seed = findTarget(params.get("uri"), params.get("title"));
+            if (seed == null) {
+                throw new IllegalArgumentException("Movie not found");
+            }
+            seeds.add(seed);
+        }
+        HybridQuery query = new HybridQuery(filter, seeds, optionalInt(params, "k", HybridQuery.DEFAULT_K));
+        if (params.containsKey("quality")) {
+            double weight = requiredScore(params, "quality");
+            if (weight > 1) {
+                throw new IllegalArgumentException("Parameter quality must be between 0 and 1");
+            }
+            query.setQualityWeight(weight);
+        }
+        HybridResult result = new HybridRecommender(movieRecommender, cbrEngine, fuzzyEvaluator).recommend(query);
+        
+        JsonWriter json = new JsonWriter().beginObject()
+                .name("truncated").value(result.isTruncated())
+                .name("matches").beginArray();
+        for (HybridMatch match : result.getMatches()) {
+            json.beginObject()
+                    .name("score").value(match.getScore())
+                    .name("similarity").value(match.getSimilarity())
+                    .name("quality").value(match.getQuality())
+                    .name("movie").movie(match.getMovie())
+                    .endObject();
+        }
+        json.endArray().name("stages").beginArray();
+        for (HybridResult.StageReport stage : result.getStages()) {
+            json.beginObject()
+                    .name("stage").value(stage.getStage())
+                    .name("in").value(stage.getItemsIn())
+                    .name("out").value(stage.getItemsOut())
+                    .name("millis").value(stage.getElapsedMillis())
+                    .name("truncated").value(stage.isTruncated())
+                    .endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+    
+    /**
+     * Wait for a coalesced result on the worker thread. If the request times out the worker is
+     * interrupted and only this caller's future is cancelled; others sharing the flight keep waiting.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+    
+    private Movie findTarget(String uri, String title) {
+        if (uri != null) {
+            CaseRepresentation caseRep = cbrEngine.getCase(uri);
+            return caseRep == null ? null : caseRep.getMovie();
+        }
+        if (title == null) {
+            throw new IllegalArgumentException("Missing parameter: uri or title");
+        }
+        NameIndex nameIndex = movieRecommender.getNameIndex();
+        if (nameIndex != null) {
+            for (String resolved : nameIndex.resolve(NameIndex.Kind.TITLE, title)) {
+                CaseRepresentation caseRep = cbrEngine.getCase(resolved);
+                if (caseRep != null) {
+                    return caseRep.getMovie();
+                }
+            }
+            return null;
+        }
+        // Walk the case base in batches so an off-heap store materialises a batch at a time
+        List<String> ids = cbrEngine.getCaseIds();
+        for (int from = 0; from < ids.size(); from += TITLE_SCAN_BATCH) {
+            for (Movie movie : cbrEngine.getCaseMovies(ids.subList(from, Math.min(ids.size(), from + TITLE_SCAN_BATCH)))) {
+                if (movie.getTitle().equalsIgnoreCase(title)) {
+                    return movie;
+                }
+            }
+        }
+        return null;
+    }
+    
+    private String autocomplete(Map<String, String> params) {
+        NameIndex nameIndex = movieRecommender.getNameIndex();
+        if (nameIndex == null) {
+            throw new IllegalArgumentException("Name index not available");
+        }
+        NameIndex.Kind kind;
+        try {
+            kind = NameIndex.Kind.valueOf(params.getOrDefault("kind", "title").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Parameter kind must be one of title, person, genre");
+        }
+        JsonWriter json = new JsonWriter().beginArray();
+        for (NameIndex.Match match : nameIndex.autocomplete(kind, params.getOrDefault("prefix", ""), optionalInt(params, "limit", 10))) {
+            json.beginObject().name("name").value(match.getName()).name("uri").value(match.getUri()).endObject();
+        }
+        return json.endArray().toString();
+    }
+    
+    private String quality(Map<String, String> params) {
+        double score = fuzzyEvaluator.evaluateQuality(
+                requiredScore(params, "directing"),
+                requiredScore(params, "acting"),
+                requiredScore(params, "screenplay"),
+                requiredScore(params, "visualEffects"),
+                requiredScore(params, "culturalSignificance"));
+        return new JsonWriter().beginObject()
+                .name("score").value(score)
+                .name("label").value(fuzzyEvaluator.getQualityLabel(score))
+                .endObject().toString();
+    }
+    
+    /**
+     * @param feature what must have loaded before the endpoint answers; null for always
+     */
+    private void register(String path, Feature feature, Endpoint endpoint) {
+        register(path, feature, JSON, endpoint);
+    }
+    
+    private void register(String path, Feature feature, String contentType, Endpoint endpoint) {
+        httpServer.createContext(path, exchange -> dispatch(exchange, path, feature, contentType, endpoint));
+    }
+    
+    /**
+     * Runs on an acceptor thread: admit or shed the request, then hand it to a worker
+     */
+    private void dispatch(HttpExchange exchange, String path, Feature feature, String contentType, Endpoint endpoint) {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            respondOnce(new PendingRequest(exchange), 405, error("Only GET is supported"));
+            return;
+        }
+        // Contexts match by prefix; reject anything that is not exactly this endpoint
+        if (!exchange.getRequestURI().getPath().equals(path)) {
+            respondOnce(new PendingRequest(exchange), 404, error("Not found"));
+            return;
+        }
+        StartupOrchestrator current = startup;
+        if (feature != null && current != null && !current.isReady(feature)) {
+            String name = feature.name().toLowerCase();
+            if (current.hasFailed(feature)) {
+                respondOnce(new PendingRequest(exchange), 503, error("Feature " + name + " failed to load"));
+            } else {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respondOnce(new PendingRequest(exchange), 503, error("Feature " + name + " is still loading"));
+            }
+            return;
+        }
+        // Parse before taking a permit: a malformed escape (e.g. %zz) must not leak one
+        Map<String, String> params;
+        try {
+            params = parseQuery(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException e) {
+            respondOnce(new PendingRequest(exchange), 400, error("Malformed query string"));
+            return;
+        }
+        if (!admission.tryAcquire()) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respondOnce(new PendingRequest(exchange), 503, error("Server overloaded"));
+            return;
+        }
+        
+        PendingRequest request = new PendingRequest(exchange);
+        Future<?> task;
+        try {
+            task = workers.submit(() -> execute(request, contentType, endpoint, params));
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            respondOnce(request, 503, error("Server shutting down"));
+            return;
+        }
+        
+        request.timeout = timeouts.schedule(() -> {
+            if (respondOnce(request, 504, error("Request timed out"))) {
+                if (request.started.compareAndSet(false, true)) {
+                    // Still queued: a cancelled task never runs execute(), so its permit is released here
+                    task.cancel(false);
+                    admission.release();
+                } else {
+                    task.cancel(true);
+                }
+            }
+        }, config.getRequestTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Runs on a worker thread
+     */
+    private void execute(PendingRequest request, String contentType, Endpoint endpoint, Map<String, String> params) {
+        if (!request.started.compareAndSet(false, true)) {
+            return; // timed out while queued; the timeout released the permit
+        }
+        boolean acquired = false;
+        try {
+            executionSlots.acquire();
+            acquired = true;
+            if (request.responded.get()) {
+                return; // timed out while queued
+            }
+            Trace.begin();
+            long start = Metrics.start();
+            String body = endpoint.handle(params);
+            Metrics.stop(Metrics.HTTP_REQUEST, start);
+            Trace trace = Trace.end();
+            if (trace != null) {
+                request.exchange.getResponseHeaders().set("Server-Timing", trace.toServerTiming());
+            }
+            respondOnce(request, 200, contentType, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalArgumentException e) {
+            respondOnce(request, 400, error(e.getMessage()));
+        } catch (QueryCancelledException e) {
+            respondOnce(request, 504, error("Query timed out"));
+        } catch (RejectedExecutionException e) {
+            request.exchange.getResponseHeaders().set("Retry-After", "1");
+            respondOnce(request, 503, error("Server overloaded"));
+        } catch (Exception e) {
+            System.err.println("Error handling " + request.exchange.getRequestURI() + ": " + e.getMessage());
+            respondOnce(request, 500, error("Internal error"));
+        } finally {
+            Trace.end();
+            if (acquired) {
+                executionSlots.release();
+            }
+            admission.release();
+            ScheduledFuture<?> timeout = request.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+    
+    /**
+     * Send the response unless one was already sent (by the timeout or the worker)
+     * 
+     * @return true if this call sent the response
+     */
+    private boolean respondOnce(PendingRequest request, int status, String body) {
+        return respondOnce(request, status, JSON, body);
+    }
+    
+    private boolean respondOnce(PendingRequest request, int status, String contentType, String body) {
+        if (!request.responded.compareAndSet(false, true)) {
+            return false;
+        }
+        HttpExchange exchange = request.exchange;
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // client went away; nothing else to do
+        } finally {
+            exchange.close();
+        }
+        return true;
+    }
+    
+    private static String error(String message) {
+        return new JsonWriter().beginObject().name("error").value(message).endObject().toString();
+    }
+    
+    /**
+     * Virtual threads when the JVM has them (Java 21+), otherwise a fixed platform pool.
+     * Looked up reflectively because the project still compiles for Java 11.
+     */
+    private ExecutorService createWorkerExecutor() {
+        if (config.isUseVirtualThreads()) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads not available, using a platform thread pool");
+            }
+        }
+        int threads = config.getMaxConcurrentRequests();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("mov-worker"));
+    }
+    
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    // Parameter helpers
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+    
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value.trim();
+    }
+    
+    private static int requiredInt(Map<String, String> params, String name) {
+        try {
+            return Integer.parseInt(required(params, name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be an integer");
+        }
+    }
+    
+    private static int optionalInt(Map<String, String> params, String name, int defaultValue) {
+        return params.containsKey(name) ? requiredInt(params, name) : defaultValue;
+    }
+    
+    private static double requiredScore(Map<String, String> params, String name) {
+        double value;
+        try {
+            value = Double.parseDouble(required(params, name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be a number");
+        }
+        if (value < 0 || value > 10) {
+            throw new IllegalArgumentException("Parameter " + name + " must be between 0 and 10");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,73 @@
+package mov.server;
+
+/**
+ * Tunables for the embedded HTTP query service.
+ * Defaults can be overridden with -Dmov.server.* system properties.
+ */
+public class ServerConfig {
+    
+    private int port = 8080;
+    private int maxConcurrentRequests = 256;   // requests executing at once
+    private int maxQueuedRequests = 4096;      // requests waiting for a worker before we shed load
+    private long requestTimeoutMillis = 5000;
+    private boolean useVirtualThreads = true;  // used only when the running JVM supports them
+    
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.setPort(Integer.getInteger("mov.server.port", config.getPort()));
+        config.setMaxConcurrentRequests(Integer.getInteger("mov.server.maxConcurrent", config.getMaxConcurrentRequests()));
+        config.setMaxQueuedRequests(Integer.getInteger("mov.server.maxQueued", config.getMaxQueuedRequests()));
+        config.setRequestTimeoutMillis(Long.getLong("mov.server.timeoutMillis", config.getRequestTimeoutMillis()));
+        config.setUseVirtualThreads(Boolean.parseBoolean(
+                System.getProperty("mov.server.virtualThreads", String.valueOf(config.isUseVirtualThreads()))));
+        return config;
+    }
+    
+    // Getters and Setters
+    public int getPort() {
+        return port;
+    }
+    
+    public void setPort(int port) {
+        this.port = port;
+    }
+    
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+    
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+    
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+    
+    public void setMaxQueuedRequests(int maxQueuedRequests) {
+        this.maxQueuedRequests = maxQueuedRequests;
+    }
+    
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+    
+    public void setRequestTimeoutMillis(long requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+    
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+    
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+    
+    @Override
+    public String toString() {
+        return "ServerConfig [port=" + port + ", maxConcurrentRequests=" + maxConcurrentRequests +
+               ", maxQueuedRequests=" + maxQueuedRequests + ", requestTimeoutMillis=" + requestTimeoutMillis +
+               ", useVirtualThreads=" + useVirtualThreads + "]";
+    }
+}
@@ -0,0 +1,110 @@
+package mov.shard;
+
+import mov.cbr.CaseRepresentation;
+import mov.metrics.Metrics;
+import mov.model.Movie;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Scatter-gather findSimilarCases over ShardWorkers.
+ *
+ * The target is sent to every shard at once; each returns its local top k. Whatever has arrived
+ * when the deadline passes is merged into the global top k and slower shards are reported in the
+ * result rather than waited for. Since every case lives in exactly one shard, the merge equals a
+ * single engine's top k whenever all shards answer (ties may be ordered differently).
+ */
+public class ShardCoordinator {
+    public static final long DEFAULT_DEADLINE_MILLIS = 500;
+
+    /** Best first, ties by id so merged results do not depend on arrival order */
+    private static final Comparator<CaseRepresentation> BEST_FIRST =
+            Comparator.comparingDouble(CaseRepresentation::getSimilarity).reversed()
+                    .thenComparing(CaseRepresentation::getId);
+
+    private final List<URI> shards; // base URIs, shard i at index i
+    private final HttpClient client;
+    private volatile long deadlineMillis = DEFAULT_DEADLINE_MILLIS;
+
+    public ShardCoordinator(List<URI> shards) {
+        this.shards = new ArrayList<>(shards);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1) // workers run the JDK server, which has no HTTP/2
+                .connectTimeout(Duration.ofMillis(DEFAULT_DEADLINE_MILLIS))
+                .build();
+    }
+
+    public ShardedResult findSimilarCases(Movie targetMovie, int k) {
+        long start = System.nanoTime();
+        long deadline = start + deadlineMillis * 1_000_000L;
+        String body = ShardProtocol.encodeMovie(targetMovie);
+        List<CompletableFuture<List<CaseRepresentation>>> calls = new ArrayList<>(shards.size());
+        for (URI shard : shards) {
+            HttpRequest request = HttpRequest.newBuilder(shard.resolve(ShardProtocol.SIMILAR_PATH + "?k=" + k))
+                    .timeout(Duration.ofMillis(deadlineMillis))
+                    .header("Content-Type", "text/plain; charset=utf-8")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            calls.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("HTTP " + response.statusCode() + ": " + response.body().trim());
+                }
+                return ShardProtocol.decodeCases(response.body());
+            }));
+        }
+
+        List<CaseRepresentation> merged = new ArrayList<>();
+        List<Integer> timedOut = new ArrayList<>();
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            CompletableFuture<List<CaseRepresentation>> call = calls.get(i);
+            try {
+                merged.addAll(call.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                call.cancel(true);
+                timedOut.add(i);
+            } catch (ExecutionException e) {
+                System.err.println("Shard " + i + " (" + shards.get(i) + ") failed: " + e.getCause().getMessage());
+                failed.add(i);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timedOut.add(i);
+            }
+        }
+        merged.sort(BEST_FIRST);
+        List<CaseRepresentation> top = new ArrayList<>(merged.subList(0, Math.min(k, merged.size())));
+        long elapsed = System.nanoTime() - start;
+        Metrics.record(Metrics.SHARD_FIND_SIMILAR, elapsed);
+        Metrics.add(Metrics.SHARD_TIMEOUTS, timedOut.size());
+        return new ShardedResult(top, shards.size(), timedOut, failed, elapsed / 1_000_000);
+    }
+
+    public List<URI> getShards() {
+        return new ArrayList<>(shards);
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Time to wait for shards before merging whatever has arrived
+     */
+    public void setDeadlineMillis(long deadlineMillis) {
+        if (deadlineMillis <= 0) {
+            throw new IllegalArgumentException("Deadline must be positive");
+        }
+        this.deadlineMillis = deadlineMillis;
+    }
+}
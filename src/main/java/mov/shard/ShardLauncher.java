@@ -0,0 +1,184 @@
+package mov.shard;
+
+import mov.cbr.CBREngine;
+import mov.cbr.CaseRepresentation;
+import mov.cbr.SimilaritySpec;
+import mov.model.EntityRegistry;
+import mov.model.Movie;
+import mov.ontology.MovieCatalog;
+import mov.ontology.MovieRecommender;
+import mov.ontology.OntologyManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Starts ShardWorkers as local processes and checks the sharded answers against a single engine.
+ *
+ * Every movie is used as a target; the merged top k from the coordinator must carry the same
+ * scores as the in-process engine, and coordinator latency is reported. With --slow-shard the
+ * chosen worker answers late, so results come back partial within the deadline.
+ *
+ * Usage: ShardLauncher [--shards 3] [--base-port 9100] [--k 10] [--deadline 500]
+ *                      [--storage heap|offheap] [--slow-shard i --slow-millis 1000] [--ontology file]
+ */
+public class ShardLauncher implements AutoCloseable {
+    private final List<Process> processes = new ArrayList<>();
+    private final List<URI> endpoints = new ArrayList<>();
+
+    /**
+     * Start one worker process per shard on consecutive ports, logging to shard-i.log in the temp directory
+     */
+    public static ShardLauncher launch(int shardCount, int basePort, String ontology, String storage,
+                                       int slowShard, long slowMillis) throws IOException {
+        ShardLauncher launcher = new ShardLauncher();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                int port = basePort + shard;
+                List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                        ShardWorker.class.getName(), "--shard", String.valueOf(shard), "--shards", String.valueOf(shardCount),
+                        "--port", String.valueOf(port), "--ontology", ontology, "--storage", storage));
+                if (shard == slowShard) {
+                    command.add("--delay");
+                    command.add(String.valueOf(slowMillis));
+                }
+                File log = new File(System.getProperty("java.io.tmpdir"), "shard-" + shard + ".log");
+                Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.to(log)).start();
+                launcher.processes.add(process);
+                launcher.endpoints.add(URI.create("http://localhost:" + port + "/"));
+                System.out.println("Started shard " + shard + " on port " + port + ", log " + log);
+            }
+        } catch (IOException e) {
+            launcher.close();
+            throw e;
+        }
+        return launcher;
+    }
+
+    /**
+     * Wait until every worker answers its health check
+     */
+    public void awaitReady(long timeoutMillis) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (int shard = 0; shard < endpoints.size(); shard++) {
+            HttpRequest request = HttpRequest.newBuilder(endpoints.get(shard).resolve(ShardProtocol.HEALTH_PATH))
+                    .timeout(Duration.ofSeconds(2)).build();
+            while (true) {
+                if (!processes.get(shard).isAlive()) {
+                    throw new IOException("Shard " + shard + " exited with " + processes.get(shard).exitValue());
+                }
+                try {
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200) {
+                        System.out.print(response.body());
+                        break;
+                    }
+                } catch (IOException e) {
+                    // not listening yet
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Shard " + shard + " not ready after " + timeoutMillis + " ms");
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    public ShardCoordinator coordinator() {
+        return new ShardCoordinator(endpoints);
+    }
+
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ShardWorker.options(args);
+        int shardCount = Integer.parseInt(options.getOrDefault("shards", "3"));
+        int basePort = Integer.parseInt(options.getOrDefault("base-port", "9100"));
+        int k = Integer.parseInt(options.getOrDefault("k", "10"));
+        long deadline = Long.parseLong(options.getOrDefault("deadline", String.valueOf(ShardCoordinator.DEFAULT_DEADLINE_MILLIS)));
+        String ontology = options.getOrDefault("ontology", "src/main/resources/ontology/movies-instances.owl");
+        int slowShard = Integer.parseInt(options.getOrDefault("slow-shard", "-1"));
+        long slowMillis = Long.parseLong(options.getOrDefault("slow-millis", String.valueOf(deadline * 2)));
+
+        try (ShardLauncher launcher = launch(shardCount, basePort, ontology, options.getOrDefault("storage", "heap"),
+                slowShard, slowMillis)) {
+            // Reference: the whole case base in this process
+            OntologyManager ontologyManager = new OntologyManager();
+            ontologyManager.loadOntology(ontology);
+            EntityRegistry entityRegistry = new EntityRegistry();
+            MovieRecommender recommender = new MovieRecommender(ontologyManager);
+            recommender.setEntityRegistry(entityRegistry);
+            recommender.setCatalog(MovieCatalog.build(ontologyManager, entityRegistry));
+            List<Movie> movies = recommender.getAllMovies();
+            CBREngine reference = new CBREngine();
+            reference.setEntityRegistry(entityRegistry);
+            reference.setSimilaritySpec(SimilaritySpec.loadResource(SimilaritySpec.DEFAULT_RESOURCE));
+            reference.loadCases(movies);
+
+            launcher.awaitReady(120_000);
+            ShardCoordinator coordinator = launcher.coordinator();
+            coordinator.setDeadlineMillis(deadline);
+
+            long[] millis = new long[movies.size()];
+            int matching = 0;
+            int partial = 0;
+            for (int i = 0; i < movies.size(); i++) {
+                Movie target = movies.get(i);
+                ShardedResult result = coordinator.findSimilarCases(target, k);
+                millis[i] = result.getElapsedMillis();
+                if (result.isPartial()) {
+                    partial++;
+                } else if (sameScores(reference.findSimilarCases(target, k), result.getCases())) {
+                    matching++;
+                } else {
+                    System.out.println("Mismatch for " + target.getTitle() + ": " + result.getCases());
+                }
+            }
+            Arrays.sort(millis);
+            System.out.printf(Locale.ROOT, "%d queries over %d shards: %d complete and matching, %d partial; "
+                            + "latency p50 %d ms, p95 %d ms, max %d ms (deadline %d ms)%n",
+                    movies.size(), shardCount, matching, partial, millis[millis.length / 2],
+                    millis[Math.min(millis.length - 1, (int) Math.ceil(millis.length * 0.95) - 1)],
+                    millis[millis.length - 1], deadline);
+        }
+    }
+
+    private static boolean sameScores(List<CaseRepresentation> expected, List<CaseRepresentation> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (Math.abs(expected.get(i).getSimilarity() - actual.get(i).getSimilarity()) > 1e-9) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+package mov.shard;
+
+import mov.cbr.CaseRepresentation;
+import mov.model.Movie;
+import mov.model.Person;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format between ShardCoordinator and ShardWorker, and the partitioning of cases.
+ *
+ * A movie is a block of "field value" lines (tab separated, values URL-encoded) carrying every
+ * Movie field: uri, title, year, rating, rottenTomatoes, runtime, country, and genre, director,
+ * actor, writer and award repeated. A person is sent as its name and, when it has one, its URI
+ * (a second tab-separated value); other Person details stay on the worker.
+ * A result list is a "case similarity uri" line per case followed by that case's movie block.
+ */
+public final class ShardProtocol {
+    public static final String SIMILAR_PATH = "/shard/similar";
+    public static final String HEALTH_PATH = "/shard/health";
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Shard owning the movie with the given URI
+     */
+    public static int shardOf(String uri, int shardCount) {
+        return Math.floorMod(uri.hashCode(), shardCount);
+    }
+
+    public static String encodeMovie(Movie movie) {
+        StringBuilder text = new StringBuilder();
+        appendMovie(text, movie);
+        return text.toString();
+    }
+
+    public static Movie decodeMovie(String text) {
+        Movie movie = new Movie();
+        for (String line : text.split("\n")) {
+            if (!line.isEmpty()) applyField(movie, line);
+        }
+        return movie;
+    }
+
+    public static String encodeCases(List<CaseRepresentation> cases) {
+        StringBuilder text = new StringBuilder();
+        for (CaseRepresentation caseRep : cases) {
+            text.append("case\t").append(caseRep.getSimilarity()).append('\t').append(encode(caseRep.getId())).append('\n');
+            appendMovie(text, caseRep.getMovie());
+        }
+        return text.toString();
+    }
+
+    public static List<CaseRepresentation> decodeCases(String text) {
+        List<CaseRepresentation> cases = new ArrayList<>();
+        CaseRepresentation current = null;
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) continue;
+            if (line.startsWith("case\t")) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Malformed case line: " + line);
+                }
+                current = new CaseRepresentation(decode(parts[2]), new Movie());
+                current.setSimilarity(Double.parseDouble(parts[1]));
+                cases.add(current);
+            } else if (current == null) {
+                throw new IllegalArgumentException("Movie field before any case line: " + line);
+            } else {
+                applyField(current.getMovie(), line);
+            }
+        }
+        return cases;
+    }
+
+    private static void appendMovie(StringBuilder text, Movie movie) {
+        field(text, "uri", movie.getUri());
+        field(text, "title", movie.getTitle());
+        if (movie.getYear() != 0) field(text, "year", String.valueOf(movie.getYear()));
+        if (movie.getRating() != 0.0) field(text, "rating", String.valueOf(movie.getRating()));
+        if (movie.getRottenTomatoesScore() != 0) field(text, "rottenTomatoes", String.valueOf(movie.getRottenTomatoesScore()));
+        if (movie.getRuntime() != 0) field(text, "runtime", String.valueOf(movie.getRuntime()));
+        field(text, "country", movie.getCountry());
+        for (String genre : movie.getGenres()) {
+            field(text, "genre", genre);
+        }
+        for (Person director : movie.getDirectors()) {
+            person(text, "director", director);
+        }
+        for (Person actor : movie.getActors()) {
+            person(text, "actor", actor);
+        }
+        for (Person writer : movie.getWriters()) {
+            person(text, "writer", writer);
+        }
+        for (String award : movie.getAwards()) {
+            field(text, "award", award);
+        }
+    }
+
+    private static void field(StringBuilder text, String name, String value) {
+        if (value != null) {
+            text.append(name).append('\t').append(encode(value)).append('\n');
+        }
+    }
+
+    private static void person(StringBuilder text, String name, Person person) {
+        if (person == null || (person.getName() == null && person.getUri() == null)) {
+            return;
+        }
+        text.append(name).append('\t').append(encode(person.getName() == null ? "" : person.getName()));
+        if (person.getUri() != null) {
+            text.append('\t').append(encode(person.getUri()));
+        }
+        text.append('\n');
+    }
+
+    private static Person readPerson(String value) {
+        int tab = value.indexOf('\t');
+        String name = decode(tab < 0 ? value : value.substring(0, tab));
+        Person person = new Person(name.isEmpty() && tab >= 0 ? null : name);
+        if (tab >= 0) {
+            person.setUri(decode(value.substring(tab + 1)));
+        }
+        return person;
+    }
+
+    private static void applyField(Movie movie, String line) {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            throw new IllegalArgumentException("Malformed field line: " + line);
+        }
+        String raw = line.substring(tab + 1);
+        String value = decode(raw);
+        switch (line.substring(0, tab)) {
+            case "uri":
+                movie.setUri(value);
+                break;
+            case "title":
+                movie.setTitle(value);
+                break;
+            case "year":
+                movie.setYear(Integer.parseInt(value));
+                break;
+            case "rating":
+                movie.setRating(Double.parseDouble(value));
+                break;
+            case "rottenTomatoes":
+                movie.setRottenTomatoesScore(Integer.parseInt(value));
+                break;
+            case "runtime":
+                movie.setRuntime(Integer.parseInt(value));
+                break;
+            case "country":
+                movie.setCountry(value);
+                break;
+            case "genre":
+                movie.addGenre(value);
+                break;
+            case "director":
+                movie.addDirector(readPerson(raw));
+                break;
+            case "actor":
+                movie.addActor(readPerson(raw));
+                break;
+            case "writer":
+                movie.addWriter(readPerson(raw));
+                break;
+            case "award":
+                movie.addAward(value);
+                break;
+            default:
+                // Unknown fields are ignored so either side can add fields first
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
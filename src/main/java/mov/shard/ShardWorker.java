@@ -0,0 +1,221 @@
+package mov.shard;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import mov.cbr.CBREngine;
+import mov.cbr.CaseRepresentation;
+import mov.cbr.SimilaritySpec;
+import mov.model.EntityRegistry;
+import mov.model.Movie;
+import mov.model.MovieField;
+import mov.ontology.MovieRecommender;
+import mov.ontology.OntologyManager;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One shard of the case base served over HTTP.
+ *
+ * The worker keeps only the movies whose URI hashes to its shard and answers
+ * POST /shard/similar?k=N, whose body is the target movie in ShardProtocol format, with its local
+ * top k. The target does not have to be in the shard. GET /shard/health reports the case count.
+ *
+ * Usage: ShardWorker --shard i --shards n --port p [--ontology file] [--storage heap|offheap]
+ *                    [--delay millis]
+ * (--delay holds every answer back, to try out the coordinator's deadline with a slow shard)
+ *
+ * main builds no catalog: it lists movie URIs from the model and fetches only this shard's
+ * movies by SPARQL, a page at a time, so the worker holds its own cases plus the Jena model.
+ * The model is still the whole ontology unless --ontology names a file holding just this
+ * shard's movies.
+ */
+public class ShardWorker {
+    private static final int LOAD_PAGE = 500; // movies per SPARQL query while loading
+
+    private final int shard;
+    private final int shardCount;
+    private final CBREngine cbrEngine;
+    private HttpServer httpServer;
+    private ExecutorService executor;
+    private volatile long responseDelayMillis;
+
+    public ShardWorker(int shard, int shardCount, CBREngine cbrEngine) {
+        if (shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("Shard " + shard + " out of range for " + shardCount + " shards");
+        }
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.cbrEngine = cbrEngine;
+    }
+
+    /**
+     * Load this shard's part of the given movies into the engine
+     */
+    public void loadCases(List<Movie> movies) {
+        List<Movie> owned = new ArrayList<>();
+        for (Movie movie : movies) {
+            if (movie.getUri() != null && ShardProtocol.shardOf(movie.getUri(), shardCount) == shard) {
+                owned.add(movie);
+            }
+        }
+        cbrEngine.loadCases(owned);
+    }
+
+    /**
+     * Load this shard's movies straight from the model: URIs are listed and filtered first,
+     * then only the owned movies are materialised, LOAD_PAGE at a time
+     */
+    public void loadCases(OntologyManager ontologyManager, MovieRecommender recommender) {
+        Model model = ontologyManager.getJenaModel();
+        List<String> owned = new ArrayList<>();
+        ResIterator movies = model.listResourcesWithProperty(RDF.type,
+                model.createResource(OntologyManager.MOVIE_NS + "Movie"));
+        try {
+            while (movies.hasNext()) {
+                Resource movie = movies.nextResource();
+                if (movie.isURIResource() && ShardProtocol.shardOf(movie.getURI(), shardCount) == shard) {
+                    owned.add(movie.getURI());
+                }
+            }
+        } finally {
+            movies.close();
+        }
+        List<Movie> cases = new ArrayList<>(owned.size());
+        for (int from = 0; from < owned.size(); from += LOAD_PAGE) {
+            cases.addAll(recommender.getMoviesByUris(owned.subList(from, Math.min(owned.size(), from + LOAD_PAGE)),
+                    MovieField.ALL));
+        }
+        cbrEngine.loadCases(cases);
+    }
+
+    public void start(int port) throws IOException {
+        // Answers are small and latency-bound: without TCP_NODELAY, Nagle and delayed ACKs add ~40 ms per call
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext(ShardProtocol.SIMILAR_PATH, this::similar);
+        httpServer.createContext(ShardProtocol.HEALTH_PATH, exchange ->
+                respond(exchange, 200, "UP shard " + shard + "/" + shardCount + " cases " + cbrEngine.getCaseCount() + "\n"));
+        httpServer.start();
+        System.out.println("Shard " + shard + "/" + shardCount + " listening on port " + port
+                + " with " + cbrEngine.getCaseCount() + " cases");
+    }
+
+    /**
+     * Hold every answer back this long (testing the coordinator against a slow shard)
+     */
+    public void setResponseDelayMillis(long responseDelayMillis) {
+        this.responseDelayMillis = responseDelayMillis;
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private void similar(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "POST the target movie\n");
+                return;
+            }
+            int k = 10;
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null && query.startsWith("k=")) {
+                k = Integer.parseInt(query.substring(2));
+            }
+            Movie target;
+            try (InputStream in = exchange.getRequestBody()) {
+                target = ShardProtocol.decodeMovie(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            List<CaseRepresentation> similar = cbrEngine.getCaseCount() == 0 ? new ArrayList<>()
+                    : cbrEngine.findSimilarCases(target, k);
+            if (responseDelayMillis > 0) {
+                Thread.sleep(responseDelayMillis);
+            }
+            respond(exchange, 200, ShardProtocol.encodeCases(similar));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "Interrupted\n");
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            System.err.println("Shard " + shard + " query failed: " + e);
+            respond(exchange, 500, "Internal error\n");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        int shard = Integer.parseInt(required(options, "shard"));
+        int shardCount = Integer.parseInt(required(options, "shards"));
+        int port = Integer.parseInt(required(options, "port"));
+
+        OntologyManager ontologyManager = new OntologyManager();
+        ontologyManager.loadOntology(options.getOrDefault("ontology", "src/main/resources/ontology/movies-instances.owl"));
+        EntityRegistry entityRegistry = new EntityRegistry();
+        MovieRecommender recommender = new MovieRecommender(ontologyManager);
+        recommender.setEntityRegistry(entityRegistry);
+
+        CBREngine cbrEngine = new CBREngine();
+        cbrEngine.setEntityRegistry(entityRegistry);
+        cbrEngine.setSimilaritySpec(SimilaritySpec.loadResource(SimilaritySpec.DEFAULT_RESOURCE));
+        if ("offheap".equalsIgnoreCase(options.get("storage"))) {
+            cbrEngine.setStorageMode(CBREngine.StorageMode.OFF_HEAP);
+        }
+        ShardWorker worker = new ShardWorker(shard, shardCount, cbrEngine);
+        worker.setResponseDelayMillis(Long.parseLong(options.getOrDefault("delay", "0")));
+        worker.loadCases(ontologyManager, recommender);
+        worker.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::stop));
+        Thread.currentThread().join();
+    }
+
+    static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing option --" + name);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,65 @@
+package mov.shard;
+
+import mov.cbr.CaseRepresentation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Merged top-k from a scatter-gather query, with the shards that did not contribute
+ */
+public class ShardedResult {
+    private final List<CaseRepresentation> cases;
+    private final int shardCount;
+    private final List<Integer> timedOutShards;
+    private final List<Integer> failedShards;
+    private final long elapsedMillis;
+
+    public ShardedResult(List<CaseRepresentation> cases, int shardCount, List<Integer> timedOutShards,
+                         List<Integer> failedShards, long elapsedMillis) {
+        this.cases = Collections.unmodifiableList(cases);
+        this.shardCount = shardCount;
+        this.timedOutShards = Collections.unmodifiableList(timedOutShards);
+        this.failedShards = Collections.unmodifiableList(failedShards);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<CaseRepresentation> getCases() {
+        return cases;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getAnsweredShards() {
+        return shardCount - timedOutShards.size() - failedShards.size();
+    }
+
+    /** Shards that missed the deadline */
+    public List<Integer> getTimedOutShards() {
+        return timedOutShards;
+    }
+
+    /** Shards that answered with an error or could not be reached */
+    public List<Integer> getFailedShards() {
+        return failedShards;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * True if some shard is missing, so a better case may have been left out
+     */
+    public boolean isPartial() {
+        return !timedOutShards.isEmpty() || !failedShards.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedResult [cases=" + cases.size() + ", answered=" + getAnsweredShards() + "/" + shardCount
+                + ", timedOut=" + timedOutShards + ", failed=" + failedShards + ", elapsedMillis=" + elapsedMillis + "]";
+    }
+}
@@ -0,0 +1,293 @@
+package mov.startup;
+
+import mov.cbr.CBREngine;
+import mov.cbr.CaseBaseUpdater;
+import mov.fuzzy.FuzzyQualityEvaluator;
+import mov.graph.GraphRecommender;
+import mov.model.EntityRegistry;
+import mov.ontology.MovieCatalog;
+import mov.ontology.MovieRecommender;
+import mov.ontology.NameIndex;
+import mov.ontology.OntologyManager;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the system's components concurrently, each as soon as what it needs is loaded.
+ *
+ * <pre>
+ * jena --+-- catalog --+-- cases -- (similar, profile, hybrid)
+ *        |             +-- graph -- (related)
+ *        |             +--------------+
+ *        +-- names ---------------------------- (autocomplete)
+ *        +------------------------------------- (recommend)
+ * fuzzy ------------------------------+-- quality hook -- (quality)
+ * </pre>
+ *
+ * The OWL API schema is not part of startup: OntologyManager parses it on first edit.
+ * Every phase records when it started and how long it took, and every feature is marked ready
+ * the moment its phases complete, so a server can answer some requests while others still load.
+ * A failed phase fails the features that depend on it and nothing else.
+ */
+public class StartupOrchestrator {
+
+    /** Groups of endpoints that become available together */
+    public enum Feature {
+        RECOMMEND, // structured search over SPARQL (catalog when loaded)
+        AUTOCOMPLETE,
+        QUALITY,
+        SIMILAR, // CBR: similar movies and user profiles
+        RELATED, // graph recommender
+        HYBRID
+    }
+
+    public static final String JENA = "jena";
+    public static final String FUZZY = "fuzzy";
+    public static final String CATALOG = "catalog";
+    public static final String NAMES = "names";
+    public static final String QUALITY_HOOK = "quality_hook";
+    public static final String CASES = "cases";
+    public static final String GRAPH = "graph";
+
+    /** When a phase ran, relative to start() */
+    public static class PhaseTiming {
+        private final String phase;
+        private final long startMillis;
+        private final long durationMillis;
+        private final String error; // null if it succeeded
+
+        PhaseTiming(String phase, long startMillis, long durationMillis, String error) {
+            this.phase = phase;
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+            this.error = error;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /** A phase body; may throw checked exceptions */
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private final OntologyManager ontologyManager;
+    private final MovieRecommender movieRecommender;
+    private final FuzzyQualityEvaluator fuzzyEvaluator;
+    private final CBREngine cbrEngine;
+    private final EntityRegistry entityRegistry;
+    private final String ontologyPath;
+    private final String fuzzyConfigPath;
+
+    private final Map<String, PhaseTiming> timings = new LinkedHashMap<>(); // guarded by itself
+    private final Map<Feature, CompletableFuture<Void>> features = new EnumMap<>(Feature.class);
+    private volatile GraphRecommender graphRecommender;
+    private ExecutorService executor;
+    private CompletableFuture<Void> all;
+    private long startNanos;
+
+    public StartupOrchestrator(OntologyManager ontologyManager, MovieRecommender movieRecommender,
+                               FuzzyQualityEvaluator fuzzyEvaluator, CBREngine cbrEngine,
+                               EntityRegistry entityRegistry, String ontologyPath, String fuzzyConfigPath) {
+        this.ontologyManager = ontologyManager;
+        this.movieRecommender = movieRecommender;
+        this.fuzzyEvaluator = fuzzyEvaluator;
+        this.cbrEngine = cbrEngine;
+        this.entityRegistry = entityRegistry;
+        this.ontologyPath = ontologyPath;
+        this.fuzzyConfigPath = fuzzyConfigPath;
+    }
+
+    /**
+     * Start every phase; returns at once. Readiness is reported through isReady and whenReady.
+     */
+    public synchronized void start() {
+        if (all != null) {
+            throw new IllegalStateException("Startup already started");
+        }
+        startNanos = System.nanoTime();
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())), r -> {
+            Thread thread = new Thread(r, "mov-startup-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        CompletableFuture<Void> jena = phase(JENA, () -> ontologyManager.loadOntology(ontologyPath));
+        CompletableFuture<Void> fuzzy = phase(FUZZY, () -> {
+            if (fuzzyConfigPath == null) {
+                throw new IllegalStateException("Fuzzy configuration not found");
+            }
+            fuzzyEvaluator.loadFuzzySystem(fuzzyConfigPath);
+            if (!fuzzyEvaluator.isLoaded()) {
+                throw new IllegalStateException("Fuzzy system did not load from " + fuzzyConfigPath);
+            }
+        });
+        CompletableFuture<Void> catalog = phase(CATALOG, () ->
+                movieRecommender.setCatalog(MovieCatalog.build(ontologyManager, entityRegistry)), jena);
+        CompletableFuture<Void> names = phase(NAMES, () ->
+                movieRecommender.setNameIndex(NameIndex.build(ontologyManager)), jena);
+        CompletableFuture<Void> qualityHook = phase(QUALITY_HOOK, () ->
+                movieRecommender.getCatalog().setQualityScorer(fuzzyEvaluator::evaluateMovie), catalog, fuzzy);
+        CompletableFuture<Void> cases = phase(CASES, () ->
+                new CaseBaseUpdater(cbrEngine, movieRecommender).start(ontologyManager), catalog);
+        CompletableFuture<Void> graph = phase(GRAPH, () ->
+                graphRecommender = GraphRecommender.build(ontologyManager, movieRecommender), catalog);
+
+        features.put(Feature.RECOMMEND, jena);
+        features.put(Feature.AUTOCOMPLETE, names);
+        features.put(Feature.QUALITY, CompletableFuture.allOf(fuzzy, qualityHook));
+        features.put(Feature.SIMILAR, cases);
+        features.put(Feature.RELATED, graph);
+        features.put(Feature.HYBRID, CompletableFuture.allOf(jena, cases));
+
+        // Completes when every phase has finished, whether or not it succeeded
+        List<CompletableFuture<Void>> phases = List.of(jena, fuzzy, catalog, names, qualityHook, cases, graph);
+        List<CompletableFuture<Void>> settled = new ArrayList<>();
+        for (CompletableFuture<Void> phase : phases) {
+            settled.add(phase.handle((ignored, error) -> null));
+        }
+        all = CompletableFuture.allOf(settled.toArray(CompletableFuture<?>[]::new));
+        all.whenComplete((ignored, error) -> executor.shutdown());
+    }
+
+    /**
+     * Run the step on the startup pool once all dependencies have succeeded, recording its timing.
+     * If a dependency failed the phase fails with that cause without running.
+     */
+    private CompletableFuture<Void> phase(String name, Step step, CompletableFuture<?>... dependencies) {
+        CompletableFuture<Void> ready = CompletableFuture.allOf(dependencies);
+        return ready.thenRunAsync(() -> {
+            long start = System.nanoTime();
+            String error = null;
+            try {
+                step.run();
+            } catch (Exception e) {
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+                throw new CompletionException(e);
+            } finally {
+                record(name, start, error);
+            }
+        }, executor);
+    }
+
+    private void record(String name, long start, String error) {
+        long end = System.nanoTime();
+        PhaseTiming timing = new PhaseTiming(name, (start - startNanos) / 1_000_000, (end - start) / 1_000_000, error);
+        synchronized (timings) {
+            timings.put(name, timing);
+        }
+        if (error != null) {
+            System.err.println("Startup phase " + name + " failed after " + timing.getDurationMillis() + " ms: " + error);
+        }
+    }
+
+    /**
+     * True once the feature's phases have all succeeded
+     */
+    public boolean isReady(Feature feature) {
+        CompletableFuture<Void> future = features.get(feature);
+        return future != null && future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    /**
+     * True if a phase the feature needs has failed, so it will not become ready
+     */
+    public boolean hasFailed(Feature feature) {
+        CompletableFuture<Void> future = features.get(feature);
+        return future != null && future.isCompletedExceptionally();
+    }
+
+    /**
+     * Completes when the feature is ready, or exceptionally if one of its phases failed
+     */
+    public CompletableFuture<Void> whenReady(Feature feature) {
+        CompletableFuture<Void> future = features.get(feature);
+        if (future == null) {
+            throw new IllegalStateException("Startup not started");
+        }
+        return future;
+    }
+
+    /**
+     * Wait until every phase has finished, successfully or not
+     *
+     * @return true if all of them finished within the timeout
+     */
+    public boolean awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            all.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true; // phases only settle
+        }
+    }
+
+    /**
+     * Built by the graph phase; null until then or if it failed
+     */
+    public GraphRecommender getGraphRecommender() {
+        return graphRecommender;
+    }
+
+    /**
+     * Finished phases in completion order
+     */
+    public List<PhaseTiming> getTimings() {
+        synchronized (timings) {
+            return new ArrayList<>(timings.values());
+        }
+    }
+
+    /**
+     * Phase timings and feature readiness, with the wall time against the sum of the phases
+     */
+    public String report() {
+        StringBuilder text = new StringBuilder("Startup phases:\n");
+        long wall = 0;
+        long sum = 0;
+        for (PhaseTiming timing : getTimings()) {
+            text.append(String.format(Locale.ROOT, "  %-13s start +%5d ms  took %5d ms%s%n", timing.getPhase(),
+                    timing.getStartMillis(), timing.getDurationMillis(),
+                    timing.getError() == null ? "" : "  FAILED: " + timing.getError()));
+            wall = Math.max(wall, timing.getStartMillis() + timing.getDurationMillis());
+            sum += timing.getDurationMillis();
+        }
+        text.append(String.format(Locale.ROOT, "  wall %d ms for %d ms of work%n", wall, sum));
+        text.append("Features:");
+        for (Feature feature : Feature.values()) {
+            text.append(' ').append(feature.name().toLowerCase(Locale.ROOT)).append('=')
+                    .append(isReady(feature) ? "ready" : hasFailed(feature) ? "failed" : "loading");
+        }
+        return text.toString();
+    }
+}
@@ -2,14 +2,39 @@ package mov.ui;
 
 import mov.cbr.CBREngine;
 import mov.cbr.CaseRepresentation;
+import mov.cbr.SimilaritySpec;
+import mov.cbr.SimilarityTuner;
+import mov.cbr.jcolibri.RetrievalBenchmark;
+import mov.export.BulkExporter;
 import mov.fuzzy.FuzzyQualityEvaluator;
+import mov.graph.GraphMatch;
+import mov.graph.GraphRecommender;
+import mov.metrics.Metrics;
+import mov.model.EntityRegistry;
 import mov.model.Movie;
 import mov.model.Person;
+import mov.ontology.BulkImporter;
+import mov.ontology.JoinOrderBenchmark;
+import mov.ontology.MovieQuery;
 import mov.ontology.MovieRecommender;
+import mov.ontology.NameIndex;
 import mov.ontology.OntologyManager;
-
+import mov.ontology.ResultPage;
+import mov.ontology.SortKey;
+import mov.server.RecommendationServer;
+import mov.server.ServerConfig;
+import mov.shard.ShardLauncher;
+import mov.shard.ShardWorker;
+import mov.startup.StartupOrchestrator;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 
@@ -17,15 +42,91 @@ public class Main {
     private static MovieRecommender movieRecommender;
     private static FuzzyQualityEvaluator fuzzyEvaluator;
     private static CBREngine cbrEngine;
+    private static GraphRecommender graphRecommender;
     private static Scanner scanner;
 
-    public static void main(String[] args) {
-        scanner = new Scanner(System.in);
+    private static final int PAGE_SIZE = 10;
 
+    public static void main(String[] args) {
         System.out.println("=== Movie Recommendation System ===\n");
 
-        // Initialize components
-        initializeSystem();
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--tune-similarity")) {
+            try {
+                SimilarityTuner.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                System.err.println("Error tuning similarity: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--shard-worker") || args[0].equals("--shard-launch"))) {
+            try {
+                String[] rest = Arrays.copyOfRange(args, 1, args.length);
+                if (args[0].equals("--shard-worker")) {
+                    ShardWorker.main(rest);
+                } else {
+                    ShardLauncher.main(rest);
+                }
+            } catch (Exception e) {
+                System.err.println("Error running shards: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--bulk-import")) {
+            try {
+                BulkImporter.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                System.err.println("Error importing movies: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--bulk-export")) {
+            try {
+                BulkExporter.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                System.err.println("Error exporting: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--benchmark-cbr")) {
+            try {
+                RetrievalBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                System.err.println("Error benchmarking CBR retrieval: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--benchmark-joins")) {
+            try {
+                JoinOrderBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                System.err.println("Error benchmarking join ordering: " + e.getMessage());
+            }
+            return;
+        }
+
+        scanner = new Scanner(System.in);
+
+        // Initialize components; the menu needs all of them
+        StartupOrchestrator startup = initializeSystem();
+        startup.start();
+        try {
+            startup.awaitAll(10, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        graphRecommender = startup.getGraphRecommender();
+        System.out.println(startup.report());
+        System.out.println(movieRecommender.getEntityRegistry().heapReport());
+        if (startup.getTimings().stream().anyMatch(timing -> timing.getError() != null)) {
+            System.err.println("Some features may not work properly.\n");
+        } else {
+            System.out.println("System initialized successfully!\n");
+        }
 
         // Main menu loop
         boolean running = true;
@@ -44,6 +145,12 @@ public class Main {
                     findSimilarMovies();
                     break;
                 case 4:
+                    findRelatedMovies();
+                    break;
+                case 5:
+                    reloadCatalog();
+                    break;
+                case 6:
                     running = false;
                     System.out.println("Goodbye!");
                     break;
@@ -55,37 +162,80 @@ public class Main {
         scanner.close();
     }
 
-    private static void initializeSystem() {
-        System.out.println("Initializing system...\n");
-
-        // Initialize ontology manager
-        ontologyManager = new OntologyManager();
+    /**
+     * Serve the recommendation API over HTTP instead of the console menu.
+     * Usage: --server [port]
+     */
+    private static void runServer(String[] args) {
+        StartupOrchestrator startup = initializeSystem();
 
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        if (args.length > 1) {
+            config.setPort(Integer.parseInt(args[1]));
+        }
+        // Listen straight away; endpoints answer 503 until their feature has loaded
+        RecommendationServer server = new RecommendationServer(movieRecommender, cbrEngine, fuzzyEvaluator, config);
+        server.setStartup(startup);
+        startup.start();
+        startup.whenReady(StartupOrchestrator.Feature.RELATED)
+                .thenRun(() -> server.setGraphRecommender(startup.getGraphRecommender()));
         try {
-            // Load ontology (you'll need to create this file first)
-            String ontologyPath = "src/main/resources/ontology/movies-instances.owl";
-            ontologyManager.loadOntology(ontologyPath);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            if (startup.awaitAll(10, TimeUnit.MINUTES)) {
+                System.out.println(startup.report());
+            }
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error starting HTTP service: " + e.getMessage());
+        }
+    }
 
-            // Initialize recommender
-            movieRecommender = new MovieRecommender(ontologyManager);
+    /**
+     * Create the components and an orchestrator that loads them; nothing is loaded until it starts
+     */
+    private static StartupOrchestrator initializeSystem() {
+        System.out.println("Initializing system...\n");
+        Metrics.registerMBean();
 
-            // Initialize fuzzy evaluator
-            fuzzyEvaluator = new FuzzyQualityEvaluator();
-            String fuzzyConfigPath = Main.class.getClassLoader().getResource("fuzzy/Quality.fcl").getPath();
-            fuzzyConfigPath = java.net.URLDecoder.decode(fuzzyConfigPath, "UTF-8");
-            fuzzyEvaluator.loadFuzzySystem(fuzzyConfigPath);
+        // The OWL API schema is parsed on first edit, not here
+        ontologyManager = new OntologyManager();
+        String ontologyPath = "src/main/resources/ontology/movies-instances.owl";
 
-            // Initialize CBR engine
-            cbrEngine = new CBREngine();
-            List<Movie> allMovies = movieRecommender.getAllMovies();
-            cbrEngine.loadCases(allMovies);
+        // Catalog, SPARQL results and cases share one entity registry
+        EntityRegistry entityRegistry = new EntityRegistry();
+        movieRecommender = new MovieRecommender(ontologyManager);
+        movieRecommender.setEntityRegistry(entityRegistry);
 
-            System.out.println("System initialized successfully!\n");
+        fuzzyEvaluator = new FuzzyQualityEvaluator();
+        String fuzzyConfigPath = null;
+        URL fuzzyConfig = Main.class.getClassLoader().getResource("fuzzy/Quality.fcl");
+        if (fuzzyConfig != null) {
+            try {
+                fuzzyConfigPath = URLDecoder.decode(fuzzyConfig.getPath(), "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
 
-        } catch (Exception e) {
-            System.err.println("Error initializing system: " + e.getMessage());
-            System.err.println("Some features may not work properly.\n");
+        cbrEngine = new CBREngine();
+        cbrEngine.setEntityRegistry(entityRegistry);
+        loadSimilaritySpec();
+        if ("offheap".equalsIgnoreCase(System.getProperty("mov.cbr.storage"))) {
+            cbrEngine.setStorageMode(CBREngine.StorageMode.OFF_HEAP);
         }
+        if ("jcolibri".equalsIgnoreCase(System.getProperty("mov.cbr.mode"))) {
+            cbrEngine.setRetrievalMode(CBREngine.RetrievalMode.JCOLIBRI);
+            System.out.println("CBR retrieval: jCOLIBRI");
+        } else if ("vector".equalsIgnoreCase(System.getProperty("mov.cbr.mode"))) {
+            cbrEngine.setRetrievalMode(CBREngine.RetrievalMode.VECTOR);
+            System.out.println("CBR retrieval: feature vectors");
+        }
+
+        return new StartupOrchestrator(ontologyManager, movieRecommender, fuzzyEvaluator, cbrEngine,
+                entityRegistry, ontologyPath, fuzzyConfigPath);
     }
 
     private static void printMenu() {
@@ -93,7 +243,9 @@ public class Main {
         System.out.println("1. Recommend movies (Ontology + SPARQL)");
         System.out.println("2. Evaluate movie quality (Fuzzy Logic)");
         System.out.println("3. Find similar movies (CBR)");
-        System.out.println("4. Exit");
+        System.out.println("4. Related movies (sequels, franchises, collaborators)");
+        System.out.println("5. Reload catalog (background)");
+        System.out.println("6. Exit");
         System.out.println();
     }
 
@@ -105,32 +257,50 @@ public class Main {
         System.out.println("4. By year range");
 
         int choice = getIntInput("Choose search type: ");
-        List<Movie> results = null;
+        MovieQuery query = new MovieQuery();
 
         switch (choice) {
             case 1:
-                String genre = getStringInput("Enter genre: ");
-                results = movieRecommender.recommendByGenre(genre);
+                query.setGenre(getStringInput("Enter genre: "));
                 break;
             case 2:
-                String director = getStringInput("Enter director name: ");
-                results = movieRecommender.recommendByDirector(director);
+                query.setDirector(getStringInput("Enter director name: "));
                 break;
             case 3:
-                String actor = getStringInput("Enter actor name: ");
-                results = movieRecommender.recommendByActor(actor);
+                query.setActor(getStringInput("Enter actor name: "));
                 break;
             case 4:
-                int startYear = getIntInput("Enter start year: ");
-                int endYear = getIntInput("Enter end year: ");
-                results = movieRecommender.recommendByYearRange(startYear, endYear);
+                query.setStartYear(getIntInput("Enter start year: "));
+                query.setEndYear(getIntInput("Enter end year: "));
                 break;
             default:
                 System.out.println("Invalid choice.");
                 return;
         }
 
-        displayMovies(results);
+        System.out.println("Sort by: 1. IMDb score  2. Rotten Tomatoes score  3. Year  4. Fuzzy quality  0. None");
+        int sort = getIntInput("Choose sort order: ");
+        if (sort >= 1 && sort <= SortKey.values().length) {
+            query.setSortKey(SortKey.values()[sort - 1]);
+        }
+        query.setPageSize(PAGE_SIZE);
+
+        int shown = 0;
+        while (true) {
+            ResultPage<Movie> page;
+            try {
+                page = movieRecommender.recommend(query);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            displayMovies(page.getItems(), shown);
+            shown += page.size();
+            if (!page.hasMore() || !getStringInput("Show more? (y/n): ").equalsIgnoreCase("y")) {
+                return;
+            }
+            query.setCursor(page.getNextCursor());
+        }
     }
 
     private static void evaluateMovieQuality() {
@@ -160,10 +330,11 @@ public class Main {
         String movieTitle = getStringInput("Enter movie title: ");
         int k = getIntInput("How many similar movies to show: ");
 
-        // Find the target movie in case base
+        // Find the target movie in case base (titles resolve with typo tolerance)
         Movie targetMovie = null;
-        for (CaseRepresentation caseRep : cbrEngine.getCaseBase()) {
-            if (caseRep.getMovie().getTitle().equalsIgnoreCase(movieTitle)) {
+        for (String uri : movieRecommender.getNameIndex().resolve(NameIndex.Kind.TITLE, movieTitle)) {
+            CaseRepresentation caseRep = cbrEngine.getCase(uri);
+            if (caseRep != null) {
                 targetMovie = caseRep.getMovie();
                 break;
             }
@@ -202,16 +373,72 @@ public class Main {
         }
     }
 
-    private static void displayMovies(List<Movie> movies) {
+    private static void findRelatedMovies() {
+        System.out.println("\n=== Related Movies (Graph) ===");
+
+        String movieTitle = getStringInput("Enter movie title: ");
+        int k = getIntInput("How many related movies to show: ");
+
+        List<String> uris = movieRecommender.getNameIndex().resolve(NameIndex.Kind.TITLE, movieTitle);
+        if (uris.isEmpty()) {
+            System.out.println("Movie not found in database.");
+            return;
+        }
+
+        List<GraphMatch> related = graphRecommender.recommend(uris.get(0), k);
+        if (related.isEmpty()) {
+            System.out.println("\nNo related movies found.");
+            return;
+        }
+        System.out.println("\n--- Related Movies ---");
+        for (int i = 0; i < related.size(); i++) {
+            Movie movie = related.get(i).getMovie();
+            System.out.println((i + 1) + ". " + movie.getTitle() +
+                    (movie.getYear() > 0 ? " (" + movie.getYear() + ")" : "") +
+                    " - Score: " + String.format("%.4f", related.get(i).getScore()));
+        }
+    }
+
+    /**
+     * Similarity weights from -Dmov.similarity.spec, or the bundled cbr/similarity.properties
+     */
+    private static void loadSimilaritySpec() {
+        String path = System.getProperty("mov.similarity.spec");
+        try {
+            SimilaritySpec spec = path != null ? SimilaritySpec.load(Paths.get(path))
+                    : SimilaritySpec.loadResource(SimilaritySpec.DEFAULT_RESOURCE);
+            cbrEngine.setSimilaritySpec(spec);
+            System.out.println("Similarity: " + spec);
+        } catch (Exception e) {
+            System.err.println("Error loading similarity spec, keeping " + cbrEngine.getSimilaritySpec() + ": " + e.getMessage());
+        }
+    }
+
+    private static void reloadCatalog() {
+        loadSimilaritySpec();
+        System.out.println("\nReloading catalog in the background; queries keep using the current data.");
+        ontologyManager.reloadAsync().whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.err.println("Error reloading catalog: " + error.getMessage());
+            } else {
+                System.out.println("\nCatalog reloaded: " + cbrEngine.getCaseCount() + " cases.");
+            }
+        });
+    }
+
+    /**
+     * @param firstRank number of movies shown on earlier pages
+     */
+    private static void displayMovies(List<Movie> movies, int firstRank) {
         if (movies == null || movies.isEmpty()) {
-            System.out.println("\nNo movies found.");
+            System.out.println(firstRank == 0 ? "\nNo movies found." : "\nNo more movies.");
             return;
         }
 
-        System.out.println("\n--- Results (" + movies.size() + " movies) ---");
+        System.out.println("\n--- Results " + (firstRank + 1) + "-" + (firstRank + movies.size()) + " ---");
         for (int i = 0; i < movies.size(); i++) {
             Movie movie = movies.get(i);
-            System.out.println("\n" + (i + 1) + ". " + movie.getTitle() +
+            System.out.println("\n" + (firstRank + i + 1) + ". " + movie.getTitle() +
                     (movie.getYear() > 0 ? " (" + movie.getYear() + ")" : ""));
             if (!movie.getDirectors().isEmpty()) {
                 System.out.print("   Director(s): ");
@@ -224,6 +451,9 @@ public class Main {
             if (movie.getRating() > 0) {
                 System.out.println("   IMDb Score:  " + movie.getRating());
             }
+            if (movie.getRottenTomatoesScore() > 0) {
+                System.out.println("   Rotten Tomatoes: " + movie.getRottenTomatoesScore() + "%");
+            }
             if (movie.getRuntime() > 0) {
                 System.out.println("   Runtime:     " + movie.getRuntime() + " min");
             }